@@ -0,0 +1,41 @@
+package com.insags.mockito.tutorial;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Clase ActualizacionPorLotesException.<br>
+ * Se lanza cuando uno o varios lotes de una actualizaci&oacute;n masiva han
+ * fallado. Los lotes restantes s&iacute; se han aplicado.<br>
+ * @author INSA
+ */
+public class ActualizacionPorLotesException extends RuntimeException {
+
+	/** Serial. */
+	private static final long serialVersionUID = 1L;
+
+	/** Lotes fallidos, en orden. */
+	private final List<ErrorLote> erroresLote;
+
+	/**
+	 * Constructor de la clase.<br>
+	 * @param erroresLote Lotes fallidos, en orden. No puede estar vac&iacute;a.
+	 */
+	public ActualizacionPorLotesException(List<ErrorLote> erroresLote) {
+		super(erroresLote.size() + " lote(s) fallido(s); primero: " + erroresLote.get(0),
+				erroresLote.get(0).getCausa());
+		this.erroresLote = Collections.unmodifiableList(erroresLote);
+		for (int i = 1; i < erroresLote.size(); i++) {
+			addSuppressed(erroresLote.get(i).getCausa());
+		}
+	}
+
+	/**
+	 * M&eacute;todo getErroresLote.<br>
+	 * @return Los lotes fallidos, en orden.
+	 */
+	public List<ErrorLote> getErroresLote() {
+		return erroresLote;
+	}
+
+}
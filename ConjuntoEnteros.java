@@ -0,0 +1,136 @@
+package com.insags.mockito.tutorial.impl;
+
+import java.util.Arrays;
+
+/**
+ * Clase ConjuntoEnteros.<br>
+ * Conjunto de enteros no negativos en una tabla con direccionamiento
+ * abierto que crece al llenarse, sin objetos por elemento. No es seguro
+ * para varios hilos.<br>
+ * @author INSA
+ */
+final class ConjuntoEnteros {
+
+	/** Marca de hueco libre. */
+	private static final int LIBRE = -1;
+
+	/** Tabla; su tama&ntilde;o es potencia de dos. */
+	private int[] tabla;
+
+	/** N&uacute;mero de elementos. */
+	private int tamanyo;
+
+	/**
+	 * Constructor de la clase.<br>
+	 */
+	ConjuntoEnteros() {
+		tabla = new int[4];
+		Arrays.fill(tabla, LIBRE);
+	}
+
+	/**
+	 * M&eacute;todo tamanyo.<br>
+	 * @return N&uacute;mero de elementos.
+	 */
+	int tamanyo() {
+		return tamanyo;
+	}
+
+	/**
+	 * M&eacute;todo anyadir.<br>
+	 * @param valor Entero no negativo.
+	 * @return Si no estaba ya.
+	 */
+	boolean anyadir(int valor) {
+		if ((tamanyo + 1) * 2 > tabla.length) {
+			redimensionar(tabla.length * 2);
+		}
+		int mascara = tabla.length - 1;
+		int hueco = mezclar(valor) & mascara;
+		while (tabla[hueco] != LIBRE) {
+			if (tabla[hueco] == valor) {
+				return false;
+			}
+			hueco = (hueco + 1) & mascara;
+		}
+		tabla[hueco] = valor;
+		tamanyo++;
+		return true;
+	}
+
+	/**
+	 * M&eacute;todo quitar.<br>
+	 * Desplaza hacia atr&aacute;s los elementos siguientes para no dejar marcas de borrado.
+	 * @param valor Entero no negativo.
+	 * @return Si estaba.
+	 */
+	boolean quitar(int valor) {
+		int mascara = tabla.length - 1;
+		int hueco = mezclar(valor) & mascara;
+		while (tabla[hueco] != valor) {
+			if (tabla[hueco] == LIBRE) {
+				return false;
+			}
+			hueco = (hueco + 1) & mascara;
+		}
+		int siguiente = hueco;
+		while (true) {
+			siguiente = (siguiente + 1) & mascara;
+			int candidato = tabla[siguiente];
+			if (candidato == LIBRE) {
+				break;
+			}
+			int ideal = mezclar(candidato) & mascara;
+			if (((siguiente - ideal) & mascara) >= ((siguiente - hueco) & mascara)) {
+				tabla[hueco] = candidato;
+				hueco = siguiente;
+			}
+		}
+		tabla[hueco] = LIBRE;
+		tamanyo--;
+		return true;
+	}
+
+	/**
+	 * M&eacute;todo copiarEn.<br>
+	 * @param destino Array destino.
+	 * @param desde &Iacute;ndice del destino donde empezar.
+	 * @return &Iacute;ndice siguiente al &uacute;ltimo copiado.
+	 */
+	int copiarEn(int[] destino, int desde) {
+		int i = desde;
+		for (int valor : tabla) {
+			if (valor != LIBRE) {
+				destino[i++] = valor;
+			}
+		}
+		return i;
+	}
+
+	/**
+	 * M&eacute;todo redimensionar.<br>
+	 * @param capacidad Nuevo tama&ntilde;o de la tabla, potencia de dos.
+	 */
+	private void redimensionar(int capacidad) {
+		int[] anterior = tabla;
+		tabla = new int[capacidad];
+		Arrays.fill(tabla, LIBRE);
+		tamanyo = 0;
+		for (int valor : anterior) {
+			if (valor != LIBRE) {
+				anyadir(valor);
+			}
+		}
+	}
+
+	/**
+	 * M&eacute;todo mezclar.<br>
+	 * @param valor El entero.
+	 * @return Valor disperso para repartir enteros consecutivos por la tabla.
+	 */
+	private static int mezclar(int valor) {
+		int h = valor * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+}
@@ -0,0 +1,114 @@
+package com.insags.mockito.tutorial.impl;
+
+import java.util.Arrays;
+
+/**
+ * Clase ConjuntoPosicionesSucias.<br>
+ * Conjunto acotado de posiciones escritas desde el &uacute;ltimo reseteo,
+ * guardado en una tabla de enteros con direccionamiento abierto. Empieza
+ * desbordado, porque tras un arranque no se sabe qu&eacute; se escribi&oacute;
+ * antes, y se desborda de nuevo si se marcan m&aacute;s posiciones de las
+ * que admite; mientras est&aacute; desbordado s&oacute;lo sirve un recorrido
+ * completo.<br>
+ * @author INSA
+ */
+class ConjuntoPosicionesSucias {
+
+	/** Marca de hueco libre en la tabla. */
+	private static final int LIBRE = -1;
+
+	/** N&uacute;mero m&aacute;ximo de posiciones antes de desbordarse. */
+	private final int capacidad;
+
+	/** Tabla de posiciones; su tama&ntilde;o es potencia de dos y al menos el doble de la capacidad. */
+	private final int[] tabla;
+
+	/** N&uacute;mero de posiciones marcadas. */
+	private int marcadas;
+
+	/** Indica si se han perdido posiciones y hace falta un recorrido completo. */
+	private boolean desbordado = true;
+
+	/**
+	 * Constructor de la clase.<br>
+	 * @param capacidad N&uacute;mero m&aacute;ximo de posiciones antes de desbordarse.
+	 */
+	ConjuntoPosicionesSucias(int capacidad) {
+		if (capacidad <= 0 || capacidad > 1 << 29) {
+			throw new IllegalArgumentException("Capacidad no valida: " + capacidad);
+		}
+		this.capacidad = capacidad;
+		this.tabla = new int[Integer.highestOneBit(capacidad * 2 - 1) << 1];
+		Arrays.fill(tabla, LIBRE);
+	}
+
+	/**
+	 * M&eacute;todo marcar.<br>
+	 * @param posicion Posici&oacute;n escrita; las negativas se ignoran.
+	 */
+	synchronized void marcar(int posicion) {
+		if (desbordado || posicion < 0) {
+			return;
+		}
+		int mascara = tabla.length - 1;
+		int hueco = mezclar(posicion) & mascara;
+		while (tabla[hueco] != LIBRE) {
+			if (tabla[hueco] == posicion) {
+				return;
+			}
+			hueco = (hueco + 1) & mascara;
+		}
+		if (marcadas == capacidad) {
+			desbordar();
+			return;
+		}
+		tabla[hueco] = posicion;
+		marcadas++;
+	}
+
+	/**
+	 * M&eacute;todo extraer.<br>
+	 * Vac&iacute;a el conjunto y deja de considerarlo desbordado.
+	 * @return Las posiciones marcadas en orden ascendente, o nulo si estaba desbordado.
+	 */
+	synchronized int[] extraer() {
+		if (desbordado) {
+			desbordado = false;
+			return null;
+		}
+		int[] posiciones = new int[marcadas];
+		int i = 0;
+		for (int hueco = 0; hueco < tabla.length; hueco++) {
+			if (tabla[hueco] != LIBRE) {
+				posiciones[i++] = tabla[hueco];
+				tabla[hueco] = LIBRE;
+			}
+		}
+		marcadas = 0;
+		Arrays.sort(posiciones);
+		return posiciones;
+	}
+
+	/**
+	 * M&eacute;todo desbordar.<br>
+	 * Descarta las posiciones marcadas y obliga al siguiente reseteo a recorrer todo.
+	 */
+	synchronized void desbordar() {
+		if (!desbordado) {
+			desbordado = true;
+			Arrays.fill(tabla, LIBRE);
+			marcadas = 0;
+		}
+	}
+
+	/**
+	 * M&eacute;todo mezclar.<br>
+	 * @param posicion La posici&oacute;n.
+	 * @return Valor disperso para repartir posiciones consecutivas por la tabla.
+	 */
+	private static int mezclar(int posicion) {
+		int h = posicion * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+}
@@ -0,0 +1,22 @@
+package com.insags.mockito.tutorial;
+
+import java.util.Iterator;
+
+/**
+ * Interfaz CursorItems.<br>
+ * Recorrido secuencial de los items de un {@link ItemDao} que no materializa
+ * el cat&aacute;logo completo. Debe cerrarse al terminar para liberar los
+ * recursos del almacenamiento.<br>
+ * @author INSA
+ */
+public interface CursorItems extends Iterator<String>, AutoCloseable {
+
+	/**
+	 * M&eacute;todo sobrescrito close.<br>
+	 * Libera los recursos asociados al cursor. Puede invocarse varias veces.
+	 * @see java.lang.AutoCloseable#close()
+	 */
+	@Override
+	void close();
+
+}
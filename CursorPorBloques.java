@@ -0,0 +1,115 @@
+package com.insags.mockito.tutorial.impl;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import com.insags.mockito.tutorial.CursorItems;
+
+/**
+ * Clase CursorPorBloques.<br>
+ * Base para cursores que leen del almacenamiento un bloque de items cada vez,
+ * de forma que en memoria s&oacute;lo reside el bloque actual.<br>
+ * @author INSA
+ */
+public abstract class CursorPorBloques implements CursorItems {
+
+	/** Bloque le&iacute;do actualmente. */
+	private final String[] bloque;
+
+	/** Posici&oacute;n del almacenamiento en la que empieza el siguiente bloque. */
+	private int siguientePosicion;
+
+	/** &Iacute;ndice dentro del bloque del siguiente item a devolver. */
+	private int indice;
+
+	/** N&uacute;mero de items v&aacute;lidos en el bloque actual. */
+	private int leidos;
+
+	/** Indica si el almacenamiento ya no tiene m&aacute;s items. */
+	private boolean agotado;
+
+	/** Indica si el cursor se ha cerrado. */
+	private boolean cerrado;
+
+	/**
+	 * Constructor de la clase.<br>
+	 * @param tamanyoBloque N&uacute;mero m&aacute;ximo de items por lectura.
+	 * @param posicionInicial Primera posici&oacute;n a leer.
+	 */
+	protected CursorPorBloques(int tamanyoBloque, int posicionInicial) {
+		if (tamanyoBloque <= 0) {
+			throw new IllegalArgumentException("Tamanyo de bloque no valido: " + tamanyoBloque);
+		}
+		this.bloque = new String[tamanyoBloque];
+		this.siguientePosicion = posicionInicial;
+	}
+
+	/**
+	 * M&eacute;todo leerBloque.<br>
+	 * Lee del almacenamiento los items a partir de la posici&oacute;n dada.
+	 * @param desde Primera posici&oacute;n a leer.
+	 * @param destino Array a rellenar desde su &iacute;ndice cero.
+	 * @return N&uacute;mero de items le&iacute;dos; menos de destino.length indica el final.
+	 */
+	protected abstract int leerBloque(int desde, String[] destino);
+
+	/**
+	 * M&eacute;todo liberar.<br>
+	 * Libera los recursos del almacenamiento. Por defecto no hace nada.
+	 */
+	protected void liberar() {
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito hasNext.<br>
+	 * @return Si quedan items por recorrer.
+	 * @see java.util.Iterator#hasNext()
+	 */
+	@Override
+	public boolean hasNext() {
+		if (cerrado) {
+			return false;
+		}
+		if (indice < leidos) {
+			return true;
+		}
+		if (!agotado) {
+			Arrays.fill(bloque, 0, leidos, null);
+			leidos = leerBloque(siguientePosicion, bloque);
+			siguientePosicion += leidos;
+			indice = 0;
+			agotado = leidos < bloque.length;
+			if (leidos > 0) {
+				return true;
+			}
+		}
+		close();
+		return false;
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito next.<br>
+	 * @return El siguiente item.
+	 * @see java.util.Iterator#next()
+	 */
+	@Override
+	public String next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return bloque[indice++];
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito close.<br>
+	 * @see com.insags.mockito.tutorial.CursorItems#close()
+	 */
+	@Override
+	public void close() {
+		if (!cerrado) {
+			cerrado = true;
+			liberar();
+		}
+	}
+
+}
@@ -0,0 +1,622 @@
+package com.insags.mockito.tutorial.impl;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+import com.insags.mockito.tutorial.InstantaneaItems;
+import com.insags.mockito.tutorial.ItemDao;
+
+/**
+ * Clase DiarioEscrituras.<br>
+ * Diario de escrituras de s&oacute;lo a&ntilde;adir, repartido en segmentos
+ * numerados dentro de un directorio. Cada registro es
+ * <code>[posici&oacute;n][longitud + 1][bytes UTF-8][CRC32]</code>, con la
+ * longitud a cero para un item nulo. Los escritores codifican sus registros
+ * en un b&uacute;fer compartido; el primero que necesita sincronizar se
+ * lleva todo el b&uacute;fer en una &uacute;nica escritura secuencial y un
+ * &uacute;nico force, y los que esperaban detr&aacute;s encuentran sus
+ * registros ya en disco. Un punto de control guarda una instant&aacute;nea
+ * del cat&aacute;logo en <code>control-N.dat</code> y borra los segmentos
+ * anteriores a N, de modo que la recuperaci&oacute;n carga el &uacute;ltimo
+ * punto de control y s&oacute;lo reproduce los segmentos posteriores. Un
+ * registro final incompleto se descarta truncando el segmento.<br>
+ * @author INSA
+ */
+final class DiarioEscrituras implements Closeable {
+
+	/** Prefijo de los segmentos. */
+	private static final String PREFIJO_SEGMENTO = "diario-";
+
+	/** Extensi&oacute;n de los segmentos. */
+	private static final String EXTENSION_SEGMENTO = ".log";
+
+	/** Prefijo de los puntos de control. */
+	private static final String PREFIJO_CONTROL = "control-";
+
+	/** Extensi&oacute;n de los puntos de control. */
+	private static final String EXTENSION_CONTROL = ".dat";
+
+	/** Extensi&oacute;n de un punto de control a medio escribir. */
+	private static final String EXTENSION_TEMPORAL = ".tmp";
+
+	/** Bytes de un registro sin contar el item: posici&oacute;n, longitud y CRC. */
+	private static final int TAMANYO_FIJO_REGISTRO = 12;
+
+	/** Capacidad inicial de cada b&uacute;fer de registros. */
+	private static final int CAPACIDAD_INICIAL_BUFER = 64 * 1024;
+
+	/** Registros que se aplican juntos al recuperar. */
+	private static final int TAMANYO_LOTE_RECUPERACION = 4096;
+
+	/** Directorio del diario. */
+	private final Path directorio;
+
+	/** Protege el b&uacute;fer de registros y la secuencia. */
+	private final Object cerrojoBufer = new Object();
+
+	/** Serializa las escrituras en el segmento y los cambios de segmento. */
+	private final Object cerrojoEscritura = new Object();
+
+	/** Registros a&uacute;n no escritos en el segmento. */
+	private ByteBuffer bufer = ByteBuffer.allocate(CAPACIDAD_INICIAL_BUFER);
+
+	/** B&uacute;fer que se intercambia con el anterior en cada escritura. */
+	private ByteBuffer buferReserva = ByteBuffer.allocate(CAPACIDAD_INICIAL_BUFER);
+
+	/** Secuencia del &uacute;ltimo registro codificado. */
+	private long ultimaSecuencia;
+
+	/** Secuencia del &uacute;ltimo registro escrito en el segmento. */
+	private volatile long secuenciaEscrita;
+
+	/** Secuencia del &uacute;ltimo registro forzado a disco. */
+	private volatile long secuenciaDurable;
+
+	/** Primer fallo de escritura; a partir de &eacute;l el diario no admite m&aacute;s sincronizaciones. */
+	private IOException fallo;
+
+	/** Segmento en curso. */
+	private FileChannel canal;
+
+	/** N&uacute;mero del segmento en curso. */
+	private long numeroSegmento;
+
+	/** Registros reproducidos al abrir el diario. */
+	private final long registrosRecuperados;
+
+	/** Registros anotados desde la apertura. */
+	private final LongAdder registros = new LongAdder();
+
+	/** Veces que se ha forzado el segmento a disco. */
+	private final LongAdder sincronizaciones = new LongAdder();
+
+	/**
+	 * Constructor de la clase.<br>
+	 * Recupera en el destino el &uacute;ltimo punto de control y los
+	 * segmentos posteriores, y abre un segmento nuevo.
+	 * @param directorio Directorio del diario; se crea si no existe.
+	 * @param destino DAO donde se reproduce lo recuperado.
+	 * @throws IOException Si no se puede leer el diario o abrir el segmento.
+	 */
+	DiarioEscrituras(Path directorio, ItemDao destino) throws IOException {
+		this.directorio = Files.createDirectories(directorio);
+		this.registrosRecuperados = recuperar(destino);
+	}
+
+	/**
+	 * M&eacute;todo anyadir.<br>
+	 * @param item El nuevo valor del item.
+	 * @param posicion La posici&oacute;n del item.
+	 * @return Secuencia del registro.
+	 */
+	long anyadir(String item, int posicion) {
+		byte[] bytes = codificar(item);
+		synchronized (cerrojoBufer) {
+			escribirRegistro(posicion, bytes);
+			return ++ultimaSecuencia;
+		}
+	}
+
+	/**
+	 * M&eacute;todo anyadir.<br>
+	 * Los registros quedan contiguos en el diario.
+	 * @param items Nuevos valores indexados por posici&oacute;n.
+	 * @return Secuencia del &uacute;ltimo registro.
+	 */
+	long anyadir(Map<Integer, String> items) {
+		synchronized (cerrojoBufer) {
+			for (Map.Entry<Integer, String> item : items.entrySet()) {
+				escribirRegistro(item.getKey(), codificar(item.getValue()));
+			}
+			ultimaSecuencia += items.size();
+			return ultimaSecuencia;
+		}
+	}
+
+	/**
+	 * M&eacute;todo anyadir.<br>
+	 * Los registros quedan contiguos en el diario.
+	 * @param posiciones Las posiciones.
+	 * @param item El nuevo valor de todas ellas.
+	 * @return Secuencia del &uacute;ltimo registro.
+	 */
+	long anyadir(int[] posiciones, String item) {
+		byte[] bytes = codificar(item);
+		synchronized (cerrojoBufer) {
+			for (int posicion : posiciones) {
+				escribirRegistro(posicion, bytes);
+			}
+			ultimaSecuencia += posiciones.length;
+			return ultimaSecuencia;
+		}
+	}
+
+	/**
+	 * M&eacute;todo getBytesPendientes.<br>
+	 * @return Bytes codificados a&uacute;n no escritos en el segmento.
+	 */
+	int getBytesPendientes() {
+		synchronized (cerrojoBufer) {
+			return bufer.position();
+		}
+	}
+
+	/**
+	 * M&eacute;todo sincronizar.<br>
+	 * Escribe en el segmento todo lo pendiente, incluidos los registros de
+	 * otros hilos, salvo que otro hilo ya lo haya hecho.
+	 * @param secuencia Secuencia que debe quedar escrita.
+	 * @param forzar Si adem&aacute;s debe quedar en disco.
+	 * @throws UncheckedIOException Si falla la escritura.
+	 */
+	void sincronizar(long secuencia, boolean forzar) {
+		synchronized (cerrojoEscritura) {
+			if (fallo != null) {
+				throw new UncheckedIOException("El diario ha fallado", fallo);
+			}
+			if ((forzar ? secuenciaDurable : secuenciaEscrita) >= secuencia) {
+				return;
+			}
+			try {
+				escribirPendientes(forzar);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	/**
+	 * M&eacute;todo sincronizar.<br>
+	 * Fuerza a disco todos los registros anotados hasta ahora.
+	 * @throws UncheckedIOException Si falla la escritura.
+	 */
+	void sincronizar() {
+		long secuencia;
+		synchronized (cerrojoBufer) {
+			secuencia = ultimaSecuencia;
+		}
+		sincronizar(secuencia, true);
+	}
+
+	/**
+	 * M&eacute;todo rotar.<br>
+	 * Fuerza a disco el segmento en curso y abre el siguiente. No debe haber
+	 * escrituras en curso.
+	 * @return N&uacute;mero del nuevo segmento.
+	 * @throws UncheckedIOException Si falla la escritura o la apertura.
+	 */
+	long rotar() {
+		synchronized (cerrojoEscritura) {
+			if (fallo != null) {
+				throw new UncheckedIOException("El diario ha fallado", fallo);
+			}
+			try {
+				escribirPendientes(true);
+				canal.close();
+				abrirSegmento(numeroSegmento + 1);
+				return numeroSegmento;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	/**
+	 * M&eacute;todo escribirPuntoDeControl.<br>
+	 * Guarda la instant&aacute;nea como punto de control del segmento y
+	 * borra los segmentos y puntos de control anteriores. El fichero se
+	 * escribe aparte y se renombra al terminar, de modo que un punto de
+	 * control visible est&aacute; siempre completo.
+	 * @param segmento Primer segmento cuyas escrituras pueden no estar en la instant&aacute;nea.
+	 * @param instantanea Instant&aacute;nea que incluye todas las escrituras de los segmentos anteriores.
+	 * @throws UncheckedIOException Si falla la escritura.
+	 */
+	void escribirPuntoDeControl(long segmento, InstantaneaItems instantanea) {
+		Path definitivo = directorio.resolve(nombre(PREFIJO_CONTROL, segmento, EXTENSION_CONTROL));
+		Path temporal = directorio.resolve(definitivo.getFileName() + EXTENSION_TEMPORAL);
+		try {
+			try (FileChannel salida = FileChannel.open(temporal, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+				ByteBuffer bloque = ByteBuffer.allocate(CAPACIDAD_INICIAL_BUFER);
+				for (int posicion = 0; posicion < instantanea.getTamanyo(); posicion++) {
+					String item = instantanea.obtenerItem(posicion);
+					if (item == null) {
+						continue;
+					}
+					byte[] bytes = codificar(item);
+					if (bloque.remaining() < TAMANYO_FIJO_REGISTRO + bytes.length) {
+						escribirCompleto(salida, bloque);
+						if (bloque.capacity() < TAMANYO_FIJO_REGISTRO + bytes.length) {
+							bloque = ByteBuffer.allocate(TAMANYO_FIJO_REGISTRO + bytes.length);
+						}
+					}
+					ponerRegistro(bloque, posicion, bytes);
+				}
+				escribirCompleto(salida, bloque);
+				salida.force(true);
+			}
+			Files.move(temporal, definitivo, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			for (long anterior : numeros(PREFIJO_CONTROL, EXTENSION_CONTROL).headSet(segmento)) {
+				Files.deleteIfExists(directorio.resolve(nombre(PREFIJO_CONTROL, anterior, EXTENSION_CONTROL)));
+			}
+			for (long anterior : numeros(PREFIJO_SEGMENTO, EXTENSION_SEGMENTO).headSet(segmento)) {
+				Files.deleteIfExists(directorio.resolve(nombre(PREFIJO_SEGMENTO, anterior, EXTENSION_SEGMENTO)));
+			}
+			forzarDirectorio();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito close.<br>
+	 * Fuerza a disco lo pendiente y cierra el segmento.
+	 * @throws IOException Si falla la escritura o el cierre.
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (cerrojoEscritura) {
+			if (canal.isOpen()) {
+				escribirPendientes(true);
+				canal.close();
+			}
+		}
+	}
+
+	/**
+	 * M&eacute;todo getRegistrosRecuperados.<br>
+	 * @return Registros reproducidos al abrir el diario, incluidos los del punto de control.
+	 */
+	long getRegistrosRecuperados() {
+		return registrosRecuperados;
+	}
+
+	/**
+	 * M&eacute;todo getRegistros.<br>
+	 * @return Registros anotados desde la apertura.
+	 */
+	long getRegistros() {
+		return registros.sum();
+	}
+
+	/**
+	 * M&eacute;todo getSincronizaciones.<br>
+	 * @return Veces que se ha forzado el segmento a disco.
+	 */
+	long getSincronizaciones() {
+		return sincronizaciones.sum();
+	}
+
+	/**
+	 * M&eacute;todo escribirPendientes.<br>
+	 * Intercambia los b&uacute;feres y escribe el lleno en el segmento. Debe
+	 * invocarse con cerrojoEscritura tomado. Un fallo deja el diario
+	 * inutilizable, porque los registros del b&uacute;fer ya no se pueden
+	 * escribir en orden.
+	 * @param forzar Si adem&aacute;s se fuerza el segmento a disco.
+	 * @throws IOException Si falla la escritura.
+	 */
+	private void escribirPendientes(boolean forzar) throws IOException {
+		ByteBuffer lleno;
+		long hasta;
+		synchronized (cerrojoBufer) {
+			lleno = bufer;
+			bufer = buferReserva;
+			hasta = ultimaSecuencia;
+		}
+		try {
+			escribirCompleto(canal, lleno);
+			secuenciaEscrita = hasta;
+			if (forzar && secuenciaDurable < hasta) {
+				canal.force(false);
+				sincronizaciones.increment();
+				secuenciaDurable = hasta;
+			}
+		} catch (IOException e) {
+			fallo = e;
+			throw e;
+		} finally {
+			synchronized (cerrojoBufer) {
+				buferReserva = lleno;
+			}
+		}
+	}
+
+	/**
+	 * M&eacute;todo escribirRegistro.<br>
+	 * Codifica un registro en el b&uacute;fer, haci&eacute;ndolo crecer si
+	 * hace falta. Debe invocarse con cerrojoBufer tomado.
+	 * @param posicion La posici&oacute;n del item.
+	 * @param bytes Los bytes del item, o nulo.
+	 */
+	private void escribirRegistro(int posicion, byte[] bytes) {
+		int necesario = TAMANYO_FIJO_REGISTRO + (bytes == null ? 0 : bytes.length);
+		if (bufer.remaining() < necesario) {
+			ByteBuffer mayor = ByteBuffer.allocate(Math.max(bufer.capacity() * 2, bufer.position() + necesario));
+			bufer.flip();
+			mayor.put(bufer);
+			bufer = mayor;
+		}
+		ponerRegistro(bufer, posicion, bytes);
+		registros.increment();
+	}
+
+	/**
+	 * M&eacute;todo recuperar.<br>
+	 * @param destino DAO donde se reproduce lo recuperado.
+	 * @return Registros reproducidos.
+	 * @throws IOException Si no se puede leer el diario o abrir el segmento.
+	 */
+	private long recuperar(ItemDao destino) throws IOException {
+		try (DirectoryStream<Path> temporales = Files.newDirectoryStream(directorio, "*" + EXTENSION_TEMPORAL)) {
+			for (Path temporal : temporales) {
+				Files.delete(temporal);
+			}
+		}
+		TreeSet<Long> controles = numeros(PREFIJO_CONTROL, EXTENSION_CONTROL);
+		TreeSet<Long> segmentos = numeros(PREFIJO_SEGMENTO, EXTENSION_SEGMENTO);
+		long control = controles.isEmpty() ? 0 : controles.last();
+		long recuperados = 0;
+		if (!controles.isEmpty()) {
+			recuperados += reproducir(directorio.resolve(nombre(PREFIJO_CONTROL, control, EXTENSION_CONTROL)), destino, false);
+		}
+		for (long segmento : segmentos.tailSet(control)) {
+			// Solo el ultimo segmento puede tener la cola a medio escribir
+			recuperados += reproducir(directorio.resolve(nombre(PREFIJO_SEGMENTO, segmento, EXTENSION_SEGMENTO)), destino,
+					segmento == segmentos.last());
+		}
+		long siguiente = Math.max(control, segmentos.isEmpty() ? 0 : segmentos.last() + 1);
+		abrirSegmento(siguiente);
+		return recuperados;
+	}
+
+	/**
+	 * M&eacute;todo reproducir.<br>
+	 * Aplica los registros de un fichero al destino en lotes. Si un lote
+	 * falla se aplica registro a registro y se omiten los que el destino
+	 * rechaza, que tampoco se aplicaron en su momento.
+	 * @param fichero El fichero.
+	 * @param destino DAO destino.
+	 * @param truncarCola Si se admite un &uacute;ltimo registro incompleto o
+	 * da&ntilde;ado, que se elimina del fichero. S&oacute;lo el &uacute;ltimo
+	 * segmento puede quedar as&iacute; tras una ca&iacute;da.
+	 * @return Registros le&iacute;dos.
+	 * @throws IOException Si no se puede leer o el fichero est&aacute; da&ntilde;ado.
+	 */
+	private static long reproducir(Path fichero, ItemDao destino, boolean truncarCola) throws IOException {
+		long leidos = 0;
+		long validos = 0;
+		long tamanyoFichero = Files.size(fichero);
+		Map<Integer, String> lote = new LinkedHashMap<Integer, String>();
+		CRC32 crc = new CRC32();
+		try (InputStream entrada = Files.newInputStream(fichero);
+				DataInputStream datos = new DataInputStream(new BufferedInputStream(entrada, CAPACIDAD_INICIAL_BUFER))) {
+			while (true) {
+				int posicion;
+				try {
+					posicion = datos.readInt();
+				} catch (EOFException e) {
+					break;
+				}
+				String item;
+				int longitud;
+				try {
+					longitud = datos.readInt();
+					if (longitud < 0 || longitud - 1L > tamanyoFichero - validos - TAMANYO_FIJO_REGISTRO) {
+						break;
+					}
+					byte[] bytes = longitud == 0 ? null : new byte[longitud - 1];
+					if (bytes != null) {
+						datos.readFully(bytes);
+					}
+					crc.reset();
+					crc.update(ByteBuffer.allocate(8).putInt(posicion).putInt(longitud).array());
+					if (bytes != null) {
+						crc.update(bytes);
+					}
+					if ((int) crc.getValue() != datos.readInt()) {
+						break;
+					}
+					item = bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+				} catch (EOFException e) {
+					break;
+				}
+				lote.put(posicion, item);
+				validos += TAMANYO_FIJO_REGISTRO + Math.max(0, longitud - 1);
+				leidos++;
+				if (lote.size() >= TAMANYO_LOTE_RECUPERACION) {
+					aplicar(lote, destino);
+					lote = new LinkedHashMap<Integer, String>();
+				}
+			}
+		}
+		aplicar(lote, destino);
+		if (validos < tamanyoFichero) {
+			if (!truncarCola) {
+				throw new IOException("Fichero del diario danyado: " + fichero);
+			}
+			try (FileChannel canal = FileChannel.open(fichero, StandardOpenOption.WRITE)) {
+				canal.truncate(validos);
+				canal.force(true);
+			}
+		}
+		return leidos;
+	}
+
+	/**
+	 * M&eacute;todo aplicar.<br>
+	 * @param lote Escrituras recuperadas.
+	 * @param destino DAO destino.
+	 */
+	private static void aplicar(Map<Integer, String> lote, ItemDao destino) {
+		if (lote.isEmpty()) {
+			return;
+		}
+		try {
+			destino.actualizarItems(lote);
+		} catch (RuntimeException e) {
+			for (Map.Entry<Integer, String> item : lote.entrySet()) {
+				try {
+					destino.actualizarItem(item.getValue(), item.getKey());
+				} catch (RuntimeException rechazo) {
+					// Aceptada en vivo pero rechazada por este DAO: se descarta
+				}
+			}
+		}
+	}
+
+	/**
+	 * M&eacute;todo abrirSegmento.<br>
+	 * Abre el segmento para a&ntilde;adir registros. Si es nuevo se fuerza el
+	 * directorio, para que no se pierda con los registros ya confirmados.
+	 * @param numero N&uacute;mero del segmento.
+	 * @throws IOException Si no se puede abrir.
+	 */
+	private void abrirSegmento(long numero) throws IOException {
+		Path fichero = directorio.resolve(nombre(PREFIJO_SEGMENTO, numero, EXTENSION_SEGMENTO));
+		boolean nuevo = Files.notExists(fichero);
+		canal = FileChannel.open(fichero, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		numeroSegmento = numero;
+		if (nuevo) {
+			forzarDirectorio();
+		}
+	}
+
+	/**
+	 * M&eacute;todo forzarDirectorio.<br>
+	 * Fuerza a disco las entradas del directorio creadas, renombradas o
+	 * borradas.
+	 * @throws IOException Si falla el forzado.
+	 */
+	private void forzarDirectorio() throws IOException {
+		FileChannel canalDirectorio;
+		try {
+			canalDirectorio = FileChannel.open(directorio, StandardOpenOption.READ);
+		} catch (IOException e) {
+			// Hay plataformas que no permiten abrir un directorio
+			return;
+		}
+		try {
+			canalDirectorio.force(true);
+		} finally {
+			canalDirectorio.close();
+		}
+	}
+
+	/**
+	 * M&eacute;todo numeros.<br>
+	 * @param prefijo Prefijo de los ficheros.
+	 * @param extension Extensi&oacute;n de los ficheros.
+	 * @return N&uacute;meros de los ficheros del directorio con ese prefijo y extensi&oacute;n.
+	 * @throws IOException Si no se puede leer el directorio.
+	 */
+	private TreeSet<Long> numeros(String prefijo, String extension) throws IOException {
+		TreeSet<Long> numeros = new TreeSet<Long>();
+		try (DirectoryStream<Path> ficheros = Files.newDirectoryStream(directorio, prefijo + "*" + extension)) {
+			for (Path fichero : ficheros) {
+				String nombre = fichero.getFileName().toString();
+				try {
+					numeros.add(Long.valueOf(nombre.substring(prefijo.length(), nombre.length() - extension.length())));
+				} catch (NumberFormatException e) {
+					// No es un fichero del diario
+				}
+			}
+		}
+		return numeros;
+	}
+
+	/**
+	 * M&eacute;todo nombre.<br>
+	 * @param prefijo Prefijo del fichero.
+	 * @param numero N&uacute;mero del fichero.
+	 * @param extension Extensi&oacute;n del fichero.
+	 * @return Nombre del fichero, con el n&uacute;mero relleno para ordenarse alfab&eacute;ticamente.
+	 */
+	private static String nombre(String prefijo, long numero, String extension) {
+		return String.format("%s%016d%s", prefijo, numero, extension);
+	}
+
+	/**
+	 * M&eacute;todo ponerRegistro.<br>
+	 * @param destino B&uacute;fer con sitio para el registro.
+	 * @param posicion La posici&oacute;n del item.
+	 * @param bytes Los bytes del item, o nulo.
+	 */
+	private static void ponerRegistro(ByteBuffer destino, int posicion, byte[] bytes) {
+		int inicio = destino.position();
+		destino.putInt(posicion).putInt(bytes == null ? 0 : bytes.length + 1);
+		if (bytes != null) {
+			destino.put(bytes);
+		}
+		CRC32 crc = new CRC32();
+		crc.update(destino.array(), destino.arrayOffset() + inicio, destino.position() - inicio);
+		destino.putInt((int) crc.getValue());
+	}
+
+	/**
+	 * M&eacute;todo escribirCompleto.<br>
+	 * Escribe el contenido del b&uacute;fer y lo deja vac&iacute;o.
+	 * @param canal Canal destino.
+	 * @param bufer B&uacute;fer en modo escritura.
+	 * @throws IOException Si falla la escritura.
+	 */
+	private static void escribirCompleto(FileChannel canal, ByteBuffer bufer) throws IOException {
+		bufer.flip();
+		try {
+			while (bufer.hasRemaining()) {
+				canal.write(bufer);
+			}
+		} finally {
+			bufer.clear();
+		}
+	}
+
+	/**
+	 * M&eacute;todo codificar.<br>
+	 * @param item El item.
+	 * @return Sus bytes UTF-8, o nulo si es nulo.
+	 */
+	private static byte[] codificar(String item) {
+		return item == null ? null : item.getBytes(StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,108 @@
+package com.insags.mockito.tutorial.impl;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Clase EjecutoresPorDefecto.<br>
+ * Ejecutores compartidos que usa el controlador cuando no se le configuran
+ * otros. Se crean al usarse por primera vez y sus hilos son demonio para no
+ * impedir que la JVM termine.<br>
+ * @author INSA
+ */
+final class EjecutoresPorDefecto {
+
+	/**
+	 * Constructor de la clase.<br>
+	 */
+	private EjecutoresPorDefecto() {
+	}
+
+	/**
+	 * M&eacute;todo asincrono.<br>
+	 * @return Un hilo virtual por tarea si la JVM los ofrece; si no, hilos demonio reutilizables.
+	 */
+	static ExecutorService asincrono() {
+		return Asincrono.EJECUTOR;
+	}
+
+	/**
+	 * M&eacute;todo planificador.<br>
+	 * @return Planificador de un solo hilo demonio para tiempos m&aacute;ximos.
+	 */
+	static ScheduledExecutorService planificador() {
+		return Planificador.EJECUTOR;
+	}
+
+	/**
+	 * M&eacute;todo fabricaDemonios.<br>
+	 * @param prefijo Prefijo del nombre de los hilos.
+	 * @return F&aacute;brica de hilos demonio numerados.
+	 */
+	static ThreadFactory fabricaDemonios(final String prefijo) {
+		final AtomicInteger contador = new AtomicInteger();
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable tarea) {
+				Thread hilo = new Thread(tarea, prefijo + "-" + contador.incrementAndGet());
+				hilo.setDaemon(true);
+				return hilo;
+			}
+		};
+	}
+
+	/**
+	 * Clase Asincrono.<br>
+	 * Contenedor del ejecutor as&iacute;ncrono, creado al usarse.<br>
+	 */
+	private static final class Asincrono {
+
+		/** Ejecutor as&iacute;ncrono. */
+		private static final ExecutorService EJECUTOR = crear();
+
+		/**
+		 * M&eacute;todo crear.<br>
+		 * Busca por reflexi&oacute;n los hilos virtuales (Java 21), ya que el
+		 * c&oacute;digo se compila para versiones anteriores.
+		 * @return El ejecutor.
+		 */
+		private static ExecutorService crear() {
+			try {
+				return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			} catch (ReflectiveOperationException e) {
+				return Executors.newCachedThreadPool(fabricaDemonios("item-async"));
+			}
+		}
+
+	}
+
+	/**
+	 * Clase Planificador.<br>
+	 * Contenedor del planificador, creado al usarse.<br>
+	 */
+	private static final class Planificador {
+
+		/** Planificador. */
+		private static final ScheduledExecutorService EJECUTOR = crear();
+
+		/**
+		 * M&eacute;todo crear.<br>
+		 * Las tareas canceladas se quitan de la cola al momento; si no, cada
+		 * llamada as&iacute;ncrona terminada antes de su tiempo m&aacute;ximo
+		 * dejar&iacute;a su vigilancia en la cola hasta que venciera.
+		 * @return El planificador.
+		 */
+		private static ScheduledExecutorService crear() {
+			ScheduledThreadPoolExecutor planificador =
+					new ScheduledThreadPoolExecutor(1, fabricaDemonios("item-planificador"));
+			planificador.setRemoveOnCancelPolicy(true);
+			return planificador;
+		}
+
+	}
+
+}
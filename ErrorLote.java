@@ -0,0 +1,67 @@
+package com.insags.mockito.tutorial;
+
+import java.util.Arrays;
+
+/**
+ * Clase ErrorLote.<br>
+ * Describe un lote de escrituras que el DAO no pudo aplicar.<br>
+ * @author INSA
+ */
+public class ErrorLote {
+
+	/** N&uacute;mero de orden del lote, empezando en cero. */
+	private final int numeroLote;
+
+	/** Posiciones que conten&iacute;a el lote. */
+	private final int[] posiciones;
+
+	/** Excepci&oacute;n lanzada por el DAO. */
+	private final RuntimeException causa;
+
+	/**
+	 * Constructor de la clase.<br>
+	 * @param numeroLote N&uacute;mero de orden del lote.
+	 * @param posiciones Posiciones que conten&iacute;a el lote.
+	 * @param causa Excepci&oacute;n lanzada por el DAO.
+	 */
+	public ErrorLote(int numeroLote, int[] posiciones, RuntimeException causa) {
+		this.numeroLote = numeroLote;
+		this.posiciones = posiciones;
+		this.causa = causa;
+	}
+
+	/**
+	 * M&eacute;todo getNumeroLote.<br>
+	 * @return El n&uacute;mero de orden del lote.
+	 */
+	public int getNumeroLote() {
+		return numeroLote;
+	}
+
+	/**
+	 * M&eacute;todo getPosiciones.<br>
+	 * @return Copia de las posiciones que conten&iacute;a el lote.
+	 */
+	public int[] getPosiciones() {
+		return posiciones.clone();
+	}
+
+	/**
+	 * M&eacute;todo getCausa.<br>
+	 * @return La excepci&oacute;n lanzada por el DAO.
+	 */
+	public RuntimeException getCausa() {
+		return causa;
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito toString.<br>
+	 * @return Valor de retorno.
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "Lote " + numeroLote + " " + Arrays.toString(posiciones) + ": " + causa;
+	}
+
+}
@@ -0,0 +1,150 @@
+package com.insags.mockito.tutorial.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.insags.mockito.tutorial.ActualizacionPorLotesException;
+import com.insags.mockito.tutorial.ErrorLote;
+import com.insags.mockito.tutorial.ItemDao;
+
+/**
+ * Clase EscritorPorLotes.<br>
+ * Agrupa escrituras sueltas en lotes de tama&ntilde;o fijo y env&iacute;a
+ * cada lote al DAO en una sola llamada. Un lote fallido no detiene los
+ * siguientes; los fallos se informan todos juntos al terminar.<br>
+ * @author INSA
+ */
+class EscritorPorLotes {
+
+	/** DAO destino. */
+	private final ItemDao itemDao;
+
+	/** N&uacute;mero m&aacute;ximo de escrituras por lote. */
+	private final int tamanyoLote;
+
+	/** Lotes fallidos. */
+	private final List<ErrorLote> errores = new ArrayList<ErrorLote>();
+
+	/** Lote en construcci&oacute;n. */
+	private Map<Integer, String> lote;
+
+	/** N&uacute;mero del lote en construcci&oacute;n. */
+	private int numeroLote;
+
+	/**
+	 * Constructor de la clase.<br>
+	 * @param itemDao DAO destino.
+	 * @param tamanyoLote N&uacute;mero m&aacute;ximo de escrituras por lote.
+	 */
+	EscritorPorLotes(ItemDao itemDao, int tamanyoLote) {
+		this.itemDao = itemDao;
+		this.tamanyoLote = tamanyoLote;
+	}
+
+	/**
+	 * M&eacute;todo anyadir.<br>
+	 * A&ntilde;ade una escritura y env&iacute;a el lote si se ha llenado.
+	 * @param posicion La posici&oacute;n del item.
+	 * @param item El nuevo valor del item.
+	 */
+	void anyadir(int posicion, String item) {
+		if (lote == null) {
+			lote = new LinkedHashMap<Integer, String>();
+		}
+		lote.put(posicion, item);
+		if (lote.size() >= tamanyoLote) {
+			enviarLote();
+		}
+	}
+
+	/**
+	 * M&eacute;todo rellenar.<br>
+	 * Env&iacute;a el mismo valor a varias posiciones, en lotes propios, sin
+	 * crear posiciones en cajas.
+	 * @param posiciones Las posiciones; no se modifican.
+	 * @param item El nuevo valor de todas ellas.
+	 */
+	void rellenar(int[] posiciones, String item) {
+		if (lote != null) {
+			enviarLote();
+		}
+		for (long desde = 0; desde < posiciones.length; desde += tamanyoLote) {
+			enviarRelleno(Arrays.copyOfRange(posiciones, (int) desde, (int) Math.min(desde + tamanyoLote, posiciones.length)), item);
+		}
+	}
+
+	/**
+	 * M&eacute;todo rellenarRango.<br>
+	 * Env&iacute;a el mismo valor a un rango de posiciones; s&oacute;lo se
+	 * materializan las posiciones del lote en curso. El inicio de cada lote
+	 * se lleva en un long para que el rango pueda llegar a Integer.MAX_VALUE.
+	 * @param desde Primera posici&oacute;n, incluida.
+	 * @param hasta &Uacute;ltima posici&oacute;n, excluida.
+	 * @param item El nuevo valor de todas ellas.
+	 */
+	void rellenarRango(int desde, int hasta, String item) {
+		if (lote != null) {
+			enviarLote();
+		}
+		for (long inicio = desde; inicio < hasta; inicio += tamanyoLote) {
+			int[] posiciones = new int[(int) Math.min(tamanyoLote, hasta - inicio)];
+			for (int i = 0; i < posiciones.length; i++) {
+				posiciones[i] = (int) inicio + i;
+			}
+			enviarRelleno(posiciones, item);
+		}
+	}
+
+	/**
+	 * M&eacute;todo terminar.<br>
+	 * Env&iacute;a el &uacute;ltimo lote pendiente.
+	 * @throws ActualizacionPorLotesException Si alg&uacute;n lote ha fallado.
+	 */
+	void terminar() {
+		if (lote != null) {
+			enviarLote();
+		}
+		if (!errores.isEmpty()) {
+			throw new ActualizacionPorLotesException(errores);
+		}
+	}
+
+	/**
+	 * M&eacute;todo enviarLote.<br>
+	 * Env&iacute;a el lote en construcci&oacute;n y anota su fallo, si lo hay.
+	 */
+	private void enviarLote() {
+		Map<Integer, String> enviado = lote;
+		lote = null;
+		try {
+			itemDao.actualizarItems(enviado);
+		} catch (RuntimeException e) {
+			int[] posiciones = new int[enviado.size()];
+			int i = 0;
+			for (Integer posicion : enviado.keySet()) {
+				posiciones[i++] = posicion;
+			}
+			errores.add(new ErrorLote(numeroLote, posiciones, e));
+		}
+		numeroLote++;
+	}
+
+	/**
+	 * M&eacute;todo enviarRelleno.<br>
+	 * Env&iacute;a un lote de rellenado y anota su fallo, si lo hay.
+	 * @param posiciones Posiciones del lote.
+	 * @param item El nuevo valor de todas ellas.
+	 */
+	private void enviarRelleno(int[] posiciones, String item) {
+		try {
+			itemDao.rellenarItems(posiciones, item);
+		} catch (RuntimeException e) {
+			errores.add(new ErrorLote(numeroLote, posiciones, e));
+		}
+		numeroLote++;
+	}
+
+}
@@ -0,0 +1,168 @@
+package com.insags.mockito.tutorial.impl;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Clase EventosJfr.<br>
+ * Eventos de Flight Recorder de las trazas, con nombre
+ * {@value #NOMBRE_EVENTO}. El c&oacute;digo se compila para versiones sin el
+ * m&oacute;dulo jdk.jfr, as&iacute; que el tipo de evento se crea por
+ * reflexi&oacute;n con EventFactory al usarse por primera vez; si la JVM no
+ * lo ofrece los eventos se descartan. Los campos son operaci&oacute;n, tramo
+ * (vac&iacute;o para la llamada completa), items y error. Cada evento
+ * empieza al abrirse la llamada o el tramo y se confirma al cerrarse, de
+ * modo que su duraci&oacute;n es la del propio evento.<br>
+ * @author INSA
+ */
+final class EventosJfr {
+
+	/** Nombre del tipo de evento. */
+	static final String NOMBRE_EVENTO = "com.insags.mockito.tutorial.TrazaItem";
+
+	/**
+	 * Constructor de la clase.<br>
+	 */
+	private EventosJfr() {
+	}
+
+	/**
+	 * M&eacute;todo empezar.<br>
+	 * @return Evento empezado, o nulo si Flight Recorder no est&aacute; disponible o el evento no est&aacute; habilitado.
+	 */
+	static Object empezar() {
+		Tipo tipo = Tipo.INSTANCIA;
+		if (tipo == null) {
+			return null;
+		}
+		try {
+			Object evento = tipo.nuevoEvento.invoke(tipo.fabrica);
+			if (!(Boolean) tipo.habilitado.invoke(evento)) {
+				return null;
+			}
+			tipo.empezar.invoke(evento);
+			return evento;
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * M&eacute;todo terminar.<br>
+	 * Termina y confirma el evento en el hilo que lo cierra.
+	 * @param evento Evento devuelto por empezar, o nulo.
+	 * @param operacion Operaci&oacute;n del controlador.
+	 * @param tramo M&eacute;todo del DAO, o vac&iacute;o para la llamada completa.
+	 * @param items N&uacute;mero de items.
+	 * @param error Si ha fallado.
+	 */
+	static void terminar(Object evento, String operacion, String tramo, long items, boolean error) {
+		if (evento == null) {
+			return;
+		}
+		Tipo tipo = Tipo.INSTANCIA;
+		try {
+			tipo.asignar.invoke(evento, 0, operacion);
+			tipo.asignar.invoke(evento, 1, tramo);
+			tipo.asignar.invoke(evento, 2, items);
+			tipo.asignar.invoke(evento, 3, error);
+			tipo.terminar.invoke(evento);
+			tipo.confirmar.invoke(evento);
+		} catch (ReflectiveOperationException e) {
+			return;
+		}
+	}
+
+	/**
+	 * Clase Tipo.<br>
+	 * Contenedor del tipo de evento, creado al usarse.<br>
+	 */
+	private static final class Tipo {
+
+		/** Tipo de evento, o nulo si la JVM no tiene Flight Recorder. */
+		private static final Tipo INSTANCIA = crear();
+
+		/** F&aacute;brica de eventos. */
+		private final Object fabrica;
+
+		/** EventFactory.newEvent(). */
+		private final Method nuevoEvento;
+
+		/** Event.isEnabled(). */
+		private final Method habilitado;
+
+		/** Event.set(int, Object). */
+		private final Method asignar;
+
+		/** Event.begin(). */
+		private final Method empezar;
+
+		/** Event.end(). */
+		private final Method terminar;
+
+		/** Event.commit(). */
+		private final Method confirmar;
+
+		/**
+		 * Constructor de la clase.<br>
+		 * @param fabrica F&aacute;brica de eventos.
+		 * @param nuevoEvento EventFactory.newEvent().
+		 * @param clase Clase jdk.jfr.Event.
+		 * @throws NoSuchMethodException Si falta alg&uacute;n m&eacute;todo.
+		 */
+		private Tipo(Object fabrica, Method nuevoEvento, Class<?> clase) throws NoSuchMethodException {
+			this.fabrica = fabrica;
+			this.nuevoEvento = nuevoEvento;
+			this.habilitado = clase.getMethod("isEnabled");
+			this.asignar = clase.getMethod("set", int.class, Object.class);
+			this.empezar = clase.getMethod("begin");
+			this.terminar = clase.getMethod("end");
+			this.confirmar = clase.getMethod("commit");
+		}
+
+		/**
+		 * M&eacute;todo crear.<br>
+		 * @return El tipo de evento, o nulo si no se puede crear.
+		 */
+		private static Tipo crear() {
+			try {
+				Constructor<?> anotacion = Class.forName("jdk.jfr.AnnotationElement").getConstructor(Class.class, Object.class);
+				Constructor<?> campo = Class.forName("jdk.jfr.ValueDescriptor").getConstructor(Class.class, String.class, List.class);
+				List<Object> anotaciones = Arrays.<Object>asList(
+						anotacion.newInstance(anotacion("jdk.jfr.Name"), NOMBRE_EVENTO),
+						anotacion.newInstance(anotacion("jdk.jfr.Label"), "Traza de item"),
+						anotacion.newInstance(anotacion("jdk.jfr.Category"), new String[] { "INSA", "Items" }));
+				List<Object> campos = Arrays.<Object>asList(
+						campo.newInstance(String.class, "operacion", Collections.emptyList()),
+						campo.newInstance(String.class, "tramo", Collections.emptyList()),
+						campo.newInstance(long.class, "items", Collections.emptyList()),
+						campo.newInstance(boolean.class, "error", Collections.emptyList()));
+				Class<?> claseFabrica = Class.forName("jdk.jfr.EventFactory");
+				Object fabrica = claseFabrica.getMethod("create", List.class, List.class).invoke(null, anotaciones, campos);
+				return new Tipo(fabrica, claseFabrica.getMethod("newEvent"), Class.forName("jdk.jfr.Event"));
+			} catch (ReflectiveOperationException e) {
+				return null;
+			} catch (RuntimeException e) {
+				return null;
+			} catch (LinkageError e) {
+				return null;
+			}
+		}
+
+		/**
+		 * M&eacute;todo anotacion.<br>
+		 * @param nombre Nombre de la clase de la anotaci&oacute;n.
+		 * @return La clase.
+		 * @throws ClassNotFoundException Si no existe.
+		 */
+		private static Class<? extends Annotation> anotacion(String nombre) throws ClassNotFoundException {
+			return Class.forName(nombre).asSubclass(Annotation.class);
+		}
+
+	}
+
+}
@@ -0,0 +1,477 @@
+package com.insags.mockito.tutorial;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.ObjIntConsumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Clase FormatoInstantanea.<br>
+ * Formato binario versionado para copias del cat&aacute;logo:
+ * <ul>
+ * <li>Cabecera: marca, versi&oacute;n, indicadores, n&uacute;mero de
+ * posiciones e items por bloque.</li>
+ * <li>Bloques de items consecutivos: tama&ntilde;o almacenado, tama&ntilde;o
+ * sin comprimir y, para cada item, la longitud m&aacute;s uno en varint
+ * (cero para nulo) seguida de sus bytes UTF-8. Con compresi&oacute;n cada
+ * bloque se comprime por separado.</li>
+ * <li>&Iacute;ndice: desplazamiento de cada bloque, para leer una
+ * posici&oacute;n sin recorrer el fichero.</li>
+ * <li>Cola: desplazamiento del &iacute;ndice y la marca.</li>
+ * </ul>
+ * Todos los enteros van en orden de red.<br>
+ * @author INSA
+ */
+public final class FormatoInstantanea {
+
+	/** Marca del formato, "ITS1". */
+	public static final int MARCA = 0x49545331;
+
+	/** Versi&oacute;n del formato. */
+	public static final int VERSION = 1;
+
+	/** Indicador de bloques comprimidos con Deflate. */
+	private static final int COMPRIMIDO = 1;
+
+	/** Items por bloque. */
+	private static final int ITEMS_POR_BLOQUE = 1 << 16;
+
+	/** M&aacute;ximo de items por bloque que se acepta al leer. */
+	private static final int MAXIMO_ITEMS_POR_BLOQUE = 1 << 20;
+
+	/** M&aacute;xima relaci&oacute;n entre los bytes descomprimidos y los comprimidos con Deflate. */
+	private static final int MAXIMA_EXPANSION = 1032;
+
+	/** Bytes que se reservan de una vez al leer un bloque. */
+	private static final int TRAMO_LECTURA = 1 << 20;
+
+	/** Bytes de la cabecera. */
+	private static final int TAMANYO_CABECERA = 20;
+
+	/** Bytes de la cabecera de cada bloque. */
+	private static final int TAMANYO_CABECERA_BLOQUE = 8;
+
+	/** Bytes de la cola. */
+	private static final int TAMANYO_COLA = 12;
+
+	/**
+	 * Constructor de la clase.<br>
+	 * No instanciable.
+	 */
+	private FormatoInstantanea() {
+	}
+
+	/**
+	 * M&eacute;todo escribir.<br>
+	 * @param instantanea Instant&aacute;nea a escribir.
+	 * @param destino Canal destino; no se cierra.
+	 * @param comprimir Si se comprimen los bloques.
+	 * @throws IOException Si falla la escritura.
+	 */
+	public static void escribir(InstantaneaItems instantanea, WritableByteChannel destino, boolean comprimir)
+			throws IOException {
+		int tamanyo = instantanea.getTamanyo();
+		int numeroBloques = (int) (((long) tamanyo + ITEMS_POR_BLOQUE - 1) / ITEMS_POR_BLOQUE);
+		long[] indice = new long[numeroBloques];
+		ByteBuffer cabecera = ByteBuffer.allocate(TAMANYO_CABECERA);
+		cabecera.putInt(MARCA).putInt(VERSION).putInt(comprimir ? COMPRIMIDO : 0).putInt(tamanyo)
+				.putInt(ITEMS_POR_BLOQUE).flip();
+		long escritos = escribirCompleto(destino, cabecera);
+
+		Deflater compresor = comprimir ? new Deflater(Deflater.BEST_SPEED) : null;
+		ByteBuffer bloque = ByteBuffer.allocate(1 << 20);
+		byte[] comprimido = new byte[0];
+		try (CursorItems cursor = instantanea.abrirCursor(Math.min(ITEMS_POR_BLOQUE, Math.max(tamanyo, 1)))) {
+			for (int b = 0; b < numeroBloques; b++) {
+				int enBloque = Math.min(ITEMS_POR_BLOQUE, tamanyo - b * ITEMS_POR_BLOQUE);
+				bloque.clear();
+				for (int i = 0; i < enBloque; i++) {
+					String item = cursor.next();
+					byte[] bytes = item == null ? null : item.getBytes(StandardCharsets.UTF_8);
+					int necesario = 5 + (bytes == null ? 0 : bytes.length);
+					if (bloque.remaining() < necesario) {
+						ByteBuffer mayor = ByteBuffer.allocate(Math.max(bloque.capacity() * 2, bloque.position() + necesario));
+						bloque.flip();
+						bloque = mayor.put(bloque);
+					}
+					ponerVarint(bloque, bytes == null ? 0 : bytes.length + 1);
+					if (bytes != null) {
+						bloque.put(bytes);
+					}
+				}
+				bloque.flip();
+				int sinComprimir = bloque.remaining();
+				ByteBuffer contenido = bloque;
+				if (compresor != null) {
+					if (comprimido.length < sinComprimir + 64) {
+						comprimido = new byte[sinComprimir + sinComprimir / 8 + 64];
+					}
+					compresor.reset();
+					compresor.setInput(bloque.array(), 0, sinComprimir);
+					compresor.finish();
+					int longitud = 0;
+					while (!compresor.finished()) {
+						longitud += compresor.deflate(comprimido, longitud, comprimido.length - longitud);
+						if (longitud == comprimido.length && !compresor.finished()) {
+							comprimido = Arrays.copyOf(comprimido, comprimido.length * 2);
+						}
+					}
+					contenido = ByteBuffer.wrap(comprimido, 0, longitud);
+				}
+				ByteBuffer cabeceraBloque = ByteBuffer.allocate(TAMANYO_CABECERA_BLOQUE);
+				cabeceraBloque.putInt(contenido.remaining()).putInt(sinComprimir).flip();
+				indice[b] = escritos;
+				if (destino instanceof GatheringByteChannel) {
+					ByteBuffer[] partes = { cabeceraBloque, contenido };
+					long pendiente = cabeceraBloque.remaining() + contenido.remaining();
+					while (pendiente > 0) {
+						long n = ((GatheringByteChannel) destino).write(partes);
+						pendiente -= n;
+						escritos += n;
+					}
+				} else {
+					escritos += escribirCompleto(destino, cabeceraBloque);
+					escritos += escribirCompleto(destino, contenido);
+				}
+			}
+		} finally {
+			if (compresor != null) {
+				compresor.end();
+			}
+		}
+
+		ByteBuffer cola = ByteBuffer.allocate(4 + 8 * numeroBloques + TAMANYO_COLA);
+		cola.putInt(numeroBloques);
+		for (long desplazamiento : indice) {
+			cola.putLong(desplazamiento);
+		}
+		cola.putLong(escritos).putInt(MARCA).flip();
+		escribirCompleto(destino, cola);
+	}
+
+	/**
+	 * M&eacute;todo leer.<br>
+	 * Lee la instant&aacute;nea bloque a bloque, sin usar el &iacute;ndice.
+	 * @param origen Canal origen, situado al principio; no se cierra.
+	 * @param receptor Recibe cada bloque y su primera posici&oacute;n; el array se reutiliza tras la llamada.
+	 * @return N&uacute;mero de posiciones de la instant&aacute;nea.
+	 * @throws IOException Si falla la lectura o el formato no es v&aacute;lido.
+	 */
+	public static int leer(ReadableByteChannel origen, ObjIntConsumer<String[]> receptor) throws IOException {
+		ByteBuffer cabecera = leerCompleto(origen, ByteBuffer.allocate(TAMANYO_CABECERA));
+		if (cabecera.getInt() != MARCA || cabecera.getInt() != VERSION) {
+			throw new IOException("Formato de instantanea no reconocido");
+		}
+		boolean comprimido = (cabecera.getInt() & COMPRIMIDO) != 0;
+		int tamanyo = cabecera.getInt();
+		int itemsPorBloque = cabecera.getInt();
+		comprobarCabecera(tamanyo, itemsPorBloque);
+		Inflater descompresor = comprimido ? new Inflater() : null;
+		ByteBuffer cabeceraBloque = ByteBuffer.allocate(TAMANYO_CABECERA_BLOQUE);
+		byte[] almacenado = new byte[0];
+		byte[] contenido = new byte[0];
+		String[] items = new String[Math.min(itemsPorBloque, Math.max(tamanyo, 1))];
+		try {
+			for (long inicio = 0; inicio < tamanyo; inicio += itemsPorBloque) {
+				int desde = (int) inicio;
+				cabeceraBloque.clear();
+				leerCompleto(origen, cabeceraBloque);
+				int longitudAlmacenada = cabeceraBloque.getInt();
+				int longitudContenido = cabeceraBloque.getInt();
+				comprobarBloque(longitudAlmacenada, longitudContenido, comprimido);
+				almacenado = leerCompleto(origen, almacenado, longitudAlmacenada);
+				byte[] bytes = almacenado;
+				if (descompresor != null) {
+					if (contenido.length < longitudContenido) {
+						contenido = new byte[longitudContenido];
+					}
+					descomprimir(descompresor, almacenado, longitudAlmacenada, contenido, longitudContenido);
+					bytes = contenido;
+				}
+				int enBloque = Math.min(itemsPorBloque, tamanyo - desde);
+				if (enBloque != items.length) {
+					items = new String[enBloque];
+				}
+				decodificar(bytes, longitudContenido, items);
+				receptor.accept(items, desde);
+			}
+		} finally {
+			if (descompresor != null) {
+				descompresor.end();
+			}
+		}
+		return tamanyo;
+	}
+
+	/**
+	 * M&eacute;todo leerItem.<br>
+	 * Lee una sola posici&oacute;n usando el &iacute;ndice: s&oacute;lo
+	 * descodifica el bloque que la contiene.
+	 * @param canal Fichero con la instant&aacute;nea.
+	 * @param posicion La posici&oacute;n.
+	 * @return El item, que puede ser nulo.
+	 * @throws IOException Si falla la lectura o el formato no es v&aacute;lido.
+	 * @throws ArrayIndexOutOfBoundsException Si la posici&oacute;n no existe en la instant&aacute;nea.
+	 */
+	public static String leerItem(FileChannel canal, int posicion) throws IOException {
+		ByteBuffer cabecera = leerCompleto(canal, ByteBuffer.allocate(TAMANYO_CABECERA), 0);
+		if (cabecera.getInt() != MARCA || cabecera.getInt() != VERSION) {
+			throw new IOException("Formato de instantanea no reconocido");
+		}
+		boolean comprimido = (cabecera.getInt() & COMPRIMIDO) != 0;
+		int tamanyo = cabecera.getInt();
+		int itemsPorBloque = cabecera.getInt();
+		comprobarCabecera(tamanyo, itemsPorBloque);
+		if (posicion < 0 || posicion >= tamanyo) {
+			throw new ArrayIndexOutOfBoundsException(posicion);
+		}
+		long tamanyoFichero = canal.size();
+		ByteBuffer cola = leerCompleto(canal, ByteBuffer.allocate(TAMANYO_COLA), Math.max(0, tamanyoFichero - TAMANYO_COLA));
+		long desplazamientoIndice = cola.getLong();
+		if (cola.getInt() != MARCA) {
+			throw new IOException("Instantanea incompleta");
+		}
+		int bloque = posicion / itemsPorBloque;
+		if (desplazamientoIndice < TAMANYO_CABECERA || desplazamientoIndice > tamanyoFichero - TAMANYO_COLA) {
+			throw new IOException("Indice de instantanea no valido");
+		}
+		long desplazamientoBloque = leerCompleto(canal, ByteBuffer.allocate(8), desplazamientoIndice + 4 + 8L * bloque)
+				.getLong();
+		if (desplazamientoBloque < TAMANYO_CABECERA || desplazamientoBloque > desplazamientoIndice - TAMANYO_CABECERA_BLOQUE) {
+			throw new IOException("Indice de instantanea no valido");
+		}
+		ByteBuffer cabeceraBloque = leerCompleto(canal, ByteBuffer.allocate(TAMANYO_CABECERA_BLOQUE), desplazamientoBloque);
+		int longitudAlmacenada = cabeceraBloque.getInt();
+		int longitudContenido = cabeceraBloque.getInt();
+		comprobarBloque(longitudAlmacenada, longitudContenido, comprimido);
+		if (longitudAlmacenada > desplazamientoIndice - desplazamientoBloque - TAMANYO_CABECERA_BLOQUE) {
+			throw new IOException("Bloque de instantanea danyado");
+		}
+		byte[] bytes = new byte[longitudAlmacenada];
+		leerCompleto(canal, ByteBuffer.wrap(bytes), desplazamientoBloque + TAMANYO_CABECERA_BLOQUE);
+		if (comprimido) {
+			byte[] contenido = new byte[longitudContenido];
+			Inflater descompresor = new Inflater();
+			try {
+				descomprimir(descompresor, bytes, longitudAlmacenada, contenido, longitudContenido);
+			} finally {
+				descompresor.end();
+			}
+			bytes = contenido;
+		}
+		ByteBuffer lectura = ByteBuffer.wrap(bytes, 0, longitudContenido);
+		try {
+			for (int i = bloque * itemsPorBloque; i < posicion; i++) {
+				int longitud = leerVarint(lectura);
+				lectura.position(lectura.position() + Math.max(0, longitud - 1));
+			}
+			int longitud = leerVarint(lectura);
+			if (longitud - 1 > lectura.remaining()) {
+				throw new IOException("Bloque de instantanea danyado");
+			}
+			return longitud == 0 ? null : new String(bytes, lectura.position(), longitud - 1, StandardCharsets.UTF_8);
+		} catch (RuntimeException e) {
+			throw new IOException("Bloque de instantanea danyado", e);
+		}
+	}
+
+	/**
+	 * M&eacute;todo comprobarCabecera.<br>
+	 * @param tamanyo N&uacute;mero de posiciones le&iacute;do.
+	 * @param itemsPorBloque Items por bloque le&iacute;dos.
+	 * @throws IOException Si alguno est&aacute; fuera de rango.
+	 */
+	private static void comprobarCabecera(int tamanyo, int itemsPorBloque) throws IOException {
+		if (tamanyo < 0 || itemsPorBloque <= 0 || itemsPorBloque > MAXIMO_ITEMS_POR_BLOQUE) {
+			throw new IOException("Cabecera de instantanea no valida");
+		}
+	}
+
+	/**
+	 * M&eacute;todo comprobarBloque.<br>
+	 * @param longitudAlmacenada Bytes almacenados le&iacute;dos.
+	 * @param longitudContenido Bytes sin comprimir le&iacute;dos.
+	 * @param comprimido Si el bloque est&aacute; comprimido.
+	 * @throws IOException Si alguna longitud es negativa o no cuadra con la otra.
+	 */
+	private static void comprobarBloque(int longitudAlmacenada, int longitudContenido, boolean comprimido)
+			throws IOException {
+		long maximoContenido = comprimido ? (long) longitudAlmacenada * MAXIMA_EXPANSION : longitudAlmacenada;
+		if (longitudAlmacenada < 0 || longitudContenido < 0 || longitudContenido > maximoContenido) {
+			throw new IOException("Cabecera de bloque de instantanea no valida");
+		}
+	}
+
+	/**
+	 * M&eacute;todo decodificar.<br>
+	 * @param bytes Contenido del bloque.
+	 * @param longitud Bytes &uacute;tiles del contenido.
+	 * @param items Destino, que se rellena entero.
+	 * @throws IOException Si el bloque no tiene tantos items.
+	 */
+	private static void decodificar(byte[] bytes, int longitud, String[] items) throws IOException {
+		ByteBuffer lectura = ByteBuffer.wrap(bytes, 0, longitud);
+		try {
+			for (int i = 0; i < items.length; i++) {
+				int longitudItem = leerVarint(lectura);
+				if (longitudItem == 0) {
+					items[i] = null;
+				} else {
+					items[i] = new String(bytes, lectura.position(), longitudItem - 1, StandardCharsets.UTF_8);
+					lectura.position(lectura.position() + longitudItem - 1);
+				}
+			}
+		} catch (RuntimeException e) {
+			throw new IOException("Bloque de instantanea danyado", e);
+		}
+	}
+
+	/**
+	 * M&eacute;todo descomprimir.<br>
+	 * @param descompresor Descompresor, que se reinicia.
+	 * @param origen Bytes comprimidos.
+	 * @param longitudOrigen Bytes comprimidos &uacute;tiles.
+	 * @param destino Destino.
+	 * @param longitudDestino Bytes esperados.
+	 * @throws IOException Si el bloque est&aacute; da&ntilde;ado.
+	 */
+	private static void descomprimir(Inflater descompresor, byte[] origen, int longitudOrigen, byte[] destino,
+			int longitudDestino) throws IOException {
+		descompresor.reset();
+		descompresor.setInput(origen, 0, longitudOrigen);
+		try {
+			int leidos = 0;
+			while (leidos < longitudDestino && !descompresor.finished()) {
+				int n = descompresor.inflate(destino, leidos, longitudDestino - leidos);
+				if (n == 0 && (descompresor.needsInput() || descompresor.needsDictionary())) {
+					break;
+				}
+				leidos += n;
+			}
+			if (leidos != longitudDestino) {
+				throw new IOException("Bloque de instantanea danyado");
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Bloque de instantanea danyado", e);
+		}
+	}
+
+	/**
+	 * M&eacute;todo ponerVarint.<br>
+	 * @param destino B&uacute;fer destino.
+	 * @param valor Valor no negativo.
+	 */
+	private static void ponerVarint(ByteBuffer destino, int valor) {
+		while ((valor & ~0x7F) != 0) {
+			destino.put((byte) ((valor & 0x7F) | 0x80));
+			valor >>>= 7;
+		}
+		destino.put((byte) valor);
+	}
+
+	/**
+	 * M&eacute;todo leerVarint.<br>
+	 * @param origen B&uacute;fer origen.
+	 * @return El valor le&iacute;do.
+	 */
+	private static int leerVarint(ByteBuffer origen) {
+		int valor = 0;
+		for (int desplazamiento = 0;; desplazamiento += 7) {
+			byte b = origen.get();
+			valor |= (b & 0x7F) << desplazamiento;
+			if (b >= 0) {
+				return valor;
+			}
+		}
+	}
+
+	/**
+	 * M&eacute;todo escribirCompleto.<br>
+	 * @param destino Canal destino.
+	 * @param bufer B&uacute;fer en modo lectura.
+	 * @return Bytes escritos.
+	 * @throws IOException Si falla la escritura.
+	 */
+	private static int escribirCompleto(WritableByteChannel destino, ByteBuffer bufer) throws IOException {
+		int escritos = 0;
+		while (bufer.hasRemaining()) {
+			escritos += destino.write(bufer);
+		}
+		return escritos;
+	}
+
+	/**
+	 * M&eacute;todo leerCompleto.<br>
+	 * @param origen Canal origen.
+	 * @param bufer B&uacute;fer a llenar.
+	 * @return El b&uacute;fer lleno, preparado para leerlo.
+	 * @throws IOException Si falla la lectura o el canal se acaba antes.
+	 */
+	private static ByteBuffer leerCompleto(ReadableByteChannel origen, ByteBuffer bufer) throws IOException {
+		while (bufer.hasRemaining()) {
+			if (origen.read(bufer) < 0) {
+				throw new EOFException("Instantanea incompleta");
+			}
+		}
+		bufer.flip();
+		return bufer;
+	}
+
+	/**
+	 * M&eacute;todo leerCompleto.<br>
+	 * Lee una longitud le&iacute;da del propio canal. Si no cabe en el array
+	 * se reserva por tramos seg&uacute;n llegan los bytes, de modo que una
+	 * longitud da&ntilde;ada acaba en fin de fichero y no en una reserva
+	 * desmesurada.
+	 * @param origen Canal origen.
+	 * @param destino Array a reutilizar si cabe.
+	 * @param longitud Bytes a leer.
+	 * @return El array con los bytes le&iacute;dos al principio.
+	 * @throws IOException Si falla la lectura o el canal se acaba antes.
+	 */
+	private static byte[] leerCompleto(ReadableByteChannel origen, byte[] destino, int longitud) throws IOException {
+		byte[] bytes = destino;
+		int leidos = 0;
+		while (leidos < longitud) {
+			int hasta = longitud;
+			if (bytes.length < longitud) {
+				hasta = (int) Math.min(longitud, Math.max((long) bytes.length, leidos) + TRAMO_LECTURA);
+				bytes = Arrays.copyOf(bytes, hasta);
+			}
+			leerCompleto(origen, ByteBuffer.wrap(bytes, leidos, hasta - leidos));
+			leidos = hasta;
+		}
+		return bytes;
+	}
+
+	/**
+	 * M&eacute;todo leerCompleto.<br>
+	 * @param canal Fichero origen.
+	 * @param bufer B&uacute;fer a llenar.
+	 * @param desplazamiento Posici&oacute;n del fichero desde la que se lee.
+	 * @return El b&uacute;fer lleno, preparado para leerlo.
+	 * @throws IOException Si falla la lectura o el fichero se acaba antes.
+	 */
+	private static ByteBuffer leerCompleto(FileChannel canal, ByteBuffer bufer, long desplazamiento) throws IOException {
+		long posicion = desplazamiento;
+		while (bufer.hasRemaining()) {
+			int n = canal.read(bufer, posicion);
+			if (n < 0) {
+				throw new EOFException("Instantanea incompleta");
+			}
+			posicion += n;
+		}
+		bufer.flip();
+		return bufer;
+	}
+
+}
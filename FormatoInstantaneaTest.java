@@ -0,0 +1,163 @@
+package com.insags.mockito.tutorial.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ObjIntConsumer;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.insags.mockito.tutorial.FormatoInstantanea;
+
+public class FormatoInstantaneaTest {
+
+	@Rule
+	public TemporaryFolder carpeta = new TemporaryFolder();
+
+	/**
+	 * Mtodo para probar que una instantnea comprimida de varios bloques
+	 * se exporta e importa sin prdidas y que el ndice permite leer una
+	 * posicin suelta.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - El catlogo importado es igual al exportado, incluidos nulos y no ASCII. 
+	 * - La lectura por ndice devuelve el item de la posicin.
+	 */
+	@Test
+	public void comprobarExportacionEImportacionComprimidaConIndice() throws IOException {
+		ItemDaoMemoria original = new ItemDaoMemoria();
+		Map<Integer, String> items = new HashMap<Integer, String>();
+		for (int i = 0; i < 70000; i++) {
+			if (i % 7 != 3) {
+				items.put(i, "Mueca " + i);
+			}
+		}
+		original.actualizarItems(items);
+		Path fichero = new File(carpeta.getRoot(), "catalogo.its").toPath();
+		
+		try (FileChannel salida = FileChannel.open(fichero, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			original.exportar(salida, true);
+		}
+		ItemDaoMemoria importado = new ItemDaoMemoria();
+		int tamanyo;
+		try (FileChannel entrada = FileChannel.open(fichero, StandardOpenOption.READ)) {
+			tamanyo = importado.importar(entrada);
+			
+			// Assert
+			Assert.assertEquals("Mueca 69999", FormatoInstantanea.leerItem(entrada, 69999));
+			Assert.assertNull(FormatoInstantanea.leerItem(entrada, 66));
+		}
+		Assert.assertEquals(70000, tamanyo);
+		Assert.assertArrayEquals(original.obtenerTodosLosItems(), importado.obtenerTodosLosItems());
+	}
+
+	/**
+	 * Mtodo para probar que la importacin por defecto, por bloques,
+	 * conserva las posiciones que la instantnea no tiene.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Se escriben las posiciones no nulas de la instantnea. 
+	 * - Las dems conservan su valor.
+	 */
+	@Test
+	public void comprobarImportacionPorBloquesSobreCatalogoExistente() throws IOException {
+		ItemDaoMemoria original = new ItemDaoMemoria();
+		original.actualizarItem("Peonza", 0);
+		original.actualizarItem("Pelota", 2);
+		Path fichero = new File(carpeta.getRoot(), "catalogo.its").toPath();
+		try (FileChannel salida = FileChannel.open(fichero, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			original.exportar(salida, false);
+		}
+		
+		ItemDaoFueraDeHeap destino = new ItemDaoFueraDeHeap();
+		try (FileChannel entrada = FileChannel.open(fichero, StandardOpenOption.READ)) {
+			destino.actualizarItem("Cometa", 1);
+			destino.actualizarItem("Yoyo", 3);
+			destino.importar(entrada);
+			
+			// Assert
+			Assert.assertArrayEquals(new String[] { "Peonza", "Cometa", "Pelota", "Yoyo" }, destino.obtenerTodosLosItems());
+		}
+	}
+
+	/**
+	 * Mtodo para probar que un bloque con una longitud negativa se rechaza
+	 * como instantnea daada.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - La lectura completa y la lectura por ndice fallan con IOException.
+	 */
+	@Test
+	public void comprobarRechazoDeBloqueConLongitudNegativa() throws IOException {
+		ItemDaoMemoria original = new ItemDaoMemoria();
+		original.actualizarItem("Peonza", 0);
+		original.actualizarItem("Pelota", 1);
+		Path fichero = new File(carpeta.getRoot(), "catalogo.its").toPath();
+		try (FileChannel salida = FileChannel.open(fichero, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			original.exportar(salida, false);
+			salida.write(ByteBuffer.allocate(4).putInt(0, -1), 20);
+		}
+		
+		// Assert
+		comprobarInstantaneaNoValida(fichero);
+	}
+
+	/**
+	 * Mtodo para probar que una cabecera con un tamao y unos items por
+	 * bloque desmesurados se rechaza sin intentar reservarlos.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - La lectura completa y la lectura por ndice fallan con IOException.
+	 */
+	@Test
+	public void comprobarRechazoDeCabeceraDesmesurada() throws IOException {
+		Path fichero = new File(carpeta.getRoot(), "catalogo.its").toPath();
+		try (FileChannel salida = FileChannel.open(fichero, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			ByteBuffer cabecera = ByteBuffer.allocate(20);
+			cabecera.putInt(FormatoInstantanea.MARCA).putInt(FormatoInstantanea.VERSION).putInt(0)
+					.putInt(Integer.MAX_VALUE).putInt(Integer.MAX_VALUE).flip();
+			salida.write(cabecera);
+		}
+		
+		// Assert
+		comprobarInstantaneaNoValida(fichero);
+	}
+
+	/**
+	 * Mtodo comprobarInstantaneaNoValida.<br>
+	 * @param fichero Fichero con la instantnea daada.
+	 * @throws IOException Si no se puede abrir el fichero.
+	 */
+	private void comprobarInstantaneaNoValida(Path fichero) throws IOException {
+		try (FileChannel entrada = FileChannel.open(fichero, StandardOpenOption.READ)) {
+			FormatoInstantanea.leer(entrada, new ObjIntConsumer<String[]>() {
+				@Override
+				public void accept(String[] items, int desde) {
+					Assert.fail("No debe entregar bloques daados");
+				}
+			});
+			Assert.fail("Debe rechazar la lectura completa");
+		} catch (IOException e) {
+			// Esperado
+		}
+		try (FileChannel entrada = FileChannel.open(fichero, StandardOpenOption.READ)) {
+			FormatoInstantanea.leerItem(entrada, 0);
+			Assert.fail("Debe rechazar la lectura por ndice");
+		} catch (IOException e) {
+			// Esperado
+		}
+	}
+
+}
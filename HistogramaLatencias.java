@@ -0,0 +1,111 @@
+package com.insags.mockito.tutorial.impl;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Clase HistogramaLatencias.<br>
+ * Histograma de cubos log-lineales al estilo HDR: cada potencia de dos se
+ * divide en {@value #SUBCUBOS} cubos, por lo que el error relativo de
+ * cualquier percentil es inferior al 6,25&nbsp;% sea cual sea la magnitud.
+ * Registrar un valor s&oacute;lo incrementa un contador at&oacute;mico y
+ * no reserva memoria.<br>
+ * @author INSA
+ */
+public class HistogramaLatencias {
+
+	/** Bits de precisi&oacute;n dentro de cada potencia de dos. */
+	private static final int BITS_SUBCUBO = 4;
+
+	/** Cubos por potencia de dos. */
+	private static final int SUBCUBOS = 1 << BITS_SUBCUBO;
+
+	/** N&uacute;mero de cubos, suficiente para cualquier long positivo. */
+	private static final int CUBOS = (64 - BITS_SUBCUBO) * SUBCUBOS;
+
+	/** Contadores por cubo. */
+	private final AtomicLongArray contadores = new AtomicLongArray(CUBOS);
+
+	/** Mayor valor registrado. */
+	private final LongAccumulator maximo = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * M&eacute;todo registrar.<br>
+	 * @param valor El valor; los negativos cuentan como cero.
+	 */
+	public void registrar(long valor) {
+		long positivo = Math.max(0, valor);
+		contadores.incrementAndGet(cubo(positivo));
+		maximo.accumulate(positivo);
+	}
+
+	/**
+	 * M&eacute;todo getTotal.<br>
+	 * @return N&uacute;mero de valores registrados.
+	 */
+	public long getTotal() {
+		long total = 0;
+		for (int i = 0; i < CUBOS; i++) {
+			total += contadores.get(i);
+		}
+		return total;
+	}
+
+	/**
+	 * M&eacute;todo getMaximo.<br>
+	 * @return Mayor valor registrado, exacto.
+	 */
+	public long getMaximo() {
+		return maximo.get();
+	}
+
+	/**
+	 * M&eacute;todo percentil.<br>
+	 * @param porcentaje Percentil entre 0 y 100.
+	 * @return L&iacute;mite superior del cubo que contiene el percentil, o cero si no hay valores.
+	 */
+	public long percentil(double porcentaje) {
+		long total = getTotal();
+		if (total == 0) {
+			return 0;
+		}
+		long objetivo = Math.max(1, (long) Math.ceil(porcentaje / 100 * total));
+		long acumulado = 0;
+		for (int i = 0; i < CUBOS; i++) {
+			acumulado += contadores.get(i);
+			if (acumulado >= objetivo) {
+				return Math.min(limiteSuperior(i), getMaximo());
+			}
+		}
+		return getMaximo();
+	}
+
+	/**
+	 * M&eacute;todo cubo.<br>
+	 * @param valor Valor no negativo.
+	 * @return &Iacute;ndice del cubo.
+	 */
+	static int cubo(long valor) {
+		if (valor < SUBCUBOS) {
+			return (int) valor;
+		}
+		int exponente = 63 - Long.numberOfLeadingZeros(valor);
+		int subcubo = (int) (valor >>> (exponente - BITS_SUBCUBO)) & (SUBCUBOS - 1);
+		return (exponente - BITS_SUBCUBO + 1) * SUBCUBOS + subcubo;
+	}
+
+	/**
+	 * M&eacute;todo limiteSuperior.<br>
+	 * @param cubo &Iacute;ndice del cubo.
+	 * @return Mayor valor que cae en el cubo.
+	 */
+	static long limiteSuperior(int cubo) {
+		if (cubo < SUBCUBOS) {
+			return cubo;
+		}
+		int exponente = cubo / SUBCUBOS + BITS_SUBCUBO - 1;
+		long inferior = (long) (SUBCUBOS | (cubo % SUBCUBOS)) << (exponente - BITS_SUBCUBO);
+		return inferior + (1L << (exponente - BITS_SUBCUBO)) - 1;
+	}
+
+}
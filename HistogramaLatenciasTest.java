@@ -0,0 +1,51 @@
+package com.insags.mockito.tutorial.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HistogramaLatenciasTest {
+
+	/**
+	 * Mtodo para probar que los percentiles se calculan con un error
+	 * relativo acotado en cualquier magnitud.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - La mediana y el percentil 99 quedan a menos del 6,25 % del valor exacto. 
+	 * - El mximo es exacto.
+	 */
+	@Test
+	public void comprobarPercentilesConErrorRelativoAcotado() {
+		HistogramaLatencias histograma = new HistogramaLatencias();
+		for (long valor = 1; valor <= 100000; valor++) {
+			histograma.registrar(valor * 1000);
+		}
+		
+		// Assert
+		Assert.assertEquals(100000, histograma.getTotal());
+		Assert.assertEquals(50000000, histograma.percentil(50), 50000000 * 0.0625);
+		Assert.assertEquals(99000000, histograma.percentil(99), 99000000 * 0.0625);
+		Assert.assertEquals(100000000, histograma.getMaximo());
+	}
+
+	/**
+	 * Mtodo para probar que cada valor cae en un cubo cuyo lmite superior no
+	 * es menor que el valor.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Los lmites de cubo acotan los valores de todas las magnitudes.
+	 */
+	@Test
+	public void comprobarLimitesDeCuboCoherentes() {
+		for (int bits = 0; bits < 63; bits++) {
+			long valor = (1L << bits) + bits;
+			int cubo = HistogramaLatencias.cubo(valor);
+			
+			// Assert
+			Assert.assertTrue(HistogramaLatencias.limiteSuperior(cubo) >= valor);
+			Assert.assertTrue(cubo == 0 || HistogramaLatencias.limiteSuperior(cubo - 1) < valor);
+		}
+	}
+
+}
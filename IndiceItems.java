@@ -0,0 +1,175 @@
+package com.insags.mockito.tutorial.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Clase IndiceItems.<br>
+ * &Iacute;ndice secundario de los items no vac&iacute;os para b&uacute;squedas
+ * por prefijo y por subcadena. Agrupa las posiciones por valor en un mapa
+ * ordenado, de modo que un prefijo es un rango de claves, y guarda para cada
+ * trigrama los valores que lo contienen, de modo que una subcadena de tres o
+ * m&aacute;s caracteres s&oacute;lo comprueba los valores que tienen todos sus
+ * trigramas. Las subcadenas m&aacute;s cortas recorren el vocabulario, no el
+ * cat&aacute;logo. Se actualiza posici&oacute;n a posici&oacute;n.<br>
+ * @author INSA
+ */
+final class IndiceItems {
+
+	/** Longitud de los fragmentos indexados. */
+	private static final int LONGITUD_TRIGRAMA = 3;
+
+	/** Posiciones de cada valor, ordenado por valor. */
+	private final TreeMap<String, ConjuntoEnteros> posicionesPorValor = new TreeMap<String, ConjuntoEnteros>();
+
+	/** Valores que contienen cada trigrama. */
+	private final Map<String, Set<String>> valoresPorTrigrama = new HashMap<String, Set<String>>();
+
+	/** Valor indexado de cada posici&oacute;n, o nulo si no tiene. */
+	private String[] valores = new String[16];
+
+	/**
+	 * M&eacute;todo actualizar.<br>
+	 * @param posicion La posici&oacute;n escrita.
+	 * @param valor El nuevo valor; nulo o vac&iacute;o la saca del &iacute;ndice.
+	 */
+	synchronized void actualizar(int posicion, String valor) {
+		if (posicion < 0) {
+			return;
+		}
+		if (posicion < valores.length && valores[posicion] != null) {
+			quitar(posicion, valores[posicion]);
+		}
+		if (valor != null && !valor.isEmpty()) {
+			poner(posicion, valor);
+		}
+	}
+
+	/**
+	 * M&eacute;todo buscarPorPrefijo.<br>
+	 * @param prefijo El prefijo.
+	 * @return Posiciones cuyo valor empieza por el prefijo, en orden ascendente.
+	 */
+	synchronized int[] buscarPorPrefijo(String prefijo) {
+		List<ConjuntoEnteros> encontrados = new ArrayList<ConjuntoEnteros>();
+		for (Map.Entry<String, ConjuntoEnteros> valor : posicionesPorValor.tailMap(prefijo, true).entrySet()) {
+			if (!valor.getKey().startsWith(prefijo)) {
+				break;
+			}
+			encontrados.add(valor.getValue());
+		}
+		return unir(encontrados);
+	}
+
+	/**
+	 * M&eacute;todo buscarPorSubcadena.<br>
+	 * @param subcadena La subcadena.
+	 * @return Posiciones cuyo valor contiene la subcadena, en orden ascendente.
+	 */
+	synchronized int[] buscarPorSubcadena(String subcadena) {
+		List<ConjuntoEnteros> encontrados = new ArrayList<ConjuntoEnteros>();
+		for (String valor : candidatos(subcadena)) {
+			if (valor.contains(subcadena)) {
+				encontrados.add(posicionesPorValor.get(valor));
+			}
+		}
+		return unir(encontrados);
+	}
+
+	/**
+	 * M&eacute;todo candidatos.<br>
+	 * @param subcadena La subcadena.
+	 * @return Valores que pueden contenerla.
+	 */
+	private Iterable<String> candidatos(String subcadena) {
+		if (subcadena.length() < LONGITUD_TRIGRAMA) {
+			return posicionesPorValor.keySet();
+		}
+		Set<String> menor = null;
+		for (int i = 0; i + LONGITUD_TRIGRAMA <= subcadena.length(); i++) {
+			Set<String> valores = valoresPorTrigrama.get(subcadena.substring(i, i + LONGITUD_TRIGRAMA));
+			if (valores == null) {
+				return new HashSet<String>();
+			}
+			if (menor == null || valores.size() < menor.size()) {
+				menor = valores;
+			}
+		}
+		return menor;
+	}
+
+	/**
+	 * M&eacute;todo poner.<br>
+	 * @param posicion La posici&oacute;n.
+	 * @param valor Valor no vac&iacute;o.
+	 */
+	private void poner(int posicion, String valor) {
+		if (posicion >= valores.length) {
+			valores = Arrays.copyOf(valores, (int) Math.min(Integer.MAX_VALUE - 8, Math.max(posicion + 1L, valores.length * 2L)));
+		}
+		valores[posicion] = valor;
+		ConjuntoEnteros posiciones = posicionesPorValor.get(valor);
+		if (posiciones == null) {
+			posiciones = new ConjuntoEnteros();
+			posicionesPorValor.put(valor, posiciones);
+			for (int i = 0; i + LONGITUD_TRIGRAMA <= valor.length(); i++) {
+				String trigrama = valor.substring(i, i + LONGITUD_TRIGRAMA);
+				Set<String> conTrigrama = valoresPorTrigrama.get(trigrama);
+				if (conTrigrama == null) {
+					conTrigrama = new HashSet<String>();
+					valoresPorTrigrama.put(trigrama, conTrigrama);
+				}
+				conTrigrama.add(valor);
+			}
+		}
+		posiciones.anyadir(posicion);
+	}
+
+	/**
+	 * M&eacute;todo quitar.<br>
+	 * @param posicion La posici&oacute;n.
+	 * @param valor Valor indexado en la posici&oacute;n.
+	 */
+	private void quitar(int posicion, String valor) {
+		valores[posicion] = null;
+		ConjuntoEnteros posiciones = posicionesPorValor.get(valor);
+		posiciones.quitar(posicion);
+		if (posiciones.tamanyo() > 0) {
+			return;
+		}
+		posicionesPorValor.remove(valor);
+		for (int i = 0; i + LONGITUD_TRIGRAMA <= valor.length(); i++) {
+			String trigrama = valor.substring(i, i + LONGITUD_TRIGRAMA);
+			Set<String> conTrigrama = valoresPorTrigrama.get(trigrama);
+			if (conTrigrama != null && conTrigrama.remove(valor) && conTrigrama.isEmpty()) {
+				valoresPorTrigrama.remove(trigrama);
+			}
+		}
+	}
+
+	/**
+	 * M&eacute;todo unir.<br>
+	 * @param conjuntos Conjuntos de posiciones disjuntos.
+	 * @return Todas sus posiciones en orden ascendente.
+	 */
+	private static int[] unir(List<ConjuntoEnteros> conjuntos) {
+		int total = 0;
+		for (ConjuntoEnteros conjunto : conjuntos) {
+			total += conjunto.tamanyo();
+		}
+		int[] posiciones = new int[total];
+		int i = 0;
+		for (ConjuntoEnteros conjunto : conjuntos) {
+			i = conjunto.copiarEn(posiciones, i);
+		}
+		Arrays.sort(posiciones);
+		return posiciones;
+	}
+
+}
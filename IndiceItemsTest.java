@@ -0,0 +1,57 @@
+package com.insags.mockito.tutorial.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IndiceItemsTest {
+
+	/**
+	 * Mtodo para probar que la bsqueda por subcadena comprueba los
+	 * candidatos de los trigramas y no devuelve falsos positivos.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Slo se devuelven las posiciones cuyo item contiene la subcadena.
+	 */
+	@Test
+	public void comprobarBusquedaPorSubcadenaSinFalsosPositivos() {
+		IndiceItems indice = new IndiceItems();
+		
+		indice.actualizar(0, "abcxbcd");
+		indice.actualizar(1, "abcd");
+		indice.actualizar(2, "xyz");
+		
+		// Assert
+		Assert.assertArrayEquals(new int[] { 1 }, indice.buscarPorSubcadena("abcd"));
+		Assert.assertArrayEquals(new int[] { 0, 1 }, indice.buscarPorSubcadena("bcd"));
+		Assert.assertArrayEquals(new int[0], indice.buscarPorSubcadena("zz"));
+	}
+
+	/**
+	 * Mtodo para probar que reescribir o vaciar una posicin la retira de
+	 * las entradas del valor anterior.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - El valor anterior deja de encontrarse. 
+	 * - Las posiciones vaciadas no se encuentran por ningn prefijo.
+	 */
+	@Test
+	public void comprobarRetiradaDeValoresReescritosOVaciados() {
+		IndiceItems indice = new IndiceItems();
+		for (int posicion = 0; posicion < 100; posicion++) {
+			indice.actualizar(posicion, "Peonza");
+		}
+		
+		indice.actualizar(7, "Pelota");
+		for (int posicion = 10; posicion < 100; posicion++) {
+			indice.actualizar(posicion, "");
+		}
+		
+		// Assert
+		Assert.assertArrayEquals(new int[] { 7 }, indice.buscarPorPrefijo("Pel"));
+		Assert.assertEquals(9, indice.buscarPorPrefijo("Peo").length);
+		Assert.assertEquals(10, indice.buscarPorPrefijo("").length);
+	}
+
+}
@@ -0,0 +1,79 @@
+package com.insags.mockito.tutorial;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Interfaz InstantaneaItems.<br>
+ * Vista inmutable del cat&aacute;logo en un momento dado. Las escrituras
+ * posteriores no la modifican y, mientras se usa, no frenan a los
+ * escritores. Basta con dejar de referenciarla para liberarla.<br>
+ * @author INSA
+ */
+public interface InstantaneaItems {
+
+	/**
+	 * M&eacute;todo getTamanyo.<br>
+	 * @return N&uacute;mero de posiciones de la instant&aacute;nea.
+	 */
+	int getTamanyo();
+
+	/**
+	 * M&eacute;todo obtenerItem.<br>
+	 * @param posicion La posici&oacute;n del item.
+	 * @return El item, que puede ser nulo.
+	 * @throws ArrayIndexOutOfBoundsException Si la posici&oacute;n no existe en la instant&aacute;nea.
+	 */
+	String obtenerItem(int posicion);
+
+	/**
+	 * M&eacute;todo abrirCursor.<br>
+	 * @param tamanyoBloque N&uacute;mero m&aacute;ximo de items le&iacute;dos en cada acceso.
+	 * @return Cursor sobre todos los items de la instant&aacute;nea.
+	 */
+	CursorItems abrirCursor(int tamanyoBloque);
+
+	/**
+	 * M&eacute;todo sobreArray.<br>
+	 * @param items Los items; el array pasa a ser de la instant&aacute;nea y no debe modificarse.
+	 * @return Instant&aacute;nea sobre el array, sin copiarlo.
+	 */
+	static InstantaneaItems sobreArray(final String[] items) {
+		return new InstantaneaItems() {
+			@Override
+			public int getTamanyo() {
+				return items.length;
+			}
+
+			@Override
+			public String obtenerItem(int posicion) {
+				return items[posicion];
+			}
+
+			@Override
+			public CursorItems abrirCursor(int tamanyoBloque) {
+				final Iterator<String> recorrido = Arrays.asList(items).iterator();
+				return new CursorItems() {
+					@Override
+					public boolean hasNext() {
+						return recorrido.hasNext();
+					}
+
+					@Override
+					public String next() {
+						if (!recorrido.hasNext()) {
+							throw new NoSuchElementException();
+						}
+						return recorrido.next();
+					}
+
+					@Override
+					public void close() {
+					}
+				};
+			}
+		};
+	}
+
+}
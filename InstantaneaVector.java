@@ -0,0 +1,65 @@
+package com.insags.mockito.tutorial.impl;
+
+import com.insags.mockito.tutorial.CursorItems;
+import com.insags.mockito.tutorial.InstantaneaItems;
+
+/**
+ * Clase InstantaneaVector.<br>
+ * Instant&aacute;nea sobre una versi&oacute;n de {@link VectorPersistente}.
+ * Crearla no copia nada: comparte la estructura de la versi&oacute;n, que
+ * ninguna escritura modifica, y &eacute;sta se libera cuando deja de
+ * referenciarse.<br>
+ * @author INSA
+ */
+final class InstantaneaVector implements InstantaneaItems {
+
+	/** Versi&oacute;n de los items. */
+	private final VectorPersistente version;
+
+	/**
+	 * Constructor de la clase.<br>
+	 * @param version Versi&oacute;n de los items.
+	 */
+	InstantaneaVector(VectorPersistente version) {
+		this.version = version;
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito getTamanyo.<br>
+	 * @return N&uacute;mero de posiciones de la versi&oacute;n.
+	 * @see com.insags.mockito.tutorial.InstantaneaItems#getTamanyo()
+	 */
+	@Override
+	public int getTamanyo() {
+		return version.tamanyo();
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito obtenerItem.<br>
+	 * @param posicion La posici&oacute;n del item.
+	 * @return El item, o nulo si la posici&oacute;n no se hab&iacute;a escrito.
+	 * @see com.insags.mockito.tutorial.InstantaneaItems#obtenerItem(int)
+	 */
+	@Override
+	public String obtenerItem(int posicion) {
+		Paginas.comprobarPosicion(posicion, version.tamanyo());
+		return version.obtener(posicion);
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito abrirCursor.<br>
+	 * @param tamanyoBloque N&uacute;mero m&aacute;ximo de items le&iacute;dos en cada acceso.
+	 * @return El cursor.
+	 * @see com.insags.mockito.tutorial.InstantaneaItems#abrirCursor(int)
+	 */
+	@Override
+	public CursorItems abrirCursor(int tamanyoBloque) {
+		return new CursorPorBloques(tamanyoBloque, 0) {
+			@Override
+			protected int leerBloque(int desde, String[] destino) {
+				return version.copiar(desde, destino);
+			}
+		};
+	}
+
+}
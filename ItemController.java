@@ -0,0 +1,176 @@
+package com.insags.mockito.tutorial;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Interfaz ItemController.<br>
+ * @author INSA
+ */
+public interface ItemController {
+
+	/**
+	 * M&eacute;todo obtenerTodosLosItems.<br>
+	 * @return Todos los items, ordenados por posici&oacute;n. La lista es de s&oacute;lo lectura.
+	 */
+	List<String> obtenerTodosLosItems();
+
+	/**
+	 * M&eacute;todo obtenerItems.<br>
+	 * Lee una p&aacute;gina del cat&aacute;logo sin leer el resto.
+	 * @param desde Primera posici&oacute;n de la p&aacute;gina.
+	 * @param limite N&uacute;mero m&aacute;ximo de items de la p&aacute;gina.
+	 * @return Los items de la p&aacute;gina; vac&iacute;a si empieza tras el final. La lista es de s&oacute;lo lectura.
+	 */
+	List<String> obtenerItems(int desde, int limite);
+
+	/**
+	 * M&eacute;todo obtenerItem.<br>
+	 * @param posicion La posici&oacute;n del item.
+	 * @return El item.
+	 * @throws ArrayIndexOutOfBoundsException Si la posici&oacute;n no existe.
+	 */
+	String obtenerItem(int posicion);
+
+	/**
+	 * M&eacute;todo buscarPorPrefijo.<br>
+	 * @param prefijo El prefijo.
+	 * @return Posiciones de los items no vac&iacute;os que empiezan por el prefijo, en orden ascendente.
+	 */
+	int[] buscarPorPrefijo(String prefijo);
+
+	/**
+	 * M&eacute;todo buscarPorSubcadena.<br>
+	 * @param subcadena La subcadena.
+	 * @return Posiciones de los items no vac&iacute;os que la contienen, en orden ascendente.
+	 */
+	int[] buscarPorSubcadena(String subcadena);
+
+	/**
+	 * M&eacute;todo obtenerItemsEnFlujo.<br>
+	 * Recorre los items leyendo del DAO por bloques, sin materializar el
+	 * cat&aacute;logo. El flujo debe cerrarse para liberar el cursor.
+	 * @return Flujo secuencial de los items, ordenados por posici&oacute;n.
+	 */
+	Stream<String> obtenerItemsEnFlujo();
+
+	/**
+	 * M&eacute;todo publicarItems.<br>
+	 * Publica el cat&aacute;logo con control de demanda: cada suscripci&oacute;n
+	 * lee del DAO por bloques s&oacute;lo lo que se le ha pedido y cancelarla
+	 * libera el cursor.
+	 * @return Publicador de los items, ordenados por posici&oacute;n.
+	 */
+	Flow.Publisher<String> publicarItems();
+
+	/**
+	 * M&eacute;todo actualizarItem.<br>
+	 * @param item El nuevo valor del item.
+	 * @param posicion La posici&oacute;n del item.
+	 */
+	void actualizarItem(String item, int posicion);
+
+	/**
+	 * M&eacute;todo actualizarItem.<br>
+	 * Adaptador de {@link #actualizarItem(String, int)}.
+	 * @param item El nuevo valor del item.
+	 * @param posicion La posici&oacute;n del item.
+	 */
+	default void actualizarItem(String item, Integer posicion) {
+		actualizarItem(item, posicion.intValue());
+	}
+
+	/**
+	 * M&eacute;todo actualizarItems.<br>
+	 * Aplica varias escrituras envi&aacute;ndolas al DAO por lotes.
+	 * @param items Nuevos valores indexados por posici&oacute;n.
+	 * @throws ActualizacionPorLotesException Si alg&uacute;n lote ha fallado.
+	 */
+	void actualizarItems(Map<Integer, String> items);
+
+	/**
+	 * M&eacute;todo resetearItemsEspecificos.<br>
+	 * Deja vac&iacute;os los items de las posiciones indicadas, envi&aacute;ndolos al DAO por lotes.
+	 * @param posiciones Las posiciones a resetear; el array no se modifica.
+	 * @throws ActualizacionPorLotesException Si alg&uacute;n lote ha fallado.
+	 */
+	void resetearItemsEspecificos(int[] posiciones);
+
+	/**
+	 * M&eacute;todo resetearItemsEspecificos.<br>
+	 * Adaptador de {@link #resetearItemsEspecificos(int[])}.
+	 * @param posiciones Las posiciones a resetear.
+	 * @throws ActualizacionPorLotesException Si alg&uacute;n lote ha fallado.
+	 */
+	default void resetearItemsEspecificos(Integer[] posiciones) {
+		int[] primitivas = new int[posiciones.length];
+		for (int i = 0; i < posiciones.length; i++) {
+			primitivas[i] = posiciones[i].intValue();
+		}
+		resetearItemsEspecificos(primitivas);
+	}
+
+	/**
+	 * M&eacute;todo resetearItemsEspecificos.<br>
+	 * Adaptador de {@link #resetearItemsEspecificos(int[])}.
+	 * @param posiciones Las posiciones a resetear.
+	 * @throws ActualizacionPorLotesException Si alg&uacute;n lote ha fallado.
+	 */
+	default void resetearItemsEspecificos(IntStream posiciones) {
+		resetearItemsEspecificos(posiciones.toArray());
+	}
+
+	/**
+	 * M&eacute;todo resetearRango.<br>
+	 * Deja vac&iacute;os los items de un rango de posiciones sin materializar
+	 * las posiciones m&aacute;s all&aacute; de un lote.
+	 * @param desde Primera posici&oacute;n, incluida.
+	 * @param hasta &Uacute;ltima posici&oacute;n, excluida.
+	 * @throws ArrayIndexOutOfBoundsException Si desde es negativo.
+	 * @throws IllegalArgumentException Si hasta es menor que desde.
+	 * @throws ActualizacionPorLotesException Si alg&uacute;n lote ha fallado.
+	 */
+	void resetearRango(int desde, int hasta);
+
+	/**
+	 * M&eacute;todo listaItemsParaReseteo.<br>
+	 * Resetea por lotes los items que lo necesitan: todos los del cat&aacute;logo
+	 * o, si la implementaci&oacute;n lleva la cuenta, s&oacute;lo los escritos
+	 * desde la llamada anterior.
+	 * @throws ActualizacionPorLotesException Si alg&uacute;n lote ha fallado.
+	 */
+	void listaItemsParaReseteo();
+
+	/**
+	 * M&eacute;todo obtenerTodosLosItemsAsync.<br>
+	 * Versi&oacute;n as&iacute;ncrona de {@link #obtenerTodosLosItems()}.
+	 * @return Futuro con los items. Termina con la misma excepci&oacute;n que la
+	 *         versi&oacute;n s&iacute;ncrona, con TimeoutException si se supera el
+	 *         tiempo m&aacute;ximo configurado, y al cancelarlo se interrumpe la llamada.
+	 */
+	CompletableFuture<List<String>> obtenerTodosLosItemsAsync();
+
+	/**
+	 * M&eacute;todo actualizarItemAsync.<br>
+	 * Versi&oacute;n as&iacute;ncrona de {@link #actualizarItem(String, Integer)}.
+	 * @param item El nuevo valor del item.
+	 * @param posicion La posici&oacute;n del item.
+	 * @return Futuro que termina al aplicarse la escritura, con las mismas
+	 *         reglas de error, tiempo m&aacute;ximo y cancelaci&oacute;n.
+	 */
+	CompletableFuture<Void> actualizarItemAsync(String item, Integer posicion);
+
+	/**
+	 * M&eacute;todo resetearItemsEspecificosAsync.<br>
+	 * Versi&oacute;n as&iacute;ncrona de {@link #resetearItemsEspecificos(int[])}.
+	 * @param posiciones Las posiciones a resetear.
+	 * @return Futuro que termina al aplicarse el reseteo, con las mismas
+	 *         reglas de error, tiempo m&aacute;ximo y cancelaci&oacute;n.
+	 */
+	CompletableFuture<Void> resetearItemsEspecificosAsync(Integer[] posiciones);
+
+}
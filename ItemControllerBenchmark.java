@@ -0,0 +1,284 @@
+package com.insags.mockito.tutorial.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.insags.mockito.tutorial.ItemDao;
+import com.insags.mockito.tutorial.impl.ItemControllerImpl;
+import com.insags.mockito.tutorial.impl.ItemDaoFueraDeHeap;
+import com.insags.mockito.tutorial.impl.ItemDaoMemoria;
+import com.insags.mockito.tutorial.impl.ItemDaoPorFragmentos;
+
+/**
+ * Clase ItemControllerBenchmark.<br>
+ * Medidas JMH de los caminos calientes de {@link ItemControllerImpl} sobre
+ * implementaciones reales de {@link ItemDao}. Al ejecutarse con
+ * {@link #main(String[])} deja los resultados en JSON para poder comparar
+ * versiones.<br>
+ * @author INSA
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ItemControllerBenchmark {
+
+	/** Fichero de resultados por defecto. */
+	private static final String FICHERO_RESULTADOS = "jmh-result.json";
+
+	/** Capacidad de posiciones sucias que se configura para forzar un reseteo completo. */
+	private static final int CAPACIDAD_POSICIONES_SUCIAS = 1 << 16;
+
+	/**
+	 * Clase Catalogo.<br>
+	 * Controlador sobre un cat&aacute;logo relleno del tama&ntilde;o indicado.<br>
+	 */
+	@State(Scope.Benchmark)
+	public static class Catalogo {
+
+		/** Implementaci&oacute;n del DAO. */
+		@Param({ "memoria", "fueraDeHeap", "fragmentos" })
+		public String dao;
+
+		/** N&uacute;mero de items del cat&aacute;logo. */
+		@Param({ "1000", "100000", "1000000" })
+		public int tamanyoCatalogo;
+
+		/** Controlador medido. */
+		ItemControllerImpl itemController;
+
+		/** DAO del controlador. */
+		private ItemDao itemDao;
+
+		/**
+		 * M&eacute;todo preparar.<br>
+		 * Crea y rellena el cat&aacute;logo. La variante por fragmentos usa un
+		 * fragmento en memoria por procesador.
+		 */
+		@Setup(Level.Trial)
+		public void preparar() {
+			if ("memoria".equals(dao)) {
+				itemDao = new ItemDaoMemoria();
+			} else if ("fueraDeHeap".equals(dao)) {
+				itemDao = new ItemDaoFueraDeHeap();
+			} else {
+				ItemDao[] fragmentos = new ItemDao[Runtime.getRuntime().availableProcessors()];
+				for (int f = 0; f < fragmentos.length; f++) {
+					fragmentos[f] = new ItemDaoMemoria();
+				}
+				itemDao = new ItemDaoPorFragmentos(fragmentos);
+			}
+			for (int posicion = 0; posicion < tamanyoCatalogo; posicion++) {
+				itemDao.actualizarItem("item" + posicion, posicion);
+			}
+			itemController = new ItemControllerImpl();
+			itemController.setItemDao(itemDao);
+		}
+
+		/**
+		 * M&eacute;todo cerrar.<br>
+		 * Para los hilos de los fragmentos, si los hay.
+		 */
+		@TearDown(Level.Trial)
+		public void cerrar() {
+			if (itemDao instanceof ItemDaoPorFragmentos) {
+				((ItemDaoPorFragmentos) itemDao).close();
+			}
+		}
+
+	}
+
+	/**
+	 * Clase Reseteo.<br>
+	 * Posiciones reseteadas por llamada, repartidas por todo el cat&aacute;logo.<br>
+	 */
+	@State(Scope.Benchmark)
+	public static class Reseteo {
+
+		/** N&uacute;mero de posiciones reseteadas por llamada. */
+		@Param({ "10", "1000", "50000" })
+		public int tamanyoReseteo;
+
+		/** Posiciones a resetear. */
+		Integer[] posiciones;
+
+		/**
+		 * M&eacute;todo preparar.<br>
+		 * @param catalogo Cat&aacute;logo sobre el que se resetea.
+		 */
+		@Setup(Level.Trial)
+		public void preparar(Catalogo catalogo) {
+			int numeroPosiciones = Math.min(tamanyoReseteo, catalogo.tamanyoCatalogo);
+			posiciones = new Integer[numeroPosiciones];
+			for (int i = 0; i < numeroPosiciones; i++) {
+				posiciones[i] = (int) ((long) i * catalogo.tamanyoCatalogo / numeroPosiciones);
+			}
+		}
+
+	}
+
+	/**
+	 * Clase Sucias.<br>
+	 * Antes de cada llamada escribe las posiciones del reseteo a trav&eacute;s
+	 * del controlador, para que listaItemsParaReseteo tenga siempre
+	 * tamanyoReseteo posiciones sucias que resetear.<br>
+	 */
+	@State(Scope.Thread)
+	public static class Sucias {
+
+		/**
+		 * M&eacute;todo ensuciar.<br>
+		 * @param catalogo Cat&aacute;logo sobre el que se escribe.
+		 * @param reseteo Posiciones a escribir.
+		 */
+		@Setup(Level.Invocation)
+		public void ensuciar(Catalogo catalogo, Reseteo reseteo) {
+			for (int posicion : reseteo.posiciones) {
+				catalogo.itemController.actualizarItem("Peonza", posicion);
+			}
+		}
+
+	}
+
+	/**
+	 * Clase Desbordado.<br>
+	 * Antes de cada llamada descarta las posiciones sucias, para que
+	 * listaItemsParaReseteo recorra el cat&aacute;logo completo.<br>
+	 */
+	@State(Scope.Thread)
+	public static class Desbordado {
+
+		/**
+		 * M&eacute;todo desbordar.<br>
+		 * @param catalogo Cat&aacute;logo sobre el que se resetea.
+		 */
+		@Setup(Level.Invocation)
+		public void desbordar(Catalogo catalogo) {
+			catalogo.itemController.setCapacidadPosicionesSucias(CAPACIDAD_POSICIONES_SUCIAS);
+		}
+
+	}
+
+	/**
+	 * M&eacute;todo obtenerTodosLosItems.<br>
+	 * @param catalogo Estado del benchmark.
+	 * @return Los items, para que JMH no descarte la llamada.
+	 */
+	@Benchmark
+	public List<String> obtenerTodosLosItems(Catalogo catalogo) {
+		return catalogo.itemController.obtenerTodosLosItems();
+	}
+
+	/**
+	 * M&eacute;todo actualizarItem.<br>
+	 * Un solo hilo escribiendo en posiciones consecutivas.
+	 * @param catalogo Estado del benchmark.
+	 * @param escritor Estado del hilo.
+	 */
+	@Benchmark
+	public void actualizarItem(Catalogo catalogo, Escritor escritor) {
+		catalogo.itemController.actualizarItem("Peonza", escritor.siguientePosicion(catalogo.tamanyoCatalogo));
+	}
+
+	/**
+	 * M&eacute;todo actualizarItemConcurrente.<br>
+	 * Cuatro hilos escribiendo a la vez sobre el mismo cat&aacute;logo.
+	 * @param catalogo Estado del benchmark.
+	 * @param escritor Estado del hilo.
+	 */
+	@Benchmark
+	@Threads(4)
+	public void actualizarItemConcurrente(Catalogo catalogo, Escritor escritor) {
+		catalogo.itemController.actualizarItem("Peonza", escritor.siguientePosicion(catalogo.tamanyoCatalogo));
+	}
+
+	/**
+	 * M&eacute;todo resetearItemsEspecificos.<br>
+	 * @param catalogo Estado del benchmark.
+	 */
+	@Benchmark
+	public void resetearItemsEspecificos(Catalogo catalogo, Reseteo reseteo) {
+		catalogo.itemController.resetearItemsEspecificos(reseteo.posiciones);
+	}
+
+	/**
+	 * M&eacute;todo listaItemsParaReseteo.<br>
+	 * Resetea las tamanyoReseteo posiciones escritas antes de cada llamada.
+	 * @param catalogo Estado del benchmark.
+	 * @param sucias Escrituras previas a cada llamada.
+	 */
+	@Benchmark
+	public void listaItemsParaReseteo(Catalogo catalogo, Sucias sucias) {
+		catalogo.itemController.listaItemsParaReseteo();
+	}
+
+	/**
+	 * M&eacute;todo listaItemsParaReseteoCompleto.<br>
+	 * Resetea el cat&aacute;logo completo en cada llamada.
+	 * @param catalogo Estado del benchmark.
+	 * @param desbordado Descarte de las posiciones sucias antes de cada llamada.
+	 */
+	@Benchmark
+	public void listaItemsParaReseteoCompleto(Catalogo catalogo, Desbordado desbordado) {
+		catalogo.itemController.listaItemsParaReseteo();
+	}
+
+	/**
+	 * Clase Escritor.<br>
+	 * Posici&oacute;n de escritura propia de cada hilo.<br>
+	 */
+	@State(Scope.Thread)
+	public static class Escritor {
+
+		/** Siguiente posici&oacute;n a escribir. */
+		private int posicion;
+
+		/**
+		 * M&eacute;todo siguientePosicion.<br>
+		 * @param tamanyoCatalogo N&uacute;mero de items del cat&aacute;logo.
+		 * @return La posici&oacute;n a escribir, recorriendo el cat&aacute;logo de forma circular.
+		 */
+		Integer siguientePosicion(int tamanyoCatalogo) {
+			posicion = posicion + 1 < tamanyoCatalogo ? posicion + 1 : 0;
+			return posicion;
+		}
+
+	}
+
+	/**
+	 * M&eacute;todo main.<br>
+	 * Ejecuta todos los benchmarks y escribe los resultados en JSON.
+	 * @param args Fichero de resultados opcional; por defecto {@value #FICHERO_RESULTADOS}.
+	 * @throws RunnerException Si falla la ejecuci&oacute;n.
+	 */
+	public static void main(String[] args) throws RunnerException {
+		Options opciones = new OptionsBuilder()
+				.include(ItemControllerBenchmark.class.getSimpleName())
+				.resultFormat(ResultFormatType.JSON)
+				.result(args.length > 0 ? args[0] : FICHERO_RESULTADOS)
+				.build();
+		new Runner(opciones).run();
+	}
+
+}
@@ -0,0 +1,973 @@
+package com.insags.mockito.tutorial.impl;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.Errors;
+import org.springframework.validation.Validator;
+
+import com.insags.mockito.tutorial.CursorItems;
+import com.insags.mockito.tutorial.ItemController;
+import com.insags.mockito.tutorial.ItemDao;
+import com.insags.mockito.tutorial.ItemNoValidoException;
+import com.insags.mockito.tutorial.OperacionItem;
+import com.insags.mockito.tutorial.RegistroMetricas;
+
+/**
+ * Clase ItemControllerImpl.<br>
+ * @author INSA
+ */
+public class ItemControllerImpl implements ItemController {
+
+	/** Valor con el que se resetean los items. */
+	private static final String ITEM_VACIO = "";
+
+	/** Tama&ntilde;o de lote de escritura usado cuando no se indica otro. */
+	private static final int TAMANYO_LOTE_POR_DEFECTO = 500;
+
+	/** Posiciones escritas que se siguen por defecto entre dos reseteos completos. */
+	private static final int CAPACIDAD_POSICIONES_SUCIAS_POR_DEFECTO = 1 << 16;
+
+	/** Acceso a los items. */
+	private ItemDao itemDao;
+
+	/** N&uacute;mero de items que se piden al DAO en cada lectura por bloques. */
+	private int tamanyoBloqueLectura = ItemDao.TAMANYO_BLOQUE_POR_DEFECTO;
+
+	/** N&uacute;mero m&aacute;ximo de escrituras enviadas al DAO en cada lote. */
+	private int tamanyoLoteEscritura = TAMANYO_LOTE_POR_DEFECTO;
+
+	/** Ejecutor del reseteo en paralelo; si es nulo se resetea en el hilo llamante. */
+	private Executor ejecutorReseteo;
+
+	/** N&uacute;mero m&aacute;ximo de lotes de reseteo enviados al DAO a la vez. */
+	private int concurrenciaReseteo = Runtime.getRuntime().availableProcessors();
+
+	/** Ejecutor de las llamadas as&iacute;ncronas y de las entregas de publicarItems; si es nulo se usan hilos virtuales cuando la JVM los ofrece. */
+	private ExecutorService ejecutorAsync;
+
+	/** Tiempo m&aacute;ximo de las llamadas as&iacute;ncronas en nanosegundos; cero para no limitarlo. */
+	private long tiempoMaximoAsyncNanos;
+
+	/** &Iacute;ndice de b&uacute;squeda, creado en la primera b&uacute;squeda; nulo hasta entonces, tras un fallo parcial o tras escrituras solapadas. */
+	private volatile IndiceItems indiceBusqueda;
+
+	/** Indica si se est&aacute; cargando el &iacute;ndice de b&uacute;squeda desde el DAO. */
+	private volatile boolean construyendoIndice;
+
+	/** Escrituras recibidas mientras se carga el &iacute;ndice, para aplicarlas al terminar. */
+	private final List<Map.Entry<Integer, String>> escriturasDuranteConstruccion =
+			new ArrayList<Map.Entry<Integer, String>>();
+
+	/** Protege la publicaci&oacute;n del &iacute;ndice y las escrituras durante su carga. */
+	private final Object cerrojoIndice = new Object();
+
+	/** Escrituras en el DAO a&uacute;n sin llevar al &iacute;ndice; protegido por cerrojoIndice. */
+	private int escriturasEnCurso;
+
+	/** N&uacute;mero de escrituras empezadas; protegido por cerrojoIndice. */
+	private long generacionEscrituras;
+
+	/** Validador de los items escritos; si es nulo no se validan. */
+	private Validator validadorItems;
+
+	/** Ejecutor de la validaci&oacute;n en paralelo de actualizaciones grandes; si es nulo se valida en el hilo llamante. */
+	private Executor ejecutorValidacion;
+
+	/** Destino de las m&eacute;tricas de cada llamada. */
+	private RegistroMetricas registroMetricas = RegistroMetricas.NINGUNO;
+
+	/** Trazador de las llamadas; si es nulo no se trazan. */
+	private Trazador trazador;
+
+	/** Posiciones escritas con un valor no vac&iacute;o desde el &uacute;ltimo listaItemsParaReseteo. */
+	private ConjuntoPosicionesSucias posicionesSucias =
+			new ConjuntoPosicionesSucias(CAPACIDAD_POSICIONES_SUCIAS_POR_DEFECTO);
+
+	/**
+	 * M&eacute;todo sobrescrito obtenerTodosLosItems.<br>
+	 * Devuelve una vista de s&oacute;lo lectura sobre el array del DAO, sin
+	 * copiarlo.
+	 * @return Todos los items, ordenados por posici&oacute;n.
+	 * @see com.insags.mockito.tutorial.ItemController#obtenerTodosLosItems()
+	 */
+	@Override
+	public List<String> obtenerTodosLosItems() {
+		Trazador trazadorLlamada = trazador;
+		long inicio = iniciarMedida(trazadorLlamada, OperacionItem.OBTENER_TODOS_LOS_ITEMS);
+		try {
+			List<String> items = Collections.unmodifiableList(Arrays.asList(itemDao.obtenerTodosLosItems()));
+			registrarLlamada(trazadorLlamada, OperacionItem.OBTENER_TODOS_LOS_ITEMS, inicio, items.size());
+			return items;
+		} catch (RuntimeException e) {
+			registrarError(trazadorLlamada, OperacionItem.OBTENER_TODOS_LOS_ITEMS, inicio, e);
+			throw e;
+		} finally {
+			terminarMedida(trazadorLlamada);
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito obtenerItems.<br>
+	 * @param desde Primera posici&oacute;n de la p&aacute;gina.
+	 * @param limite N&uacute;mero m&aacute;ximo de items de la p&aacute;gina.
+	 * @return Vista de s&oacute;lo lectura de la p&aacute;gina.
+	 * @see com.insags.mockito.tutorial.ItemController#obtenerItems(int, int)
+	 */
+	@Override
+	public List<String> obtenerItems(int desde, int limite) {
+		Trazador trazadorLlamada = trazador;
+		long inicio = iniciarMedida(trazadorLlamada, OperacionItem.OBTENER_ITEMS);
+		try {
+			List<String> items = Collections.unmodifiableList(Arrays.asList(itemDao.obtenerItems(desde, limite)));
+			registrarLlamada(trazadorLlamada, OperacionItem.OBTENER_ITEMS, inicio, items.size());
+			return items;
+		} catch (RuntimeException e) {
+			registrarError(trazadorLlamada, OperacionItem.OBTENER_ITEMS, inicio, e);
+			throw e;
+		} finally {
+			terminarMedida(trazadorLlamada);
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito obtenerItem.<br>
+	 * @param posicion La posici&oacute;n del item.
+	 * @return El item.
+	 * @see com.insags.mockito.tutorial.ItemController#obtenerItem(int)
+	 */
+	@Override
+	public String obtenerItem(int posicion) {
+		Trazador trazadorLlamada = trazador;
+		long inicio = iniciarMedida(trazadorLlamada, OperacionItem.OBTENER_ITEM);
+		try {
+			String item = itemDao.obtenerItem(posicion);
+			registrarLlamada(trazadorLlamada, OperacionItem.OBTENER_ITEM, inicio, 1);
+			return item;
+		} catch (RuntimeException e) {
+			registrarError(trazadorLlamada, OperacionItem.OBTENER_ITEM, inicio, e);
+			throw e;
+		} finally {
+			terminarMedida(trazadorLlamada);
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito buscarPorPrefijo.<br>
+	 * @param prefijo El prefijo.
+	 * @return Posiciones en orden ascendente.
+	 * @see com.insags.mockito.tutorial.ItemController#buscarPorPrefijo(java.lang.String)
+	 */
+	@Override
+	public int[] buscarPorPrefijo(String prefijo) {
+		Trazador trazadorLlamada = trazador;
+		long inicio = iniciarMedida(trazadorLlamada, OperacionItem.BUSCAR_POR_PREFIJO);
+		try {
+			int[] posiciones = indiceBusqueda().buscarPorPrefijo(prefijo);
+			registrarLlamada(trazadorLlamada, OperacionItem.BUSCAR_POR_PREFIJO, inicio, posiciones.length);
+			return posiciones;
+		} catch (RuntimeException e) {
+			registrarError(trazadorLlamada, OperacionItem.BUSCAR_POR_PREFIJO, inicio, e);
+			throw e;
+		} finally {
+			terminarMedida(trazadorLlamada);
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito buscarPorSubcadena.<br>
+	 * @param subcadena La subcadena.
+	 * @return Posiciones en orden ascendente.
+	 * @see com.insags.mockito.tutorial.ItemController#buscarPorSubcadena(java.lang.String)
+	 */
+	@Override
+	public int[] buscarPorSubcadena(String subcadena) {
+		Trazador trazadorLlamada = trazador;
+		long inicio = iniciarMedida(trazadorLlamada, OperacionItem.BUSCAR_POR_SUBCADENA);
+		try {
+			int[] posiciones = indiceBusqueda().buscarPorSubcadena(subcadena);
+			registrarLlamada(trazadorLlamada, OperacionItem.BUSCAR_POR_SUBCADENA, inicio, posiciones.length);
+			return posiciones;
+		} catch (RuntimeException e) {
+			registrarError(trazadorLlamada, OperacionItem.BUSCAR_POR_SUBCADENA, inicio, e);
+			throw e;
+		} finally {
+			terminarMedida(trazadorLlamada);
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito obtenerItemsEnFlujo.<br>
+	 * @return Flujo secuencial de los items, ordenados por posici&oacute;n.
+	 * @see com.insags.mockito.tutorial.ItemController#obtenerItemsEnFlujo()
+	 */
+	@Override
+	public Stream<String> obtenerItemsEnFlujo() {
+		Trazador trazadorLlamada = trazador;
+		long inicio = iniciarMedida(trazadorLlamada, OperacionItem.OBTENER_ITEMS_EN_FLUJO);
+		try {
+			CursorItems cursor = itemDao.abrirCursor(tamanyoBloqueLectura);
+			Spliterator<String> recorrido = Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED);
+			registrarLlamada(trazadorLlamada, OperacionItem.OBTENER_ITEMS_EN_FLUJO, inicio, 0);
+			return StreamSupport.stream(recorrido, false).onClose(cursor::close);
+		} catch (RuntimeException e) {
+			registrarError(trazadorLlamada, OperacionItem.OBTENER_ITEMS_EN_FLUJO, inicio, e);
+			throw e;
+		} finally {
+			terminarMedida(trazadorLlamada);
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito publicarItems.<br>
+	 * Las entregas se hacen en el ejecutor as&iacute;ncrono.
+	 * @return Publicador de los items.
+	 * @see com.insags.mockito.tutorial.ItemController#publicarItems()
+	 */
+	@Override
+	public Flow.Publisher<String> publicarItems() {
+		return new PublicadorItems(itemDao, tamanyoBloqueLectura,
+				ejecutorAsync != null ? ejecutorAsync : EjecutoresPorDefecto.asincrono());
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito actualizarItem.<br>
+	 * @param item El nuevo valor del item.
+	 * @param posicion La posici&oacute;n del item.
+	 * @see com.insags.mockito.tutorial.ItemController#actualizarItem(java.lang.String, int)
+	 */
+	@Override
+	public void actualizarItem(String item, int posicion) {
+		Trazador trazadorLlamada = trazador;
+		long inicio = iniciarMedida(trazadorLlamada, OperacionItem.ACTUALIZAR_ITEM);
+		try {
+			validar(item, posicion);
+			long escritura = empezarEscritura();
+			try {
+				itemDao.actualizarItem(item, posicion);
+				synchronized (cerrojoIndice) {
+					comprobarSolape(escritura);
+					anotarEscritura(item, posicion);
+				}
+			} finally {
+				terminarEscritura();
+			}
+			registrarLlamada(trazadorLlamada, OperacionItem.ACTUALIZAR_ITEM, inicio, 1);
+		} catch (RuntimeException e) {
+			registrarError(trazadorLlamada, OperacionItem.ACTUALIZAR_ITEM, inicio, e);
+			throw e;
+		} finally {
+			terminarMedida(trazadorLlamada);
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito actualizarItems.<br>
+	 * @param items Nuevos valores indexados por posici&oacute;n.
+	 * @see com.insags.mockito.tutorial.ItemController#actualizarItems(java.util.Map)
+	 */
+	@Override
+	public void actualizarItems(Map<Integer, String> items) {
+		Trazador trazadorLlamada = trazador;
+		long inicio = iniciarMedida(trazadorLlamada, OperacionItem.ACTUALIZAR_ITEMS);
+		try {
+			validarLote(items);
+			long escritura = empezarEscritura();
+			try {
+				EscritorPorLotes escritor = new EscritorPorLotes(itemDao, tamanyoLoteEscritura);
+				for (Map.Entry<Integer, String> item : items.entrySet()) {
+					escritor.anyadir(item.getKey(), item.getValue());
+				}
+				escritor.terminar();
+				synchronized (cerrojoIndice) {
+					comprobarSolape(escritura);
+					for (Map.Entry<Integer, String> item : items.entrySet()) {
+						anotarEscritura(item.getValue(), item.getKey());
+					}
+				}
+			} catch (RuntimeException e) {
+				// Solo una escritura puede haber dejado el lote a medias
+				anotarFalloParcial();
+				throw e;
+			} finally {
+				terminarEscritura();
+			}
+			registrarLlamada(trazadorLlamada, OperacionItem.ACTUALIZAR_ITEMS, inicio, items.size());
+		} catch (RuntimeException e) {
+			registrarError(trazadorLlamada, OperacionItem.ACTUALIZAR_ITEMS, inicio, e);
+			throw e;
+		} finally {
+			terminarMedida(trazadorLlamada);
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito resetearItemsEspecificos.<br>
+	 * @param posiciones Las posiciones a resetear.
+	 * @see com.insags.mockito.tutorial.ItemController#resetearItemsEspecificos(int[])
+	 */
+	@Override
+	public void resetearItemsEspecificos(int[] posiciones) {
+		Trazador trazadorLlamada = trazador;
+		long inicio = iniciarMedida(trazadorLlamada, OperacionItem.RESETEAR_ITEMS_ESPECIFICOS);
+		try {
+			long escritura = empezarEscritura();
+			try {
+				if (ejecutorReseteo != null) {
+					new ReseteadorParalelo(itemDao, ejecutorReseteo(trazadorLlamada), concurrenciaReseteo, tamanyoLoteEscritura)
+							.resetear(posiciones, ITEM_VACIO);
+				} else {
+					EscritorPorLotes escritor = new EscritorPorLotes(itemDao, tamanyoLoteEscritura);
+					escritor.rellenar(posiciones, ITEM_VACIO);
+					escritor.terminar();
+				}
+				synchronized (cerrojoIndice) {
+					comprobarSolape(escritura);
+					for (int posicion : posiciones) {
+						indexar(posicion, ITEM_VACIO);
+					}
+				}
+			} finally {
+				terminarEscritura();
+			}
+			registrarLlamada(trazadorLlamada, OperacionItem.RESETEAR_ITEMS_ESPECIFICOS, inicio, posiciones.length);
+		} catch (RuntimeException e) {
+			anotarFalloParcial();
+			registrarError(trazadorLlamada, OperacionItem.RESETEAR_ITEMS_ESPECIFICOS, inicio, e);
+			throw e;
+		} finally {
+			terminarMedida(trazadorLlamada);
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito resetearRango.<br>
+	 * @param desde Primera posici&oacute;n, incluida.
+	 * @param hasta &Uacute;ltima posici&oacute;n, excluida.
+	 * @see com.insags.mockito.tutorial.ItemController#resetearRango(int, int)
+	 */
+	@Override
+	public void resetearRango(int desde, int hasta) {
+		Trazador trazadorLlamada = trazador;
+		long inicio = iniciarMedida(trazadorLlamada, OperacionItem.RESETEAR_RANGO);
+		try {
+			if (desde < 0) {
+				throw new ArrayIndexOutOfBoundsException(desde);
+			}
+			if (hasta < desde) {
+				throw new IllegalArgumentException("Rango no valido: " + desde + ".." + hasta);
+			}
+			long escritura = empezarEscritura();
+			try {
+				if (ejecutorReseteo != null) {
+					new ReseteadorParalelo(itemDao, ejecutorReseteo(trazadorLlamada), concurrenciaReseteo, tamanyoLoteEscritura)
+							.resetearRango(desde, hasta, ITEM_VACIO);
+				} else {
+					EscritorPorLotes escritor = new EscritorPorLotes(itemDao, tamanyoLoteEscritura);
+					escritor.rellenarRango(desde, hasta, ITEM_VACIO);
+					escritor.terminar();
+				}
+				synchronized (cerrojoIndice) {
+					comprobarSolape(escritura);
+					for (int posicion = desde; posicion < hasta; posicion++) {
+						indexar(posicion, ITEM_VACIO);
+					}
+				}
+			} finally {
+				terminarEscritura();
+			}
+			registrarLlamada(trazadorLlamada, OperacionItem.RESETEAR_RANGO, inicio, hasta - desde);
+		} catch (RuntimeException e) {
+			anotarFalloParcial();
+			registrarError(trazadorLlamada, OperacionItem.RESETEAR_RANGO, inicio, e);
+			throw e;
+		} finally {
+			terminarMedida(trazadorLlamada);
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito listaItemsParaReseteo.<br>
+	 * S&oacute;lo resetea las posiciones escritas con un valor no vac&iacute;o
+	 * a trav&eacute;s de este controlador desde la llamada anterior. Recorre
+	 * el cat&aacute;logo completo en la primera llamada, tras un fallo o si se
+	 * han escrito m&aacute;s posiciones de las que se siguen; entonces pide
+	 * al DAO su tama&ntilde;o despu&eacute;s de vaciar las posiciones
+	 * seguidas, de modo que cada escritura concurrente queda cubierta por
+	 * este recorrido o por el siguiente reseteo.
+	 * @see com.insags.mockito.tutorial.ItemController#listaItemsParaReseteo()
+	 */
+	@Override
+	public void listaItemsParaReseteo() {
+		Trazador trazadorLlamada = trazador;
+		long inicio = iniciarMedida(trazadorLlamada, OperacionItem.LISTA_ITEMS_PARA_RESETEO);
+		try {
+			int[] sucias = posicionesSucias.extraer();
+			int reseteados;
+			long escritura = empezarEscritura();
+			try {
+				EscritorPorLotes escritor = new EscritorPorLotes(itemDao, tamanyoLoteEscritura);
+				if (sucias == null) {
+					reseteados = itemDao.getTamanyo();
+					escritor.rellenarRango(0, reseteados, ITEM_VACIO);
+				} else {
+					reseteados = sucias.length;
+					escritor.rellenar(sucias, ITEM_VACIO);
+				}
+				escritor.terminar();
+				synchronized (cerrojoIndice) {
+					comprobarSolape(escritura);
+					if (sucias == null) {
+						vaciarIndice();
+					} else {
+						for (int posicion : sucias) {
+							indexar(posicion, ITEM_VACIO);
+						}
+					}
+				}
+			} finally {
+				terminarEscritura();
+			}
+			registrarLlamada(trazadorLlamada, OperacionItem.LISTA_ITEMS_PARA_RESETEO, inicio, reseteados);
+		} catch (RuntimeException e) {
+			anotarFalloParcial();
+			registrarError(trazadorLlamada, OperacionItem.LISTA_ITEMS_PARA_RESETEO, inicio, e);
+			throw e;
+		} finally {
+			terminarMedida(trazadorLlamada);
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito obtenerTodosLosItemsAsync.<br>
+	 * @return Futuro con los items.
+	 * @see com.insags.mockito.tutorial.ItemController#obtenerTodosLosItemsAsync()
+	 */
+	@Override
+	public CompletableFuture<List<String>> obtenerTodosLosItemsAsync() {
+		return ejecutarAsync(new Callable<List<String>>() {
+			@Override
+			public List<String> call() {
+				return obtenerTodosLosItems();
+			}
+		});
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito actualizarItemAsync.<br>
+	 * @param item El nuevo valor del item.
+	 * @param posicion La posici&oacute;n del item.
+	 * @return Futuro que termina al aplicarse la escritura.
+	 * @see com.insags.mockito.tutorial.ItemController#actualizarItemAsync(java.lang.String, java.lang.Integer)
+	 */
+	@Override
+	public CompletableFuture<Void> actualizarItemAsync(final String item, final Integer posicion) {
+		return ejecutarAsync(new Callable<Void>() {
+			@Override
+			public Void call() {
+				actualizarItem(item, posicion);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito resetearItemsEspecificosAsync.<br>
+	 * @param posiciones Las posiciones a resetear.
+	 * @return Futuro que termina al aplicarse el reseteo.
+	 * @see com.insags.mockito.tutorial.ItemController#resetearItemsEspecificosAsync(java.lang.Integer[])
+	 */
+	@Override
+	public CompletableFuture<Void> resetearItemsEspecificosAsync(final Integer[] posiciones) {
+		return ejecutarAsync(new Callable<Void>() {
+			@Override
+			public Void call() {
+				resetearItemsEspecificos(posiciones);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * M&eacute;todo setItemDao.<br>
+	 * @param itemDao El acceso a los items.
+	 */
+	public void setItemDao(ItemDao itemDao) {
+		this.itemDao = itemDao;
+	}
+
+	/**
+	 * M&eacute;todo setTamanyoBloqueLectura.<br>
+	 * @param tamanyoBloqueLectura N&uacute;mero de items por lectura en los recorridos por bloques.
+	 */
+	public void setTamanyoBloqueLectura(int tamanyoBloqueLectura) {
+		if (tamanyoBloqueLectura <= 0) {
+			throw new IllegalArgumentException("Tamanyo de bloque no valido: " + tamanyoBloqueLectura);
+		}
+		this.tamanyoBloqueLectura = tamanyoBloqueLectura;
+	}
+
+	/**
+	 * M&eacute;todo setTamanyoLoteEscritura.<br>
+	 * @param tamanyoLoteEscritura N&uacute;mero m&aacute;ximo de escrituras por lote.
+	 */
+	public void setTamanyoLoteEscritura(int tamanyoLoteEscritura) {
+		if (tamanyoLoteEscritura <= 0) {
+			throw new IllegalArgumentException("Tamanyo de lote no valido: " + tamanyoLoteEscritura);
+		}
+		this.tamanyoLoteEscritura = tamanyoLoteEscritura;
+	}
+
+	/**
+	 * M&eacute;todo setEjecutorReseteo.<br>
+	 * Activa el reseteo en paralelo. Las posiciones repetidas se resetean una
+	 * sola vez y los lotes fallidos se informan todos juntos al terminar. S&oacute;lo
+	 * debe activarse si el DAO admite escrituras concurrentes.
+	 * @param ejecutorReseteo Ejecutor de los lotes, o nulo para resetear en el hilo llamante.
+	 */
+	public void setEjecutorReseteo(Executor ejecutorReseteo) {
+		this.ejecutorReseteo = ejecutorReseteo;
+	}
+
+	/**
+	 * M&eacute;todo setConcurrenciaReseteo.<br>
+	 * @param concurrenciaReseteo N&uacute;mero m&aacute;ximo de lotes de reseteo enviados al DAO a la vez.
+	 */
+	public void setConcurrenciaReseteo(int concurrenciaReseteo) {
+		if (concurrenciaReseteo <= 0) {
+			throw new IllegalArgumentException("Concurrencia no valida: " + concurrenciaReseteo);
+		}
+		this.concurrenciaReseteo = concurrenciaReseteo;
+	}
+
+	/**
+	 * M&eacute;todo setValidadorItems.<br>
+	 * Se valida cada item de actualizarItem y actualizarItems antes de
+	 * escribir nada; los reseteos no se validan.
+	 * @param validadorItems Validador de los items, o nulo para no validarlos.
+	 */
+	public void setValidadorItems(Validator validadorItems) {
+		this.validadorItems = validadorItems;
+	}
+
+	/**
+	 * M&eacute;todo setEjecutorValidacion.<br>
+	 * Las actualizaciones con varios tramos de {@link ValidadorMasivo} se
+	 * validan en paralelo, parando en el primer rechazo. El validador debe
+	 * admitir llamadas concurrentes.
+	 * @param ejecutorValidacion Ejecutor de la validaci&oacute;n, o nulo para validar en el hilo llamante.
+	 */
+	public void setEjecutorValidacion(Executor ejecutorValidacion) {
+		this.ejecutorValidacion = ejecutorValidacion;
+	}
+
+	/**
+	 * M&eacute;todo setRegistroMetricas.<br>
+	 * @param registroMetricas Destino de las m&eacute;tricas, o nulo para no tomarlas.
+	 */
+	public void setRegistroMetricas(RegistroMetricas registroMetricas) {
+		this.registroMetricas = registroMetricas == null ? RegistroMetricas.NINGUNO : registroMetricas;
+	}
+
+	/**
+	 * M&eacute;todo setTrazador.<br>
+	 * Para que las trazas incluyan las llamadas al DAO, &eacute;ste debe ser un
+	 * {@link ItemDaoTrazado} sobre el mismo trazador.
+	 * @param trazador Trazador de las llamadas, o nulo para no trazarlas.
+	 */
+	public void setTrazador(Trazador trazador) {
+		this.trazador = trazador;
+	}
+
+	/**
+	 * M&eacute;todo setCapacidadPosicionesSucias.<br>
+	 * El siguiente listaItemsParaReseteo recorrer&aacute; el cat&aacute;logo completo.
+	 * @param capacidad Posiciones escritas que se siguen entre dos reseteos antes de recurrir a un recorrido completo.
+	 */
+	public void setCapacidadPosicionesSucias(int capacidad) {
+		this.posicionesSucias = new ConjuntoPosicionesSucias(capacidad);
+	}
+
+	/**
+	 * M&eacute;todo setEjecutorAsync.<br>
+	 * @param ejecutorAsync Ejecutor de las llamadas as&iacute;ncronas, o nulo para el de por defecto.
+	 */
+	public void setEjecutorAsync(ExecutorService ejecutorAsync) {
+		this.ejecutorAsync = ejecutorAsync;
+	}
+
+	/**
+	 * M&eacute;todo setTiempoMaximoAsync.<br>
+	 * @param tiempoMaximo Tiempo m&aacute;ximo de cada llamada as&iacute;ncrona; cero para no limitarlo.
+	 * @param unidad Unidad del tiempo.
+	 */
+	public void setTiempoMaximoAsync(long tiempoMaximo, TimeUnit unidad) {
+		if (tiempoMaximo < 0) {
+			throw new IllegalArgumentException("Tiempo maximo no valido: " + tiempoMaximo);
+		}
+		this.tiempoMaximoAsyncNanos = unidad.toNanos(tiempoMaximo);
+	}
+
+	/**
+	 * M&eacute;todo ejecutarAsync.<br>
+	 * Lanza la tarea en el ejecutor as&iacute;ncrono. Si el futuro devuelto se
+	 * cancela o agota su tiempo m&aacute;ximo, se interrumpe la tarea.
+	 * @param tarea La llamada s&iacute;ncrona.
+	 * @return Futuro con su resultado o su excepci&oacute;n, tambi&eacute;n si el ejecutor rechaza la tarea.
+	 */
+	private <T> CompletableFuture<T> ejecutarAsync(final Callable<T> tarea) {
+		final CompletableFuture<T> resultado = new CompletableFuture<T>();
+		ExecutorService ejecutor = ejecutorAsync != null ? ejecutorAsync : EjecutoresPorDefecto.asincrono();
+		final Future<?> ejecucion;
+		try {
+			ejecucion = ejecutor.submit(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						resultado.complete(tarea.call());
+					} catch (Throwable e) {
+						resultado.completeExceptionally(e);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+		final ScheduledFuture<?> vigilancia;
+		if (tiempoMaximoAsyncNanos > 0) {
+			vigilancia = EjecutoresPorDefecto.planificador().schedule(new Runnable() {
+				@Override
+				public void run() {
+					resultado.completeExceptionally(new TimeoutException(
+							"Tiempo maximo superado: " + tiempoMaximoAsyncNanos + " ns"));
+				}
+			}, tiempoMaximoAsyncNanos, TimeUnit.NANOSECONDS);
+		} else {
+			vigilancia = null;
+		}
+		resultado.whenComplete(new BiConsumer<T, Throwable>() {
+			@Override
+			public void accept(T valor, Throwable error) {
+				if (vigilancia != null) {
+					vigilancia.cancel(false);
+				}
+				if (!ejecucion.isDone()) {
+					ejecucion.cancel(true);
+				}
+			}
+		});
+		return resultado;
+	}
+
+	/**
+	 * M&eacute;todo validar.<br>
+	 * Con un {@link ValidadorItems} s&oacute;lo se crean los errores si el
+	 * item es rechazado.
+	 * @param item El item a escribir.
+	 * @param posicion La posici&oacute;n donde se escribir&aacute;.
+	 * @throws ItemNoValidoException Si el item es rechazado.
+	 */
+	private void validar(String item, int posicion) {
+		Validator validador = validadorItems;
+		if (validador == null) {
+			return;
+		}
+		if (validador instanceof ValidadorItems) {
+			if (((ValidadorItems) validador).comprobar(item) == null) {
+				return;
+			}
+		} else if (!validador.supports(String.class)) {
+			return;
+		}
+		Errors errores = new BeanPropertyBindingResult(item, "item");
+		validador.validate(item, errores);
+		if (errores.hasErrors()) {
+			throw new ItemNoValidoException(posicion, errores);
+		}
+	}
+
+	/**
+	 * M&eacute;todo validarLote.<br>
+	 * Valida todos los items de una actualizaci&oacute;n masiva, en paralelo
+	 * si hay ejecutor de validaci&oacute;n y m&aacute;s de un tramo. Con un
+	 * {@link ValidadorItems} con unicidad tambi&eacute;n se rechazan los
+	 * valores repetidos dentro del lote; otros validadores s&oacute;lo ven
+	 * los valores ya guardados.
+	 * @param items Nuevos valores indexados por posici&oacute;n.
+	 * @throws ItemNoValidoException Si alg&uacute;n item es rechazado.
+	 */
+	private void validarLote(Map<Integer, String> items) {
+		Validator validador = validadorItems;
+		if (validador == null) {
+			return;
+		}
+		String[] valores = new String[items.size()];
+		int[] posiciones = new int[items.size()];
+		int i = 0;
+		for (Map.Entry<Integer, String> item : items.entrySet()) {
+			valores[i] = item.getValue();
+			posiciones[i++] = item.getKey();
+		}
+		if (ejecutorValidacion == null || items.size() <= ValidadorMasivo.TAMANYO_TRAMO) {
+			for (int j = 0; j < valores.length; j++) {
+				validar(valores[j], posiciones[j]);
+			}
+		} else {
+			ResultadoValidacion resultado = new ValidadorMasivo(validador, ejecutorValidacion,
+					Runtime.getRuntime().availableProcessors()).validar(valores, 0);
+			int rechazado = resultado.siguienteRechazado(0);
+			if (rechazado >= 0) {
+				validar(valores[rechazado], posiciones[rechazado]);
+			}
+		}
+		if (validador instanceof ValidadorItems) {
+			int repetido = ((ValidadorItems) validador).buscarRepetido(valores);
+			if (repetido >= 0) {
+				Errors errores = new BeanPropertyBindingResult(valores[repetido], "item");
+				errores.reject(ValidadorItems.CODIGO_DUPLICADO, "El item esta repetido en el lote");
+				throw new ItemNoValidoException(posiciones[repetido], errores);
+			}
+		}
+	}
+
+	/**
+	 * M&eacute;todo anotarEscritura.<br>
+	 * Anota una escritura ya aplicada para el siguiente listaItemsParaReseteo,
+	 * salvo si es el valor vac&iacute;o, y la lleva al &iacute;ndice de b&uacute;squeda.
+	 * @param item El valor escrito.
+	 * @param posicion La posici&oacute;n escrita.
+	 */
+	private void anotarEscritura(String item, int posicion) {
+		if (!ITEM_VACIO.equals(item)) {
+			posicionesSucias.marcar(posicion);
+		}
+		indexar(posicion, item);
+	}
+
+	/**
+	 * M&eacute;todo anotarFalloParcial.<br>
+	 * Tras un fallo en una escritura por lotes no se sabe qu&eacute; lotes se
+	 * aplicaron: el siguiente reseteo recorrer&aacute; todo y el &iacute;ndice
+	 * se volver&aacute; a cargar en la siguiente b&uacute;squeda.
+	 */
+	private void anotarFalloParcial() {
+		posicionesSucias.desbordar();
+		synchronized (cerrojoIndice) {
+			descartarIndice();
+		}
+	}
+
+	/**
+	 * M&eacute;todo empezarEscritura.<br>
+	 * Anota una escritura en el DAO que despu&eacute;s se llevar&aacute; al
+	 * &iacute;ndice. Hay que llamar a terminarEscritura al acabar, tambi&eacute;n
+	 * si falla.
+	 * @return Generaci&oacute;n de la escritura, o -1 si ya hab&iacute;a otra en curso.
+	 */
+	private long empezarEscritura() {
+		synchronized (cerrojoIndice) {
+			generacionEscrituras++;
+			return escriturasEnCurso++ > 0 ? -1 : generacionEscrituras;
+		}
+	}
+
+	/**
+	 * M&eacute;todo comprobarSolape.<br>
+	 * Dos escrituras solapadas pueden llegar al DAO en un orden y al
+	 * &iacute;ndice en el contrario, as&iacute; que si la escritura ha
+	 * coincidido con otra se descarta el &iacute;ndice y la siguiente
+	 * b&uacute;squeda lo vuelve a cargar del DAO. Se invoca con cerrojoIndice
+	 * tomado, antes de llevar la escritura al &iacute;ndice.
+	 * @param escritura Generaci&oacute;n devuelta por empezarEscritura.
+	 */
+	private void comprobarSolape(long escritura) {
+		if (escritura != generacionEscrituras) {
+			descartarIndice();
+		}
+	}
+
+	/**
+	 * M&eacute;todo terminarEscritura.<br>
+	 */
+	private void terminarEscritura() {
+		synchronized (cerrojoIndice) {
+			escriturasEnCurso--;
+		}
+	}
+
+	/**
+	 * M&eacute;todo descartarIndice.<br>
+	 * Se invoca con cerrojoIndice tomado.
+	 */
+	private void descartarIndice() {
+		indiceBusqueda = null;
+		escriturasDuranteConstruccion.clear();
+		construyendoIndice = false;
+	}
+
+	/**
+	 * M&eacute;todo indexar.<br>
+	 * Lleva una escritura ya aplicada al &iacute;ndice de b&uacute;squeda, si
+	 * existe o se est&aacute; cargando.
+	 * @param posicion La posici&oacute;n escrita.
+	 * @param item El valor escrito.
+	 */
+	private void indexar(int posicion, String item) {
+		if (indiceBusqueda == null && !construyendoIndice) {
+			return;
+		}
+		synchronized (cerrojoIndice) {
+			if (indiceBusqueda != null) {
+				indiceBusqueda.actualizar(posicion, item);
+			} else if (construyendoIndice) {
+				escriturasDuranteConstruccion.add(new AbstractMap.SimpleImmutableEntry<Integer, String>(posicion, item));
+			}
+		}
+	}
+
+	/**
+	 * M&eacute;todo vaciarIndice.<br>
+	 * Tras resetear todo el cat&aacute;logo ning&uacute;n item es buscable.
+	 */
+	private void vaciarIndice() {
+		synchronized (cerrojoIndice) {
+			if (indiceBusqueda != null) {
+				indiceBusqueda = new IndiceItems();
+			}
+		}
+	}
+
+	/**
+	 * M&eacute;todo indiceBusqueda.<br>
+	 * Carga el &iacute;ndice recorriendo el DAO la primera vez. Las escrituras
+	 * que llegan durante la carga se aplican al terminarla.
+	 * @return El &iacute;ndice de b&uacute;squeda.
+	 */
+	private IndiceItems indiceBusqueda() {
+		IndiceItems indice = indiceBusqueda;
+		if (indice != null) {
+			return indice;
+		}
+		synchronized (this) {
+			if (indiceBusqueda != null) {
+				return indiceBusqueda;
+			}
+			synchronized (cerrojoIndice) {
+				construyendoIndice = true;
+			}
+			indice = new IndiceItems();
+			try (CursorItems cursor = itemDao.abrirCursor(tamanyoBloqueLectura)) {
+				for (int posicion = 0; cursor.hasNext(); posicion++) {
+					indice.actualizar(posicion, cursor.next());
+				}
+			} catch (RuntimeException e) {
+				synchronized (cerrojoIndice) {
+					escriturasDuranteConstruccion.clear();
+					construyendoIndice = false;
+				}
+				throw e;
+			}
+			synchronized (cerrojoIndice) {
+				if (construyendoIndice) {
+					for (Map.Entry<Integer, String> escritura : escriturasDuranteConstruccion) {
+						indice.actualizar(escritura.getKey(), escritura.getValue());
+					}
+					escriturasDuranteConstruccion.clear();
+					construyendoIndice = false;
+					indiceBusqueda = indice;
+				}
+			}
+			return indice;
+		}
+	}
+
+	/**
+	 * M&eacute;todo ejecutorReseteo.<br>
+	 * @param trazador Trazador de la llamada en curso, o nulo.
+	 * @return El ejecutor de reseteo, que con trazador lleva la traza del llamante a sus tareas.
+	 */
+	private Executor ejecutorReseteo(Trazador trazador) {
+		return trazador == null ? ejecutorReseteo : trazador.propagar(ejecutorReseteo);
+	}
+
+	/**
+	 * M&eacute;todo iniciarMedida.<br>
+	 * Cada operaci&oacute;n lee el campo trazador una sola vez y pasa ese
+	 * valor a todos los pasos de la medida, para que un setTrazador
+	 * concurrente no deje abierta la traza del hilo.
+	 * @param trazador Trazador le&iacute;do al empezar la llamada, o nulo.
+	 * @param operacion La operaci&oacute;n que empieza.
+	 * @return Instante de inicio, o cero si no se toman m&eacute;tricas.
+	 */
+	private long iniciarMedida(Trazador trazador, OperacionItem operacion) {
+		if (trazador != null) {
+			trazador.abrir(operacion);
+		}
+		return registroMetricas == RegistroMetricas.NINGUNO ? 0 : System.nanoTime();
+	}
+
+	/**
+	 * M&eacute;todo terminarMedida.<br>
+	 * Se llama en el finally de cada operaci&oacute;n, para que la traza se
+	 * cierre aunque la llamada salga con un Error.
+	 * @param trazador Trazador pasado a iniciarMedida.
+	 */
+	private void terminarMedida(Trazador trazador) {
+		if (trazador != null) {
+			trazador.cerrar();
+		}
+	}
+
+	/**
+	 * M&eacute;todo registrarLlamada.<br>
+	 * @param trazador Trazador pasado a iniciarMedida.
+	 * @param operacion La operaci&oacute;n.
+	 * @param inicio Instante de inicio devuelto por iniciarMedida.
+	 * @param items N&uacute;mero de items procesados.
+	 */
+	private void registrarLlamada(Trazador trazador, OperacionItem operacion, long inicio, long items) {
+		if (trazador != null) {
+			trazador.resultado(items, null);
+		}
+		if (registroMetricas != RegistroMetricas.NINGUNO) {
+			registroMetricas.registrarLlamada(operacion, System.nanoTime() - inicio, items);
+		}
+	}
+
+	/**
+	 * M&eacute;todo registrarError.<br>
+	 * @param trazador Trazador pasado a iniciarMedida.
+	 * @param operacion La operaci&oacute;n.
+	 * @param inicio Instante de inicio devuelto por iniciarMedida.
+	 * @param error La excepci&oacute;n.
+	 */
+	private void registrarError(Trazador trazador, OperacionItem operacion, long inicio, RuntimeException error) {
+		if (trazador != null) {
+			trazador.resultado(0, error);
+		}
+		if (registroMetricas != RegistroMetricas.NINGUNO) {
+			registroMetricas.registrarError(operacion, System.nanoTime() - inicio, error);
+		}
+	}
+
+}
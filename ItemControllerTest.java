@@ -11,7 +11,26 @@ import static org.junit.Assert.fail;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.junit.Assert;
 import org.junit.Before;
@@ -27,8 +46,13 @@ import org.mockito.MockitoAnnotations;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.mockito.stubbing.Answer;
+import org.springframework.validation.Errors;
+import org.springframework.validation.Validator;
 
 import com.insags.mockito.tutorial.impl.ItemControllerImpl;
+import com.insags.mockito.tutorial.impl.ItemDaoMemoria;
+import com.insags.mockito.tutorial.impl.RegistroMetricasEnMemoria;
+import com.insags.mockito.tutorial.impl.ValidadorItems;
 
 // [...]
 public class ItemControllerTest {
@@ -271,7 +295,7 @@ public class ItemControllerTest {
 	 * 
 	 * - Se invoca el stub generado. 
 	 * - No se ha lanzado excepcin alguna. 
-	 * - Comprobar que el nmero de actualizaciones llevas a cabo son 2.
+	 * - Comprobar que se ha enviado un nico lote con las 2 actualizaciones.
 	 */
 	@Test
 	public void comprobarReseteoExitosoDeItemsVerificandoNumeroEstrictoDeReseteos() {
@@ -286,7 +310,8 @@ public class ItemControllerTest {
 		}
 		
 		// Assert
-		Mockito.verify(itemDao, Mockito.times(2)).actualizarItem(Matchers.anyString(), Matchers.anyInt());
+		Mockito.verify(itemDao, Mockito.times(1)).rellenarItems(new int[] { 2, 3 }, EMPTY_STRING);
+		Mockito.verify(itemDao, Mockito.never()).actualizarItem(Matchers.anyString(), Matchers.anyInt());
 	}
 
 	/**
@@ -298,23 +323,688 @@ public class ItemControllerTest {
 	 * 
 	 * - Se invoca el stub generado. 
 	 * - No se ha lanzado excepcin alguna. 
-	 * - Se ha invocado el mtodo obtenerTodosLosItems una sola vez. 
-	 * - Se ha invocado el mtodo actualizarItem tres veces.
+	 * - Se ha invocado el mtodo getTamanyo una sola vez, sin pedir una
+	 * instantnea ni los items. 
+	 * - Se han enviado las tres posiciones en un solo rellenado.
 	 */
 	@Test
 	public void comprobarListadoItemsParaReseteoConControlEstrictoIvocaciones() {
 		// ARRANGE
-		String[] items = { "uno", "dos", "tres" };
-		
-		Mockito.when(itemDao.obtenerTodosLosItems()).thenReturn(items);
+		Mockito.when(itemDao.getTamanyo()).thenReturn(3);
 		
 		try {
 			this.itemController.listaItemsParaReseteo();
 		} catch(Exception e) {
 			fail("No debe retornar excepciones");
 		}
-//		InOrder inOrder = 
 		
+		// Assert
+		InOrder inOrder = Mockito.inOrder(itemDao);
+		inOrder.verify(itemDao, Mockito.times(1)).getTamanyo();
+		inOrder.verify(itemDao, Mockito.times(1)).rellenarItems(new int[] { 0, 1, 2 }, "");
+		Mockito.verify(itemDao, Mockito.never()).obtenerInstantanea();
+		Mockito.verify(itemDao, Mockito.never()).obtenerTodosLosItems();
+		Mockito.verify(itemDao, Mockito.never()).actualizarItem(Matchers.anyString(), Matchers.anyInt());
+	}
+
+	/**
+	 * Mtodo para probar que el recorrido de los items en flujo se realiza
+	 * a travs del cursor del DAO, sin pasar por el array completo.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Se abre el cursor con el tamao de bloque configurado. 
+	 * - No se invoca obtenerTodosLosItems. 
+	 * - Al cerrar el flujo se cierra el cursor.
+	 */
+	@Test
+	public void comprobarRecorridoEnFlujoDeItemsPorCursor() {
+		final Iterator<String> items = Arrays.asList("Peonza", "Mueca").iterator();
+		final boolean[] cerrado = { false };
+		CursorItems cursor = new CursorItems() {
+			@Override
+			public boolean hasNext() {
+				return items.hasNext();
+			}
+
+			@Override
+			public String next() {
+				return items.next();
+			}
+
+			@Override
+			public void close() {
+				cerrado[0] = true;
+			}
+		};
+		((ItemControllerImpl) itemController).setTamanyoBloqueLectura(10);
+		
+		Mockito.when(itemDao.abrirCursor(10)).thenReturn(cursor);
+		List<String> respuesta;
+		try (Stream<String> flujo = itemController.obtenerItemsEnFlujo()) {
+			respuesta = flujo.collect(Collectors.toList());
+		}
+		
+		// Assert
+		Mockito.verify(itemDao).abrirCursor(10);
+		Mockito.verify(itemDao, Mockito.never()).obtenerTodosLosItems();
+		assertThat(respuesta, contains("Peonza", "Mueca"));
+		Assert.assertTrue(cerrado[0]);
+	}
+
+	/**
+	 * Mtodo para probar que la obtencin de todos los items devuelve una
+	 * vista de slo lectura sobre el array del DAO.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Se invoca el stub generado. 
+	 * - La lista refleja el array devuelto sin copiarlo. 
+	 * - Se ha lanzado la excepcin UnsupportedOperationException al modificarla.
+	 */
+	@Test
+	public void comprobarObtencionDeTodosLosItemsComoVistaDeSoloLectura() {
+		String[] listaRespuesta = { "Peonza", "Mueca" };
+		
+		Mockito.when(itemDao.obtenerTodosLosItems()).thenReturn(listaRespuesta);
+		List<String> respuesta = itemController.obtenerTodosLosItems();
+		listaRespuesta[1] = "Cometa";
+		
+		// Assert
+		Mockito.verify(itemDao).obtenerTodosLosItems();
+		assertThat(respuesta, contains("Peonza", "Cometa"));
+		try {
+			respuesta.set(0, "Yoyo");
+			fail("La lista debe ser de slo lectura");
+		} catch (UnsupportedOperationException e) {
+			Assert.assertEquals("Peonza", respuesta.get(0));
+		}
+	}
+
+	/**
+	 * Mtodo para probar el caso en el que el reseteo se enva en varios
+	 * lotes y uno de ellos falla.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Se envan todos los lotes aunque falle uno. 
+	 * - Se ha lanzado ActualizacionPorLotesException con el lote fallido y su causa.
+	 */
+	@Test
+	public void comprobarReseteoPorLotesInformandoDelLoteFallido() {
+		// ARRANGE
+		Integer[] posiciones = { 1, 2, 3, 4, 5 };
+		((ItemControllerImpl) itemController).setTamanyoLoteEscritura(2);
+		
+		Mockito.doThrow(new ArrayIndexOutOfBoundsException("Excepcin esperada")).when(itemDao).rellenarItems(new int[] { 3, 4 }, "");
+		try {
+			itemController.resetearItemsEspecificos(posiciones);
+			fail("Debe informar del lote fallido");
+		} catch (ActualizacionPorLotesException e) {
+			// Assert
+			Assert.assertEquals(1, e.getErroresLote().size());
+			Assert.assertEquals(1, e.getErroresLote().get(0).getNumeroLote());
+			Assert.assertArrayEquals(new int[] { 3, 4 }, e.getErroresLote().get(0).getPosiciones());
+			Assert.assertTrue(e.getCause() instanceof ArrayIndexOutOfBoundsException);
+		}
+		Mockito.verify(itemDao, Mockito.times(3)).rellenarItems(Matchers.any(int[].class), Matchers.eq(""));
+	}
+
+	/**
+	 * Mtodo para probar el reseteo en paralelo con posiciones repetidas y
+	 * un lote fallido.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Cada posicin se resetea una sola vez. 
+	 * - Se envan todos los lotes aunque falle uno. 
+	 * - Se ha lanzado ActualizacionPorLotesException con el lote fallido.
+	 */
+	@Test
+	public void comprobarReseteoParaleloSinDuplicadosAgregandoErrores() throws Exception {
+		// ARRANGE
+		Integer[] posiciones = { 4, 1, 3, 1, 2, 4 };
+		ExecutorService ejecutor = Executors.newFixedThreadPool(2);
+		ItemControllerImpl controlador = (ItemControllerImpl) itemController;
+		controlador.setEjecutorReseteo(ejecutor);
+		controlador.setConcurrenciaReseteo(2);
+		controlador.setTamanyoLoteEscritura(2);
+		
+		Mockito.doThrow(new ArrayIndexOutOfBoundsException("Excepcin esperada")).when(itemDao).rellenarItems(new int[] { 1, 2 }, "");
+		try {
+			itemController.resetearItemsEspecificos(posiciones);
+			fail("Debe informar del lote fallido");
+		} catch (ActualizacionPorLotesException e) {
+			// Assert
+			Assert.assertEquals(1, e.getErroresLote().size());
+			Assert.assertArrayEquals(new int[] { 1, 2 }, e.getErroresLote().get(0).getPosiciones());
+		} finally {
+			ejecutor.shutdown();
+		}
+		Mockito.verify(itemDao).rellenarItems(new int[] { 1, 2 }, "");
+		Mockito.verify(itemDao).rellenarItems(new int[] { 3, 4 }, "");
+		Mockito.verifyNoMoreInteractions(itemDao);
+	}
+
+	/**
+	 * Mtodo para probar que se toman mtricas de las llamadas correctas y de
+	 * las fallidas, separando los errores por tipo de excepcin.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Se cuentan las llamadas y los items de cada operacin. 
+	 * - El error NullPointerException se cuenta en su operacin. 
+	 * - Todas las llamadas tienen su latencia en el histograma.
+	 */
+	@Test
+	public void comprobarRegistroDeMetricasDeLlamadasYErrores() {
+		RegistroMetricasEnMemoria registro = new RegistroMetricasEnMemoria();
+		((ItemControllerImpl) itemController).setRegistroMetricas(registro);
+		
+		Mockito.when(itemDao.obtenerTodosLosItems()).thenReturn(new String[] { "Peonza", "Mueca" })
+				.thenThrow(NullPointerException.class);
+		itemController.obtenerTodosLosItems();
+		itemController.actualizarItem("item", 1);
+		try {
+			itemController.obtenerTodosLosItems();
+			fail("Debe propagar la excepcin del DAO");
+		} catch (NullPointerException e) {
+			// Assert
+			Assert.assertEquals(2, registro.getLlamadas(OperacionItem.OBTENER_TODOS_LOS_ITEMS));
+			Assert.assertEquals(2, registro.getItems(OperacionItem.OBTENER_TODOS_LOS_ITEMS));
+			Assert.assertEquals(Long.valueOf(1), registro.getErrores(OperacionItem.OBTENER_TODOS_LOS_ITEMS).get(NullPointerException.class));
+			Assert.assertEquals(1, registro.getLlamadas(OperacionItem.ACTUALIZAR_ITEM));
+			Assert.assertTrue(registro.getErrores(OperacionItem.ACTUALIZAR_ITEM).isEmpty());
+			Assert.assertEquals(2, registro.getLatencias(OperacionItem.OBTENER_TODOS_LOS_ITEMS).getTotal());
+		}
+	}
+
+	/**
+	 * Mtodo para probar que, tras un primer reseteo completo, el listado de
+	 * items para reseteo slo resetea las posiciones escritas desde entonces.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Se pide el tamao del catlogo una sola vez, en el primer reseteo. 
+	 * - El segundo reseteo slo enva la posicin escrita con un valor no vaco.
+	 */
+	@Test
+	public void comprobarListadoItemsParaReseteoIncrementalTrasEscrituras() {
+		// ARRANGE
+		Mockito.when(itemDao.getTamanyo()).thenReturn(3);
+		this.itemController.listaItemsParaReseteo();
+		this.itemController.actualizarItem("Peonza", 1);
+		this.itemController.actualizarItem("", 2);
+		this.itemController.listaItemsParaReseteo();
+		
+		// Assert
+		Mockito.verify(itemDao, Mockito.times(1)).getTamanyo();
+		Mockito.verify(itemDao).rellenarItems(new int[] { 0, 1, 2 }, "");
+		Mockito.verify(itemDao).rellenarItems(new int[] { 1 }, "");
+	}
+
+	/**
+	 * Mtodo para probar que las versiones asncronas terminan con el mismo
+	 * resultado y la misma excepcin que las sncronas.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - La escritura asncrona invoca el stub generado. 
+	 * - La lectura asncrona fallida termina con NullPointerException como causa.
+	 */
+	@Test
+	public void comprobarLlamadasAsincronasConPropagacionDeExcepciones() throws Exception {
+		Mockito.when(itemDao.obtenerTodosLosItems()).thenThrow(NullPointerException.class);
+		
+		itemController.actualizarItemAsync("item", 1).get(5, TimeUnit.SECONDS);
+		try {
+			itemController.obtenerTodosLosItemsAsync().get(5, TimeUnit.SECONDS);
+			fail("Debe propagar la excepcin del DAO");
+		} catch (ExecutionException e) {
+			// Assert
+			Assert.assertTrue(e.getCause() instanceof NullPointerException);
+		}
+		Mockito.verify(itemDao).actualizarItem("item", 1);
+	}
+
+	/**
+	 * Mtodo para probar que si el ejecutor asncrono rechaza la tarea la
+	 * llamada devuelve un futuro fallido en vez de lanzar la excepcin.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - El futuro termina con RejectedExecutionException como causa. 
+	 * - No se invoca al DAO.
+	 */
+	@Test
+	public void comprobarFuturoFallidoPorRechazoDelEjecutorAsincrono() throws Exception {
+		ExecutorService ejecutor = Executors.newSingleThreadExecutor();
+		ejecutor.shutdown();
+		((ItemControllerImpl) itemController).setEjecutorAsync(ejecutor);
+		
+		CompletableFuture<Void> futuro = itemController.actualizarItemAsync("item", 1);
+		
+		// Assert
+		try {
+			futuro.get(5, TimeUnit.SECONDS);
+			fail("Debe fallar por el rechazo del ejecutor");
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+		}
+		Mockito.verifyZeroInteractions(itemDao);
+	}
+
+	/**
+	 * Mtodo para probar que una llamada asncrona que supera el tiempo
+	 * mximo termina con TimeoutException y se interrumpe.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - El futuro termina con TimeoutException como causa. 
+	 * - La llamada al DAO se ha interrumpido.
+	 */
+	@Test
+	public void comprobarLlamadaAsincronaInterrumpidaPorTiempoMaximo() throws Exception {
+		final CountDownLatch interrumpida = new CountDownLatch(1);
+		Mockito.when(itemDao.obtenerTodosLosItems()).thenAnswer(new Answer<String[]>() {
+			@Override
+			public String[] answer(InvocationOnMock invocation) throws Throwable {
+				try {
+					Thread.sleep(10000);
+				} catch (InterruptedException e) {
+					interrumpida.countDown();
+				}
+				return new String[0];
+			}
+		});
+		((ItemControllerImpl) itemController).setTiempoMaximoAsync(50, TimeUnit.MILLISECONDS);
+		
+		try {
+			itemController.obtenerTodosLosItemsAsync().get(5, TimeUnit.SECONDS);
+			fail("Debe superar el tiempo mximo");
+		} catch (ExecutionException e) {
+			// Assert
+			Assert.assertTrue(e.getCause() instanceof TimeoutException);
+		}
+		Assert.assertTrue(interrumpida.await(5, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Mtodo para probar que la publicacin de items respeta la demanda del
+	 * suscriptor y libera el cursor al cancelar.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Slo se leen del cursor los items pedidos. 
+	 * - Al cancelar se cierra el cursor y no se completa la publicacin.
+	 */
+	@Test
+	public void comprobarPublicacionDeItemsConDemandaYCancelacion() throws Exception {
+		final Iterator<String> items = Arrays.asList("Peonza", "Mueca", "Cometa").iterator();
+		final AtomicInteger leidos = new AtomicInteger();
+		final CountDownLatch cerrado = new CountDownLatch(1);
+		Mockito.when(itemDao.abrirCursor(Matchers.anyInt())).thenReturn(new CursorItems() {
+			@Override
+			public boolean hasNext() {
+				return items.hasNext();
+			}
+
+			@Override
+			public String next() {
+				leidos.incrementAndGet();
+				return items.next();
+			}
+
+			@Override
+			public void close() {
+				cerrado.countDown();
+			}
+		});
+		final List<String> recibidos = new CopyOnWriteArrayList<String>();
+		final boolean[] completada = { false };
+		
+		itemController.publicarItems().subscribe(new Flow.Subscriber<String>() {
+			private Flow.Subscription suscripcion;
+
+			@Override
+			public void onSubscribe(Flow.Subscription suscripcion) {
+				this.suscripcion = suscripcion;
+				suscripcion.request(1);
+			}
+
+			@Override
+			public void onNext(String item) {
+				recibidos.add(item);
+				if (recibidos.size() < 2) {
+					suscripcion.request(1);
+				} else {
+					suscripcion.cancel();
+				}
+			}
+
+			@Override
+			public void onError(Throwable error) {
+				fail("No debe fallar");
+			}
+
+			@Override
+			public void onComplete() {
+				completada[0] = true;
+			}
+		});
+		
+		// Assert
+		Assert.assertTrue(cerrado.await(5, TimeUnit.SECONDS));
+		assertThat(recibidos, contains("Peonza", "Mueca"));
+		Assert.assertEquals(2, leidos.get());
+		Assert.assertFalse(completada[0]);
+	}
+
+	/**
+	 * Mtodo para probar que la obtencin de una pgina de items slo pide
+	 * al DAO esa pgina.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Se invoca obtenerItems con el mismo rango. 
+	 * - No se invoca obtenerTodosLosItems.
+	 */
+	@Test
+	public void comprobarObtencionDePaginaDeItemsSinLeerElCatalogo() {
+		Mockito.when(itemDao.obtenerItems(50, 2)).thenReturn(new String[] { "Peonza", "Mueca" });
+		
+		List<String> respuesta = itemController.obtenerItems(50, 2);
+		
+		// Assert
+		Mockito.verify(itemDao).obtenerItems(50, 2);
+		Mockito.verify(itemDao, Mockito.never()).obtenerTodosLosItems();
+		assertThat(respuesta, contains("Peonza", "Mueca"));
+	}
+
+	/**
+	 * Mtodo para probar que las bsquedas cargan el ndice una sola vez
+	 * desde el cursor del DAO y reflejan despus las escrituras del
+	 * controlador.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - El cursor se abre una nica vez. 
+	 * - Las bsquedas devuelven las posiciones en orden ascendente. 
+	 * - Una actualizacin y un reseteo posteriores se ven en la siguiente bsqueda.
+	 */
+	@Test
+	public void comprobarBusquedaPorPrefijoYSubcadenaConIndiceIncremental() {
+		final Iterator<String> items = Arrays.asList("Peonza", "Mueca", "Pelota", "").iterator();
+		Mockito.when(itemDao.abrirCursor(Matchers.anyInt())).thenReturn(new CursorItems() {
+			@Override
+			public boolean hasNext() {
+				return items.hasNext();
+			}
+
+			@Override
+			public String next() {
+				return items.next();
+			}
+
+			@Override
+			public void close() {
+			}
+		});
+		
+		int[] porPrefijo = itemController.buscarPorPrefijo("Pe");
+		int[] porSubcadena = itemController.buscarPorSubcadena("ota");
+		itemController.actualizarItem("Peluche", 3);
+		itemController.resetearItemsEspecificos(new Integer[] { 0 });
+		
+		// Assert
+		Assert.assertArrayEquals(new int[] { 0, 2 }, porPrefijo);
+		Assert.assertArrayEquals(new int[] { 2 }, porSubcadena);
+		Assert.assertArrayEquals(new int[] { 2, 3 }, itemController.buscarPorPrefijo("Pe"));
+		Assert.assertArrayEquals(new int[] { 1, 2, 3 }, itemController.buscarPorSubcadena("e"));
+		Assert.assertArrayEquals(new int[] { 3 }, itemController.buscarPorSubcadena("luch"));
+		Mockito.verify(itemDao, Mockito.times(1)).abrirCursor(Matchers.anyInt());
+	}
+
+	/**
+	 * Mtodo para probar que un item rechazado por el validador no llega
+	 * al DAO y que en una actualizacin masiva no se escribe ninguno.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Se lanza ItemNoValidoException con la posicin y el cdigo de la regla. 
+	 * - No se invoca al DAO.
+	 */
+	@Test
+	public void comprobarRechazoDeItemsNoValidosAntesDeEscribir() {
+		ValidadorItems validador = new ValidadorItems();
+		validador.setLongitud(1, 10);
+		((ItemControllerImpl) itemController).setValidadorItems(validador);
+		Map<Integer, String> items = new LinkedHashMap<Integer, String>();
+		items.put(0, "Peonza");
+		items.put(1, "Mueca de trapo");
+		
+		try {
+			itemController.actualizarItems(items);
+			fail("Debe rechazar el item");
+		} catch (ItemNoValidoException e) {
+			// Assert
+			Assert.assertEquals(1, e.getPosicion());
+			Assert.assertEquals(ValidadorItems.CODIGO_LONGITUD, e.getErrores().getGlobalError().getCode());
+		}
+		itemController.actualizarItem("Pelota", 2);
+		Mockito.verify(itemDao).actualizarItem("Pelota", 2);
+		Mockito.verify(itemDao, Mockito.never()).actualizarItems(Matchers.<Map<Integer, String>> any());
+	}
+
+	/**
+	 * Mtodo para probar que un validador que falla en una tarea de la
+	 * validacin en paralelo propaga su excepcin tal cual y no se trata
+	 * como una escritura a medias.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Se lanza la excepcin del validador, no una CompletionException. 
+	 * - No se invoca al DAO. 
+	 * - El siguiente reseteo sigue usando las posiciones escritas en vez de recorrer el catlogo.
+	 */
+	@Test
+	public void comprobarFalloDelValidadorEnParaleloSinFalloParcial() {
+		final IllegalStateException fallo = new IllegalStateException("Excepcin esperada");
+		ItemControllerImpl controlador = (ItemControllerImpl) itemController;
+		controlador.setValidadorItems(new Validator() {
+			@Override
+			public boolean supports(Class<?> clase) {
+				return String.class.equals(clase);
+			}
+
+			@Override
+			public void validate(Object objeto, Errors errores) {
+				if ("Roto".equals(objeto)) {
+					throw fallo;
+				}
+			}
+		});
+		ExecutorService ejecutor = Executors.newFixedThreadPool(2);
+		controlador.setEjecutorValidacion(ejecutor);
+		Map<Integer, String> items = new LinkedHashMap<Integer, String>();
+		// Varios tramos de validacin, para que se valide en paralelo
+		for (int i = 0; i < 3 * 4096; i++) {
+			items.put(i, i == 2 * 4096 + 1 ? "Roto" : "Peonza");
+		}
+		itemController.listaItemsParaReseteo();
+		
+		try {
+			itemController.actualizarItems(items);
+			fail("Debe propagar la excepcin del validador");
+		} catch (IllegalStateException e) {
+			// Assert
+			Assert.assertSame(fallo, e);
+		} finally {
+			ejecutor.shutdown();
+		}
+		itemController.listaItemsParaReseteo();
+		Mockito.verify(itemDao, Mockito.never()).actualizarItems(Matchers.<Map<Integer, String>> any());
+		Mockito.verify(itemDao, Mockito.times(1)).getTamanyo();
+	}
+
+	/**
+	 * Mtodo para probar que con la regla de unicidad una actualizacin
+	 * masiva no puede escribir el mismo valor en dos posiciones, aunque
+	 * ninguno exista todava.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Se lanza ItemNoValidoException con la posicin repetida y el cdigo de duplicado. 
+	 * - No se invoca al DAO.
+	 */
+	@Test
+	public void comprobarRechazoDeItemsRepetidosEnElLote() {
+		ValidadorItems validador = new ValidadorItems();
+		validador.setValoresExistentes(new Predicate<String>() {
+			@Override
+			public boolean test(String item) {
+				return false;
+			}
+		});
+		((ItemControllerImpl) itemController).setValidadorItems(validador);
+		Map<Integer, String> items = new LinkedHashMap<Integer, String>();
+		items.put(0, "Peonza");
+		items.put(1, "Cometa");
+		items.put(2, "Peonza");
+		
+		try {
+			itemController.actualizarItems(items);
+			fail("Debe rechazar el item repetido");
+		} catch (ItemNoValidoException e) {
+			// Assert
+			Assert.assertEquals(2, e.getPosicion());
+			Assert.assertEquals(ValidadorItems.CODIGO_DUPLICADO, e.getErrores().getGlobalError().getCode());
+		}
+		Mockito.verify(itemDao, Mockito.never()).actualizarItems(Matchers.<Map<Integer, String>> any());
+	}
+
+	/**
+	 * Mtodo para probar que el reseteo de un rango se enva al DAO en
+	 * lotes de posiciones primitivas.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Cada lote cubre un tramo consecutivo del rango. 
+	 * - No se enva ningn mapa de posiciones.
+	 */
+	@Test
+	public void comprobarReseteoDeRangoPorLotesPrimitivos() {
+		((ItemControllerImpl) itemController).setTamanyoLoteEscritura(3);
+		
+		itemController.resetearRango(5, 12);
+		
+		// Assert
+		Mockito.verify(itemDao).rellenarItems(new int[] { 5, 6, 7 }, "");
+		Mockito.verify(itemDao).rellenarItems(new int[] { 8, 9, 10 }, "");
+		Mockito.verify(itemDao).rellenarItems(new int[] { 11 }, "");
+		Mockito.verify(itemDao, Mockito.never()).actualizarItems(Matchers.anyMapOf(Integer.class, String.class));
+	}
+
+	/**
+	 * Mtodo para probar el reseteo por lotes de un rango que acaba en la
+	 * ltima posicin representable.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Se envan los lotes del rango y el reseteo termina, sin desbordar
+	 * el inicio del lote siguiente.
+	 */
+	@Test
+	public void comprobarReseteoDeRangoHastaLaUltimaPosicion() {
+		((ItemControllerImpl) itemController).setTamanyoLoteEscritura(3);
+		
+		itemController.resetearRango(Integer.MAX_VALUE - 4, Integer.MAX_VALUE);
+		
+		// Assert
+		Mockito.verify(itemDao).rellenarItems(new int[] { Integer.MAX_VALUE - 4, Integer.MAX_VALUE - 3, Integer.MAX_VALUE - 2 }, "");
+		Mockito.verify(itemDao).rellenarItems(new int[] { Integer.MAX_VALUE - 1 }, "");
+		Mockito.verify(itemDao, Mockito.times(2)).rellenarItems(Matchers.any(int[].class), Matchers.anyString());
+	}
+
+	/**
+	 * Mtodo para probar el reseteo en paralelo de posiciones concretas con
+	 * un tamao de lote que desborda el clculo del nmero de lotes en int.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Todas las posiciones se envan al DAO en un nico lote.
+	 */
+	@Test
+	public void comprobarReseteoParaleloConTamaoDeLoteMaximo() {
+		ExecutorService ejecutor = Executors.newFixedThreadPool(2);
+		ItemControllerImpl controlador = (ItemControllerImpl) itemController;
+		controlador.setEjecutorReseteo(ejecutor);
+		controlador.setConcurrenciaReseteo(2);
+		controlador.setTamanyoLoteEscritura(Integer.MAX_VALUE);
+		
+		try {
+			itemController.resetearItemsEspecificos(new Integer[] { 0, 1, 2, 3, 4 });
+		} finally {
+			ejecutor.shutdown();
+		}
+		
+		// Assert
+		Mockito.verify(itemDao).rellenarItems(new int[] { 0, 1, 2, 3, 4 }, "");
+		Mockito.verifyNoMoreInteractions(itemDao);
+	}
+
+	/**
+	 * Mtodo para probar que dos escrituras solapadas sobre la misma posicin
+	 * no dejan el ndice de bsqueda distinto del DAO, aunque lleguen al
+	 * ndice en orden contrario.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - El DAO se queda con la segunda escritura aplicada. 
+	 * - La bsqueda encuentra ese valor y no el de la primera escritura.
+	 */
+	@Test
+	public void comprobarIndiceIgualAlDaoTrasEscriturasSolapadas() throws Exception {
+		final CountDownLatch aplicada = new CountDownLatch(1);
+		final CountDownLatch continuar = new CountDownLatch(1);
+		ItemDaoMemoria memoria = new ItemDaoMemoria() {
+			@Override
+			public void actualizarItem(String item, int posicion) {
+				super.actualizarItem(item, posicion);
+				if ("Peonza".equals(item)) {
+					aplicada.countDown();
+					try {
+						continuar.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}
+		};
+		memoria.actualizarItem("Pelota", 0);
+		final ItemControllerImpl controlador = new ItemControllerImpl();
+		controlador.setItemDao(memoria);
+		controlador.buscarPorPrefijo("Pe");
+		ExecutorService ejecutor = Executors.newSingleThreadExecutor();
+		try {
+			Future<?> primera = ejecutor.submit(new Runnable() {
+				@Override
+				public void run() {
+					controlador.actualizarItem("Peonza", 0);
+				}
+			});
+			Assert.assertTrue(aplicada.await(5, TimeUnit.SECONDS));
+			controlador.actualizarItem("Cometa", 0);
+			continuar.countDown();
+			primera.get(5, TimeUnit.SECONDS);
+		} finally {
+			ejecutor.shutdown();
+		}
+		
+		// Assert
+		Assert.assertEquals("Cometa", memoria.obtenerItem(0));
+		Assert.assertArrayEquals(new int[] { 0 }, controlador.buscarPorPrefijo("Co"));
+		Assert.assertArrayEquals(new int[0], controlador.buscarPorPrefijo("Pe"));
 	}
 
 }
@@ -0,0 +1,186 @@
+package com.insags.mockito.tutorial;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Interfaz ItemDao.<br>
+ * Acceso a los items almacenados, identificados por su posici&oacute;n.<br>
+ * @author INSA
+ */
+public interface ItemDao {
+
+	/** Tama&ntilde;o de bloque usado cuando no se indica otro. */
+	int TAMANYO_BLOQUE_POR_DEFECTO = 1024;
+
+	/**
+	 * M&eacute;todo abrirCursor.<br>
+	 * Abre un cursor sobre todos los items que los lee del almacenamiento en
+	 * bloques del tama&ntilde;o indicado.
+	 * @param tamanyoBloque N&uacute;mero m&aacute;ximo de items le&iacute;dos en cada acceso.
+	 * @return El cursor, que debe cerrarse al terminar.
+	 */
+	CursorItems abrirCursor(int tamanyoBloque);
+
+	/**
+	 * M&eacute;todo obtenerInstantanea.<br>
+	 * La implementaci&oacute;n por defecto copia el cat&aacute;logo; las que
+	 * guardan versiones inmutables deben sobrescribirlo para no copiar nada.
+	 * @return Instant&aacute;nea inmutable del cat&aacute;logo vigente.
+	 */
+	default InstantaneaItems obtenerInstantanea() {
+		return InstantaneaItems.sobreArray(obtenerTodosLosItems());
+	}
+
+	/**
+	 * M&eacute;todo getTamanyo.<br>
+	 * La implementaci&oacute;n por defecto toma una instant&aacute;nea; las
+	 * que llevan la cuenta de sus posiciones deben sobrescribirlo para no
+	 * copiar el cat&aacute;logo.
+	 * @return N&uacute;mero de posiciones del cat&aacute;logo vigente.
+	 */
+	default int getTamanyo() {
+		return obtenerInstantanea().getTamanyo();
+	}
+
+	/**
+	 * M&eacute;todo exportar.<br>
+	 * Escribe una instant&aacute;nea del cat&aacute;logo en el formato de
+	 * {@link FormatoInstantanea}.
+	 * @param destino Canal destino; no se cierra.
+	 * @param comprimir Si se comprimen los bloques.
+	 * @throws IOException Si falla la escritura.
+	 */
+	default void exportar(WritableByteChannel destino, boolean comprimir) throws IOException {
+		FormatoInstantanea.escribir(obtenerInstantanea(), destino, comprimir);
+	}
+
+	/**
+	 * M&eacute;todo importar.<br>
+	 * Escribe las posiciones no nulas de una instant&aacute;nea en formato
+	 * {@link FormatoInstantanea}; el resto del cat&aacute;logo no cambia. La
+	 * implementaci&oacute;n por defecto hace una llamada a actualizarItems por
+	 * bloque.
+	 * @param origen Canal origen, situado al principio; no se cierra.
+	 * @return N&uacute;mero de posiciones de la instant&aacute;nea.
+	 * @throws IOException Si falla la lectura o el formato no es v&aacute;lido.
+	 */
+	default int importar(ReadableByteChannel origen) throws IOException {
+		return FormatoInstantanea.leer(origen, new ObjIntConsumer<String[]>() {
+			@Override
+			public void accept(String[] items, int desde) {
+				Map<Integer, String> lote = new LinkedHashMap<Integer, String>();
+				for (int i = 0; i < items.length; i++) {
+					if (items[i] != null) {
+						lote.put(desde + i, items[i]);
+					}
+				}
+				if (!lote.isEmpty()) {
+					actualizarItems(lote);
+				}
+			}
+		});
+	}
+
+	/**
+	 * M&eacute;todo obtenerTodosLosItems.<br>
+	 * Adaptador de compatibilidad que vuelca el cursor en un array.
+	 * @return Todos los items, ordenados por posici&oacute;n. El array pasa a
+	 *         ser del llamante y no debe compartirse con el almacenamiento.
+	 */
+	default String[] obtenerTodosLosItems() {
+		List<String> items = new ArrayList<String>();
+		try (CursorItems cursor = abrirCursor(TAMANYO_BLOQUE_POR_DEFECTO)) {
+			while (cursor.hasNext()) {
+				items.add(cursor.next());
+			}
+		}
+		return items.toArray(new String[items.size()]);
+	}
+
+	/**
+	 * M&eacute;todo obtenerItems.<br>
+	 * Lee una p&aacute;gina del cat&aacute;logo. La implementaci&oacute;n por
+	 * defecto recorre el cursor desde el principio; las implementaciones con
+	 * acceso directo deben sobrescribirlo para que el coste dependa s&oacute;lo
+	 * del tama&ntilde;o de la p&aacute;gina.
+	 * @param desde Primera posici&oacute;n de la p&aacute;gina.
+	 * @param limite N&uacute;mero m&aacute;ximo de items de la p&aacute;gina.
+	 * @return Los items de la p&aacute;gina; vac&iacute;o si empieza tras el final.
+	 * @throws ArrayIndexOutOfBoundsException Si desde es negativo.
+	 * @throws IllegalArgumentException Si limite es negativo.
+	 */
+	default String[] obtenerItems(int desde, int limite) {
+		if (desde < 0) {
+			throw new ArrayIndexOutOfBoundsException(desde);
+		}
+		if (limite < 0) {
+			throw new IllegalArgumentException("Limite no valido: " + limite);
+		}
+		List<String> pagina = new ArrayList<String>();
+		try (CursorItems cursor = abrirCursor(TAMANYO_BLOQUE_POR_DEFECTO)) {
+			for (int posicion = 0; posicion < desde && cursor.hasNext(); posicion++) {
+				cursor.next();
+			}
+			while (pagina.size() < limite && cursor.hasNext()) {
+				pagina.add(cursor.next());
+			}
+		}
+		return pagina.toArray(new String[pagina.size()]);
+	}
+
+	/**
+	 * M&eacute;todo obtenerItem.<br>
+	 * @param posicion La posici&oacute;n del item.
+	 * @return El item, o nulo si la posici&oacute;n nunca se ha escrito.
+	 * @throws ArrayIndexOutOfBoundsException Si la posici&oacute;n no existe.
+	 */
+	default String obtenerItem(int posicion) {
+		String[] item = obtenerItems(posicion, 1);
+		if (item.length == 0) {
+			throw new ArrayIndexOutOfBoundsException(posicion);
+		}
+		return item[0];
+	}
+
+	/**
+	 * M&eacute;todo actualizarItem.<br>
+	 * @param item El nuevo valor del item.
+	 * @param posicion La posici&oacute;n del item.
+	 */
+	void actualizarItem(String item, int posicion);
+
+	/**
+	 * M&eacute;todo actualizarItems.<br>
+	 * Aplica varias escrituras en una sola llamada. La implementaci&oacute;n
+	 * por defecto las aplica una a una; las implementaciones con acceso remoto
+	 * deben sobrescribirlo para hacer un &uacute;nico viaje.
+	 * @param items Nuevos valores indexados por posici&oacute;n.
+	 */
+	default void actualizarItems(Map<Integer, String> items) {
+		for (Map.Entry<Integer, String> item : items.entrySet()) {
+			actualizarItem(item.getValue(), item.getKey());
+		}
+	}
+
+	/**
+	 * M&eacute;todo rellenarItems.<br>
+	 * Escribe el mismo valor en varias posiciones sin pasar por un mapa de
+	 * posiciones en cajas. La implementaci&oacute;n por defecto las escribe
+	 * una a una.
+	 * @param posiciones Las posiciones; el array no se guarda ni se modifica.
+	 * @param item El nuevo valor de todas ellas.
+	 */
+	default void rellenarItems(int[] posiciones, String item) {
+		for (int posicion : posiciones) {
+			actualizarItem(item, posicion);
+		}
+	}
+
+}
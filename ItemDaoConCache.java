@@ -0,0 +1,357 @@
+package com.insags.mockito.tutorial.impl;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.insags.mockito.tutorial.CursorItems;
+import com.insags.mockito.tutorial.InstantaneaItems;
+import com.insags.mockito.tutorial.ItemDao;
+
+/**
+ * Clase ItemDaoConCache.<br>
+ * Decorador de un {@link ItemDao} que guarda en memoria el cat&aacute;logo
+ * le&iacute;do y sirve desde ella las lecturas siguientes. Las escrituras se
+ * aplican primero en el DAO decorado y despu&eacute;s sobre la copia en
+ * memoria. La copia se desaloja al caducar o si una escritura cae fuera de
+ * ella, ya que el DAO decorado es quien decide c&oacute;mo crece el cat&aacute;logo.
+ * Si una escritura se solapa con otra o con la carga de la copia, no se sabe
+ * en qu&eacute; orden las aplic&oacute; el DAO decorado, as&iacute; que la
+ * copia se descarta en vez de actualizarse. Los cat&aacute;logos de
+ * m&aacute;s de maximoItems no se guardan.<br>
+ * @author INSA
+ */
+public class ItemDaoConCache implements ItemDao {
+
+	/** DAO decorado. */
+	private final ItemDao delegado;
+
+	/** Tiempo de vida de la copia en memoria, en nanosegundos. */
+	private final long ttlNanos;
+
+	/** N&uacute;mero m&aacute;ximo de items que se guardan en memoria. */
+	private final int maximoItems;
+
+	/** Copia en memoria del cat&aacute;logo, o nulo si no hay. */
+	private String[] items;
+
+	/** Instante, seg&uacute;n System.nanoTime, en el que caduca la copia. */
+	private long caducidad;
+
+	/** Escrituras empezadas; una carga o una escritura s&oacute;lo toca la copia si no ha cambiado desde que empez&oacute;. */
+	private long generacion;
+
+	/** Escrituras que est&aacute;n en el DAO decorado. */
+	private int escriturasEnCurso;
+
+	/** Lecturas servidas desde memoria. */
+	private final LongAdder aciertos = new LongAdder();
+
+	/** Lecturas que han ido al DAO decorado. */
+	private final LongAdder fallos = new LongAdder();
+
+	/** Copias descartadas por caducidad, tama&ntilde;o, error de escritura o escrituras solapadas. */
+	private final LongAdder desalojos = new LongAdder();
+
+	/**
+	 * Constructor de la clase.<br>
+	 * @param delegado DAO decorado.
+	 * @param ttlMilisegundos Tiempo de vida de la copia en memoria.
+	 * @param maximoItems N&uacute;mero m&aacute;ximo de items que se guardan en memoria.
+	 */
+	public ItemDaoConCache(ItemDao delegado, long ttlMilisegundos, int maximoItems) {
+		if (ttlMilisegundos <= 0 || maximoItems < 0) {
+			throw new IllegalArgumentException("Configuracion de cache no valida");
+		}
+		this.delegado = delegado;
+		this.ttlNanos = ttlMilisegundos * 1000000L;
+		this.maximoItems = maximoItems;
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito abrirCursor.<br>
+	 * Recorre la copia en memoria si est&aacute; vigente; si no, abre el
+	 * cursor del DAO decorado sin cargar la copia, para no materializar el
+	 * cat&aacute;logo en recorridos por bloques.
+	 * @param tamanyoBloque N&uacute;mero m&aacute;ximo de items le&iacute;dos en cada acceso.
+	 * @return El cursor.
+	 * @see com.insags.mockito.tutorial.ItemDao#abrirCursor(int)
+	 */
+	@Override
+	public CursorItems abrirCursor(int tamanyoBloque) {
+		final String[] copia;
+		synchronized (this) {
+			copia = vigente();
+		}
+		if (copia == null) {
+			fallos.increment();
+			return delegado.abrirCursor(tamanyoBloque);
+		}
+		aciertos.increment();
+		return new CursorPorBloques(tamanyoBloque, 0) {
+			@Override
+			protected int leerBloque(int desde, String[] destino) {
+				synchronized (ItemDaoConCache.this) {
+					int leidos = Math.max(0, Math.min(destino.length, copia.length - desde));
+					System.arraycopy(copia, desde, destino, 0, leidos);
+					return leidos;
+				}
+			}
+		};
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito obtenerInstantanea.<br>
+	 * La copia en memoria se modifica con las escrituras, as&iacute; que la
+	 * instant&aacute;nea se pide siempre al DAO decorado.
+	 * @return Instant&aacute;nea del DAO decorado.
+	 * @see com.insags.mockito.tutorial.ItemDao#obtenerInstantanea()
+	 */
+	@Override
+	public InstantaneaItems obtenerInstantanea() {
+		return delegado.obtenerInstantanea();
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito getTamanyo.<br>
+	 * @return N&uacute;mero de posiciones del DAO decorado.
+	 * @see com.insags.mockito.tutorial.ItemDao#getTamanyo()
+	 */
+	@Override
+	public int getTamanyo() {
+		return delegado.getTamanyo();
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito obtenerTodosLosItems.<br>
+	 * @return Todos los items, ordenados por posici&oacute;n.
+	 * @see com.insags.mockito.tutorial.ItemDao#obtenerTodosLosItems()
+	 */
+	@Override
+	public String[] obtenerTodosLosItems() {
+		long generacionLectura;
+		synchronized (this) {
+			String[] copia = vigente();
+			if (copia != null) {
+				aciertos.increment();
+				return copia.clone();
+			}
+			generacionLectura = escriturasEnCurso == 0 ? generacion : -1;
+		}
+		fallos.increment();
+		String[] leidos = delegado.obtenerTodosLosItems();
+		if (leidos.length <= maximoItems) {
+			synchronized (this) {
+				if (generacionLectura == generacion && escriturasEnCurso == 0) {
+					items = leidos.clone();
+					caducidad = System.nanoTime() + ttlNanos;
+				}
+			}
+		}
+		return leidos;
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito obtenerItems.<br>
+	 * Sirve la p&aacute;gina desde memoria si hay copia vigente, pero no la
+	 * carga si no la hay.
+	 * @param desde Primera posici&oacute;n de la p&aacute;gina.
+	 * @param limite N&uacute;mero m&aacute;ximo de items de la p&aacute;gina.
+	 * @return Los items de la p&aacute;gina.
+	 * @see com.insags.mockito.tutorial.ItemDao#obtenerItems(int, int)
+	 */
+	@Override
+	public String[] obtenerItems(int desde, int limite) {
+		synchronized (this) {
+			String[] copia = vigente();
+			if (copia != null) {
+				aciertos.increment();
+				int tamanyo = Paginas.tamanyo(desde, limite, copia.length);
+				return tamanyo == 0 ? new String[0] : Arrays.copyOfRange(copia, desde, desde + tamanyo);
+			}
+		}
+		fallos.increment();
+		return delegado.obtenerItems(desde, limite);
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito obtenerItem.<br>
+	 * @param posicion La posici&oacute;n del item.
+	 * @return El item, o nulo si la posici&oacute;n nunca se ha escrito.
+	 * @see com.insags.mockito.tutorial.ItemDao#obtenerItem(int)
+	 */
+	@Override
+	public String obtenerItem(int posicion) {
+		synchronized (this) {
+			String[] copia = vigente();
+			if (copia != null) {
+				Paginas.comprobarPosicion(posicion, copia.length);
+				aciertos.increment();
+				return copia[posicion];
+			}
+		}
+		fallos.increment();
+		return delegado.obtenerItem(posicion);
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito actualizarItem.<br>
+	 * @param item El nuevo valor del item.
+	 * @param posicion La posici&oacute;n del item.
+	 * @see com.insags.mockito.tutorial.ItemDao#actualizarItem(java.lang.String, int)
+	 */
+	@Override
+	public void actualizarItem(String item, int posicion) {
+		long generacionEscritura = empezarEscritura();
+		boolean aplicada = false;
+		try {
+			delegado.actualizarItem(item, posicion);
+			aplicada = true;
+		} finally {
+			synchronized (this) {
+				if (terminarEscritura(generacionEscritura, aplicada)) {
+					actualizarCopia(item, posicion);
+				}
+			}
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito actualizarItems.<br>
+	 * @param items Nuevos valores indexados por posici&oacute;n.
+	 * @see com.insags.mockito.tutorial.ItemDao#actualizarItems(java.util.Map)
+	 */
+	@Override
+	public void actualizarItems(Map<Integer, String> items) {
+		long generacionEscritura = empezarEscritura();
+		boolean aplicada = false;
+		try {
+			delegado.actualizarItems(items);
+			aplicada = true;
+		} finally {
+			synchronized (this) {
+				if (terminarEscritura(generacionEscritura, aplicada)) {
+					for (Map.Entry<Integer, String> item : items.entrySet()) {
+						actualizarCopia(item.getValue(), item.getKey());
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito rellenarItems.<br>
+	 * @param posiciones Las posiciones.
+	 * @param item El nuevo valor de todas ellas.
+	 * @see com.insags.mockito.tutorial.ItemDao#rellenarItems(int[], java.lang.String)
+	 */
+	@Override
+	public void rellenarItems(int[] posiciones, String item) {
+		long generacionEscritura = empezarEscritura();
+		boolean aplicada = false;
+		try {
+			delegado.rellenarItems(posiciones, item);
+			aplicada = true;
+		} finally {
+			synchronized (this) {
+				if (terminarEscritura(generacionEscritura, aplicada)) {
+					for (int posicion : posiciones) {
+						actualizarCopia(item, posicion);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * M&eacute;todo invalidar.<br>
+	 * Descarta la copia en memoria; la siguiente lectura ir&aacute; al DAO decorado.
+	 */
+	public synchronized void invalidar() {
+		if (items != null) {
+			items = null;
+			desalojos.increment();
+		}
+	}
+
+	/**
+	 * M&eacute;todo getAciertos.<br>
+	 * @return Lecturas servidas desde memoria.
+	 */
+	public long getAciertos() {
+		return aciertos.sum();
+	}
+
+	/**
+	 * M&eacute;todo getFallos.<br>
+	 * @return Lecturas que han ido al DAO decorado.
+	 */
+	public long getFallos() {
+		return fallos.sum();
+	}
+
+	/**
+	 * M&eacute;todo getDesalojos.<br>
+	 * @return Copias descartadas por caducidad, tama&ntilde;o, error de escritura o escrituras solapadas.
+	 */
+	public long getDesalojos() {
+		return desalojos.sum();
+	}
+
+	/**
+	 * M&eacute;todo vigente.<br>
+	 * Desaloja la copia si ha caducado. Debe invocarse con el monitor tomado.
+	 * @return Los items en memoria, o nulo si no hay.
+	 */
+	private String[] vigente() {
+		if (items != null && System.nanoTime() - caducidad >= 0) {
+			invalidar();
+		}
+		return items;
+	}
+
+	/**
+	 * M&eacute;todo empezarEscritura.<br>
+	 * @return Generaci&oacute;n de la escritura que empieza.
+	 */
+	private synchronized long empezarEscritura() {
+		escriturasEnCurso++;
+		return ++generacion;
+	}
+
+	/**
+	 * M&eacute;todo terminarEscritura.<br>
+	 * Descarta la copia si la escritura ha fallado o si otra ha empezado
+	 * mientras tanto. Debe invocarse con el monitor tomado.
+	 * @param generacionEscritura Generaci&oacute;n devuelta por empezarEscritura.
+	 * @param aplicada Si el DAO decorado ha aplicado la escritura.
+	 * @return Si la escritura se puede aplicar sobre la copia.
+	 */
+	private boolean terminarEscritura(long generacionEscritura, boolean aplicada) {
+		escriturasEnCurso--;
+		if (!aplicada || generacionEscritura != generacion) {
+			invalidar();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * M&eacute;todo actualizarCopia.<br>
+	 * Aplica una escritura ya confirmada por el DAO decorado sobre la copia.
+	 * Debe invocarse con el monitor tomado.
+	 * @param item El nuevo valor del item.
+	 * @param posicion La posici&oacute;n del item.
+	 */
+	private void actualizarCopia(String item, int posicion) {
+		if (items == null) {
+			return;
+		}
+		if (posicion < items.length) {
+			items[posicion] = item;
+		} else {
+			invalidar();
+		}
+	}
+
+}
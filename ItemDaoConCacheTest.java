@@ -0,0 +1,169 @@
+package com.insags.mockito.tutorial.impl;
+
+import static org.hamcrest.Matchers.arrayContaining;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import com.insags.mockito.tutorial.ItemDao;
+
+public class ItemDaoConCacheTest {
+
+	@Mock
+	private ItemDao delegado;
+
+	private ItemDaoConCache itemDao;
+
+	@Before
+	public void inicializarMocks() {
+		MockitoAnnotations.initMocks(this);
+		itemDao = new ItemDaoConCache(delegado, 60000, 10);
+	}
+
+	/**
+	 * Mtodo para probar que la segunda lectura se sirve desde memoria
+	 * y refleja las escrituras posteriores.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - El DAO decorado se lee una sola vez. 
+	 * - La escritura se aplica en el DAO decorado y en la copia. 
+	 * - Se cuentan un fallo y un acierto.
+	 */
+	@Test
+	public void comprobarLecturaDesdeCacheActualizadaPorEscritura() {
+		Mockito.when(delegado.obtenerTodosLosItems()).thenReturn(new String[] { "Peonza", "Mueca" });
+		
+		itemDao.obtenerTodosLosItems();
+		itemDao.actualizarItem("Cometa", 1);
+		String[] respuesta = itemDao.obtenerTodosLosItems();
+		
+		// Assert
+		Mockito.verify(delegado).obtenerTodosLosItems();
+		Mockito.verify(delegado).actualizarItem("Cometa", 1);
+		assertThat(respuesta, arrayContaining("Peonza", "Cometa"));
+		Assert.assertEquals(1, itemDao.getFallos());
+		Assert.assertEquals(1, itemDao.getAciertos());
+	}
+
+	/**
+	 * Mtodo para probar que una escritura fuera de la copia la desaloja.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Se cuenta un desalojo. 
+	 * - La siguiente lectura vuelve al DAO decorado.
+	 */
+	@Test
+	public void comprobarDesalojoPorEscrituraFueraDeLaCopia() {
+		Mockito.when(delegado.obtenerTodosLosItems()).thenReturn(new String[] { "Peonza" });
+		
+		itemDao.obtenerTodosLosItems();
+		itemDao.actualizarItem("Cometa", 1);
+		itemDao.obtenerTodosLosItems();
+		
+		// Assert
+		Mockito.verify(delegado, Mockito.times(2)).obtenerTodosLosItems();
+		Assert.assertEquals(1, itemDao.getDesalojos());
+		Assert.assertEquals(2, itemDao.getFallos());
+	}
+
+	/**
+	 * Mtodo para probar que una escritura que llega al DAO decorado mientras
+	 * se carga la copia impide guardar la carga, que ya est anticuada.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - La lectura siguiente ve la escritura en vez de la carga anticuada.
+	 */
+	@Test
+	public void comprobarCargaDescartadaPorEscrituraSolapada() {
+		final ItemDaoConCache[] cache = new ItemDaoConCache[1];
+		ItemDaoMemoria memoria = new ItemDaoMemoria() {
+			private boolean escrito;
+
+			@Override
+			public String[] obtenerTodosLosItems() {
+				String[] leidos = super.obtenerTodosLosItems();
+				if (!escrito) {
+					escrito = true;
+					cache[0].actualizarItem("Mueca", 0);
+				}
+				return leidos;
+			}
+		};
+		memoria.actualizarItem("Peonza", 0);
+		cache[0] = new ItemDaoConCache(memoria, 60000, 10);
+		
+		assertThat(cache[0].obtenerTodosLosItems(), arrayContaining("Peonza"));
+		
+		// Assert
+		assertThat(cache[0].obtenerTodosLosItems(), arrayContaining("Mueca"));
+		assertThat(cache[0].obtenerTodosLosItems(), arrayContaining("Mueca"));
+		Assert.assertEquals(1, cache[0].getAciertos());
+	}
+
+	/**
+	 * Mtodo para probar que dos escrituras solapadas sobre la misma
+	 * posicin descartan la copia, ya que no se sabe en qu orden las
+	 * aplic el DAO decorado.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - La copia se descarta y la lectura siguiente va al DAO decorado.
+	 */
+	@Test
+	public void comprobarCopiaDescartadaPorEscriturasSolapadas() {
+		final ItemDaoConCache[] cache = new ItemDaoConCache[1];
+		ItemDaoMemoria memoria = new ItemDaoMemoria() {
+			private boolean anidada;
+
+			@Override
+			public void actualizarItem(String item, int posicion) {
+				super.actualizarItem(item, posicion);
+				if (!anidada) {
+					anidada = true;
+					cache[0].actualizarItem("Cometa", posicion);
+				}
+			}
+		};
+		memoria.rellenarItems(new int[] { 0 }, "Peonza");
+		cache[0] = new ItemDaoConCache(memoria, 60000, 10);
+		cache[0].obtenerTodosLosItems();
+		
+		cache[0].actualizarItem("Mueca", 0);
+		
+		// Assert
+		Assert.assertEquals(1, cache[0].getDesalojos());
+		assertThat(cache[0].obtenerTodosLosItems(), arrayContaining("Cometa"));
+		Assert.assertEquals(2, cache[0].getFallos());
+	}
+
+	/**
+	 * Mtodo para probar que una pgina que empieza tras el final se sirve
+	 * vaca desde la copia en memoria.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Se devuelve una pgina vaca, como hara el DAO decorado. 
+	 * - La lectura cuenta como acierto y no llega al DAO decorado.
+	 */
+	@Test
+	public void comprobarPaginaVaciaTrasElFinalDesdeCache() {
+		Mockito.when(delegado.obtenerTodosLosItems()).thenReturn(new String[] { "Peonza", "Mueca" });
+		
+		itemDao.obtenerTodosLosItems();
+		String[] respuesta = itemDao.obtenerItems(5, 3);
+		
+		// Assert
+		Assert.assertEquals(0, respuesta.length);
+		Assert.assertEquals(1, itemDao.getAciertos());
+		Mockito.verify(delegado, Mockito.never()).obtenerItems(Mockito.anyInt(), Mockito.anyInt());
+	}
+
+}
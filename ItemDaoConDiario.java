@@ -0,0 +1,396 @@
+package com.insags.mockito.tutorial.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.insags.mockito.tutorial.CursorItems;
+import com.insags.mockito.tutorial.InstantaneaItems;
+import com.insags.mockito.tutorial.ItemDao;
+
+/**
+ * Clase ItemDaoConDiario.<br>
+ * Decorador de un {@link ItemDao} que anota cada escritura en un diario de
+ * s&oacute;lo a&ntilde;adir en el mismo orden en que la aplica. Cada
+ * escritura se aplica antes de anotarse, as&iacute; que el diario no guarda
+ * las que el DAO decorado rechaza; si una escritura de varias posiciones
+ * falla a medias se anota el valor que ha quedado en cada una, para que la
+ * recuperaci&oacute;n llegue al mismo estado. Las
+ * escrituras concurrentes se agrupan: cuesta una escritura secuencial y,
+ * seg&uacute;n la {@link PoliticaSincronizacion}, un force compartido. Al construirlo se
+ * reproduce en el DAO decorado el &uacute;ltimo punto de control y las
+ * escrituras posteriores; {@link #puntoDeControl()} compacta el diario para
+ * que la siguiente recuperaci&oacute;n s&oacute;lo reproduzca la cola.
+ * Las lecturas van directamente al DAO decorado.<br>
+ * @author INSA
+ */
+public class ItemDaoConDiario implements ItemDao, Closeable {
+
+	/** Bytes pendientes a partir de los cuales las escrituras sueltas vac&iacute;an el b&uacute;fer. */
+	private static final int MAXIMO_BYTES_PENDIENTES = 1 << 20;
+
+	/** DAO decorado. */
+	private final ItemDao delegado;
+
+	/** Diario de escrituras. */
+	private final DiarioEscrituras diario;
+
+	/** Cu&aacute;ndo se fuerza el diario a disco. */
+	private final PoliticaSincronizacion politica;
+
+	/**
+	 * Las escrituras lo toman compartido entre la anotaci&oacute;n y la
+	 * aplicaci&oacute;n; el punto de control, exclusivo para cambiar de
+	 * segmento y tomar la instant&aacute;nea.
+	 */
+	private final ReadWriteLock cerrojoControl = new ReentrantReadWriteLock();
+
+	/**
+	 * Ordena las escrituras: cada una se aplica y se anota sin que otra se
+	 * intercale, para que el DAO decorado quede como la reproducci&oacute;n
+	 * del diario. La sincronizaci&oacute;n se hace fuera, para agruparla.
+	 */
+	private final Object cerrojoOrden = new Object();
+
+	/** Sincronizaci&oacute;n peri&oacute;dica, o nulo si no se ha configurado. */
+	private final ScheduledFuture<?> sincronizacionPeriodica;
+
+	/** &Uacute;ltimo error de la sincronizaci&oacute;n peri&oacute;dica. */
+	private volatile RuntimeException ultimoErrorSincronizacionPeriodica;
+
+	/**
+	 * Constructor de la clase.<br>
+	 * @param delegado DAO decorado, que recibe lo recuperado del diario.
+	 * @param directorio Directorio del diario.
+	 * @param politica Cu&aacute;ndo se fuerza el diario a disco; PERIODICA necesita el otro constructor.
+	 * @throws IOException Si no se puede recuperar o abrir el diario.
+	 */
+	public ItemDaoConDiario(ItemDao delegado, Path directorio, PoliticaSincronizacion politica) throws IOException {
+		this(delegado, directorio, politica, null, 0);
+	}
+
+	/**
+	 * Constructor de la clase.<br>
+	 * @param delegado DAO decorado, que recibe lo recuperado del diario.
+	 * @param directorio Directorio del diario.
+	 * @param politica Cu&aacute;ndo se fuerza el diario a disco.
+	 * @param planificador Planificador de la sincronizaci&oacute;n peri&oacute;dica; obligatorio con PERIODICA.
+	 * @param periodoMilisegundos Tiempo m&aacute;ximo que una escritura espera a estar en disco con PERIODICA.
+	 * @throws IOException Si no se puede recuperar o abrir el diario.
+	 */
+	public ItemDaoConDiario(ItemDao delegado, Path directorio, PoliticaSincronizacion politica,
+			ScheduledExecutorService planificador, long periodoMilisegundos) throws IOException {
+		if (politica == PoliticaSincronizacion.PERIODICA && (planificador == null || periodoMilisegundos <= 0)) {
+			throw new IllegalArgumentException("La sincronizacion periodica necesita planificador y periodo");
+		}
+		this.delegado = delegado;
+		this.politica = politica;
+		this.diario = new DiarioEscrituras(directorio, delegado);
+		if (politica != PoliticaSincronizacion.PERIODICA) {
+			this.sincronizacionPeriodica = null;
+		} else {
+			this.sincronizacionPeriodica = planificador.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						diario.sincronizar();
+					} catch (RuntimeException e) {
+						ultimoErrorSincronizacionPeriodica = e;
+					}
+				}
+			}, periodoMilisegundos, periodoMilisegundos, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito abrirCursor.<br>
+	 * @param tamanyoBloque N&uacute;mero m&aacute;ximo de items le&iacute;dos en cada acceso.
+	 * @return El cursor del DAO decorado.
+	 * @see com.insags.mockito.tutorial.ItemDao#abrirCursor(int)
+	 */
+	@Override
+	public CursorItems abrirCursor(int tamanyoBloque) {
+		return delegado.abrirCursor(tamanyoBloque);
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito obtenerInstantanea.<br>
+	 * @return Instant&aacute;nea del DAO decorado.
+	 * @see com.insags.mockito.tutorial.ItemDao#obtenerInstantanea()
+	 */
+	@Override
+	public InstantaneaItems obtenerInstantanea() {
+		return delegado.obtenerInstantanea();
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito getTamanyo.<br>
+	 * @return N&uacute;mero de posiciones del DAO decorado.
+	 * @see com.insags.mockito.tutorial.ItemDao#getTamanyo()
+	 */
+	@Override
+	public int getTamanyo() {
+		return delegado.getTamanyo();
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito obtenerTodosLosItems.<br>
+	 * @return Todos los items del DAO decorado.
+	 * @see com.insags.mockito.tutorial.ItemDao#obtenerTodosLosItems()
+	 */
+	@Override
+	public String[] obtenerTodosLosItems() {
+		return delegado.obtenerTodosLosItems();
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito obtenerItems.<br>
+	 * @param desde Primera posici&oacute;n de la p&aacute;gina.
+	 * @param limite N&uacute;mero m&aacute;ximo de items de la p&aacute;gina.
+	 * @return Los items de la p&aacute;gina.
+	 * @see com.insags.mockito.tutorial.ItemDao#obtenerItems(int, int)
+	 */
+	@Override
+	public String[] obtenerItems(int desde, int limite) {
+		return delegado.obtenerItems(desde, limite);
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito obtenerItem.<br>
+	 * @param posicion La posici&oacute;n del item.
+	 * @return El item.
+	 * @see com.insags.mockito.tutorial.ItemDao#obtenerItem(int)
+	 */
+	@Override
+	public String obtenerItem(int posicion) {
+		return delegado.obtenerItem(posicion);
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito actualizarItem.<br>
+	 * @param item El nuevo valor del item.
+	 * @param posicion La posici&oacute;n del item.
+	 * @throws ArrayIndexOutOfBoundsException Si la posici&oacute;n es negativa.
+	 * @see com.insags.mockito.tutorial.ItemDao#actualizarItem(java.lang.String, int)
+	 */
+	@Override
+	public void actualizarItem(String item, int posicion) {
+		if (posicion < 0) {
+			throw new ArrayIndexOutOfBoundsException(posicion);
+		}
+		cerrojoControl.readLock().lock();
+		try {
+			long secuencia;
+			synchronized (cerrojoOrden) {
+				delegado.actualizarItem(item, posicion);
+				secuencia = diario.anyadir(item, posicion);
+			}
+			sincronizar(secuencia, false);
+		} finally {
+			cerrojoControl.readLock().unlock();
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito actualizarItems.<br>
+	 * @param items Nuevos valores indexados por posici&oacute;n.
+	 * @throws ArrayIndexOutOfBoundsException Si alguna posici&oacute;n es negativa; entonces no se anota ninguna.
+	 * @see com.insags.mockito.tutorial.ItemDao#actualizarItems(java.util.Map)
+	 */
+	@Override
+	public void actualizarItems(Map<Integer, String> items) {
+		for (Integer posicion : items.keySet()) {
+			if (posicion < 0) {
+				throw new ArrayIndexOutOfBoundsException(posicion);
+			}
+		}
+		cerrojoControl.readLock().lock();
+		try {
+			long secuencia;
+			synchronized (cerrojoOrden) {
+				try {
+					delegado.actualizarItems(items);
+				} catch (RuntimeException e) {
+					anotarEstado(items.keySet(), e);
+					throw e;
+				}
+				secuencia = diario.anyadir(items);
+			}
+			sincronizar(secuencia, true);
+		} finally {
+			cerrojoControl.readLock().unlock();
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito rellenarItems.<br>
+	 * @param posiciones Las posiciones.
+	 * @param item El nuevo valor de todas ellas.
+	 * @throws ArrayIndexOutOfBoundsException Si alguna posici&oacute;n es negativa; entonces no se anota ninguna.
+	 * @see com.insags.mockito.tutorial.ItemDao#rellenarItems(int[], java.lang.String)
+	 */
+	@Override
+	public void rellenarItems(int[] posiciones, String item) {
+		for (int posicion : posiciones) {
+			if (posicion < 0) {
+				throw new ArrayIndexOutOfBoundsException(posicion);
+			}
+		}
+		cerrojoControl.readLock().lock();
+		try {
+			long secuencia;
+			synchronized (cerrojoOrden) {
+				try {
+					delegado.rellenarItems(posiciones, item);
+				} catch (RuntimeException e) {
+					List<Integer> afectadas = new ArrayList<Integer>(posiciones.length);
+					for (int posicion : posiciones) {
+						afectadas.add(posicion);
+					}
+					anotarEstado(afectadas, e);
+					throw e;
+				}
+				secuencia = diario.anyadir(posiciones, item);
+			}
+			sincronizar(secuencia, true);
+		} finally {
+			cerrojoControl.readLock().unlock();
+		}
+	}
+
+	/**
+	 * M&eacute;todo anotarEstado.<br>
+	 * Tras una escritura de varias posiciones fallida, anota el valor que ha
+	 * quedado en cada una de ellas en el DAO decorado. Las posiciones que no
+	 * se pueden leer no se anotan. El registro se fuerza a disco con la
+	 * siguiente sincronizaci&oacute;n. Se invoca con cerrojoOrden tomado.
+	 * @param posiciones Posiciones de la escritura fallida.
+	 * @param fallo Excepci&oacute;n de la escritura, que recibe como suprimido un fallo del diario.
+	 */
+	private void anotarEstado(Iterable<Integer> posiciones, RuntimeException fallo) {
+		Map<Integer, String> estado = new LinkedHashMap<Integer, String>();
+		for (Integer posicion : posiciones) {
+			try {
+				estado.put(posicion, delegado.obtenerItem(posicion));
+			} catch (RuntimeException e) {
+				// La posicion no existe o no se puede leer: no hay nada que anotar
+			}
+		}
+		if (!estado.isEmpty()) {
+			try {
+				diario.anyadir(estado);
+			} catch (RuntimeException e) {
+				fallo.addSuppressed(e);
+			}
+		}
+	}
+
+	/**
+	 * M&eacute;todo puntoDeControl.<br>
+	 * Pasa a un segmento nuevo, guarda una instant&aacute;nea del DAO
+	 * decorado y borra los segmentos anteriores. Las escrituras s&oacute;lo
+	 * se detienen mientras se cambia de segmento y se toma la instant&aacute;nea,
+	 * que es inmediato si el DAO decorado guarda versiones inmutables.
+	 */
+	public void puntoDeControl() {
+		long segmento;
+		InstantaneaItems instantanea;
+		cerrojoControl.writeLock().lock();
+		try {
+			segmento = diario.rotar();
+			instantanea = delegado.obtenerInstantanea();
+		} finally {
+			cerrojoControl.writeLock().unlock();
+		}
+		diario.escribirPuntoDeControl(segmento, instantanea);
+	}
+
+	/**
+	 * M&eacute;todo sincronizar.<br>
+	 * Fuerza a disco todas las escrituras anotadas.
+	 */
+	public void sincronizar() {
+		diario.sincronizar();
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito close.<br>
+	 * Detiene la sincronizaci&oacute;n peri&oacute;dica, fuerza a disco lo
+	 * pendiente y cierra el diario. No cierra el DAO decorado.
+	 * @throws IOException Si falla el cierre.
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		if (sincronizacionPeriodica != null) {
+			sincronizacionPeriodica.cancel(false);
+		}
+		diario.close();
+	}
+
+	/**
+	 * M&eacute;todo getRegistrosRecuperados.<br>
+	 * @return Escrituras reproducidas al abrir, incluidas las del punto de control.
+	 */
+	public long getRegistrosRecuperados() {
+		return diario.getRegistrosRecuperados();
+	}
+
+	/**
+	 * M&eacute;todo getEscriturasAnotadas.<br>
+	 * @return Escrituras anotadas en el diario desde la apertura.
+	 */
+	public long getEscriturasAnotadas() {
+		return diario.getRegistros();
+	}
+
+	/**
+	 * M&eacute;todo getSincronizaciones.<br>
+	 * @return Veces que se ha forzado el diario a disco desde la apertura.
+	 */
+	public long getSincronizaciones() {
+		return diario.getSincronizaciones();
+	}
+
+	/**
+	 * M&eacute;todo getUltimoErrorSincronizacionPeriodica.<br>
+	 * @return El &uacute;ltimo error de la sincronizaci&oacute;n peri&oacute;dica, o nulo si no ha habido.
+	 */
+	public RuntimeException getUltimoErrorSincronizacionPeriodica() {
+		return ultimoErrorSincronizacionPeriodica;
+	}
+
+	/**
+	 * M&eacute;todo sincronizar.<br>
+	 * Aplica la pol&iacute;tica tras anotar una escritura.
+	 * @param secuencia Secuencia del &uacute;ltimo registro anotado.
+	 * @param multiple Si la escritura era m&uacute;ltiple.
+	 */
+	private void sincronizar(long secuencia, boolean multiple) {
+		switch (politica) {
+		case POR_ESCRITURA:
+			diario.sincronizar(secuencia, true);
+			break;
+		case POR_LOTE:
+			if (multiple || diario.getBytesPendientes() >= MAXIMO_BYTES_PENDIENTES) {
+				diario.sincronizar(secuencia, true);
+			}
+			break;
+		default:
+			if (diario.getBytesPendientes() >= MAXIMO_BYTES_PENDIENTES) {
+				diario.sincronizar(secuencia, false);
+			}
+			break;
+		}
+	}
+
+}
@@ -0,0 +1,308 @@
+package com.insags.mockito.tutorial.impl;
+
+import static org.hamcrest.Matchers.arrayContaining;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ItemDaoConDiarioTest {
+
+	@Rule
+	public TemporaryFolder carpeta = new TemporaryFolder();
+
+	/**
+	 * Mtodo para probar que las escrituras anotadas se recuperan en un
+	 * DAO vaco al volver a abrir el diario, aunque el ltimo registro
+	 * est a medio escribir.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Se recuperan todas las escrituras completas, en orden. 
+	 * - El registro incompleto se descarta.
+	 */
+	@Test
+	public void comprobarRecuperacionDescartandoRegistroIncompleto() throws IOException {
+		Path directorio = carpeta.getRoot().toPath();
+		try (ItemDaoConDiario itemDao = new ItemDaoConDiario(new ItemDaoMemoria(), directorio,
+				PoliticaSincronizacion.POR_ESCRITURA)) {
+			itemDao.actualizarItem("Peonza", 0);
+			itemDao.actualizarItem("Mueca", 2);
+			itemDao.rellenarItems(new int[] { 0 }, "Cometa");
+		}
+		File segmento = directorio.toFile().listFiles()[0];
+		Files.write(segmento.toPath(), new byte[] { 0, 0, 0, 1, 0, 0 }, StandardOpenOption.APPEND);
+		
+		ItemDaoMemoria recuperado = new ItemDaoMemoria();
+		try (ItemDaoConDiario itemDao = new ItemDaoConDiario(recuperado, directorio, PoliticaSincronizacion.POR_LOTE)) {
+			// Assert
+			Assert.assertEquals(3, itemDao.getRegistrosRecuperados());
+			assertThat(recuperado.obtenerTodosLosItems(), arrayContaining("Cometa", null, "Mueca"));
+		}
+	}
+
+	/**
+	 * Mtodo para probar que tras un punto de control slo se reproduce la
+	 * cola del diario y se borran los segmentos anteriores.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Se recuperan los items del punto de control ms la escritura posterior. 
+	 * - Slo quedan el punto de control y los segmentos posteriores.
+	 */
+	@Test
+	public void comprobarPuntoDeControlYRecuperacionDeLaCola() throws IOException {
+		Path directorio = carpeta.getRoot().toPath();
+		try (ItemDaoConDiario itemDao = new ItemDaoConDiario(new ItemDaoMemoria(), directorio,
+				PoliticaSincronizacion.POR_LOTE)) {
+			for (int i = 0; i < 100; i++) {
+				itemDao.actualizarItem("Item" + i, i % 3);
+			}
+			itemDao.puntoDeControl();
+			itemDao.actualizarItem("Pelota", 1);
+		}
+		
+		ItemDaoMemoria recuperado = new ItemDaoMemoria();
+		try (ItemDaoConDiario itemDao = new ItemDaoConDiario(recuperado, directorio, PoliticaSincronizacion.POR_LOTE)) {
+			// Assert
+			Assert.assertEquals(4, itemDao.getRegistrosRecuperados());
+			assertThat(recuperado.obtenerTodosLosItems(), arrayContaining("Item99", "Pelota", "Item98"));
+			Assert.assertFalse(Files.exists(directorio.resolve("diario-0000000000000000.log")));
+			Assert.assertTrue(Files.exists(directorio.resolve("control-0000000000000001.dat")));
+		}
+	}
+
+	/**
+	 * Mtodo para probar que las escrituras concurrentes con sincronizacin
+	 * por escritura se recuperan todas.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Se recupera cada posicin escrita. 
+	 * - Hay menos sincronizaciones que escrituras, porque se agrupan.
+	 */
+	@Test
+	public void comprobarEscriturasConcurrentesConSincronizacionAgrupada() throws Exception {
+		Path directorio = carpeta.getRoot().toPath();
+		final int hilos = 4;
+		final int escriturasPorHilo = 200;
+		ExecutorService ejecutor = Executors.newFixedThreadPool(hilos);
+		try (final ItemDaoConDiario itemDao = new ItemDaoConDiario(new ItemDaoMemoria(), directorio,
+				PoliticaSincronizacion.POR_ESCRITURA)) {
+			List<Future<?>> tareas = new ArrayList<Future<?>>();
+			for (int h = 0; h < hilos; h++) {
+				final int hilo = h;
+				tareas.add(ejecutor.submit(new Runnable() {
+					@Override
+					public void run() {
+						for (int i = 0; i < escriturasPorHilo; i++) {
+							itemDao.actualizarItem("Item" + hilo, hilo * escriturasPorHilo + i);
+						}
+					}
+				}));
+			}
+			for (Future<?> tarea : tareas) {
+				tarea.get();
+			}
+			Assert.assertEquals(hilos * escriturasPorHilo, itemDao.getEscriturasAnotadas());
+			Assert.assertTrue(itemDao.getSincronizaciones() < itemDao.getEscriturasAnotadas());
+		} finally {
+			ejecutor.shutdown();
+		}
+		
+		ItemDaoMemoria recuperado = new ItemDaoMemoria();
+		try (ItemDaoConDiario itemDao = new ItemDaoConDiario(recuperado, directorio, PoliticaSincronizacion.POR_LOTE)) {
+			// Assert
+			Assert.assertEquals(hilos * escriturasPorHilo, itemDao.getRegistrosRecuperados());
+			Assert.assertEquals(hilos * escriturasPorHilo, recuperado.getTamanyo());
+			Assert.assertEquals("Item3", recuperado.obtenerItem(hilos * escriturasPorHilo - 1));
+		}
+	}
+
+	/**
+	 * Mtodo para probar que con escrituras concurrentes sobre las mismas
+	 * posiciones el diario recupera el mismo estado que tena el DAO.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Lo recuperado coincide con lo que tena el DAO al cerrar.
+	 */
+	@Test
+	public void comprobarRecuperacionIgualAlDaoConEscriturasSobreLaMismaPosicion() throws Exception {
+		Path directorio = carpeta.getRoot().toPath();
+		final int hilos = 4;
+		final int escriturasPorHilo = 200;
+		ItemDaoMemoria vivo = new ItemDaoMemoria() {
+			@Override
+			public void actualizarItem(String item, int posicion) {
+				// Ensancha la ventana entre anotar y aplicar
+				LockSupport.parkNanos(ThreadLocalRandom.current().nextInt(100000));
+				super.actualizarItem(item, posicion);
+			}
+		};
+		ExecutorService ejecutor = Executors.newFixedThreadPool(hilos);
+		try (final ItemDaoConDiario itemDao = new ItemDaoConDiario(vivo, directorio, PoliticaSincronizacion.POR_LOTE)) {
+			List<Future<?>> tareas = new ArrayList<Future<?>>();
+			for (int h = 0; h < hilos; h++) {
+				final int hilo = h;
+				tareas.add(ejecutor.submit(new Runnable() {
+					@Override
+					public void run() {
+						for (int i = 0; i < escriturasPorHilo; i++) {
+							itemDao.actualizarItem("Item" + hilo + "-" + i, i % 2);
+						}
+					}
+				}));
+			}
+			for (Future<?> tarea : tareas) {
+				tarea.get();
+			}
+		} finally {
+			ejecutor.shutdown();
+		}
+		
+		ItemDaoMemoria recuperado = new ItemDaoMemoria();
+		new ItemDaoConDiario(recuperado, directorio, PoliticaSincronizacion.POR_LOTE).close();
+		
+		// Assert
+		Assert.assertArrayEquals(vivo.obtenerTodosLosItems(), recuperado.obtenerTodosLosItems());
+	}
+
+	/**
+	 * Mtodo para probar que una cola con una longitud desmesurada se trata
+	 * como un registro incompleto en vez de intentar reservarla.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Se recuperan las escrituras completas. 
+	 * - La cola se elimina del segmento.
+	 */
+	@Test
+	public void comprobarRecuperacionConLongitudDesmesuradaEnLaCola() throws IOException {
+		Path directorio = carpeta.getRoot().toPath();
+		try (ItemDaoConDiario itemDao = new ItemDaoConDiario(new ItemDaoMemoria(), directorio,
+				PoliticaSincronizacion.POR_ESCRITURA)) {
+			itemDao.actualizarItem("Peonza", 0);
+		}
+		Path segmento = directorio.toFile().listFiles()[0].toPath();
+		long tamanyo = Files.size(segmento);
+		Files.write(segmento, new byte[] { 0, 0, 0, 1, 0x7F, -1, -1, -1, 1, 2, 3 }, StandardOpenOption.APPEND);
+		
+		ItemDaoMemoria recuperado = new ItemDaoMemoria();
+		try (ItemDaoConDiario itemDao = new ItemDaoConDiario(recuperado, directorio, PoliticaSincronizacion.POR_LOTE)) {
+			// Assert
+			Assert.assertEquals(1, itemDao.getRegistrosRecuperados());
+			assertThat(recuperado.obtenerTodosLosItems(), arrayContaining("Peonza"));
+			Assert.assertEquals(tamanyo, Files.size(segmento));
+		}
+	}
+
+	/**
+	 * Mtodo para probar que las escrituras que fallan en el DAO decorado no
+	 * se reproducen al recuperar, y que una escritura por lotes aplicada a
+	 * medias se recupera tal como qued.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Se lanzan las excepciones del DAO decorado. 
+	 * - El DAO recuperado queda igual que el DAO en vivo.
+	 */
+	@Test
+	public void comprobarRecuperacionIgualAlDaoTrasEscriturasFallidas() throws IOException {
+		Path directorio = carpeta.getRoot().toPath();
+		ItemDaoMemoria vivo = new ItemDaoMemoria() {
+			@Override
+			public void actualizarItem(String item, int posicion) {
+				if ("Roto".equals(item)) {
+					throw new IllegalStateException("Fallo de E/S simulado");
+				}
+				super.actualizarItem(item, posicion);
+			}
+
+			@Override
+			public void actualizarItems(Map<Integer, String> items) {
+				Map.Entry<Integer, String> primera = items.entrySet().iterator().next();
+				super.actualizarItem(primera.getValue(), primera.getKey());
+				throw new IllegalStateException("Fallo de E/S simulado");
+			}
+		};
+		Map<Integer, String> lote = new LinkedHashMap<Integer, String>();
+		lote.put(0, "Peonza");
+		lote.put(1, "Cometa");
+		try (ItemDaoConDiario itemDao = new ItemDaoConDiario(vivo, directorio, PoliticaSincronizacion.POR_ESCRITURA)) {
+			try {
+				itemDao.actualizarItems(lote);
+				Assert.fail("Debe propagar el fallo del lote");
+			} catch (IllegalStateException e) {
+				// Esperada
+			}
+			try {
+				itemDao.actualizarItem("Roto", 0);
+				Assert.fail("Debe propagar el fallo de la escritura");
+			} catch (IllegalStateException e) {
+				// Esperada
+			}
+		}
+		
+		ItemDaoMemoria recuperado = new ItemDaoMemoria();
+		try (ItemDaoConDiario itemDao = new ItemDaoConDiario(recuperado, directorio, PoliticaSincronizacion.POR_LOTE)) {
+			// Assert
+			Assert.assertEquals(1, itemDao.getRegistrosRecuperados());
+			assertThat(vivo.obtenerTodosLosItems(), arrayContaining("Peonza"));
+			assertThat(recuperado.obtenerTodosLosItems(), arrayContaining(vivo.obtenerTodosLosItems()));
+		}
+	}
+
+	/**
+	 * Mtodo para probar que un registro daado en un segmento que no es el
+	 * ltimo no se trunca, porque slo el ltimo puede quedar a medio
+	 * escribir tras una cada.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - La recuperacin falla con IOException. 
+	 * - El segmento daado no se modifica.
+	 */
+	@Test
+	public void comprobarFalloDeRecuperacionConSegmentoAnteriorDaado() throws IOException {
+		Path directorio = carpeta.getRoot().toPath();
+		try (ItemDaoConDiario itemDao = new ItemDaoConDiario(new ItemDaoMemoria(), directorio,
+				PoliticaSincronizacion.POR_ESCRITURA)) {
+			itemDao.actualizarItem("Peonza", 0);
+			itemDao.actualizarItem("Mueca", 1);
+		}
+		Path segmento = directorio.toFile().listFiles()[0].toPath();
+		try (ItemDaoConDiario itemDao = new ItemDaoConDiario(new ItemDaoMemoria(), directorio,
+				PoliticaSincronizacion.POR_ESCRITURA)) {
+			itemDao.actualizarItem("Cometa", 2);
+		}
+		byte[] bytes = Files.readAllBytes(segmento);
+		bytes[8] ^= 1;
+		Files.write(segmento, bytes);
+		
+		try {
+			new ItemDaoConDiario(new ItemDaoMemoria(), directorio, PoliticaSincronizacion.POR_LOTE).close();
+			Assert.fail("Debe rechazar el segmento daado");
+		} catch (IOException e) {
+			// Assert
+			Assert.assertArrayEquals(bytes, Files.readAllBytes(segmento));
+		}
+	}
+}
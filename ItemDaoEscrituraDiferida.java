@@ -0,0 +1,384 @@
+package com.insags.mockito.tutorial.impl;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.insags.mockito.tutorial.ActualizacionPorLotesException;
+import com.insags.mockito.tutorial.CursorItems;
+import com.insags.mockito.tutorial.ErrorLote;
+import com.insags.mockito.tutorial.InstantaneaItems;
+import com.insags.mockito.tutorial.ItemDao;
+
+/**
+ * Clase ItemDaoEscrituraDiferida.<br>
+ * Decorador de un {@link ItemDao} que acumula las escrituras en memoria y
+ * las env&iacute;a al DAO decorado en un solo lote. Varias escrituras sobre
+ * la misma posici&oacute;n antes de un volcado se reducen a la &uacute;ltima.
+ * El volcado se produce al llamar a {@link #volcar()}, peri&oacute;dicamente
+ * si se indica un planificador, antes de cada lectura y, cuando el
+ * b&uacute;fer est&aacute; lleno, en el propio hilo que escribe, que queda
+ * frenado hasta que el lote se ha aplicado. Las posiciones negativas se
+ * rechazan al escribir; las que el DAO decorado rechaza al volcar se
+ * descartan e informan, para que no bloqueen los volcados siguientes.<br>
+ * Un volcado fallido no pierde las escrituras: vuelven al b&uacute;fer. Por
+ * eso una excepci&oacute;n del volcado, tambi&eacute;n la que recibe el hilo
+ * cuya escritura llena el b&uacute;fer, no significa que esa escritura se
+ * haya descartado. Mientras el b&uacute;fer est&aacute; lleno, una escritura
+ * sobre posiciones nuevas primero intenta volcar y, si no lo consigue, se
+ * rechaza sin guardarse, de modo que un fallo persistente del DAO decorado
+ * no hace crecer el b&uacute;fer sin l&iacute;mite.<br>
+ * @author INSA
+ */
+public class ItemDaoEscrituraDiferida implements ItemDao {
+
+	/** DAO decorado. */
+	private final ItemDao delegado;
+
+	/** N&uacute;mero m&aacute;ximo de posiciones pendientes antes de volcar. */
+	private final int maximoPendientes;
+
+	/** Protege el b&uacute;fer de escrituras pendientes. */
+	private final Object cerrojoPendientes = new Object();
+
+	/** Serializa los volcados para que el DAO reciba los lotes en orden. */
+	private final Object cerrojoVolcado = new Object();
+
+	/** Escrituras pendientes indexadas por posici&oacute;n. */
+	private Map<Integer, String> pendientes = new LinkedHashMap<Integer, String>();
+
+	/** Volcado peri&oacute;dico, o nulo si no se ha configurado. */
+	private final ScheduledFuture<?> volcadoPeriodico;
+
+	/** Escrituras recibidas. */
+	private final LongAdder escriturasRecibidas = new LongAdder();
+
+	/** Escrituras enviadas al DAO decorado. */
+	private final LongAdder escriturasEnviadas = new LongAdder();
+
+	/** Escrituras descartadas porque el DAO decorado rechaz&oacute; su posici&oacute;n. */
+	private final LongAdder escriturasDescartadas = new LongAdder();
+
+	/** &Uacute;ltimo error del volcado peri&oacute;dico. */
+	private volatile RuntimeException ultimoErrorVolcadoPeriodico;
+
+	/**
+	 * Constructor de la clase.<br>
+	 * Sin volcado peri&oacute;dico.
+	 * @param delegado DAO decorado.
+	 * @param maximoPendientes N&uacute;mero m&aacute;ximo de posiciones pendientes antes de volcar.
+	 */
+	public ItemDaoEscrituraDiferida(ItemDao delegado, int maximoPendientes) {
+		this(delegado, maximoPendientes, null, 0);
+	}
+
+	/**
+	 * Constructor de la clase.<br>
+	 * @param delegado DAO decorado.
+	 * @param maximoPendientes N&uacute;mero m&aacute;ximo de posiciones pendientes antes de volcar.
+	 * @param planificador Planificador del volcado peri&oacute;dico, o nulo para no tenerlo.
+	 * @param periodoMilisegundos Tiempo m&aacute;ximo que una escritura espera a ser volcada.
+	 */
+	public ItemDaoEscrituraDiferida(ItemDao delegado, int maximoPendientes, ScheduledExecutorService planificador,
+			long periodoMilisegundos) {
+		if (maximoPendientes <= 0) {
+			throw new IllegalArgumentException("Maximo de pendientes no valido: " + maximoPendientes);
+		}
+		this.delegado = delegado;
+		this.maximoPendientes = maximoPendientes;
+		if (planificador == null) {
+			this.volcadoPeriodico = null;
+		} else {
+			this.volcadoPeriodico = planificador.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						volcar();
+					} catch (RuntimeException e) {
+						ultimoErrorVolcadoPeriodico = e;
+					}
+				}
+			}, periodoMilisegundos, periodoMilisegundos, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito abrirCursor.<br>
+	 * Vuelca antes las escrituras pendientes.
+	 * @param tamanyoBloque N&uacute;mero m&aacute;ximo de items le&iacute;dos en cada acceso.
+	 * @return El cursor.
+	 * @see com.insags.mockito.tutorial.ItemDao#abrirCursor(int)
+	 */
+	@Override
+	public CursorItems abrirCursor(int tamanyoBloque) {
+		volcar();
+		return delegado.abrirCursor(tamanyoBloque);
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito obtenerInstantanea.<br>
+	 * Vuelca antes las escrituras pendientes.
+	 * @return Instant&aacute;nea del DAO decorado.
+	 * @see com.insags.mockito.tutorial.ItemDao#obtenerInstantanea()
+	 */
+	@Override
+	public InstantaneaItems obtenerInstantanea() {
+		volcar();
+		return delegado.obtenerInstantanea();
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito getTamanyo.<br>
+	 * Vuelca antes las escrituras pendientes.
+	 * @return N&uacute;mero de posiciones del DAO decorado.
+	 * @see com.insags.mockito.tutorial.ItemDao#getTamanyo()
+	 */
+	@Override
+	public int getTamanyo() {
+		volcar();
+		return delegado.getTamanyo();
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito obtenerTodosLosItems.<br>
+	 * Vuelca antes las escrituras pendientes.
+	 * @return Todos los items, ordenados por posici&oacute;n.
+	 * @see com.insags.mockito.tutorial.ItemDao#obtenerTodosLosItems()
+	 */
+	@Override
+	public String[] obtenerTodosLosItems() {
+		volcar();
+		return delegado.obtenerTodosLosItems();
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito obtenerItems.<br>
+	 * Vuelca antes las escrituras pendientes.
+	 * @param desde Primera posici&oacute;n de la p&aacute;gina.
+	 * @param limite N&uacute;mero m&aacute;ximo de items de la p&aacute;gina.
+	 * @return Los items de la p&aacute;gina.
+	 * @see com.insags.mockito.tutorial.ItemDao#obtenerItems(int, int)
+	 */
+	@Override
+	public String[] obtenerItems(int desde, int limite) {
+		volcar();
+		return delegado.obtenerItems(desde, limite);
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito obtenerItem.<br>
+	 * Vuelca antes las escrituras pendientes.
+	 * @param posicion La posici&oacute;n del item.
+	 * @return El item, o nulo si la posici&oacute;n nunca se ha escrito.
+	 * @see com.insags.mockito.tutorial.ItemDao#obtenerItem(int)
+	 */
+	@Override
+	public String obtenerItem(int posicion) {
+		volcar();
+		return delegado.obtenerItem(posicion);
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito actualizarItem.<br>
+	 * @param item El nuevo valor del item.
+	 * @param posicion La posici&oacute;n del item.
+	 * @throws ArrayIndexOutOfBoundsException Si la posici&oacute;n es negativa.
+	 * @throws IllegalStateException Si el b&uacute;fer est&aacute; lleno y no se puede volcar; la escritura no se guarda y la causa es el fallo del volcado.
+	 * @see com.insags.mockito.tutorial.ItemDao#actualizarItem(java.lang.String, int)
+	 */
+	@Override
+	public void actualizarItem(String item, int posicion) {
+		if (posicion < 0) {
+			throw new ArrayIndexOutOfBoundsException(posicion);
+		}
+		boolean lleno;
+		while (true) {
+			synchronized (cerrojoPendientes) {
+				if (pendientes.size() < maximoPendientes || pendientes.containsKey(posicion)) {
+					pendientes.put(posicion, item);
+					lleno = pendientes.size() >= maximoPendientes;
+					break;
+				}
+			}
+			hacerSitio();
+		}
+		escriturasRecibidas.increment();
+		if (lleno) {
+			volcar();
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito actualizarItems.<br>
+	 * @param items Nuevos valores indexados por posici&oacute;n.
+	 * @throws ArrayIndexOutOfBoundsException Si alguna posici&oacute;n es negativa; entonces no se guarda ninguna.
+	 * @throws IllegalStateException Si el b&uacute;fer est&aacute; lleno y no se puede volcar; no se guarda ninguna y la causa es el fallo del volcado.
+	 * @see com.insags.mockito.tutorial.ItemDao#actualizarItems(java.util.Map)
+	 */
+	@Override
+	public void actualizarItems(Map<Integer, String> items) {
+		for (Integer posicion : items.keySet()) {
+			if (posicion < 0) {
+				throw new ArrayIndexOutOfBoundsException(posicion);
+			}
+		}
+		boolean lleno;
+		while (true) {
+			synchronized (cerrojoPendientes) {
+				if (pendientes.size() < maximoPendientes || pendientes.keySet().containsAll(items.keySet())) {
+					pendientes.putAll(items);
+					lleno = pendientes.size() >= maximoPendientes;
+					break;
+				}
+			}
+			hacerSitio();
+		}
+		escriturasRecibidas.add(items.size());
+		if (lleno) {
+			volcar();
+		}
+	}
+
+	/**
+	 * M&eacute;todo volcar.<br>
+	 * Env&iacute;a al DAO decorado las escrituras pendientes en un solo lote.
+	 * Si el DAO rechaza el lote, se env&iacute;an una a una: las que fallan
+	 * por su posici&oacute;n se descartan, y ante cualquier otro fallo esa
+	 * escritura y las que faltan vuelven al b&uacute;fer, salvo que haya otra
+	 * m&aacute;s reciente sobre la misma posici&oacute;n. Cualquier otra
+	 * excepci&oacute;n deja, por tanto, las escrituras pendientes.
+	 * @throws ActualizacionPorLotesException Si se han descartado escrituras; cada error lleva su posici&oacute;n.
+	 */
+	public void volcar() {
+		synchronized (cerrojoVolcado) {
+			Map<Integer, String> lote;
+			synchronized (cerrojoPendientes) {
+				if (pendientes.isEmpty()) {
+					return;
+				}
+				lote = pendientes;
+				pendientes = new LinkedHashMap<Integer, String>();
+			}
+			try {
+				delegado.actualizarItems(lote);
+				escriturasEnviadas.add(lote.size());
+			} catch (RuntimeException e) {
+				volcarUnaAUna(lote);
+			}
+		}
+	}
+
+	/**
+	 * M&eacute;todo hacerSitio.<br>
+	 * Vuelca el b&uacute;fer lleno en el hilo que quiere escribir.
+	 * @throws IllegalStateException Si el volcado falla; la escritura que esperaba sitio se rechaza.
+	 */
+	private void hacerSitio() {
+		try {
+			volcar();
+		} catch (RuntimeException e) {
+			throw new IllegalStateException("Bufer de escrituras lleno", e);
+		}
+	}
+
+	/**
+	 * M&eacute;todo volcarUnaAUna.<br>
+	 * @param lote Escrituras de un lote que el DAO decorado ha rechazado.
+	 * @throws ActualizacionPorLotesException Si se han descartado escrituras.
+	 */
+	private void volcarUnaAUna(Map<Integer, String> lote) {
+		List<ErrorLote> descartadas = new ArrayList<ErrorLote>();
+		Map<Integer, String> reintentar = new LinkedHashMap<Integer, String>();
+		RuntimeException fallo = null;
+		for (Map.Entry<Integer, String> item : lote.entrySet()) {
+			if (fallo != null) {
+				reintentar.put(item.getKey(), item.getValue());
+				continue;
+			}
+			try {
+				delegado.actualizarItem(item.getValue(), item.getKey());
+				escriturasEnviadas.increment();
+			} catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+				descartadas.add(new ErrorLote(descartadas.size(), new int[] { item.getKey() }, e));
+				escriturasDescartadas.increment();
+			} catch (RuntimeException e) {
+				fallo = e;
+				reintentar.put(item.getKey(), item.getValue());
+			}
+		}
+		if (!reintentar.isEmpty()) {
+			synchronized (cerrojoPendientes) {
+				reintentar.putAll(pendientes);
+				pendientes = reintentar;
+			}
+		}
+		if (fallo != null) {
+			for (ErrorLote descartada : descartadas) {
+				fallo.addSuppressed(descartada.getCausa());
+			}
+			throw fallo;
+		}
+		if (!descartadas.isEmpty()) {
+			throw new ActualizacionPorLotesException(descartadas);
+		}
+	}
+
+	/**
+	 * M&eacute;todo cerrar.<br>
+	 * Detiene el volcado peri&oacute;dico y vuelca lo pendiente.
+	 */
+	public void cerrar() {
+		if (volcadoPeriodico != null) {
+			volcadoPeriodico.cancel(false);
+		}
+		volcar();
+	}
+
+	/**
+	 * M&eacute;todo getPendientes.<br>
+	 * @return N&uacute;mero de posiciones pendientes de volcar.
+	 */
+	public int getPendientes() {
+		synchronized (cerrojoPendientes) {
+			return pendientes.size();
+		}
+	}
+
+	/**
+	 * M&eacute;todo getEscriturasRecibidas.<br>
+	 * @return Escrituras recibidas.
+	 */
+	public long getEscriturasRecibidas() {
+		return escriturasRecibidas.sum();
+	}
+
+	/**
+	 * M&eacute;todo getEscriturasEnviadas.<br>
+	 * @return Escrituras enviadas al DAO decorado tras reducir las repetidas.
+	 */
+	public long getEscriturasEnviadas() {
+		return escriturasEnviadas.sum();
+	}
+
+	/**
+	 * M&eacute;todo getEscriturasDescartadas.<br>
+	 * @return Escrituras descartadas porque el DAO decorado rechaz&oacute; su posici&oacute;n.
+	 */
+	public long getEscriturasDescartadas() {
+		return escriturasDescartadas.sum();
+	}
+
+	/**
+	 * M&eacute;todo getUltimoErrorVolcadoPeriodico.<br>
+	 * @return &Uacute;ltimo error del volcado peri&oacute;dico, o nulo si no ha habido.
+	 */
+	public RuntimeException getUltimoErrorVolcadoPeriodico() {
+		return ultimoErrorVolcadoPeriodico;
+	}
+
+}
@@ -0,0 +1,178 @@
+package com.insags.mockito.tutorial.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import com.insags.mockito.tutorial.ActualizacionPorLotesException;
+import com.insags.mockito.tutorial.ItemDao;
+
+public class ItemDaoEscrituraDiferidaTest {
+
+	@Mock
+	private ItemDao delegado;
+
+	private ItemDaoEscrituraDiferida itemDao;
+
+	@Before
+	public void inicializarMocks() {
+		MockitoAnnotations.initMocks(this);
+		itemDao = new ItemDaoEscrituraDiferida(delegado, 3);
+	}
+
+	/**
+	 * Mtodo para probar que las escrituras repetidas sobre una posicin se
+	 * reducen a la ltima al volcar.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - No se escribe en el DAO decorado hasta volcar. 
+	 * - Se enva un nico lote con el ltimo valor de cada posicin.
+	 */
+	@Test
+	public void comprobarReduccionDeEscriturasRepetidasAlVolcar() {
+		itemDao.actualizarItem("Peonza", 0);
+		itemDao.actualizarItem("Mueca", 0);
+		itemDao.actualizarItem("Cometa", 1);
+		Mockito.verifyZeroInteractions(delegado);
+		
+		itemDao.volcar();
+		
+		// Assert
+		Map<Integer, String> lote = new LinkedHashMap<Integer, String>();
+		lote.put(0, "Mueca");
+		lote.put(1, "Cometa");
+		Mockito.verify(delegado).actualizarItems(lote);
+		Assert.assertEquals(3, itemDao.getEscriturasRecibidas());
+		Assert.assertEquals(2, itemDao.getEscriturasEnviadas());
+	}
+
+	/**
+	 * Mtodo para probar que al llenarse el bfer el propio hilo que escribe
+	 * realiza el volcado, y que un volcado fallido conserva las escrituras.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Se ha lanzado la excepcin del DAO decorado en la escritura que llena el bfer. 
+	 * - Las escrituras siguen pendientes.
+	 */
+	@Test
+	public void comprobarVolcadoPorBuferLlenoConservandoPendientesSiFalla() {
+		Mockito.doThrow(new IllegalStateException("Excepcin esperada")).when(delegado)
+				.actualizarItems(Matchers.anyMapOf(Integer.class, String.class));
+		Mockito.doThrow(new IllegalStateException("Excepcin esperada")).when(delegado)
+				.actualizarItem(Matchers.anyString(), Matchers.anyInt());
+		itemDao.actualizarItem("Peonza", 0);
+		itemDao.actualizarItem("Mueca", 1);
+		try {
+			itemDao.actualizarItem("Cometa", 2);
+			Assert.fail("Debe propagar el error del volcado");
+		} catch (IllegalStateException e) {
+			// Assert
+			Assert.assertEquals(3, itemDao.getPendientes());
+		}
+	}
+
+	/**
+	 * Mtodo para probar que una escritura que el DAO decorado rechaza por
+	 * su posicin se descarta en vez de bloquear los volcados siguientes.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - La posicin negativa se rechaza al escribir. 
+	 * - El primer volcado aplica la escritura vlida e informa de la descartada. 
+	 * - Las lecturas siguientes funcionan.
+	 */
+	@Test
+	public void comprobarDescarteDeEscrituraRechazadaPorElDao() {
+		ItemDaoEscrituraDiferida diferido = new ItemDaoEscrituraDiferida(new ItemDaoMemoria(2), 10);
+		try {
+			diferido.actualizarItem("Pelota", -1);
+			Assert.fail("Debe rechazar la posicin negativa");
+		} catch (ArrayIndexOutOfBoundsException e) {
+			Assert.assertEquals(0, diferido.getPendientes());
+		}
+		diferido.actualizarItem("Peonza", 0);
+		diferido.actualizarItem("Mueca", 5);
+		
+		try {
+			diferido.volcar();
+			Assert.fail("Debe informar de la escritura descartada");
+		} catch (ActualizacionPorLotesException e) {
+			// Assert
+			Assert.assertArrayEquals(new int[] { 5 }, e.getErroresLote().get(0).getPosiciones());
+		}
+		Assert.assertEquals(0, diferido.getPendientes());
+		Assert.assertEquals(1, diferido.getEscriturasDescartadas());
+		Assert.assertArrayEquals(new String[] { "Peonza" }, diferido.obtenerTodosLosItems());
+	}
+
+	/**
+	 * Mtodo para probar que con el bfer lleno y el DAO decorado fallando
+	 * las escrituras sobre posiciones nuevas se rechazan en vez de acumularse.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - La escritura que llena el bfer recibe el fallo del volcado pero queda pendiente. 
+	 * - Las escrituras nuevas se rechazan con el fallo como causa y el bfer no crece. 
+	 * - Las escrituras sobre posiciones pendientes se siguen aceptando. 
+	 * - Cuando el DAO se recupera se vuelve a aceptar escrituras.
+	 */
+	@Test
+	public void comprobarRechazoDeEscriturasConBuferLlenoYVolcadoFallido() {
+		IllegalStateException fallo = new IllegalStateException("Excepcin esperada");
+		Mockito.doThrow(fallo).when(delegado).actualizarItems(Matchers.anyMapOf(Integer.class, String.class));
+		Mockito.doThrow(fallo).when(delegado).actualizarItem(Matchers.anyString(), Matchers.anyInt());
+		itemDao.actualizarItem("Peonza", 0);
+		itemDao.actualizarItem("Mueca", 1);
+		try {
+			itemDao.actualizarItem("Cometa", 2);
+			Assert.fail("Debe propagar el error del volcado");
+		} catch (IllegalStateException e) {
+			Assert.assertSame(fallo, e);
+		}
+		for (int posicion = 3; posicion < 10; posicion++) {
+			try {
+				itemDao.actualizarItem("Yoyo", posicion);
+				Assert.fail("Debe rechazar la escritura con el bfer lleno");
+			} catch (IllegalStateException e) {
+				Assert.assertSame(fallo, e.getCause());
+			}
+		}
+		Map<Integer, String> lote = new LinkedHashMap<Integer, String>();
+		lote.put(0, "Pelota");
+		lote.put(20, "Yoyo");
+		try {
+			itemDao.actualizarItems(lote);
+			Assert.fail("Debe rechazar el lote con el bfer lleno");
+		} catch (IllegalStateException e) {
+			Assert.assertSame(fallo, e.getCause());
+		}
+		Assert.assertEquals(3, itemDao.getPendientes());
+		try {
+			itemDao.actualizarItem("Pelota", 1);
+			Assert.fail("Debe propagar el error del volcado");
+		} catch (IllegalStateException e) {
+			Assert.assertSame(fallo, e);
+		}
+
+		Mockito.doNothing().when(delegado).actualizarItems(Matchers.anyMapOf(Integer.class, String.class));
+		itemDao.actualizarItem("Yoyo", 3);
+
+		// Assert
+		Map<Integer, String> volcado = new LinkedHashMap<Integer, String>();
+		volcado.put(0, "Peonza");
+		volcado.put(1, "Pelota");
+		volcado.put(2, "Cometa");
+		Mockito.verify(delegado, Mockito.atLeastOnce()).actualizarItems(volcado);
+		Assert.assertEquals(1, itemDao.getPendientes());
+	}
+
+}
@@ -0,0 +1,441 @@
+package com.insags.mockito.tutorial.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import com.insags.mockito.tutorial.CursorItems;
+import com.insags.mockito.tutorial.ItemDao;
+
+/**
+ * Clase ItemDaoFichero.<br>
+ * Implementaci&oacute;n de {@link ItemDao} sobre un fichero proyectado en
+ * memoria. Cada posici&oacute;n ocupa una ranura de tama&ntilde;o fijo, por lo
+ * que escribir un item es escribir en su sitio y leer es recorrer la
+ * proyecci&oacute;n; abrir el fichero s&oacute;lo lee la cabecera.<br>
+ * Formato: cabecera de {@value #TAMANYO_CABECERA} bytes (marca, versi&oacute;n,
+ * tama&ntilde;o de ranura y n&uacute;mero de posiciones) seguida de las
+ * ranuras. Cada ranura guarda la longitud en UTF-8 m&aacute;s uno en dos bytes
+ * sin signo (cero indica posici&oacute;n sin item), el CRC32 de la longitud y
+ * los bytes, y despu&eacute;s los bytes. Una ranura cuya suma no coincide es
+ * una escritura cortada por una ca&iacute;da y se lee como nulo: tras un
+ * corte cada posici&oacute;n tiene su valor anterior, el nuevo o nulo, nunca
+ * una mezcla.<br>
+ * {@link #volcar()} fuerza a disco primero las ranuras y despu&eacute;s la
+ * cabecera, de modo que tras un volcado la cabecera nunca cuenta posiciones
+ * que no est&eacute;n en disco.<br>
+ * @author INSA
+ */
+public class ItemDaoFichero implements ItemDao, Closeable {
+
+	/** Marca de formato: "ITM1". */
+	private static final int MARCA = 0x49544D31;
+
+	/** Versi&oacute;n del formato. */
+	private static final int VERSION = 2;
+
+	/** Tama&ntilde;o de la cabecera en bytes. */
+	static final int TAMANYO_CABECERA = 16;
+
+	/** Desplazamiento del n&uacute;mero de posiciones en la cabecera. */
+	private static final int DESPLAZAMIENTO_POSICIONES = 12;
+
+	/** Bytes que ocupa la longitud al principio de cada ranura. */
+	private static final int TAMANYO_LONGITUD = 2;
+
+	/** Bytes que ocupan la longitud y la suma de control al principio de cada ranura. */
+	private static final int TAMANYO_CONTROL = TAMANYO_LONGITUD + 4;
+
+	/** Tama&ntilde;o aproximado de cada tramo proyectado. */
+	private static final int TAMANYO_SEGMENTO = 1 << 27;
+
+	/** Canal del fichero. */
+	private final FileChannel canal;
+
+	/** Proyecci&oacute;n de la cabecera. */
+	private final MappedByteBuffer cabecera;
+
+	/** Tramos de ranuras proyectados, en orden; se proyectan al usarse. */
+	private final List<MappedByteBuffer> segmentos = new ArrayList<MappedByteBuffer>();
+
+	/** Tama&ntilde;o de cada ranura en bytes. */
+	private final int tamanyoRanura;
+
+	/** N&uacute;mero de ranuras de cada tramo. */
+	private final int ranurasPorSegmento;
+
+	/** Lecturas compartidas y escrituras exclusivas. */
+	private final ReadWriteLock cerrojo = new ReentrantReadWriteLock();
+
+	/** N&uacute;mero de posiciones. */
+	private int numeroPosiciones;
+
+	/**
+	 * Constructor de la clase.<br>
+	 * Abre el fichero o lo crea vac&iacute;o si no existe.
+	 * @param fichero Ruta del fichero.
+	 * @param tamanyoRanura Tama&ntilde;o de cada ranura en bytes; debe coincidir con el del fichero si ya existe.
+	 * @throws IOException Si no se puede abrir el fichero o su formato no es v&aacute;lido.
+	 */
+	public ItemDaoFichero(Path fichero, int tamanyoRanura) throws IOException {
+		if (tamanyoRanura <= TAMANYO_CONTROL || tamanyoRanura > 0xFFFF) {
+			throw new IllegalArgumentException("Tamanyo de ranura no valido: " + tamanyoRanura);
+		}
+		this.canal = FileChannel.open(fichero, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			boolean nuevo = canal.size() == 0;
+			this.cabecera = canal.map(FileChannel.MapMode.READ_WRITE, 0, TAMANYO_CABECERA);
+			if (nuevo) {
+				cabecera.putInt(0, MARCA).putInt(4, VERSION).putInt(8, tamanyoRanura).putInt(DESPLAZAMIENTO_POSICIONES, 0);
+			} else if (cabecera.getInt(0) != MARCA || cabecera.getInt(4) != VERSION) {
+				throw new IOException("Formato de fichero no reconocido: " + fichero);
+			} else if (cabecera.getInt(8) != tamanyoRanura) {
+				throw new IOException("El fichero usa ranuras de " + cabecera.getInt(8) + " bytes: " + fichero);
+			}
+		} catch (IOException e) {
+			canal.close();
+			throw e;
+		}
+		this.tamanyoRanura = tamanyoRanura;
+		this.ranurasPorSegmento = Math.max(1, TAMANYO_SEGMENTO / tamanyoRanura);
+		this.numeroPosiciones = cabecera.getInt(DESPLAZAMIENTO_POSICIONES);
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito abrirCursor.<br>
+	 * @param tamanyoBloque N&uacute;mero m&aacute;ximo de items le&iacute;dos en cada acceso.
+	 * @return El cursor, que lee directamente de la proyecci&oacute;n.
+	 * @see com.insags.mockito.tutorial.ItemDao#abrirCursor(int)
+	 */
+	@Override
+	public CursorItems abrirCursor(int tamanyoBloque) {
+		return new CursorPorBloques(tamanyoBloque, 0) {
+			@Override
+			protected int leerBloque(int desde, String[] destino) {
+				return leer(desde, destino);
+			}
+		};
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito obtenerTodosLosItems.<br>
+	 * @return Todos los items, ordenados por posici&oacute;n.
+	 * @see com.insags.mockito.tutorial.ItemDao#obtenerTodosLosItems()
+	 */
+	@Override
+	public String[] obtenerTodosLosItems() {
+		cerrojo.readLock().lock();
+		try {
+			String[] items = new String[numeroPosiciones];
+			leer(0, items);
+			return items;
+		} finally {
+			cerrojo.readLock().unlock();
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito obtenerItems.<br>
+	 * @param desde Primera posici&oacute;n de la p&aacute;gina.
+	 * @param limite N&uacute;mero m&aacute;ximo de items de la p&aacute;gina.
+	 * @return Los items de la p&aacute;gina.
+	 * @see com.insags.mockito.tutorial.ItemDao#obtenerItems(int, int)
+	 */
+	@Override
+	public String[] obtenerItems(int desde, int limite) {
+		cerrojo.readLock().lock();
+		try {
+			String[] pagina = new String[Paginas.tamanyo(desde, limite, numeroPosiciones)];
+			leer(desde, pagina);
+			return pagina;
+		} finally {
+			cerrojo.readLock().unlock();
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito obtenerItem.<br>
+	 * @param posicion La posici&oacute;n del item.
+	 * @return El item, o nulo si la posici&oacute;n nunca se ha escrito.
+	 * @see com.insags.mockito.tutorial.ItemDao#obtenerItem(int)
+	 */
+	@Override
+	public String obtenerItem(int posicion) {
+		cerrojo.readLock().lock();
+		try {
+			Paginas.comprobarPosicion(posicion, numeroPosiciones);
+			String[] item = new String[1];
+			leer(posicion, item);
+			return item[0];
+		} finally {
+			cerrojo.readLock().unlock();
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito actualizarItem.<br>
+	 * @param item El nuevo valor del item.
+	 * @param posicion La posici&oacute;n del item.
+	 * @throws ArrayIndexOutOfBoundsException Si la posici&oacute;n es negativa.
+	 * @throws IllegalArgumentException Si el item no cabe en una ranura.
+	 * @see com.insags.mockito.tutorial.ItemDao#actualizarItem(java.lang.String, int)
+	 */
+	@Override
+	public void actualizarItem(String item, int posicion) {
+		byte[] codificado = codificar(item, posicion);
+		cerrojo.writeLock().lock();
+		try {
+			escribir(codificado, posicion);
+		} finally {
+			cerrojo.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito actualizarItems.<br>
+	 * Comprueba todo el lote antes de escribir nada.
+	 * @param items Nuevos valores indexados por posici&oacute;n.
+	 * @see com.insags.mockito.tutorial.ItemDao#actualizarItems(java.util.Map)
+	 */
+	@Override
+	public void actualizarItems(Map<Integer, String> items) {
+		List<byte[]> codificados = new ArrayList<byte[]>(items.size());
+		for (Map.Entry<Integer, String> item : items.entrySet()) {
+			codificados.add(codificar(item.getValue(), item.getKey()));
+		}
+		cerrojo.writeLock().lock();
+		try {
+			int i = 0;
+			for (Integer posicion : items.keySet()) {
+				escribir(codificados.get(i++), posicion);
+			}
+		} finally {
+			cerrojo.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito rellenarItems.<br>
+	 * El valor se codifica una sola vez.
+	 * @param posiciones Las posiciones.
+	 * @param item El nuevo valor de todas ellas.
+	 * @throws ArrayIndexOutOfBoundsException Si alguna posici&oacute;n es negativa; entonces no se escribe ninguna.
+	 * @throws IllegalArgumentException Si el item no cabe en una ranura.
+	 * @see com.insags.mockito.tutorial.ItemDao#rellenarItems(int[], java.lang.String)
+	 */
+	@Override
+	public void rellenarItems(int[] posiciones, String item) {
+		if (posiciones.length == 0) {
+			return;
+		}
+		for (int posicion : posiciones) {
+			if (posicion < 0) {
+				throw new ArrayIndexOutOfBoundsException(posicion);
+			}
+		}
+		byte[] codificado = codificar(item, posiciones[0]);
+		cerrojo.writeLock().lock();
+		try {
+			for (int posicion : posiciones) {
+				escribir(codificado, posicion);
+			}
+		} finally {
+			cerrojo.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * M&eacute;todo volcar.<br>
+	 * Fuerza a disco las ranuras y despu&eacute;s la cabecera. Los lectores
+	 * pueden proyectar tramos nuevos mientras tanto, as&iacute; que se recorre
+	 * una copia de la lista; esos tramos no tienen escrituras pendientes
+	 * porque nadie escribe con el cerrojo de lectura tomado.
+	 */
+	public void volcar() {
+		cerrojo.readLock().lock();
+		try {
+			List<MappedByteBuffer> proyectados;
+			synchronized (segmentos) {
+				proyectados = new ArrayList<MappedByteBuffer>(segmentos);
+			}
+			for (MappedByteBuffer segmento : proyectados) {
+				if (segmento != null) {
+					segmento.force();
+				}
+			}
+			cabecera.force();
+		} finally {
+			cerrojo.readLock().unlock();
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito close.<br>
+	 * Vuelca y cierra el fichero.
+	 * @throws IOException Si falla el cierre.
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		volcar();
+		canal.close();
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito getTamanyo.<br>
+	 * @return N&uacute;mero de posiciones.
+	 * @see com.insags.mockito.tutorial.ItemDao#getTamanyo()
+	 */
+	@Override
+	public int getTamanyo() {
+		cerrojo.readLock().lock();
+		try {
+			return numeroPosiciones;
+		} finally {
+			cerrojo.readLock().unlock();
+		}
+	}
+
+	/**
+	 * M&eacute;todo leer.<br>
+	 * @param desde Primera posici&oacute;n a leer.
+	 * @param destino Array a rellenar desde su &iacute;ndice cero.
+	 * @return N&uacute;mero de items le&iacute;dos.
+	 */
+	private int leer(int desde, String[] destino) {
+		cerrojo.readLock().lock();
+		try {
+			int leidos = Math.max(0, Math.min(destino.length, numeroPosiciones - desde));
+			byte[] bytes = new byte[tamanyoRanura - TAMANYO_CONTROL];
+			CRC32 crc = new CRC32();
+			for (int i = 0; i < leidos; i++) {
+				int posicion = desde + i;
+				ByteBuffer ranura = ranura(posicion);
+				int longitud = (ranura.getShort() & 0xFFFF) - 1;
+				if (longitud < 0 || longitud > bytes.length) {
+					destino[i] = null;
+					continue;
+				}
+				int suma = ranura.getInt();
+				ranura.get(bytes, 0, longitud);
+				if (suma != suma(crc, bytes, longitud)) {
+					destino[i] = null;
+				} else {
+					destino[i] = new String(bytes, 0, longitud, StandardCharsets.UTF_8);
+				}
+			}
+			return leidos;
+		} finally {
+			cerrojo.readLock().unlock();
+		}
+	}
+
+	/**
+	 * M&eacute;todo escribir.<br>
+	 * Escribe primero la suma y los bytes y despu&eacute;s la longitud, y
+	 * s&oacute;lo entonces cuenta la posici&oacute;n en la cabecera. Debe
+	 * invocarse con el cerrojo de escritura tomado.
+	 * @param codificado Ranura codificada por codificar, o nulo para borrar.
+	 * @param posicion La posici&oacute;n del item.
+	 */
+	private void escribir(byte[] codificado, int posicion) {
+		ByteBuffer ranura = ranura(posicion);
+		int inicio = ranura.position();
+		if (codificado == null) {
+			ranura.putShort((short) 0);
+		} else {
+			ranura.position(inicio + TAMANYO_LONGITUD);
+			ranura.put(codificado, TAMANYO_LONGITUD, codificado.length - TAMANYO_LONGITUD);
+			ranura.put(inicio, codificado[0]).put(inicio + 1, codificado[1]);
+		}
+		if (posicion >= numeroPosiciones) {
+			numeroPosiciones = posicion + 1;
+			cabecera.putInt(DESPLAZAMIENTO_POSICIONES, numeroPosiciones);
+		}
+	}
+
+	/**
+	 * M&eacute;todo codificar.<br>
+	 * @param item El item.
+	 * @param posicion La posici&oacute;n del item.
+	 * @return La longitud m&aacute;s uno en dos bytes, la suma de control y los bytes UTF-8, o nulo si el item es nulo.
+	 * @throws ArrayIndexOutOfBoundsException Si la posici&oacute;n es negativa.
+	 * @throws IllegalArgumentException Si el item no cabe en una ranura.
+	 */
+	private byte[] codificar(String item, int posicion) {
+		if (posicion < 0) {
+			throw new ArrayIndexOutOfBoundsException(posicion);
+		}
+		if (item == null) {
+			return null;
+		}
+		byte[] bytes = item.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > tamanyoRanura - TAMANYO_CONTROL) {
+			throw new IllegalArgumentException("El item de la posicion " + posicion + " ocupa " + bytes.length
+					+ " bytes y la ranura admite " + (tamanyoRanura - TAMANYO_CONTROL));
+		}
+		byte[] codificado = new byte[TAMANYO_CONTROL + bytes.length];
+		ByteBuffer.wrap(codificado).putShort((short) (bytes.length + 1))
+				.putInt(suma(new CRC32(), bytes, bytes.length)).put(bytes);
+		return codificado;
+	}
+
+	/**
+	 * M&eacute;todo suma.<br>
+	 * @param crc Calculador a reutilizar.
+	 * @param bytes Bytes del item.
+	 * @param longitud N&uacute;mero de bytes del item.
+	 * @return CRC32 de la longitud m&aacute;s uno, en dos bytes, y de los bytes.
+	 */
+	private static int suma(CRC32 crc, byte[] bytes, int longitud) {
+		crc.reset();
+		crc.update((longitud + 1) >>> 8);
+		crc.update(longitud + 1);
+		crc.update(bytes, 0, longitud);
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * M&eacute;todo ranura.<br>
+	 * Proyecta el tramo de la posici&oacute;n si a&uacute;n no lo est&aacute;,
+	 * lo que hace crecer el fichero si hace falta.
+	 * @param posicion La posici&oacute;n.
+	 * @return Vista del tramo situada al principio de la ranura.
+	 */
+	private ByteBuffer ranura(int posicion) {
+		int numeroSegmento = posicion / ranurasPorSegmento;
+		MappedByteBuffer segmento;
+		synchronized (segmentos) {
+			while (segmentos.size() <= numeroSegmento) {
+				segmentos.add(null);
+			}
+			segmento = segmentos.get(numeroSegmento);
+			if (segmento == null) {
+				long inicio = TAMANYO_CABECERA + (long) numeroSegmento * ranurasPorSegmento * tamanyoRanura;
+				try {
+					segmento = canal.map(FileChannel.MapMode.READ_WRITE, inicio, (long) ranurasPorSegmento * tamanyoRanura);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				segmentos.set(numeroSegmento, segmento);
+			}
+		}
+		ByteBuffer vista = segmento.duplicate();
+		vista.position((posicion % ranurasPorSegmento) * tamanyoRanura);
+		return vista;
+	}
+
+}
@@ -0,0 +1,134 @@
+package com.insags.mockito.tutorial.impl;
+
+import static org.hamcrest.Matchers.arrayContaining;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ItemDaoFicheroTest {
+
+	@Rule
+	public TemporaryFolder carpeta = new TemporaryFolder();
+
+	/**
+	 * Mtodo para probar que los items escritos se conservan al cerrar y
+	 * volver a abrir el fichero.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Se recuperan los items, incluidos los no ASCII. 
+	 * - Las posiciones nunca escritas se leen como nulo.
+	 */
+	@Test
+	public void comprobarPersistenciaDeItemsAlReabrirElFichero() throws IOException {
+		File fichero = new File(carpeta.getRoot(), "items.dat");
+		try (ItemDaoFichero itemDao = new ItemDaoFichero(fichero.toPath(), 32)) {
+			itemDao.actualizarItem("Peonza", 0);
+			itemDao.actualizarItem("Mueca", 2);
+			itemDao.actualizarItem("Cometa", 0);
+		}
+		
+		try (ItemDaoFichero itemDao = new ItemDaoFichero(fichero.toPath(), 32)) {
+			// Assert
+			Assert.assertEquals(3, itemDao.getTamanyo());
+			assertThat(itemDao.obtenerTodosLosItems(), arrayContaining("Cometa", null, "Mueca"));
+		}
+	}
+
+	/**
+	 * Mtodo para probar que un item que no cabe en su ranura se rechaza sin
+	 * modificar el fichero.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Se ha lanzado la excepcin de tipo IllegalArgumentException. 
+	 * - El catlogo sigue vaco.
+	 */
+	@Test
+	public void comprobarActualizacionFallidaPorExcederTamaoDeRanura() throws IOException {
+		try (ItemDaoFichero itemDao = new ItemDaoFichero(new File(carpeta.getRoot(), "items.dat").toPath(), 8)) {
+			try {
+				itemDao.actualizarItem("Remember, remember", 0);
+				Assert.fail("El item no cabe en la ranura");
+			} catch (IllegalArgumentException e) {
+				// Assert
+				Assert.assertEquals(0, itemDao.getTamanyo());
+			}
+		}
+	}
+
+	/**
+	 * Mtodo para probar que no se puede abrir un fichero con un tamao de
+	 * ranura distinto del suyo.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Se ha lanzado la excepcin de tipo IOException.
+	 */
+	@Test(expected = IOException.class)
+	public void comprobarAperturaFallidaPorTamaoDeRanuraDistinto() throws IOException {
+		File fichero = new File(carpeta.getRoot(), "items.dat");
+		new ItemDaoFichero(fichero.toPath(), 32).close();
+		new ItemDaoFichero(fichero.toPath(), 64).close();
+	}
+
+	/**
+	 * Mtodo para probar la lectura de una pgina directamente del fichero.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Se recuperan slo los items de la pgina.
+	 */
+	@Test
+	public void comprobarLecturaDePaginaDelFichero() throws IOException {
+		try (ItemDaoFichero itemDao = new ItemDaoFichero(new File(carpeta.getRoot(), "items.dat").toPath(), 16)) {
+			for (int posicion = 0; posicion < 10; posicion++) {
+				itemDao.actualizarItem("item" + posicion, posicion);
+			}
+			
+			// Assert
+			assertThat(itemDao.obtenerItems(4, 2), arrayContaining("item4", "item5"));
+			Assert.assertEquals("item9", itemDao.obtenerItem(9));
+		}
+	}
+
+	/**
+	 * Mtodo para probar que una reescritura cortada a medias por una cada
+	 * se detecta al reabrir el fichero.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - La posicin con la ranura a medio escribir se lee como nulo, no como
+	 * una mezcla del valor anterior y el nuevo. 
+	 * - El resto de posiciones conservan su valor.
+	 */
+	@Test
+	public void comprobarLecturaComoNuloDeRanuraCortadaAMedias() throws IOException {
+		File fichero = new File(carpeta.getRoot(), "items.dat");
+		try (ItemDaoFichero itemDao = new ItemDaoFichero(fichero.toPath(), 32)) {
+			itemDao.actualizarItem("Peonza", 0);
+			itemDao.actualizarItem("Cometa", 1);
+		}
+		// Simula la cada a mitad de reescribir "Regalo" sobre "Peonza": slo
+		// han llegado al disco los dos primeros bytes del nuevo valor.
+		try (RandomAccessFile acceso = new RandomAccessFile(fichero, "rw")) {
+			acceso.seek(ItemDaoFichero.TAMANYO_CABECERA + 6);
+			acceso.write("Re".getBytes(StandardCharsets.UTF_8));
+		}
+		
+		try (ItemDaoFichero itemDao = new ItemDaoFichero(fichero.toPath(), 32)) {
+			// Assert
+			Assert.assertNull(itemDao.obtenerItem(0));
+			assertThat(itemDao.obtenerTodosLosItems(), arrayContaining(null, "Cometa"));
+		}
+	}
+
+}
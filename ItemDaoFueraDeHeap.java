@@ -0,0 +1,406 @@
+package com.insags.mockito.tutorial.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.insags.mockito.tutorial.CursorItems;
+import com.insags.mockito.tutorial.ItemDao;
+
+/**
+ * Clase ItemDaoFueraDeHeap.<br>
+ * Implementaci&oacute;n de {@link ItemDao} que guarda los items fuera del
+ * heap: sus bytes UTF-8 se a&ntilde;aden a bloques de memoria directa y un
+ * &iacute;ndice de tipos primitivos anota para cada posici&oacute;n el bloque,
+ * el desplazamiento y la longitud. En el heap s&oacute;lo quedan los dos
+ * arrays del &iacute;ndice, de modo que millones de items no suponen
+ * millones de objetos para el recolector. Los String se decodifican al
+ * leerlos; {@link #obtenerBytes(int)} da acceso a los bytes sin decodificar.<br>
+ * Reescribir un item deja sus bytes anteriores sin uso; cuando los bytes sin
+ * uso superan a los vivos se compacta la arena.<br>
+ * @author INSA
+ */
+public class ItemDaoFueraDeHeap implements ItemDao {
+
+	/** Tama&ntilde;o por defecto de cada bloque de la arena. */
+	public static final int TAMANYO_BLOQUE_ARENA_POR_DEFECTO = 1 << 20;
+
+	/** Tama&ntilde;o de cada bloque de la arena. */
+	private final int tamanyoBloqueArena;
+
+	/** Bloques de la arena; se escribe siempre en el &uacute;ltimo. */
+	private List<ByteBuffer> arena = new ArrayList<ByteBuffer>();
+
+	/** Bloque (32 bits altos) y desplazamiento (32 bits bajos) de cada posici&oacute;n. */
+	private long[] ubicaciones = new long[16];
+
+	/** Longitud en bytes m&aacute;s uno de cada posici&oacute;n; cero indica posici&oacute;n sin item. */
+	private int[] longitudes = new int[16];
+
+	/** N&uacute;mero de posiciones. */
+	private int numeroPosiciones;
+
+	/** Bytes de la arena ocupados por items vigentes. */
+	private long bytesVivos;
+
+	/** Bytes de la arena ocupados por valores sustituidos. */
+	private long bytesMuertos;
+
+	/** Lecturas compartidas y escrituras exclusivas. */
+	private final ReadWriteLock cerrojo = new ReentrantReadWriteLock();
+
+	/**
+	 * Constructor de la clase.<br>
+	 * Con bloques de {@value #TAMANYO_BLOQUE_ARENA_POR_DEFECTO} bytes.
+	 */
+	public ItemDaoFueraDeHeap() {
+		this(TAMANYO_BLOQUE_ARENA_POR_DEFECTO);
+	}
+
+	/**
+	 * Constructor de la clase.<br>
+	 * @param tamanyoBloqueArena Tama&ntilde;o de cada bloque de la arena en bytes.
+	 */
+	public ItemDaoFueraDeHeap(int tamanyoBloqueArena) {
+		if (tamanyoBloqueArena <= 0) {
+			throw new IllegalArgumentException("Tamanyo de bloque no valido: " + tamanyoBloqueArena);
+		}
+		this.tamanyoBloqueArena = tamanyoBloqueArena;
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito abrirCursor.<br>
+	 * @param tamanyoBloque N&uacute;mero m&aacute;ximo de items le&iacute;dos en cada acceso.
+	 * @return El cursor, que decodifica cada bloque al leerlo.
+	 * @see com.insags.mockito.tutorial.ItemDao#abrirCursor(int)
+	 */
+	@Override
+	public CursorItems abrirCursor(int tamanyoBloque) {
+		return new CursorPorBloques(tamanyoBloque, 0) {
+			@Override
+			protected int leerBloque(int desde, String[] destino) {
+				return leer(desde, destino);
+			}
+		};
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito obtenerTodosLosItems.<br>
+	 * @return Todos los items, ordenados por posici&oacute;n.
+	 * @see com.insags.mockito.tutorial.ItemDao#obtenerTodosLosItems()
+	 */
+	@Override
+	public String[] obtenerTodosLosItems() {
+		cerrojo.readLock().lock();
+		try {
+			String[] items = new String[numeroPosiciones];
+			leer(0, items);
+			return items;
+		} finally {
+			cerrojo.readLock().unlock();
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito obtenerItems.<br>
+	 * @param desde Primera posici&oacute;n de la p&aacute;gina.
+	 * @param limite N&uacute;mero m&aacute;ximo de items de la p&aacute;gina.
+	 * @return Los items de la p&aacute;gina.
+	 * @see com.insags.mockito.tutorial.ItemDao#obtenerItems(int, int)
+	 */
+	@Override
+	public String[] obtenerItems(int desde, int limite) {
+		cerrojo.readLock().lock();
+		try {
+			String[] pagina = new String[Paginas.tamanyo(desde, limite, numeroPosiciones)];
+			leer(desde, pagina);
+			return pagina;
+		} finally {
+			cerrojo.readLock().unlock();
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito obtenerItem.<br>
+	 * @param posicion La posici&oacute;n del item.
+	 * @return El item, o nulo si la posici&oacute;n nunca se ha escrito.
+	 * @see com.insags.mockito.tutorial.ItemDao#obtenerItem(int)
+	 */
+	@Override
+	public String obtenerItem(int posicion) {
+		cerrojo.readLock().lock();
+		try {
+			Paginas.comprobarPosicion(posicion, numeroPosiciones);
+			String[] item = new String[1];
+			leer(posicion, item);
+			return item[0];
+		} finally {
+			cerrojo.readLock().unlock();
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito actualizarItem.<br>
+	 * @param item El nuevo valor del item.
+	 * @param posicion La posici&oacute;n del item.
+	 * @throws ArrayIndexOutOfBoundsException Si la posici&oacute;n es negativa.
+	 * @see com.insags.mockito.tutorial.ItemDao#actualizarItem(java.lang.String, int)
+	 */
+	@Override
+	public void actualizarItem(String item, int posicion) {
+		if (posicion < 0) {
+			throw new ArrayIndexOutOfBoundsException(posicion);
+		}
+		byte[] bytes = item == null ? null : item.getBytes(StandardCharsets.UTF_8);
+		cerrojo.writeLock().lock();
+		try {
+			escribir(bytes, posicion);
+			compactarSiHaceFalta();
+		} finally {
+			cerrojo.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito actualizarItems.<br>
+	 * @param items Nuevos valores indexados por posici&oacute;n.
+	 * @throws ArrayIndexOutOfBoundsException Si alguna posici&oacute;n es negativa; no se aplica ninguna.
+	 * @see com.insags.mockito.tutorial.ItemDao#actualizarItems(java.util.Map)
+	 */
+	@Override
+	public void actualizarItems(Map<Integer, String> items) {
+		for (Integer posicion : items.keySet()) {
+			if (posicion < 0) {
+				throw new ArrayIndexOutOfBoundsException(posicion);
+			}
+		}
+		cerrojo.writeLock().lock();
+		try {
+			for (Map.Entry<Integer, String> item : items.entrySet()) {
+				String valor = item.getValue();
+				escribir(valor == null ? null : valor.getBytes(StandardCharsets.UTF_8), item.getKey());
+			}
+			compactarSiHaceFalta();
+		} finally {
+			cerrojo.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito rellenarItems.<br>
+	 * El valor se codifica una sola vez.
+	 * @param posiciones Las posiciones.
+	 * @param item El nuevo valor de todas ellas.
+	 * @throws ArrayIndexOutOfBoundsException Si alguna posici&oacute;n es negativa; entonces no se escribe ninguna.
+	 * @see com.insags.mockito.tutorial.ItemDao#rellenarItems(int[], java.lang.String)
+	 */
+	@Override
+	public void rellenarItems(int[] posiciones, String item) {
+		for (int posicion : posiciones) {
+			if (posicion < 0) {
+				throw new ArrayIndexOutOfBoundsException(posicion);
+			}
+		}
+		byte[] bytes = item == null ? null : item.getBytes(StandardCharsets.UTF_8);
+		cerrojo.writeLock().lock();
+		try {
+			for (int posicion : posiciones) {
+				escribir(bytes, posicion);
+			}
+			compactarSiHaceFalta();
+		} finally {
+			cerrojo.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * M&eacute;todo obtenerBytes.<br>
+	 * Da acceso a los bytes UTF-8 de un item sin decodificarlo ni copiarlo.
+	 * @param posicion La posici&oacute;n del item.
+	 * @return Vista de s&oacute;lo lectura de los bytes, v&aacute;lida hasta la siguiente escritura, o nulo si no hay item.
+	 * @throws ArrayIndexOutOfBoundsException Si la posici&oacute;n no existe.
+	 */
+	public ByteBuffer obtenerBytes(int posicion) {
+		cerrojo.readLock().lock();
+		try {
+			if (posicion < 0 || posicion >= numeroPosiciones) {
+				throw new ArrayIndexOutOfBoundsException(posicion);
+			}
+			int longitud = longitudes[posicion] - 1;
+			if (longitud < 0) {
+				return null;
+			}
+			long ubicacion = ubicaciones[posicion];
+			ByteBuffer vista = arena.get((int) (ubicacion >>> 32)).asReadOnlyBuffer();
+			vista.limit((int) ubicacion + longitud).position((int) ubicacion);
+			return vista.slice();
+		} finally {
+			cerrojo.readLock().unlock();
+		}
+	}
+
+	/**
+	 * M&eacute;todo compactar.<br>
+	 * Copia los items vigentes a una arena nueva y libera la anterior.
+	 */
+	public void compactar() {
+		cerrojo.writeLock().lock();
+		try {
+			List<ByteBuffer> anterior = arena;
+			arena = new ArrayList<ByteBuffer>();
+			bytesVivos = 0;
+			bytesMuertos = 0;
+			for (int posicion = 0; posicion < numeroPosiciones; posicion++) {
+				int longitud = longitudes[posicion] - 1;
+				if (longitud >= 0) {
+					long ubicacion = ubicaciones[posicion];
+					ByteBuffer origen = anterior.get((int) (ubicacion >>> 32)).duplicate();
+					origen.limit((int) ubicacion + longitud).position((int) ubicacion);
+					ubicaciones[posicion] = anyadir(origen, longitud);
+					bytesVivos += longitud;
+				}
+			}
+		} finally {
+			cerrojo.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito getTamanyo.<br>
+	 * @return N&uacute;mero de posiciones.
+	 * @see com.insags.mockito.tutorial.ItemDao#getTamanyo()
+	 */
+	@Override
+	public int getTamanyo() {
+		cerrojo.readLock().lock();
+		try {
+			return numeroPosiciones;
+		} finally {
+			cerrojo.readLock().unlock();
+		}
+	}
+
+	/**
+	 * M&eacute;todo getBytesReservados.<br>
+	 * @return Bytes de memoria directa reservados por la arena.
+	 */
+	public long getBytesReservados() {
+		cerrojo.readLock().lock();
+		try {
+			long reservados = 0;
+			for (ByteBuffer bloque : arena) {
+				reservados += bloque.capacity();
+			}
+			return reservados;
+		} finally {
+			cerrojo.readLock().unlock();
+		}
+	}
+
+	/**
+	 * M&eacute;todo getBytesVivos.<br>
+	 * @return Bytes de la arena ocupados por items vigentes.
+	 */
+	public long getBytesVivos() {
+		cerrojo.readLock().lock();
+		try {
+			return bytesVivos;
+		} finally {
+			cerrojo.readLock().unlock();
+		}
+	}
+
+	/**
+	 * M&eacute;todo leer.<br>
+	 * @param desde Primera posici&oacute;n a leer.
+	 * @param destino Array a rellenar desde su &iacute;ndice cero.
+	 * @return N&uacute;mero de items le&iacute;dos.
+	 */
+	private int leer(int desde, String[] destino) {
+		cerrojo.readLock().lock();
+		try {
+			int leidos = Math.max(0, Math.min(destino.length, numeroPosiciones - desde));
+			byte[] bytes = new byte[64];
+			for (int i = 0; i < leidos; i++) {
+				int posicion = desde + i;
+				int longitud = longitudes[posicion] - 1;
+				if (longitud < 0) {
+					destino[i] = null;
+					continue;
+				}
+				if (bytes.length < longitud) {
+					bytes = new byte[Math.max(longitud, bytes.length * 2)];
+				}
+				long ubicacion = ubicaciones[posicion];
+				ByteBuffer bloque = arena.get((int) (ubicacion >>> 32)).duplicate();
+				bloque.position((int) ubicacion);
+				bloque.get(bytes, 0, longitud);
+				destino[i] = new String(bytes, 0, longitud, StandardCharsets.UTF_8);
+			}
+			return leidos;
+		} finally {
+			cerrojo.readLock().unlock();
+		}
+	}
+
+	/**
+	 * M&eacute;todo escribir.<br>
+	 * Debe invocarse con el cerrojo de escritura tomado.
+	 * @param bytes Bytes UTF-8 del item, o nulo para dejar la posici&oacute;n sin item.
+	 * @param posicion La posici&oacute;n del item.
+	 */
+	private void escribir(byte[] bytes, int posicion) {
+		if (posicion >= longitudes.length) {
+			int capacidad = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(posicion + 1L, longitudes.length * 2L));
+			ubicaciones = Arrays.copyOf(ubicaciones, capacidad);
+			longitudes = Arrays.copyOf(longitudes, capacidad);
+		}
+		int anterior = longitudes[posicion] - 1;
+		if (anterior >= 0) {
+			bytesVivos -= anterior;
+			bytesMuertos += anterior;
+		}
+		if (bytes == null) {
+			longitudes[posicion] = 0;
+		} else {
+			ubicaciones[posicion] = anyadir(ByteBuffer.wrap(bytes), bytes.length);
+			longitudes[posicion] = bytes.length + 1;
+			bytesVivos += bytes.length;
+		}
+		numeroPosiciones = Math.max(numeroPosiciones, posicion + 1);
+	}
+
+	/**
+	 * M&eacute;todo anyadir.<br>
+	 * Copia bytes al final de la arena, reservando un bloque nuevo si no caben.
+	 * @param origen Bytes a copiar, entre su posici&oacute;n y su l&iacute;mite.
+	 * @param longitud N&uacute;mero de bytes.
+	 * @return Bloque y desplazamiento donde han quedado.
+	 */
+	private long anyadir(ByteBuffer origen, int longitud) {
+		ByteBuffer ultimo = arena.isEmpty() ? null : arena.get(arena.size() - 1);
+		if (ultimo == null || ultimo.remaining() < longitud) {
+			ultimo = ByteBuffer.allocateDirect(Math.max(tamanyoBloqueArena, longitud));
+			arena.add(ultimo);
+		}
+		long ubicacion = ((long) (arena.size() - 1) << 32) | ultimo.position();
+		ultimo.put(origen);
+		return ubicacion;
+	}
+
+	/**
+	 * M&eacute;todo compactarSiHaceFalta.<br>
+	 * Compacta cuando los bytes sin uso ocupan m&aacute;s que los vivos y que un bloque.
+	 */
+	private void compactarSiHaceFalta() {
+		if (bytesMuertos > bytesVivos && bytesMuertos > tamanyoBloqueArena) {
+			compactar();
+		}
+	}
+
+}
@@ -0,0 +1,59 @@
+package com.insags.mockito.tutorial.impl;
+
+import static org.hamcrest.Matchers.arrayContaining;
+import static org.junit.Assert.assertThat;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ItemDaoFueraDeHeapTest {
+
+	/**
+	 * Mtodo para probar que los items se recuperan tras escribirlos en la
+	 * arena, tambin como bytes sin decodificar.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Se recuperan los items, incluidos los no ASCII y las posiciones vacas. 
+	 * - Los bytes de un item son su codificacin UTF-8.
+	 */
+	@Test
+	public void comprobarLecturaDeItemsYBytesDesdeLaArena() {
+		ItemDaoFueraDeHeap itemDao = new ItemDaoFueraDeHeap(8);
+		
+		itemDao.actualizarItem("Peonza", 0);
+		itemDao.actualizarItem("Mueca", 2);
+		
+		// Assert
+		assertThat(itemDao.obtenerTodosLosItems(), arrayContaining("Peonza", null, "Mueca"));
+		Assert.assertEquals(ByteBuffer.wrap("Mueca".getBytes(StandardCharsets.UTF_8)), itemDao.obtenerBytes(2));
+		Assert.assertNull(itemDao.obtenerBytes(1));
+	}
+
+	/**
+	 * Mtodo para probar que al reescribir muchas veces las mismas posiciones
+	 * la arena se compacta sin perder los valores vigentes.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - La memoria reservada no crece con el nmero de reescrituras. 
+	 * - Se conservan los ltimos valores.
+	 */
+	@Test
+	public void comprobarCompactacionDeLaArenaAlReescribir() {
+		ItemDaoFueraDeHeap itemDao = new ItemDaoFueraDeHeap(64);
+		
+		for (int i = 0; i < 1000; i++) {
+			itemDao.actualizarItem("Peonza" + i, 0);
+			itemDao.actualizarItem("Mueca" + i, 1);
+		}
+		
+		// Assert
+		assertThat(itemDao.obtenerTodosLosItems(), arrayContaining("Peonza999", "Mueca999"));
+		Assert.assertTrue(itemDao.getBytesReservados() <= 4 * 64);
+	}
+
+}
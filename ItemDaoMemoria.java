@@ -0,0 +1,276 @@
+package com.insags.mockito.tutorial.impl;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.ObjIntConsumer;
+
+import com.insags.mockito.tutorial.CursorItems;
+import com.insags.mockito.tutorial.FormatoInstantanea;
+import com.insags.mockito.tutorial.InstantaneaItems;
+import com.insags.mockito.tutorial.ItemDao;
+
+/**
+ * Clase ItemDaoMemoria.<br>
+ * Implementaci&oacute;n en memoria de {@link ItemDao} sin bloqueos. Los items
+ * viven en un {@link VectorPersistente} publicado en una referencia
+ * at&oacute;mica: cada escritura construye la versi&oacute;n siguiente y la
+ * publica con compare-and-set, y cada lectura trabaja sobre la versi&oacute;n
+ * vigente al empezar. As&iacute; las lecturas nunca ven una escritura a
+ * medias ni frenan a los escritores. Escribir m&aacute;s all&aacute; del
+ * final hace crecer el cat&aacute;logo; las posiciones intermedias quedan a
+ * nulo. Con un {@link PoolCadenas} los valores repetidos se guardan como una
+ * sola instancia.<br>
+ * @author INSA
+ */
+public class ItemDaoMemoria implements ItemDao {
+
+	/** Versi&oacute;n vigente de los items. */
+	private final AtomicReference<VectorPersistente> items =
+			new AtomicReference<VectorPersistente>(VectorPersistente.VACIO);
+
+	/** N&uacute;mero m&aacute;ximo de posiciones. */
+	private final int capacidadMaxima;
+
+	/** Pool de los valores escritos, o nulo si no se comparten. */
+	private final PoolCadenas pool;
+
+	/**
+	 * Constructor de la clase.<br>
+	 * Sin m&aacute;s l&iacute;mite de posiciones que el de un int.
+	 */
+	public ItemDaoMemoria() {
+		this(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Constructor de la clase.<br>
+	 * @param capacidadMaxima N&uacute;mero m&aacute;ximo de posiciones.
+	 */
+	public ItemDaoMemoria(int capacidadMaxima) {
+		this(capacidadMaxima, null);
+	}
+
+	/**
+	 * Constructor de la clase.<br>
+	 * @param capacidadMaxima N&uacute;mero m&aacute;ximo de posiciones.
+	 * @param pool Pool de los valores escritos, o nulo para guardarlos tal cual.
+	 */
+	public ItemDaoMemoria(int capacidadMaxima, PoolCadenas pool) {
+		this.capacidadMaxima = capacidadMaxima;
+		this.pool = pool;
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito abrirCursor.<br>
+	 * El cursor recorre la versi&oacute;n vigente al abrirlo.
+	 * @param tamanyoBloque N&uacute;mero m&aacute;ximo de items le&iacute;dos en cada acceso.
+	 * @return El cursor.
+	 * @see com.insags.mockito.tutorial.ItemDao#abrirCursor(int)
+	 */
+	@Override
+	public CursorItems abrirCursor(int tamanyoBloque) {
+		return new InstantaneaVector(items.get()).abrirCursor(tamanyoBloque);
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito obtenerInstantanea.<br>
+	 * Comparte la versi&oacute;n vigente sin copiarla.
+	 * @return Instant&aacute;nea de la versi&oacute;n vigente.
+	 * @see com.insags.mockito.tutorial.ItemDao#obtenerInstantanea()
+	 */
+	@Override
+	public InstantaneaItems obtenerInstantanea() {
+		return new InstantaneaVector(items.get());
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito obtenerTodosLosItems.<br>
+	 * @return Todos los items de la versi&oacute;n vigente.
+	 * @see com.insags.mockito.tutorial.ItemDao#obtenerTodosLosItems()
+	 */
+	@Override
+	public String[] obtenerTodosLosItems() {
+		return items.get().aArray();
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito obtenerItems.<br>
+	 * @param desde Primera posici&oacute;n de la p&aacute;gina.
+	 * @param limite N&uacute;mero m&aacute;ximo de items de la p&aacute;gina.
+	 * @return Los items de la p&aacute;gina.
+	 * @see com.insags.mockito.tutorial.ItemDao#obtenerItems(int, int)
+	 */
+	@Override
+	public String[] obtenerItems(int desde, int limite) {
+		VectorPersistente version = items.get();
+		String[] pagina = new String[Paginas.tamanyo(desde, limite, version.tamanyo())];
+		version.copiar(desde, pagina);
+		return pagina;
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito obtenerItem.<br>
+	 * @param posicion La posici&oacute;n del item.
+	 * @return El item, o nulo si la posici&oacute;n nunca se ha escrito.
+	 * @see com.insags.mockito.tutorial.ItemDao#obtenerItem(int)
+	 */
+	@Override
+	public String obtenerItem(int posicion) {
+		VectorPersistente version = items.get();
+		Paginas.comprobarPosicion(posicion, version.tamanyo());
+		return version.obtener(posicion);
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito actualizarItem.<br>
+	 * @param item El nuevo valor del item.
+	 * @param posicion La posici&oacute;n del item.
+	 * @throws ArrayIndexOutOfBoundsException Si la posici&oacute;n es negativa o excede la capacidad.
+	 * @see com.insags.mockito.tutorial.ItemDao#actualizarItem(java.lang.String, int)
+	 */
+	@Override
+	public void actualizarItem(String item, int posicion) {
+		comprobarPosicion(posicion);
+		String valor = internar(item);
+		VectorPersistente actual;
+		do {
+			actual = items.get();
+		} while (!items.compareAndSet(actual, actual.con(posicion, valor)));
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito actualizarItems.<br>
+	 * Publica todas las escrituras en una sola versi&oacute;n, de modo que
+	 * ninguna lectura ve el lote a medias.
+	 * @param items Nuevos valores indexados por posici&oacute;n.
+	 * @throws ArrayIndexOutOfBoundsException Si alguna posici&oacute;n no es v&aacute;lida; no se aplica ninguna.
+	 * @see com.insags.mockito.tutorial.ItemDao#actualizarItems(java.util.Map)
+	 */
+	@Override
+	public void actualizarItems(Map<Integer, String> items) {
+		int[] posiciones = new int[items.size()];
+		String[] valores = new String[items.size()];
+		int i = 0;
+		for (Map.Entry<Integer, String> item : items.entrySet()) {
+			comprobarPosicion(item.getKey());
+			posiciones[i] = item.getKey();
+			valores[i++] = internar(item.getValue());
+		}
+		VectorPersistente actual;
+		VectorPersistente siguiente;
+		do {
+			actual = this.items.get();
+			siguiente = actual;
+			for (int j = 0; j < posiciones.length; j++) {
+				siguiente = siguiente.con(posiciones[j], valores[j]);
+			}
+		} while (!this.items.compareAndSet(actual, siguiente));
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito rellenarItems.<br>
+	 * Todas las escrituras se publican en una sola versi&oacute;n.
+	 * @param posiciones Las posiciones.
+	 * @param item El nuevo valor de todas ellas.
+	 * @throws ArrayIndexOutOfBoundsException Si alguna posici&oacute;n no es v&aacute;lida; entonces no se escribe ninguna.
+	 * @see com.insags.mockito.tutorial.ItemDao#rellenarItems(int[], java.lang.String)
+	 */
+	@Override
+	public void rellenarItems(int[] posiciones, String item) {
+		for (int posicion : posiciones) {
+			comprobarPosicion(posicion);
+		}
+		String valor = internar(item);
+		VectorPersistente actual;
+		VectorPersistente siguiente;
+		do {
+			actual = this.items.get();
+			siguiente = actual;
+			for (int posicion : posiciones) {
+				siguiente = siguiente.con(posicion, valor);
+			}
+		} while (!this.items.compareAndSet(actual, siguiente));
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito importar.<br>
+	 * Descodifica la instant&aacute;nea entera, construye el &aacute;rbol de
+	 * abajo arriba y lo publica como una sola versi&oacute;n.
+	 * @param origen Canal origen, situado al principio.
+	 * @return N&uacute;mero de posiciones de la instant&aacute;nea.
+	 * @throws IOException Si falla la lectura o el formato no es v&aacute;lido.
+	 * @throws ArrayIndexOutOfBoundsException Si la instant&aacute;nea excede la capacidad; entonces no se escribe nada.
+	 * @see com.insags.mockito.tutorial.ItemDao#importar(java.nio.channels.ReadableByteChannel)
+	 */
+	@Override
+	public int importar(ReadableByteChannel origen) throws IOException {
+		final String[][] leidos = { new String[0] };
+		int tamanyo = FormatoInstantanea.leer(origen, new ObjIntConsumer<String[]>() {
+			@Override
+			public void accept(String[] items, int desde) {
+				if (desde + items.length > leidos[0].length) {
+					leidos[0] = Arrays.copyOf(leidos[0], Math.max(desde + items.length, leidos[0].length * 2));
+				}
+				System.arraycopy(items, 0, leidos[0], desde, items.length);
+			}
+		});
+		if (tamanyo > 0) {
+			comprobarPosicion(tamanyo - 1);
+		}
+		String[] importados = Arrays.copyOf(leidos[0], tamanyo);
+		for (int i = 0; i < tamanyo; i++) {
+			importados[i] = internar(importados[i]);
+		}
+		VectorPersistente actual;
+		VectorPersistente siguiente;
+		do {
+			actual = this.items.get();
+			if (actual.tamanyo() == 0) {
+				siguiente = VectorPersistente.desde(importados);
+			} else {
+				String[] combinados = Arrays.copyOf(actual.aArray(), Math.max(actual.tamanyo(), tamanyo));
+				for (int i = 0; i < tamanyo; i++) {
+					if (importados[i] != null) {
+						combinados[i] = importados[i];
+					}
+				}
+				siguiente = VectorPersistente.desde(combinados);
+			}
+		} while (!this.items.compareAndSet(actual, siguiente));
+		return tamanyo;
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito getTamanyo.<br>
+	 * @return N&uacute;mero de posiciones de la versi&oacute;n vigente.
+	 * @see com.insags.mockito.tutorial.ItemDao#getTamanyo()
+	 */
+	@Override
+	public int getTamanyo() {
+		return items.get().tamanyo();
+	}
+
+	/**
+	 * M&eacute;todo internar.<br>
+	 * @param item El valor a guardar.
+	 * @return La instancia compartida del pool, o el propio valor si no hay pool.
+	 */
+	private String internar(String item) {
+		return pool == null ? item : pool.internar(item);
+	}
+
+	/**
+	 * M&eacute;todo comprobarPosicion.<br>
+	 * @param posicion La posici&oacute;n a comprobar.
+	 * @throws ArrayIndexOutOfBoundsException Si la posici&oacute;n no es v&aacute;lida.
+	 */
+	private void comprobarPosicion(int posicion) {
+		if (posicion < 0 || posicion >= capacidadMaxima) {
+			throw new ArrayIndexOutOfBoundsException(posicion);
+		}
+	}
+
+}
@@ -0,0 +1,223 @@
+package com.insags.mockito.tutorial.impl;
+
+import static org.hamcrest.Matchers.arrayContaining;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.insags.mockito.tutorial.CursorItems;
+import com.insags.mockito.tutorial.InstantaneaItems;
+
+public class ItemDaoMemoriaTest {
+
+	/**
+	 * Mtodo para probar que una escritura ms all del final hace crecer el
+	 * catlogo dejando a nulo las posiciones intermedias.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - El catlogo tiene tantas posiciones como la mayor escrita ms uno.
+	 */
+	@Test
+	public void comprobarCrecimientoDelCatalogoAlEscribirMasAllaDelFinal() {
+		ItemDaoMemoria itemDao = new ItemDaoMemoria();
+		
+		itemDao.actualizarItem("Peonza", 0);
+		itemDao.actualizarItem("Mueca", 2);
+		
+		// Assert
+		assertThat(itemDao.obtenerTodosLosItems(), arrayContaining("Peonza", null, "Mueca"));
+	}
+
+	/**
+	 * Mtodo para probar que una posicin fuera de la capacidad provoca una
+	 * excepcin de tipo ArrayIndexOutOfBoundsException.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Se ha lanzado la excepcin de tipo ArrayIndexOutOfBoundsException.
+	 */
+	@Test(expected = ArrayIndexOutOfBoundsException.class)
+	public void comprobarActualizacionFallidaPorExcederCapacidad() {
+		new ItemDaoMemoria(2).actualizarItem("Peonza", 2);
+	}
+
+	/**
+	 * Mtodo para probar que un cursor recorre la versin vigente al abrirlo
+	 * aunque despus se escriba.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - El cursor no ve la escritura posterior a su apertura.
+	 */
+	@Test
+	public void comprobarCursorSobreVersionVigenteAlAbrirlo() {
+		ItemDaoMemoria itemDao = new ItemDaoMemoria();
+		itemDao.actualizarItem("Peonza", 0);
+		itemDao.actualizarItem("Mueca", 1);
+		List<String> recorridos = new ArrayList<String>();
+		
+		try (CursorItems cursor = itemDao.abrirCursor(1)) {
+			itemDao.actualizarItem("Cometa", 1);
+			while (cursor.hasNext()) {
+				recorridos.add(cursor.next());
+			}
+		}
+		
+		// Assert
+		assertThat(recorridos, contains("Peonza", "Mueca"));
+	}
+
+	/**
+	 * Mtodo para probar que las escrituras concurrentes de varios hilos se
+	 * aplican todas.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Cada posicin contiene el valor escrito por su hilo.
+	 */
+	@Test
+	public void comprobarEscriturasConcurrentesSinPerdidas() throws Exception {
+		final ItemDaoMemoria itemDao = new ItemDaoMemoria();
+		final int hilos = 4;
+		final int porHilo = 2000;
+		ExecutorService ejecutor = Executors.newFixedThreadPool(hilos);
+		List<Future<?>> tareas = new ArrayList<Future<?>>();
+		for (int h = 0; h < hilos; h++) {
+			final int hilo = h;
+			tareas.add(ejecutor.submit(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < porHilo; i++) {
+						itemDao.actualizarItem("h" + hilo, i * hilos + hilo);
+					}
+				}
+			}));
+		}
+		for (Future<?> tarea : tareas) {
+			tarea.get();
+		}
+		ejecutor.shutdown();
+		
+		// Assert
+		String[] items = itemDao.obtenerTodosLosItems();
+		Assert.assertEquals(hilos * porHilo, items.length);
+		for (int i = 0; i < items.length; i++) {
+			Assert.assertEquals("h" + (i % hilos), items[i]);
+		}
+	}
+
+	/**
+	 * Mtodo para probar la lectura de pginas y de posiciones sueltas.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - La pgina se recorta al final del catlogo. 
+	 * - Una pgina que empieza tras el final est vaca. 
+	 * - Leer una posicin inexistente provoca ArrayIndexOutOfBoundsException.
+	 */
+	@Test
+	public void comprobarLecturaDePaginasYPosiciones() {
+		ItemDaoMemoria itemDao = new ItemDaoMemoria();
+		for (int posicion = 0; posicion < 100; posicion++) {
+			itemDao.actualizarItem("item" + posicion, posicion);
+		}
+		
+		// Assert
+		assertThat(itemDao.obtenerItems(98, 5), arrayContaining("item98", "item99"));
+		Assert.assertEquals(0, itemDao.obtenerItems(100, 5).length);
+		Assert.assertEquals("item42", itemDao.obtenerItem(42));
+		try {
+			itemDao.obtenerItem(100);
+			Assert.fail("La posicin no existe");
+		} catch (ArrayIndexOutOfBoundsException e) {
+			Assert.assertEquals(100, itemDao.getTamanyo());
+		}
+	}
+
+	/**
+	 * Mtodo para probar que el rellenado de varias posiciones se publica
+	 * como una sola versin y no escribe nada si alguna posicin no es vlida.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Las posiciones vlidas reciben el valor. 
+	 * - Con una posicin fuera de la capacidad no cambia ninguna.
+	 */
+	@Test
+	public void comprobarRellenadoDePosicionesTodoONada() {
+		ItemDaoMemoria itemDao = new ItemDaoMemoria(4);
+		itemDao.rellenarItems(new int[] { 0, 2 }, "Peonza");
+		
+		try {
+			itemDao.rellenarItems(new int[] { 1, 4 }, "Mueca");
+			Assert.fail("Debe rechazar la posicin fuera de la capacidad");
+		} catch (ArrayIndexOutOfBoundsException e) {
+			// Assert
+			assertThat(itemDao.obtenerTodosLosItems(), arrayContaining("Peonza", null, "Peonza"));
+		}
+	}
+
+	/**
+	 * Mtodo para probar que una instantnea no ve las escrituras
+	 * posteriores a su creacin.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - La instantnea conserva el tamao y los valores de su versin. 
+	 * - El DAO ve las escrituras nuevas.
+	 */
+	@Test
+	public void comprobarInstantaneaInmutableFrenteAEscriturasPosteriores() {
+		ItemDaoMemoria itemDao = new ItemDaoMemoria();
+		itemDao.actualizarItem("Peonza", 0);
+		InstantaneaItems instantanea = itemDao.obtenerInstantanea();
+		
+		itemDao.actualizarItem("Mueca", 0);
+		itemDao.actualizarItem("Pelota", 1);
+		
+		// Assert
+		Assert.assertEquals(1, instantanea.getTamanyo());
+		Assert.assertEquals("Peonza", instantanea.obtenerItem(0));
+		List<String> recorridos = new ArrayList<String>();
+		try (CursorItems cursor = instantanea.abrirCursor(1)) {
+			while (cursor.hasNext()) {
+				recorridos.add(cursor.next());
+			}
+		}
+		assertThat(recorridos, contains("Peonza"));
+		assertThat(itemDao.obtenerTodosLosItems(), arrayContaining("Mueca", "Pelota"));
+	}
+
+	/**
+	 * Mtodo para probar que con un pool los valores repetidos se guardan
+	 * como una sola instancia.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Las dos posiciones guardan la misma instancia. 
+	 * - El pool cuenta un acierto de dos consultas.
+	 */
+	@Test
+	public void comprobarValoresRepetidosCompartidosConPool() {
+		PoolCadenas pool = new PoolCadenas(16);
+		ItemDaoMemoria itemDao = new ItemDaoMemoria(Integer.MAX_VALUE, pool);
+		itemDao.actualizarItem(new String("Peonza"), 0);
+		itemDao.actualizarItem(new String("Peonza"), 1);
+		
+		// Assert
+		Assert.assertSame(itemDao.obtenerItem(0), itemDao.obtenerItem(1));
+		Assert.assertEquals(2, pool.getConsultas());
+		Assert.assertEquals(1, pool.getAciertos());
+		Assert.assertEquals(0.5, pool.getRatioDeduplicacion(), 0.0);
+	}
+
+}
@@ -0,0 +1,429 @@
+package com.insags.mockito.tutorial.impl;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import com.insags.mockito.tutorial.CursorItems;
+import com.insags.mockito.tutorial.InstantaneaItems;
+import com.insags.mockito.tutorial.ItemDao;
+
+/**
+ * Clase ItemDaoPorFragmentos.<br>
+ * Fachada de {@link ItemDao} que reparte las posiciones entre varios
+ * fragmentos. La posici&oacute;n global p vive en el fragmento p % n, en su
+ * posici&oacute;n local p / n, de modo que las posiciones consecutivas se
+ * reparten por igual. Cada fragmento tiene un ejecutor de un solo hilo que
+ * es el &uacute;nico que lo toca, as&iacute; que los fragmentos no necesitan
+ * bloqueos y trabajan en paralelo entre s&iacute;. Las lecturas completas
+ * preguntan a todos los fragmentos a la vez y entrelazan las respuestas; las
+ * escrituras de varias posiciones se agrupan para enviar un solo encargo a
+ * cada fragmento afectado. Una escritura m&uacute;ltiple es at&oacute;mica
+ * dentro de cada fragmento, no entre fragmentos. Las posiciones que ning&uacute;n
+ * fragmento tiene por debajo del final global se leen como nulo.<br>
+ * @author INSA
+ */
+public class ItemDaoPorFragmentos implements ItemDao, Closeable {
+
+	/** Fragmentos. */
+	private final ItemDao[] fragmentos;
+
+	/** Ejecutor de un solo hilo de cada fragmento. */
+	private final ExecutorService[] ejecutores;
+
+	/**
+	 * Constructor de la clase.<br>
+	 * @param fragmentos Fragmentos; ninguno debe usarse fuera de esta fachada.
+	 */
+	public ItemDaoPorFragmentos(ItemDao... fragmentos) {
+		if (fragmentos.length == 0) {
+			throw new IllegalArgumentException("Se necesita al menos un fragmento");
+		}
+		this.fragmentos = fragmentos.clone();
+		this.ejecutores = new ExecutorService[fragmentos.length];
+		for (int f = 0; f < fragmentos.length; f++) {
+			ejecutores[f] = Executors.newSingleThreadExecutor(EjecutoresPorDefecto.fabricaDemonios("item-fragmento-" + f));
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito abrirCursor.<br>
+	 * El cursor recorre los items reunidos al abrirlo.
+	 * @param tamanyoBloque N&uacute;mero m&aacute;ximo de items le&iacute;dos en cada acceso.
+	 * @return El cursor.
+	 * @see com.insags.mockito.tutorial.ItemDao#abrirCursor(int)
+	 */
+	@Override
+	public CursorItems abrirCursor(int tamanyoBloque) {
+		return obtenerInstantanea().abrirCursor(tamanyoBloque);
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito obtenerInstantanea.<br>
+	 * @return Instant&aacute;nea de los items reunidos de todos los fragmentos.
+	 * @see com.insags.mockito.tutorial.ItemDao#obtenerInstantanea()
+	 */
+	@Override
+	public InstantaneaItems obtenerInstantanea() {
+		return InstantaneaItems.sobreArray(obtenerTodosLosItems());
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito getTamanyo.<br>
+	 * Pregunta a todos los fragmentos a la vez sin leer sus items.
+	 * @return Una m&aacute;s que la mayor posici&oacute;n global que tiene alg&uacute;n fragmento.
+	 * @see com.insags.mockito.tutorial.ItemDao#getTamanyo()
+	 */
+	@Override
+	public int getTamanyo() {
+		final int n = fragmentos.length;
+		final int[] tamanyos = new int[n];
+		CompletableFuture<?>[] pendientes = new CompletableFuture<?>[n];
+		for (int f = 0; f < n; f++) {
+			final int fragmento = f;
+			pendientes[f] = enFragmento(f, new Supplier<Void>() {
+				@Override
+				public Void get() {
+					tamanyos[fragmento] = fragmentos[fragmento].getTamanyo();
+					return null;
+				}
+			});
+		}
+		esperarTodos(pendientes);
+		long fin = 0;
+		for (int f = 0; f < n; f++) {
+			if (tamanyos[f] > 0) {
+				fin = Math.max(fin, ((long) tamanyos[f] - 1) * n + f + 1);
+			}
+		}
+		return (int) Math.min(fin, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito obtenerTodosLosItems.<br>
+	 * @return Los items de todos los fragmentos entrelazados por posici&oacute;n global.
+	 * @see com.insags.mockito.tutorial.ItemDao#obtenerTodosLosItems()
+	 */
+	@Override
+	public String[] obtenerTodosLosItems() {
+		String[][] partes = reunir(new LecturaFragmento() {
+			@Override
+			public String[] leer(ItemDao fragmento, int f) {
+				return fragmento.obtenerTodosLosItems();
+			}
+		});
+		return entrelazar(partes, new int[fragmentos.length], 0, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito obtenerItems.<br>
+	 * Cada fragmento lee s&oacute;lo sus posiciones de la p&aacute;gina y una
+	 * m&aacute;s, para saber si el cat&aacute;logo sigue tras ella.
+	 * @param desde Primera posici&oacute;n de la p&aacute;gina.
+	 * @param limite N&uacute;mero m&aacute;ximo de items de la p&aacute;gina.
+	 * @return Los items de la p&aacute;gina.
+	 * @see com.insags.mockito.tutorial.ItemDao#obtenerItems(int, int)
+	 */
+	@Override
+	public String[] obtenerItems(final int desde, int limite) {
+		Paginas.tamanyo(desde, limite, 0);
+		if (limite == 0) {
+			return new String[0];
+		}
+		final int n = fragmentos.length;
+		final long ultima = (long) desde + limite - 1;
+		final int[] inicios = new int[n];
+		String[][] partes = reunir(new LecturaFragmento() {
+			@Override
+			public String[] leer(ItemDao fragmento, int f) {
+				int primera = desde <= f ? 0 : (desde - f + n - 1) / n;
+				long cuantas = ultima < f ? 0 : Math.max(0, (ultima - f) / n - primera + 1);
+				inicios[f] = primera;
+				return fragmento.obtenerItems(primera, (int) Math.min(cuantas + 1, Integer.MAX_VALUE));
+			}
+		});
+		return entrelazar(partes, inicios, desde, limite);
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito obtenerItem.<br>
+	 * Si el fragmento no tiene la posici&oacute;n se lee como p&aacute;gina,
+	 * por si es un hueco por debajo del final global.
+	 * @param posicion La posici&oacute;n del item.
+	 * @return El item.
+	 * @see com.insags.mockito.tutorial.ItemDao#obtenerItem(int)
+	 */
+	@Override
+	public String obtenerItem(final int posicion) {
+		if (posicion < 0) {
+			throw new ArrayIndexOutOfBoundsException(posicion);
+		}
+		final int n = fragmentos.length;
+		try {
+			return esperar(enFragmento(posicion % n, new Supplier<String>() {
+				@Override
+				public String get() {
+					return fragmentos[posicion % n].obtenerItem(posicion / n);
+				}
+			}));
+		} catch (ArrayIndexOutOfBoundsException e) {
+			String[] item = obtenerItems(posicion, 1);
+			if (item.length == 0) {
+				throw new ArrayIndexOutOfBoundsException(posicion);
+			}
+			return item[0];
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito actualizarItem.<br>
+	 * @param item El nuevo valor del item.
+	 * @param posicion La posici&oacute;n del item.
+	 * @see com.insags.mockito.tutorial.ItemDao#actualizarItem(java.lang.String, int)
+	 */
+	@Override
+	public void actualizarItem(final String item, final int posicion) {
+		if (posicion < 0) {
+			throw new ArrayIndexOutOfBoundsException(posicion);
+		}
+		final int n = fragmentos.length;
+		esperar(enFragmento(posicion % n, new Supplier<Void>() {
+			@Override
+			public Void get() {
+				fragmentos[posicion % n].actualizarItem(item, posicion / n);
+				return null;
+			}
+		}));
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito actualizarItems.<br>
+	 * Env&iacute;a a cada fragmento afectado un solo lote con sus posiciones.
+	 * @param items Los items por posici&oacute;n.
+	 * @see com.insags.mockito.tutorial.ItemDao#actualizarItems(java.util.Map)
+	 */
+	@Override
+	public void actualizarItems(Map<Integer, String> items) {
+		int n = fragmentos.length;
+		final List<Map<Integer, String>> lotes = new ArrayList<Map<Integer, String>>(
+				Collections.<Map<Integer, String>> nCopies(n, null));
+		for (Map.Entry<Integer, String> item : items.entrySet()) {
+			int posicion = item.getKey();
+			if (posicion < 0) {
+				throw new ArrayIndexOutOfBoundsException(posicion);
+			}
+			if (lotes.get(posicion % n) == null) {
+				lotes.set(posicion % n, new LinkedHashMap<Integer, String>());
+			}
+			lotes.get(posicion % n).put(posicion / n, item.getValue());
+		}
+		CompletableFuture<?>[] pendientes = new CompletableFuture<?>[n];
+		for (int f = 0; f < n; f++) {
+			if (lotes.get(f) != null) {
+				final int fragmento = f;
+				pendientes[f] = enFragmento(f, new Supplier<Void>() {
+					@Override
+					public Void get() {
+						fragmentos[fragmento].actualizarItems(lotes.get(fragmento));
+						return null;
+					}
+				});
+			}
+		}
+		esperarTodos(pendientes);
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito rellenarItems.<br>
+	 * Env&iacute;a a cada fragmento afectado un solo relleno con sus posiciones.
+	 * @param posiciones Las posiciones.
+	 * @param item El nuevo valor de todas ellas.
+	 * @see com.insags.mockito.tutorial.ItemDao#rellenarItems(int[], java.lang.String)
+	 */
+	@Override
+	public void rellenarItems(int[] posiciones, final String item) {
+		int n = fragmentos.length;
+		int[] cuantas = new int[n];
+		for (int posicion : posiciones) {
+			if (posicion < 0) {
+				throw new ArrayIndexOutOfBoundsException(posicion);
+			}
+			cuantas[posicion % n]++;
+		}
+		final int[][] locales = new int[n][];
+		for (int f = 0; f < n; f++) {
+			locales[f] = new int[cuantas[f]];
+			cuantas[f] = 0;
+		}
+		for (int posicion : posiciones) {
+			int f = posicion % n;
+			locales[f][cuantas[f]++] = posicion / n;
+		}
+		CompletableFuture<?>[] pendientes = new CompletableFuture<?>[n];
+		for (int f = 0; f < n; f++) {
+			if (locales[f].length > 0) {
+				final int fragmento = f;
+				pendientes[f] = enFragmento(f, new Supplier<Void>() {
+					@Override
+					public Void get() {
+						fragmentos[fragmento].rellenarItems(locales[fragmento], item);
+						return null;
+					}
+				});
+			}
+		}
+		esperarTodos(pendientes);
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito close.<br>
+	 * Detiene los ejecutores tras terminar los encargos pendientes. No cierra
+	 * los fragmentos.
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() {
+		for (ExecutorService ejecutor : ejecutores) {
+			ejecutor.shutdown();
+		}
+	}
+
+	/**
+	 * M&eacute;todo getNumeroFragmentos.<br>
+	 * @return N&uacute;mero de fragmentos.
+	 */
+	public int getNumeroFragmentos() {
+		return fragmentos.length;
+	}
+
+	/**
+	 * M&eacute;todo reunir.<br>
+	 * Lanza la lectura en todos los fragmentos a la vez y espera las respuestas.
+	 * @param lectura Lectura a hacer en cada fragmento.
+	 * @return La respuesta de cada fragmento.
+	 */
+	private String[][] reunir(final LecturaFragmento lectura) {
+		final String[][] partes = new String[fragmentos.length][];
+		CompletableFuture<?>[] pendientes = new CompletableFuture<?>[fragmentos.length];
+		for (int f = 0; f < fragmentos.length; f++) {
+			final int fragmento = f;
+			pendientes[f] = enFragmento(f, new Supplier<Void>() {
+				@Override
+				public Void get() {
+					partes[fragmento] = lectura.leer(fragmentos[fragmento], fragmento);
+					return null;
+				}
+			});
+		}
+		esperarTodos(pendientes);
+		return partes;
+	}
+
+	/**
+	 * M&eacute;todo entrelazar.<br>
+	 * @param partes Items le&iacute;dos de cada fragmento.
+	 * @param inicios Posici&oacute;n local del primer item le&iacute;do de cada fragmento.
+	 * @param desde Primera posici&oacute;n global del resultado.
+	 * @param limite N&uacute;mero m&aacute;ximo de items del resultado.
+	 * @return Los items por posici&oacute;n global hasta el &uacute;ltimo le&iacute;do.
+	 */
+	private String[] entrelazar(String[][] partes, int[] inicios, int desde, int limite) {
+		int n = fragmentos.length;
+		long fin = desde;
+		for (int f = 0; f < n; f++) {
+			if (partes[f].length > 0) {
+				fin = Math.max(fin, ((long) inicios[f] + partes[f].length - 1) * n + f + 1);
+			}
+		}
+		String[] items = new String[(int) Math.min(limite, fin - desde)];
+		for (int f = 0; f < n; f++) {
+			for (int i = 0; i < partes[f].length; i++) {
+				long posicion = ((long) inicios[f] + i) * n + f - desde;
+				if (posicion < items.length) {
+					items[(int) posicion] = partes[f][i];
+				}
+			}
+		}
+		return items;
+	}
+
+	/**
+	 * M&eacute;todo enFragmento.<br>
+	 * @param f N&uacute;mero del fragmento.
+	 * @param tarea Tarea a ejecutar en su hilo.
+	 * @param <T> Tipo del resultado.
+	 * @return El resultado futuro.
+	 */
+	private <T> CompletableFuture<T> enFragmento(int f, Supplier<T> tarea) {
+		return CompletableFuture.supplyAsync(tarea, ejecutores[f]);
+	}
+
+	/**
+	 * M&eacute;todo esperarTodos.<br>
+	 * Espera a todos los encargos aunque falle alguno y relanza el primer fallo.
+	 * @param pendientes Los encargos; los nulos se ignoran.
+	 */
+	private static void esperarTodos(CompletableFuture<?>[] pendientes) {
+		RuntimeException fallo = null;
+		for (CompletableFuture<?> pendiente : pendientes) {
+			if (pendiente != null) {
+				try {
+					esperar(pendiente);
+				} catch (RuntimeException e) {
+					if (fallo == null) {
+						fallo = e;
+					}
+				}
+			}
+		}
+		if (fallo != null) {
+			throw fallo;
+		}
+	}
+
+	/**
+	 * M&eacute;todo esperar.<br>
+	 * @param pendiente El encargo.
+	 * @param <T> Tipo del resultado.
+	 * @return Su resultado.
+	 * @throws RuntimeException La excepci&oacute;n que lanz&oacute; el fragmento, tal cual.
+	 */
+	private static <T> T esperar(CompletableFuture<T> pendiente) {
+		try {
+			return pendiente.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Interfaz LecturaFragmento.<br>
+	 * Lectura hecha en el hilo de un fragmento.<br>
+	 */
+	private interface LecturaFragmento {
+
+		/**
+		 * M&eacute;todo leer.<br>
+		 * @param fragmento El fragmento.
+		 * @param f Su n&uacute;mero.
+		 * @return Los items le&iacute;dos.
+		 */
+		String[] leer(ItemDao fragmento, int f);
+
+	}
+
+}
@@ -0,0 +1,133 @@
+package com.insags.mockito.tutorial.impl;
+
+import static org.hamcrest.Matchers.arrayContaining;
+import static org.junit.Assert.assertThat;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Clase ItemDaoPorFragmentosTest.<br>
+ * Pruebas del reparto de posiciones entre fragmentos.<br>
+ * @author INSA
+ */
+public class ItemDaoPorFragmentosTest {
+
+	/** Fragmentos de la fachada. */
+	private final ItemDaoMemoria[] fragmentos = { new ItemDaoMemoria(), new ItemDaoMemoria(), new ItemDaoMemoria() };
+
+	/** Fachada sobre los fragmentos. */
+	private final ItemDaoPorFragmentos itemDao = new ItemDaoPorFragmentos(fragmentos);
+
+	/**
+	 * Mtodo para cerrar la fachada tras cada prueba.
+	 */
+	@After
+	public void cerrar() {
+		itemDao.close();
+	}
+
+	/**
+	 * Mtodo para probar que las escrituras se reparten entre los fragmentos
+	 * y las lecturas las renen por posicin global.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Cada fragmento guarda sus posiciones en orden local. 
+	 * - La lectura completa, la pgina y el item leen las posiciones globales.
+	 */
+	@Test
+	public void comprobarRepartoYReunionDePosiciones() {
+		Map<Integer, String> items = new LinkedHashMap<Integer, String>();
+		items.put(0, "Peonza");
+		items.put(1, "Mueca");
+		items.put(2, "Pelota");
+		items.put(3, "Cometa");
+		items.put(4, "Yoy");
+		itemDao.actualizarItems(items);
+		
+		// Assert
+		assertThat(fragmentos[0].obtenerTodosLosItems(), arrayContaining("Peonza", "Cometa"));
+		assertThat(fragmentos[1].obtenerTodosLosItems(), arrayContaining("Mueca", "Yoy"));
+		assertThat(fragmentos[2].obtenerTodosLosItems(), arrayContaining("Pelota"));
+		assertThat(itemDao.obtenerTodosLosItems(), arrayContaining("Peonza", "Mueca", "Pelota", "Cometa", "Yoy"));
+		assertThat(itemDao.obtenerItems(1, 3), arrayContaining("Mueca", "Pelota", "Cometa"));
+		assertThat(itemDao.obtenerItems(3, 10), arrayContaining("Cometa", "Yoy"));
+		Assert.assertEquals("Yoy", itemDao.obtenerItem(4));
+	}
+
+	/**
+	 * Mtodo para probar que los huecos de un fragmento por debajo del final
+	 * global se leen como nulo.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - La posicin sin escribir es nula. 
+	 * - Ms all del final se lanza ArrayIndexOutOfBoundsException.
+	 */
+	@Test
+	public void comprobarHuecosPorDebajoDelFinalGlobal() {
+		itemDao.actualizarItem("Peonza", 0);
+		itemDao.actualizarItem("Cometa", 4);
+		
+		// Assert
+		assertThat(itemDao.obtenerTodosLosItems(), arrayContaining("Peonza", null, null, null, "Cometa"));
+		Assert.assertNull(itemDao.obtenerItem(3));
+		try {
+			itemDao.obtenerItem(5);
+			Assert.fail("Debe rechazar la posicin tras el final");
+		} catch (ArrayIndexOutOfBoundsException e) {
+			Assert.assertEquals(5, itemDao.obtenerTodosLosItems().length);
+		}
+	}
+
+	/**
+	 * Mtodo para probar que un relleno enva a cada fragmento sus
+	 * posiciones locales y relanza el fallo de uno de ellos.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Las posiciones vlidas quedan rellenas. 
+	 * - El fallo del fragmento llega tal cual al llamante.
+	 */
+	@Test
+	public void comprobarRellenoRepartidoYFalloDeFragmento() {
+		ItemDaoMemoria[] limitados = { new ItemDaoMemoria(), new ItemDaoMemoria(1) };
+		try (ItemDaoPorFragmentos fachada = new ItemDaoPorFragmentos(limitados)) {
+			fachada.rellenarItems(new int[] { 0, 1, 2 }, "Peonza");
+			
+			try {
+				fachada.rellenarItems(new int[] { 4, 3 }, "Mueca");
+				Assert.fail("Debe relanzar el fallo del fragmento");
+			} catch (ArrayIndexOutOfBoundsException e) {
+				// Assert
+				assertThat(fachada.obtenerTodosLosItems(), arrayContaining("Peonza", "Peonza", "Peonza", null, "Mueca"));
+			}
+		}
+	}
+
+	/**
+	 * Mtodo para probar que el tamao se calcula con el de cada fragmento,
+	 * sin reunir sus items.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - El tamao cuenta hasta la mayor posicin global escrita, aunque
+	 * est en un fragmento distinto del ltimo.
+	 */
+	@Test
+	public void comprobarTamanyoPorLaMayorPosicionDeLosFragmentos() {
+		Assert.assertEquals(0, itemDao.getTamanyo());
+		itemDao.actualizarItem("Peonza", 0);
+		itemDao.actualizarItem("Cometa", 7);
+		
+		// Assert
+		Assert.assertEquals(8, itemDao.getTamanyo());
+		Assert.assertEquals(itemDao.obtenerTodosLosItems().length, itemDao.getTamanyo());
+	}
+
+}
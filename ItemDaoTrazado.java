@@ -0,0 +1,291 @@
+package com.insags.mockito.tutorial.impl;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Map;
+
+import com.insags.mockito.tutorial.CursorItems;
+import com.insags.mockito.tutorial.InstantaneaItems;
+import com.insags.mockito.tutorial.ItemDao;
+
+/**
+ * Clase ItemDaoTrazado.<br>
+ * Decorador de un {@link ItemDao} que anota cada llamada como tramo de la
+ * traza abierta en el hilo por el {@link Trazador}. Sin traza abierta delega
+ * directamente. Para trazar un controlador se le configura el mismo
+ * trazador y este decorador como DAO.<br>
+ * @author INSA
+ */
+public class ItemDaoTrazado implements ItemDao {
+
+	/** DAO decorado. */
+	private final ItemDao delegado;
+
+	/** Trazador cuyas trazas reciben los tramos. */
+	private final Trazador trazador;
+
+	/**
+	 * Constructor de la clase.<br>
+	 * @param delegado DAO decorado.
+	 * @param trazador Trazador cuyas trazas reciben los tramos.
+	 */
+	public ItemDaoTrazado(ItemDao delegado, Trazador trazador) {
+		this.delegado = delegado;
+		this.trazador = trazador;
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito abrirCursor.<br>
+	 * El tramo s&oacute;lo cubre la apertura; el recorrido corre a cargo del llamante.
+	 * @param tamanyoBloque N&uacute;mero m&aacute;ximo de items le&iacute;dos en cada acceso.
+	 * @return El cursor.
+	 * @see com.insags.mockito.tutorial.ItemDao#abrirCursor(int)
+	 */
+	@Override
+	public CursorItems abrirCursor(int tamanyoBloque) {
+		Trazador.Traza traza = trazador.actual();
+		if (traza == null) {
+			return delegado.abrirCursor(tamanyoBloque);
+		}
+		Trazador.Tramo tramo = traza.abrirTramo("abrirCursor");
+		try {
+			CursorItems cursor = delegado.abrirCursor(tamanyoBloque);
+			tramo.cerrar(0, false);
+			return cursor;
+		} catch (RuntimeException e) {
+			tramo.cerrar(0, true);
+			throw e;
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito obtenerInstantanea.<br>
+	 * @return La instant&aacute;nea del DAO decorado.
+	 * @see com.insags.mockito.tutorial.ItemDao#obtenerInstantanea()
+	 */
+	@Override
+	public InstantaneaItems obtenerInstantanea() {
+		Trazador.Traza traza = trazador.actual();
+		if (traza == null) {
+			return delegado.obtenerInstantanea();
+		}
+		Trazador.Tramo tramo = traza.abrirTramo("obtenerInstantanea");
+		try {
+			InstantaneaItems instantanea = delegado.obtenerInstantanea();
+			tramo.cerrar(instantanea.getTamanyo(), false);
+			return instantanea;
+		} catch (RuntimeException e) {
+			tramo.cerrar(0, true);
+			throw e;
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito getTamanyo.<br>
+	 * @return N&uacute;mero de posiciones del DAO decorado.
+	 * @see com.insags.mockito.tutorial.ItemDao#getTamanyo()
+	 */
+	@Override
+	public int getTamanyo() {
+		Trazador.Traza traza = trazador.actual();
+		if (traza == null) {
+			return delegado.getTamanyo();
+		}
+		Trazador.Tramo tramo = traza.abrirTramo("getTamanyo");
+		try {
+			int tamanyo = delegado.getTamanyo();
+			tramo.cerrar(0, false);
+			return tamanyo;
+		} catch (RuntimeException e) {
+			tramo.cerrar(0, true);
+			throw e;
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito exportar.<br>
+	 * @param destino Canal destino.
+	 * @param comprimir Si se comprimen los bloques.
+	 * @throws IOException Si falla la escritura.
+	 * @see com.insags.mockito.tutorial.ItemDao#exportar(java.nio.channels.WritableByteChannel, boolean)
+	 */
+	@Override
+	public void exportar(WritableByteChannel destino, boolean comprimir) throws IOException {
+		Trazador.Traza traza = trazador.actual();
+		if (traza == null) {
+			delegado.exportar(destino, comprimir);
+			return;
+		}
+		Trazador.Tramo tramo = traza.abrirTramo("exportar");
+		try {
+			delegado.exportar(destino, comprimir);
+			tramo.cerrar(0, false);
+		} catch (IOException | RuntimeException e) {
+			tramo.cerrar(0, true);
+			throw e;
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito importar.<br>
+	 * @param origen Canal origen.
+	 * @return N&uacute;mero de posiciones de la instant&aacute;nea.
+	 * @throws IOException Si falla la lectura.
+	 * @see com.insags.mockito.tutorial.ItemDao#importar(java.nio.channels.ReadableByteChannel)
+	 */
+	@Override
+	public int importar(ReadableByteChannel origen) throws IOException {
+		Trazador.Traza traza = trazador.actual();
+		if (traza == null) {
+			return delegado.importar(origen);
+		}
+		Trazador.Tramo tramo = traza.abrirTramo("importar");
+		try {
+			int importados = delegado.importar(origen);
+			tramo.cerrar(importados, false);
+			return importados;
+		} catch (IOException | RuntimeException e) {
+			tramo.cerrar(0, true);
+			throw e;
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito obtenerTodosLosItems.<br>
+	 * @return Todos los items del DAO decorado.
+	 * @see com.insags.mockito.tutorial.ItemDao#obtenerTodosLosItems()
+	 */
+	@Override
+	public String[] obtenerTodosLosItems() {
+		Trazador.Traza traza = trazador.actual();
+		if (traza == null) {
+			return delegado.obtenerTodosLosItems();
+		}
+		Trazador.Tramo tramo = traza.abrirTramo("obtenerTodosLosItems");
+		try {
+			String[] items = delegado.obtenerTodosLosItems();
+			tramo.cerrar(items.length, false);
+			return items;
+		} catch (RuntimeException e) {
+			tramo.cerrar(0, true);
+			throw e;
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito obtenerItems.<br>
+	 * @param desde Primera posici&oacute;n de la p&aacute;gina.
+	 * @param limite N&uacute;mero m&aacute;ximo de items de la p&aacute;gina.
+	 * @return Los items de la p&aacute;gina.
+	 * @see com.insags.mockito.tutorial.ItemDao#obtenerItems(int, int)
+	 */
+	@Override
+	public String[] obtenerItems(int desde, int limite) {
+		Trazador.Traza traza = trazador.actual();
+		if (traza == null) {
+			return delegado.obtenerItems(desde, limite);
+		}
+		Trazador.Tramo tramo = traza.abrirTramo("obtenerItems");
+		try {
+			String[] items = delegado.obtenerItems(desde, limite);
+			tramo.cerrar(items.length, false);
+			return items;
+		} catch (RuntimeException e) {
+			tramo.cerrar(0, true);
+			throw e;
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito obtenerItem.<br>
+	 * @param posicion La posici&oacute;n del item.
+	 * @return El item.
+	 * @see com.insags.mockito.tutorial.ItemDao#obtenerItem(int)
+	 */
+	@Override
+	public String obtenerItem(int posicion) {
+		Trazador.Traza traza = trazador.actual();
+		if (traza == null) {
+			return delegado.obtenerItem(posicion);
+		}
+		Trazador.Tramo tramo = traza.abrirTramo("obtenerItem");
+		try {
+			String item = delegado.obtenerItem(posicion);
+			tramo.cerrar(1, false);
+			return item;
+		} catch (RuntimeException e) {
+			tramo.cerrar(0, true);
+			throw e;
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito actualizarItem.<br>
+	 * @param item El nuevo valor del item.
+	 * @param posicion La posici&oacute;n del item.
+	 * @see com.insags.mockito.tutorial.ItemDao#actualizarItem(java.lang.String, int)
+	 */
+	@Override
+	public void actualizarItem(String item, int posicion) {
+		Trazador.Traza traza = trazador.actual();
+		if (traza == null) {
+			delegado.actualizarItem(item, posicion);
+			return;
+		}
+		Trazador.Tramo tramo = traza.abrirTramo("actualizarItem");
+		try {
+			delegado.actualizarItem(item, posicion);
+			tramo.cerrar(1, false);
+		} catch (RuntimeException e) {
+			tramo.cerrar(0, true);
+			throw e;
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito actualizarItems.<br>
+	 * @param items Los items por posici&oacute;n.
+	 * @see com.insags.mockito.tutorial.ItemDao#actualizarItems(java.util.Map)
+	 */
+	@Override
+	public void actualizarItems(Map<Integer, String> items) {
+		Trazador.Traza traza = trazador.actual();
+		if (traza == null) {
+			delegado.actualizarItems(items);
+			return;
+		}
+		Trazador.Tramo tramo = traza.abrirTramo("actualizarItems");
+		try {
+			delegado.actualizarItems(items);
+			tramo.cerrar(items.size(), false);
+		} catch (RuntimeException e) {
+			tramo.cerrar(0, true);
+			throw e;
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito rellenarItems.<br>
+	 * @param posiciones Las posiciones.
+	 * @param item El nuevo valor de todas ellas.
+	 * @see com.insags.mockito.tutorial.ItemDao#rellenarItems(int[], java.lang.String)
+	 */
+	@Override
+	public void rellenarItems(int[] posiciones, String item) {
+		Trazador.Traza traza = trazador.actual();
+		if (traza == null) {
+			delegado.rellenarItems(posiciones, item);
+			return;
+		}
+		Trazador.Tramo tramo = traza.abrirTramo("rellenarItems");
+		try {
+			delegado.rellenarItems(posiciones, item);
+			tramo.cerrar(posiciones.length, false);
+		} catch (RuntimeException e) {
+			tramo.cerrar(0, true);
+			throw e;
+		}
+	}
+
+}
@@ -0,0 +1,49 @@
+package com.insags.mockito.tutorial;
+
+import org.springframework.validation.Errors;
+
+/**
+ * Clase ItemNoValidoException.<br>
+ * Se lanza cuando el validador configurado rechaza un item. No se ha escrito
+ * ninguno de los items de la llamada.<br>
+ * @author INSA
+ */
+public class ItemNoValidoException extends RuntimeException {
+
+	/** Serial. */
+	private static final long serialVersionUID = 1L;
+
+	/** Posici&oacute;n del item rechazado. */
+	private final int posicion;
+
+	/** Errores de validaci&oacute;n del item. */
+	private final transient Errors errores;
+
+	/**
+	 * Constructor de la clase.<br>
+	 * @param posicion Posici&oacute;n del item rechazado.
+	 * @param errores Errores de validaci&oacute;n del item.
+	 */
+	public ItemNoValidoException(int posicion, Errors errores) {
+		super("Item no valido en la posicion " + posicion + ": " + errores.getAllErrors());
+		this.posicion = posicion;
+		this.errores = errores;
+	}
+
+	/**
+	 * M&eacute;todo getPosicion.<br>
+	 * @return La posici&oacute;n del item rechazado.
+	 */
+	public int getPosicion() {
+		return posicion;
+	}
+
+	/**
+	 * M&eacute;todo getErrores.<br>
+	 * @return Los errores de validaci&oacute;n del item.
+	 */
+	public Errors getErrores() {
+		return errores;
+	}
+
+}
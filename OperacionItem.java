@@ -0,0 +1,43 @@
+package com.insags.mockito.tutorial;
+
+/**
+ * Enumerado OperacionItem.<br>
+ * Operaciones de {@link ItemController} de las que se toman m&eacute;tricas.<br>
+ * @author INSA
+ */
+public enum OperacionItem {
+
+	/** {@link ItemController#obtenerTodosLosItems()}. */
+	OBTENER_TODOS_LOS_ITEMS,
+
+	/** {@link ItemController#obtenerItems(int, int)}. */
+	OBTENER_ITEMS,
+
+	/** {@link ItemController#obtenerItem(int)}. */
+	OBTENER_ITEM,
+
+	/** {@link ItemController#buscarPorPrefijo(String)}; incluye la carga del &iacute;ndice en la primera. */
+	BUSCAR_POR_PREFIJO,
+
+	/** {@link ItemController#buscarPorSubcadena(String)}; incluye la carga del &iacute;ndice en la primera. */
+	BUSCAR_POR_SUBCADENA,
+
+	/** {@link ItemController#obtenerItemsEnFlujo()}; s&oacute;lo mide la apertura. */
+	OBTENER_ITEMS_EN_FLUJO,
+
+	/** {@link ItemController#actualizarItem(String, int)}. */
+	ACTUALIZAR_ITEM,
+
+	/** {@link ItemController#actualizarItems(java.util.Map)}. */
+	ACTUALIZAR_ITEMS,
+
+	/** {@link ItemController#resetearItemsEspecificos(int[])}. */
+	RESETEAR_ITEMS_ESPECIFICOS,
+
+	/** {@link ItemController#resetearRango(int, int)}. */
+	RESETEAR_RANGO,
+
+	/** {@link ItemController#listaItemsParaReseteo()}. */
+	LISTA_ITEMS_PARA_RESETEO
+
+}
@@ -0,0 +1,47 @@
+package com.insags.mockito.tutorial.impl;
+
+/**
+ * Clase Paginas.<br>
+ * Comprobaciones comunes de las lecturas por rango de los DAO.<br>
+ * @author INSA
+ */
+final class Paginas {
+
+	/**
+	 * Constructor de la clase.<br>
+	 */
+	private Paginas() {
+	}
+
+	/**
+	 * M&eacute;todo tamanyo.<br>
+	 * @param desde Primera posici&oacute;n de la p&aacute;gina.
+	 * @param limite N&uacute;mero m&aacute;ximo de items de la p&aacute;gina.
+	 * @param total N&uacute;mero de posiciones del cat&aacute;logo.
+	 * @return N&uacute;mero de items de la p&aacute;gina; cero si empieza tras el final.
+	 * @throws ArrayIndexOutOfBoundsException Si desde es negativo.
+	 * @throws IllegalArgumentException Si limite es negativo.
+	 */
+	static int tamanyo(int desde, int limite, int total) {
+		if (desde < 0) {
+			throw new ArrayIndexOutOfBoundsException(desde);
+		}
+		if (limite < 0) {
+			throw new IllegalArgumentException("Limite no valido: " + limite);
+		}
+		return (int) Math.max(0, Math.min((long) limite, (long) total - desde));
+	}
+
+	/**
+	 * M&eacute;todo comprobarPosicion.<br>
+	 * @param posicion La posici&oacute;n.
+	 * @param total N&uacute;mero de posiciones del cat&aacute;logo.
+	 * @throws ArrayIndexOutOfBoundsException Si la posici&oacute;n no existe.
+	 */
+	static void comprobarPosicion(int posicion, int total) {
+		if (posicion < 0 || posicion >= total) {
+			throw new ArrayIndexOutOfBoundsException(posicion);
+		}
+	}
+
+}
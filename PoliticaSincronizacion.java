@@ -0,0 +1,20 @@
+package com.insags.mockito.tutorial.impl;
+
+/**
+ * Enumerado PoliticaSincronizacion.<br>
+ * Cu&aacute;ndo fuerza a disco {@link ItemDaoConDiario} las escrituras
+ * anotadas en el diario.<br>
+ * @author INSA
+ */
+public enum PoliticaSincronizacion {
+
+	/** Cada escritura espera a estar en disco; las concurrentes comparten la sincronizaci&oacute;n. */
+	POR_ESCRITURA,
+
+	/** Al terminar cada escritura m&uacute;ltiple y cuando se acumula un bloque de escrituras sueltas. */
+	POR_LOTE,
+
+	/** Peri&oacute;dicamente; una ca&iacute;da pierde como mucho lo escrito en el &uacute;ltimo periodo. */
+	PERIODICA
+
+}
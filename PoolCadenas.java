@@ -0,0 +1,124 @@
+package com.insags.mockito.tutorial.impl;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Clase PoolCadenas.<br>
+ * Pool acotado de cadenas para que los valores repetidos compartan una
+ * &uacute;nica instancia. Es una tabla de correspondencia directa sin
+ * bloqueos: cada valor s&oacute;lo puede estar en la ranura de su hash, y un
+ * valor nuevo sustituye al que la ocupaba. As&iacute; la memoria del pool
+ * est&aacute; fijada de antemano y un vocabulario peque&ntilde;o acaba
+ * entero en la tabla, mientras que los valores &uacute;nicos s&oacute;lo
+ * cuestan una consulta fallida. Las cadenas m&aacute;s largas que el
+ * l&iacute;mite no se consultan.<br>
+ * @author INSA
+ */
+public final class PoolCadenas {
+
+	/** Longitud m&aacute;xima de las cadenas que se comparten por defecto. */
+	public static final int LONGITUD_MAXIMA_POR_DEFECTO = 256;
+
+	/** Ranuras de la tabla; su n&uacute;mero es potencia de dos. */
+	private final AtomicReferenceArray<String> ranuras;
+
+	/** M&aacute;scara del &iacute;ndice de ranura. */
+	private final int mascara;
+
+	/** Longitud m&aacute;xima de las cadenas que se comparten. */
+	private final int longitudMaxima;
+
+	/** Cadenas consultadas. */
+	private final LongAdder consultas = new LongAdder();
+
+	/** Consultas resueltas con una instancia ya existente. */
+	private final LongAdder aciertos = new LongAdder();
+
+	/** Caracteres de las instancias sustituidas por una existente. */
+	private final LongAdder caracteresAhorrados = new LongAdder();
+
+	/**
+	 * Constructor de la clase.<br>
+	 * @param capacidad N&uacute;mero de ranuras; se redondea a la potencia de dos superior.
+	 */
+	public PoolCadenas(int capacidad) {
+		this(capacidad, LONGITUD_MAXIMA_POR_DEFECTO);
+	}
+
+	/**
+	 * Constructor de la clase.<br>
+	 * @param capacidad N&uacute;mero de ranuras; se redondea a la potencia de dos superior.
+	 * @param longitudMaxima Longitud m&aacute;xima de las cadenas que se comparten.
+	 */
+	public PoolCadenas(int capacidad, int longitudMaxima) {
+		if (capacidad <= 0 || capacidad > 1 << 30) {
+			throw new IllegalArgumentException("Capacidad no valida: " + capacidad);
+		}
+		int potencia = Integer.highestOneBit(capacidad);
+		if (potencia < capacidad) {
+			potencia <<= 1;
+		}
+		this.ranuras = new AtomicReferenceArray<String>(potencia);
+		this.mascara = potencia - 1;
+		this.longitudMaxima = longitudMaxima;
+	}
+
+	/**
+	 * M&eacute;todo internar.<br>
+	 * @param valor El valor.
+	 * @return La instancia compartida igual al valor, o el propio valor si no la hay.
+	 */
+	public String internar(String valor) {
+		if (valor == null || valor.length() > longitudMaxima) {
+			return valor;
+		}
+		consultas.increment();
+		int hash = valor.hashCode();
+		int ranura = (hash ^ (hash >>> 16)) & mascara;
+		String existente = ranuras.get(ranura);
+		if (existente != null && existente.equals(valor)) {
+			if (existente != valor) {
+				aciertos.increment();
+				caracteresAhorrados.add(valor.length());
+			}
+			return existente;
+		}
+		ranuras.lazySet(ranura, valor);
+		return valor;
+	}
+
+	/**
+	 * M&eacute;todo getConsultas.<br>
+	 * @return Cadenas consultadas.
+	 */
+	public long getConsultas() {
+		return consultas.sum();
+	}
+
+	/**
+	 * M&eacute;todo getAciertos.<br>
+	 * @return Consultas resueltas con una instancia ya existente.
+	 */
+	public long getAciertos() {
+		return aciertos.sum();
+	}
+
+	/**
+	 * M&eacute;todo getRatioDeduplicacion.<br>
+	 * @return Fracci&oacute;n de las consultas que se resolvieron con una instancia existente.
+	 */
+	public double getRatioDeduplicacion() {
+		long total = consultas.sum();
+		return total == 0 ? 0 : (double) aciertos.sum() / total;
+	}
+
+	/**
+	 * M&eacute;todo getCaracteresAhorrados.<br>
+	 * @return Caracteres de las instancias que no se han retenido gracias al pool.
+	 */
+	public long getCaracteresAhorrados() {
+		return caracteresAhorrados.sum();
+	}
+
+}
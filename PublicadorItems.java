@@ -0,0 +1,283 @@
+package com.insags.mockito.tutorial.impl;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.insags.mockito.tutorial.CursorItems;
+import com.insags.mockito.tutorial.ItemDao;
+
+/**
+ * Clase PublicadorItems.<br>
+ * Publica el cat&aacute;logo de un {@link ItemDao} con control de demanda.
+ * Cada suscripci&oacute;n abre su propio cursor al recibir la primera
+ * petici&oacute;n y s&oacute;lo lee del DAO lo necesario para atender la
+ * demanda pendiente, de modo que un consumidor lento frena la lectura. Al
+ * cancelar, terminar o fallar se cierra el cursor. Las entregas se hacen en
+ * el ejecutor indicado y nunca en paralelo dentro de una suscripci&oacute;n.
+ * S&oacute;lo los fallos del DAO y del cursor se notifican con onError; si
+ * el suscriptor lanza una excepci&oacute;n en onNext la suscripci&oacute;n
+ * se da por cancelada, y si la lanza en onComplete u onError no se le
+ * notifica nada m&aacute;s. En ambos casos la excepci&oacute;n se escribe en
+ * el log. Si el ejecutor rechaza una entrega la suscripci&oacute;n termina
+ * con onError, notificado en el hilo que ha pedido o cancelado.<br>
+ * @author INSA
+ */
+class PublicadorItems implements Flow.Publisher<String> {
+
+	/** Log de las excepciones lanzadas por los suscriptores. */
+	private static final Logger LOG = Logger.getLogger(PublicadorItems.class.getName());
+
+	/** DAO origen. */
+	private final ItemDao itemDao;
+
+	/** N&uacute;mero de items por lectura del cursor. */
+	private final int tamanyoBloque;
+
+	/** Ejecutor de las entregas. */
+	private final Executor ejecutor;
+
+	/**
+	 * Constructor de la clase.<br>
+	 * @param itemDao DAO origen.
+	 * @param tamanyoBloque N&uacute;mero m&aacute;ximo de items por lectura del cursor.
+	 * @param ejecutor Ejecutor de las entregas.
+	 */
+	PublicadorItems(ItemDao itemDao, int tamanyoBloque, Executor ejecutor) {
+		this.itemDao = itemDao;
+		this.tamanyoBloque = tamanyoBloque;
+		this.ejecutor = ejecutor;
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito subscribe.<br>
+	 * @param suscriptor El suscriptor.
+	 * @see java.util.concurrent.Flow.Publisher#subscribe(java.util.concurrent.Flow.Subscriber)
+	 */
+	@Override
+	public void subscribe(Flow.Subscriber<? super String> suscriptor) {
+		if (suscriptor == null) {
+			throw new NullPointerException("suscriptor");
+		}
+		suscriptor.onSubscribe(new Suscripcion(suscriptor));
+	}
+
+	/**
+	 * Clase Suscripcion.<br>
+	 * Estado de una suscripci&oacute;n. S&oacute;lo el hilo que gana el contador
+	 * de trabajo pendiente toca el cursor y el suscriptor.<br>
+	 */
+	private final class Suscripcion implements Flow.Subscription, Runnable {
+
+		/** Suscriptor. */
+		private final Flow.Subscriber<? super String> suscriptor;
+
+		/** Items pedidos y a&uacute;n no entregados. */
+		private final AtomicLong demanda = new AtomicLong();
+
+		/** Avisos pendientes de procesar; el que lo pasa de cero a uno drena. */
+		private final AtomicInteger pendientes = new AtomicInteger();
+
+		/** Indica si se ha cancelado o recibido una petici&oacute;n no v&aacute;lida. */
+		private volatile boolean cancelada;
+
+		/** Petici&oacute;n no v&aacute;lida a notificar, si la hay. */
+		private volatile IllegalArgumentException peticionNoValida;
+
+		/** Cursor, abierto en el primer drenaje. */
+		private CursorItems cursor;
+
+		/** Indica si ya se ha enviado onComplete u onError. */
+		private boolean terminada;
+
+		/**
+		 * Constructor de la clase.<br>
+		 * @param suscriptor Suscriptor.
+		 */
+		Suscripcion(Flow.Subscriber<? super String> suscriptor) {
+			this.suscriptor = suscriptor;
+		}
+
+		/**
+		 * M&eacute;todo sobrescrito request.<br>
+		 * @param n N&uacute;mero de items adicionales pedidos.
+		 * @see java.util.concurrent.Flow.Subscription#request(long)
+		 */
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				peticionNoValida = new IllegalArgumentException("Peticion no valida: " + n);
+				cancelada = true;
+			} else {
+				long actual;
+				do {
+					actual = demanda.get();
+				} while (!demanda.compareAndSet(actual, actual + n < 0 ? Long.MAX_VALUE : actual + n));
+			}
+			avisar();
+		}
+
+		/**
+		 * M&eacute;todo sobrescrito cancel.<br>
+		 * @see java.util.concurrent.Flow.Subscription#cancel()
+		 */
+		@Override
+		public void cancel() {
+			cancelada = true;
+			avisar();
+		}
+
+		/**
+		 * M&eacute;todo avisar.<br>
+		 * Programa un drenaje si no hay otro en curso.
+		 */
+		private void avisar() {
+			if (pendientes.getAndIncrement() == 0) {
+				try {
+					ejecutor.execute(this);
+				} catch (RejectedExecutionException e) {
+					rechazar(e);
+				}
+			}
+		}
+
+		/**
+		 * M&eacute;todo rechazar.<br>
+		 * Termina la suscripci&oacute;n cuyo drenaje no se ha podido programar.
+		 * El hilo que llama tiene el contador, as&iacute; que nadie m&aacute;s
+		 * toca el cursor ni el suscriptor hasta que lo devuelve a cero.
+		 * @param rechazo El rechazo del ejecutor.
+		 */
+		private void rechazar(RejectedExecutionException rechazo) {
+			if (!terminada) {
+				RuntimeException cierre = terminar();
+				if (cierre != null) {
+					rechazo.addSuppressed(cierre);
+				}
+				notificarError(rechazo);
+			}
+			pendientes.set(0);
+		}
+
+		/**
+		 * M&eacute;todo sobrescrito run.<br>
+		 * Entrega items mientras haya demanda y repite si han llegado avisos
+		 * durante la entrega.
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public void run() {
+			int procesados = 1;
+			do {
+				drenar();
+				procesados = pendientes.addAndGet(-procesados);
+			} while (procesados != 0);
+		}
+
+		/**
+		 * M&eacute;todo drenar.<br>
+		 * Las llamadas al suscriptor quedan fuera de la captura de los fallos
+		 * del cursor, para que una excepci&oacute;n suya nunca se le devuelva
+		 * con onError.
+		 */
+		private void drenar() {
+			if (terminada) {
+				return;
+			}
+			while (!cancelada && demanda.get() > 0) {
+				boolean hayMas;
+				String item = null;
+				try {
+					if (cursor == null) {
+						cursor = itemDao.abrirCursor(tamanyoBloque);
+					}
+					hayMas = cursor.hasNext();
+					if (hayMas) {
+						item = cursor.next();
+					}
+				} catch (RuntimeException e) {
+					RuntimeException cierre = terminar();
+					if (cierre != null) {
+						e.addSuppressed(cierre);
+					}
+					notificarError(e);
+					return;
+				}
+				if (!hayMas) {
+					RuntimeException cierre = terminar();
+					if (cierre != null) {
+						notificarError(cierre);
+					} else {
+						notificarFin();
+					}
+					return;
+				}
+				demanda.decrementAndGet();
+				try {
+					suscriptor.onNext(item);
+				} catch (RuntimeException e) {
+					terminar();
+					LOG.log(Level.WARNING, "El suscriptor ha fallado en onNext; se cancela la suscripcion", e);
+					return;
+				}
+			}
+			if (cancelada) {
+				RuntimeException cierre = terminar();
+				if (peticionNoValida != null) {
+					if (cierre != null) {
+						peticionNoValida.addSuppressed(cierre);
+					}
+					notificarError(peticionNoValida);
+				}
+			}
+		}
+
+		/**
+		 * M&eacute;todo notificarFin.<br>
+		 */
+		private void notificarFin() {
+			try {
+				suscriptor.onComplete();
+			} catch (RuntimeException e) {
+				LOG.log(Level.WARNING, "El suscriptor ha fallado en onComplete", e);
+			}
+		}
+
+		/**
+		 * M&eacute;todo notificarError.<br>
+		 * @param error Error a notificar.
+		 */
+		private void notificarError(Throwable error) {
+			try {
+				suscriptor.onError(error);
+			} catch (RuntimeException e) {
+				e.addSuppressed(error);
+				LOG.log(Level.WARNING, "El suscriptor ha fallado en onError", e);
+			}
+		}
+
+		/**
+		 * M&eacute;todo terminar.<br>
+		 * Cierra el cursor y descarta la demanda pendiente.
+		 * @return El fallo al cerrar el cursor, o nulo si se ha cerrado bien.
+		 */
+		private RuntimeException terminar() {
+			terminada = true;
+			cancelada = true;
+			if (cursor != null) {
+				try {
+					cursor.close();
+				} catch (RuntimeException e) {
+					return e;
+				}
+			}
+			return null;
+		}
+
+	}
+
+}
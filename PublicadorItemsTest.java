@@ -0,0 +1,202 @@
+package com.insags.mockito.tutorial.impl;
+
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.insags.mockito.tutorial.CursorItems;
+
+public class PublicadorItemsTest {
+
+	/** Ejecutor que entrega en el hilo que avisa, para que las pruebas sean sncronas. */
+	private final Executor directo = new Executor() {
+		@Override
+		public void execute(Runnable tarea) {
+			tarea.run();
+		}
+	};
+
+	/**
+	 * Mtodo para probar que una excepcin del suscriptor en onNext cancela
+	 * la suscripcin.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Slo se entrega el primer item aunque haya demanda para tres. 
+	 * - No se notifica onError ni onComplete.
+	 */
+	@Test
+	public void comprobarCancelacionPorFalloDelSuscriptorEnOnNext() {
+		ItemDaoMemoria itemDao = new ItemDaoMemoria();
+		itemDao.actualizarItem("Peonza", 0);
+		itemDao.actualizarItem("Mueca", 1);
+		itemDao.actualizarItem("Cometa", 2);
+		Suscriptor suscriptor = new Suscriptor(3, "onNext");
+		
+		new PublicadorItems(itemDao, 2, directo).subscribe(suscriptor);
+		
+		// Assert
+		assertThat(suscriptor.senyales, contains("onNext Peonza"));
+	}
+
+	/**
+	 * Mtodo para probar que una excepcin del suscriptor en onComplete no
+	 * se le devuelve con onError.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Slo se notifica onComplete.
+	 */
+	@Test
+	public void comprobarSinErrorTrasFalloDelSuscriptorEnOnComplete() {
+		Suscriptor suscriptor = new Suscriptor(1, "onComplete");
+		
+		new PublicadorItems(new ItemDaoMemoria(), 2, directo).subscribe(suscriptor);
+		
+		// Assert
+		assertThat(suscriptor.senyales, contains("onComplete"));
+	}
+
+	/**
+	 * Mtodo para probar que un fallo del cursor se notifica con onError.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Se entregan los items ledos antes del fallo y despus un nico onError.
+	 */
+	@Test
+	public void comprobarErrorPorFalloDelCursor() {
+		ItemDaoMemoria itemDao = new ItemDaoMemoria() {
+			@Override
+			public CursorItems abrirCursor(int tamanyoBloque) {
+				final CursorItems cursor = super.abrirCursor(tamanyoBloque);
+				return new CursorItems() {
+					@Override
+					public boolean hasNext() {
+						return true;
+					}
+
+					@Override
+					public String next() {
+						if (!cursor.hasNext()) {
+							throw new IllegalStateException("Cursor roto");
+						}
+						return cursor.next();
+					}
+
+					@Override
+					public void close() {
+						cursor.close();
+					}
+				};
+			}
+		};
+		itemDao.actualizarItem("Peonza", 0);
+		Suscriptor suscriptor = new Suscriptor(3, null);
+		
+		new PublicadorItems(itemDao, 2, directo).subscribe(suscriptor);
+		
+		// Assert
+		assertThat(suscriptor.senyales, contains("onNext Peonza", "onError Cursor roto"));
+	}
+
+	/**
+	 * Mtodo para probar que si el ejecutor rechaza la entrega la
+	 * suscripcin termina con onError y no queda bloqueada.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Se notifica un nico onError con el rechazo. 
+	 * - Una peticin posterior vuelve a usar el ejecutor sin notificar nada ms.
+	 */
+	@Test
+	public void comprobarErrorPorRechazoDelEjecutor() {
+		final AtomicInteger ejecutadas = new AtomicInteger();
+		Executor rechazaElPrimero = new Executor() {
+			private boolean rechazado;
+
+			@Override
+			public void execute(Runnable tarea) {
+				if (!rechazado) {
+					rechazado = true;
+					throw new RejectedExecutionException("Ejecutor saturado");
+				}
+				ejecutadas.incrementAndGet();
+				tarea.run();
+			}
+		};
+		ItemDaoMemoria itemDao = new ItemDaoMemoria();
+		itemDao.actualizarItem("Peonza", 0);
+		Suscriptor suscriptor = new Suscriptor(1, null);
+		
+		new PublicadorItems(itemDao, 2, rechazaElPrimero).subscribe(suscriptor);
+		suscriptor.suscripcion.request(1);
+		
+		// Assert
+		assertThat(suscriptor.senyales, contains("onError Ejecutor saturado"));
+		Assert.assertEquals(1, ejecutadas.get());
+	}
+
+	/**
+	 * Clase Suscriptor.<br>
+	 * Anota las seales recibidas y puede fallar en una de ellas.<br>
+	 */
+	private static final class Suscriptor implements Flow.Subscriber<String> {
+
+		/** Seales recibidas. */
+		private final List<String> senyales = new ArrayList<String>();
+
+		/** Items pedidos al suscribirse. */
+		private final long peticion;
+
+		/** Seal en la que se lanza una excepcin, o nulo. */
+		private final String fallarEn;
+
+		/** Suscripcin recibida. */
+		private Flow.Subscription suscripcion;
+
+		private Suscriptor(long peticion, String fallarEn) {
+			this.peticion = peticion;
+			this.fallarEn = fallarEn;
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription suscripcion) {
+			this.suscripcion = suscripcion;
+			suscripcion.request(peticion);
+		}
+
+		@Override
+		public void onNext(String item) {
+			anotar("onNext", "onNext " + item);
+		}
+
+		@Override
+		public void onError(Throwable error) {
+			anotar("onError", "onError " + error.getMessage());
+		}
+
+		@Override
+		public void onComplete() {
+			anotar("onComplete", "onComplete");
+		}
+
+		private void anotar(String senyal, String texto) {
+			senyales.add(texto);
+			if (senyal.equals(fallarEn)) {
+				throw new IllegalStateException("Fallo del suscriptor en " + senyal);
+			}
+		}
+
+	}
+
+}
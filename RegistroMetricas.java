@@ -0,0 +1,41 @@
+package com.insags.mockito.tutorial;
+
+/**
+ * Interfaz RegistroMetricas.<br>
+ * Destino de las m&eacute;tricas de {@link ItemController}. Se invoca una vez
+ * por llamada desde el hilo llamante, por lo que las implementaciones no
+ * deben reservar memoria ni bloquear.<br>
+ * @author INSA
+ */
+public interface RegistroMetricas {
+
+	/** Registro que descarta todo; con &eacute;l el controlador ni siquiera mide el tiempo. */
+	RegistroMetricas NINGUNO = new RegistroMetricas() {
+
+		@Override
+		public void registrarLlamada(OperacionItem operacion, long nanos, long items) {
+		}
+
+		@Override
+		public void registrarError(OperacionItem operacion, long nanos, Throwable error) {
+		}
+
+	};
+
+	/**
+	 * M&eacute;todo registrarLlamada.<br>
+	 * @param operacion La operaci&oacute;n.
+	 * @param nanos Duraci&oacute;n de la llamada en nanosegundos.
+	 * @param items N&uacute;mero de items procesados.
+	 */
+	void registrarLlamada(OperacionItem operacion, long nanos, long items);
+
+	/**
+	 * M&eacute;todo registrarError.<br>
+	 * @param operacion La operaci&oacute;n.
+	 * @param nanos Duraci&oacute;n de la llamada hasta el error en nanosegundos.
+	 * @param error La excepci&oacute;n, que el controlador relanza despu&eacute;s.
+	 */
+	void registrarError(OperacionItem operacion, long nanos, Throwable error);
+
+}
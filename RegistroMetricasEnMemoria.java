@@ -0,0 +1,136 @@
+package com.insags.mockito.tutorial.impl;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.insags.mockito.tutorial.OperacionItem;
+import com.insags.mockito.tutorial.RegistroMetricas;
+
+/**
+ * Clase RegistroMetricasEnMemoria.<br>
+ * {@link RegistroMetricas} que acumula en memoria, por operaci&oacute;n,
+ * llamadas, items procesados, errores por tipo de excepci&oacute;n y un
+ * histograma de latencias. Las estructuras de cada operaci&oacute;n se crean
+ * al construir el registro, de modo que registrar no reserva memoria salvo
+ * la primera vez que aparece un tipo de excepci&oacute;n.<br>
+ * @author INSA
+ */
+public class RegistroMetricasEnMemoria implements RegistroMetricas {
+
+	/** M&eacute;tricas por operaci&oacute;n; no cambia tras construir el registro. */
+	private final Map<OperacionItem, MetricasOperacion> metricas =
+			new EnumMap<OperacionItem, MetricasOperacion>(OperacionItem.class);
+
+	/**
+	 * Constructor de la clase.<br>
+	 */
+	public RegistroMetricasEnMemoria() {
+		for (OperacionItem operacion : OperacionItem.values()) {
+			metricas.put(operacion, new MetricasOperacion());
+		}
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito registrarLlamada.<br>
+	 * @param operacion La operaci&oacute;n.
+	 * @param nanos Duraci&oacute;n de la llamada en nanosegundos.
+	 * @param items N&uacute;mero de items procesados.
+	 * @see com.insags.mockito.tutorial.RegistroMetricas#registrarLlamada(com.insags.mockito.tutorial.OperacionItem, long, long)
+	 */
+	@Override
+	public void registrarLlamada(OperacionItem operacion, long nanos, long items) {
+		MetricasOperacion destino = metricas.get(operacion);
+		destino.llamadas.increment();
+		destino.items.add(items);
+		destino.latencias.registrar(nanos);
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito registrarError.<br>
+	 * @param operacion La operaci&oacute;n.
+	 * @param nanos Duraci&oacute;n de la llamada hasta el error en nanosegundos.
+	 * @param error La excepci&oacute;n.
+	 * @see com.insags.mockito.tutorial.RegistroMetricas#registrarError(com.insags.mockito.tutorial.OperacionItem, long, java.lang.Throwable)
+	 */
+	@Override
+	public void registrarError(OperacionItem operacion, long nanos, Throwable error) {
+		MetricasOperacion destino = metricas.get(operacion);
+		destino.llamadas.increment();
+		destino.latencias.registrar(nanos);
+		LongAdder porTipo = destino.errores.get(error.getClass());
+		if (porTipo == null) {
+			LongAdder nuevo = new LongAdder();
+			porTipo = destino.errores.putIfAbsent(error.getClass(), nuevo);
+			if (porTipo == null) {
+				porTipo = nuevo;
+			}
+		}
+		porTipo.increment();
+	}
+
+	/**
+	 * M&eacute;todo getLlamadas.<br>
+	 * @param operacion La operaci&oacute;n.
+	 * @return N&uacute;mero de llamadas, incluidas las fallidas.
+	 */
+	public long getLlamadas(OperacionItem operacion) {
+		return metricas.get(operacion).llamadas.sum();
+	}
+
+	/**
+	 * M&eacute;todo getItems.<br>
+	 * @param operacion La operaci&oacute;n.
+	 * @return N&uacute;mero de items procesados por las llamadas correctas.
+	 */
+	public long getItems(OperacionItem operacion) {
+		return metricas.get(operacion).items.sum();
+	}
+
+	/**
+	 * M&eacute;todo getErrores.<br>
+	 * @param operacion La operaci&oacute;n.
+	 * @return N&uacute;mero de errores por tipo de excepci&oacute;n.
+	 */
+	public Map<Class<? extends Throwable>, Long> getErrores(OperacionItem operacion) {
+		Map<Class<? extends Throwable>, Long> errores = new HashMap<Class<? extends Throwable>, Long>();
+		for (Map.Entry<Class<? extends Throwable>, LongAdder> error : metricas.get(operacion).errores.entrySet()) {
+			errores.put(error.getKey(), error.getValue().sum());
+		}
+		return Collections.unmodifiableMap(errores);
+	}
+
+	/**
+	 * M&eacute;todo getLatencias.<br>
+	 * @param operacion La operaci&oacute;n.
+	 * @return Histograma de latencias en nanosegundos.
+	 */
+	public HistogramaLatencias getLatencias(OperacionItem operacion) {
+		return metricas.get(operacion).latencias;
+	}
+
+	/**
+	 * Clase MetricasOperacion.<br>
+	 * Contadores de una operaci&oacute;n.<br>
+	 */
+	private static final class MetricasOperacion {
+
+		/** Llamadas, incluidas las fallidas. */
+		private final LongAdder llamadas = new LongAdder();
+
+		/** Items procesados por las llamadas correctas. */
+		private final LongAdder items = new LongAdder();
+
+		/** Latencias en nanosegundos. */
+		private final HistogramaLatencias latencias = new HistogramaLatencias();
+
+		/** Errores por tipo de excepci&oacute;n. */
+		private final ConcurrentHashMap<Class<? extends Throwable>, LongAdder> errores =
+				new ConcurrentHashMap<Class<? extends Throwable>, LongAdder>();
+
+	}
+
+}
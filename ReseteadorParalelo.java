@@ -0,0 +1,168 @@
+package com.insags.mockito.tutorial.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import com.insags.mockito.tutorial.ActualizacionPorLotesException;
+import com.insags.mockito.tutorial.ErrorLote;
+import com.insags.mockito.tutorial.ItemDao;
+
+/**
+ * Clase ReseteadorParalelo.<br>
+ * Resetea un conjunto de posiciones repartiendo sus lotes entre varias
+ * tareas de un ejecutor. El n&uacute;mero de tareas, y por tanto de llamadas
+ * simult&aacute;neas al DAO, est&aacute; acotado; cada tarea toma el
+ * siguiente lote libre hasta agotarlos.<br>
+ * @author INSA
+ */
+class ReseteadorParalelo {
+
+	/** DAO destino, que debe admitir escrituras concurrentes. */
+	private final ItemDao itemDao;
+
+	/** Ejecutor de las tareas. */
+	private final Executor ejecutor;
+
+	/** N&uacute;mero m&aacute;ximo de llamadas simult&aacute;neas al DAO. */
+	private final int concurrencia;
+
+	/** N&uacute;mero m&aacute;ximo de posiciones por lote. */
+	private final int tamanyoLote;
+
+	/**
+	 * Constructor de la clase.<br>
+	 * @param itemDao DAO destino.
+	 * @param ejecutor Ejecutor de las tareas.
+	 * @param concurrencia N&uacute;mero m&aacute;ximo de llamadas simult&aacute;neas al DAO.
+	 * @param tamanyoLote N&uacute;mero m&aacute;ximo de posiciones por lote.
+	 */
+	ReseteadorParalelo(ItemDao itemDao, Executor ejecutor, int concurrencia, int tamanyoLote) {
+		this.itemDao = itemDao;
+		this.ejecutor = ejecutor;
+		this.concurrencia = concurrencia;
+		this.tamanyoLote = tamanyoLote;
+	}
+
+	/**
+	 * M&eacute;todo resetear.<br>
+	 * Escribe el valor en todas las posiciones, sin repetir ninguna, y espera
+	 * a que terminen todos los lotes.
+	 * @param posiciones Posiciones a resetear; se copian antes de ordenarlas.
+	 * @param valor Valor a escribir.
+	 * @throws ActualizacionPorLotesException Si alg&uacute;n lote ha fallado.
+	 */
+	void resetear(int[] posiciones, String valor) {
+		final int[] unicas = ordenarSinDuplicados(posiciones);
+		ejecutar((int) (((long) unicas.length + tamanyoLote - 1) / tamanyoLote), new IntFunction<int[]>() {
+			@Override
+			public int[] apply(int lote) {
+				long desde = (long) lote * tamanyoLote;
+				return Arrays.copyOfRange(unicas, (int) desde, (int) Math.min(desde + tamanyoLote, unicas.length));
+			}
+		}, valor);
+	}
+
+	/**
+	 * M&eacute;todo resetearRango.<br>
+	 * Escribe el valor en un rango de posiciones; cada tarea s&oacute;lo
+	 * materializa las posiciones del lote que est&aacute; enviando.
+	 * @param desde Primera posici&oacute;n, incluida.
+	 * @param hasta &Uacute;ltima posici&oacute;n, excluida.
+	 * @param valor Valor a escribir.
+	 * @throws ActualizacionPorLotesException Si alg&uacute;n lote ha fallado.
+	 */
+	void resetearRango(final int desde, final int hasta, String valor) {
+		ejecutar((int) (((long) hasta - desde + tamanyoLote - 1) / tamanyoLote), new IntFunction<int[]>() {
+			@Override
+			public int[] apply(int lote) {
+				int inicio = desde + lote * tamanyoLote;
+				int[] posiciones = new int[Math.min(tamanyoLote, hasta - inicio)];
+				for (int i = 0; i < posiciones.length; i++) {
+					posiciones[i] = inicio + i;
+				}
+				return posiciones;
+			}
+		}, valor);
+	}
+
+	/**
+	 * M&eacute;todo ejecutar.<br>
+	 * Reparte los lotes entre las tareas y espera a que terminen todos.
+	 * @param numeroLotes N&uacute;mero de lotes.
+	 * @param lotes Posiciones de cada lote, a partir de su n&uacute;mero.
+	 * @param valor Valor a escribir.
+	 * @throws ActualizacionPorLotesException Si alg&uacute;n lote ha fallado.
+	 */
+	private void ejecutar(final int numeroLotes, final IntFunction<int[]> lotes, final String valor) {
+		final AtomicInteger siguienteLote = new AtomicInteger();
+		final ConcurrentLinkedQueue<ErrorLote> errores = new ConcurrentLinkedQueue<ErrorLote>();
+
+		int tareas = Math.min(concurrencia, numeroLotes);
+		CompletableFuture<?>[] pendientes = new CompletableFuture<?>[tareas];
+		for (int t = 0; t < tareas; t++) {
+			pendientes[t] = CompletableFuture.runAsync(new Runnable() {
+				@Override
+				public void run() {
+					int lote;
+					while ((lote = siguienteLote.getAndIncrement()) < numeroLotes) {
+						escribirLote(lote, lotes.apply(lote), valor, errores);
+					}
+				}
+			}, ejecutor);
+		}
+		CompletableFuture.allOf(pendientes).join();
+
+		if (!errores.isEmpty()) {
+			List<ErrorLote> ordenados = new ArrayList<ErrorLote>(errores);
+			Collections.sort(ordenados, new Comparator<ErrorLote>() {
+				@Override
+				public int compare(ErrorLote a, ErrorLote b) {
+					return Integer.compare(a.getNumeroLote(), b.getNumeroLote());
+				}
+			});
+			throw new ActualizacionPorLotesException(ordenados);
+		}
+	}
+
+	/**
+	 * M&eacute;todo escribirLote.<br>
+	 * Env&iacute;a al DAO un lote y anota su fallo, si lo hay.
+	 * @param lote N&uacute;mero del lote.
+	 * @param posiciones Posiciones del lote.
+	 * @param valor Valor a escribir.
+	 * @param errores Lotes fallidos.
+	 */
+	private void escribirLote(int lote, int[] posiciones, String valor, ConcurrentLinkedQueue<ErrorLote> errores) {
+		try {
+			itemDao.rellenarItems(posiciones, valor);
+		} catch (RuntimeException e) {
+			errores.add(new ErrorLote(lote, posiciones, e));
+		}
+	}
+
+	/**
+	 * M&eacute;todo ordenarSinDuplicados.<br>
+	 * @param posiciones Posiciones de entrada, que no se modifican.
+	 * @return Nuevo array con las posiciones ordenadas y sin duplicados.
+	 */
+	private static int[] ordenarSinDuplicados(int[] posiciones) {
+		int[] ordenadas = posiciones.clone();
+		Arrays.sort(ordenadas);
+		int unicas = 0;
+		for (int i = 0; i < ordenadas.length; i++) {
+			if (unicas == 0 || ordenadas[i] != ordenadas[unicas - 1]) {
+				ordenadas[unicas++] = ordenadas[i];
+			}
+		}
+		return Arrays.copyOf(ordenadas, unicas);
+	}
+
+}
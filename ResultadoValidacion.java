@@ -0,0 +1,122 @@
+package com.insags.mockito.tutorial.impl;
+
+import java.util.BitSet;
+
+/**
+ * Clase ResultadoValidacion.<br>
+ * Resultado de una validaci&oacute;n masiva: un bit por item rechazado, en
+ * lugar de un {@link org.springframework.validation.Errors} por item. Para
+ * conocer el motivo de un rechazo se valida de nuevo ese item.<br>
+ * @author INSA
+ */
+public final class ResultadoValidacion {
+
+	/** Bits de los items rechazados, 64 por palabra. */
+	private final long[] rechazados;
+
+	/** N&uacute;mero de items de la entrada. */
+	private final int numeroItems;
+
+	/** N&uacute;mero de items rechazados. */
+	private final int numeroRechazados;
+
+	/** Si se han validado todos los items o se agot&oacute; antes el presupuesto de errores. */
+	private final boolean completa;
+
+	/**
+	 * Constructor de la clase.<br>
+	 * @param rechazados Bits de los items rechazados; no se copian.
+	 * @param numeroItems N&uacute;mero de items de la entrada.
+	 * @param numeroRechazados N&uacute;mero de items rechazados.
+	 * @param completa Si se han validado todos los items.
+	 */
+	ResultadoValidacion(long[] rechazados, int numeroItems, int numeroRechazados, boolean completa) {
+		this.rechazados = rechazados;
+		this.numeroItems = numeroItems;
+		this.numeroRechazados = numeroRechazados;
+		this.completa = completa;
+	}
+
+	/**
+	 * M&eacute;todo isValida.<br>
+	 * @return Si se han validado todos los items y ninguno ha sido rechazado.
+	 */
+	public boolean isValida() {
+		return completa && numeroRechazados == 0;
+	}
+
+	/**
+	 * M&eacute;todo isCompleta.<br>
+	 * @return Si se han validado todos los items; si no, el presupuesto de errores se agot&oacute; antes.
+	 */
+	public boolean isCompleta() {
+		return completa;
+	}
+
+	/**
+	 * M&eacute;todo isRechazado.<br>
+	 * @param indice &Iacute;ndice del item en la entrada.
+	 * @return Si el item ha sido rechazado.
+	 */
+	public boolean isRechazado(int indice) {
+		if (indice < 0 || indice >= numeroItems) {
+			throw new IndexOutOfBoundsException("Indice fuera de rango: " + indice);
+		}
+		return (rechazados[indice >>> 6] & (1L << indice)) != 0;
+	}
+
+	/**
+	 * M&eacute;todo siguienteRechazado.<br>
+	 * @param desde Primer &iacute;ndice a considerar.
+	 * @return &Iacute;ndice del primer item rechazado desde el indicado, o -1 si no hay.
+	 */
+	public int siguienteRechazado(int desde) {
+		int palabra = desde >>> 6;
+		if (desde < 0 || palabra >= rechazados.length) {
+			return -1;
+		}
+		long bits = rechazados[palabra] & (-1L << desde);
+		while (bits == 0) {
+			if (++palabra == rechazados.length) {
+				return -1;
+			}
+			bits = rechazados[palabra];
+		}
+		return (palabra << 6) + Long.numberOfTrailingZeros(bits);
+	}
+
+	/**
+	 * M&eacute;todo getRechazados.<br>
+	 * @return Copia de los bits de los items rechazados.
+	 */
+	public BitSet getRechazados() {
+		return BitSet.valueOf(rechazados);
+	}
+
+	/**
+	 * M&eacute;todo getNumeroItems.<br>
+	 * @return El n&uacute;mero de items de la entrada.
+	 */
+	public int getNumeroItems() {
+		return numeroItems;
+	}
+
+	/**
+	 * M&eacute;todo getNumeroRechazados.<br>
+	 * @return El n&uacute;mero de items rechazados.
+	 */
+	public int getNumeroRechazados() {
+		return numeroRechazados;
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito toString.<br>
+	 * @return Resumen del resultado.
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return numeroRechazados + " de " + numeroItems + " rechazado(s)" + (completa ? "" : " (incompleta)");
+	}
+
+}
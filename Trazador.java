@@ -0,0 +1,328 @@
+package com.insags.mockito.tutorial.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.insags.mockito.tutorial.OperacionItem;
+
+/**
+ * Clase Trazador.<br>
+ * Trazas de las llamadas del controlador. Una fracci&oacute;n de las llamadas,
+ * elegida al azar, abre una traza en su hilo; las llamadas al DAO hechas a
+ * trav&eacute;s de un {@link ItemDaoTrazado} mientras dura se anotan como
+ * tramos hijos. La llamada y cada tramo son tambi&eacute;n eventos JFR, si la
+ * JVM los admite, que empiezan al abrirse y se confirman al cerrarse. Si la
+ * llamada ha durado al menos el umbral, al cerrarla se escribe en el log el
+ * desglose: tiempo por m&eacute;todo del DAO y tiempo propio del
+ * controlador. Las llamadas no muestreadas s&oacute;lo cuestan la
+ * tirada y la consulta de la traza del hilo.<br>
+ * @author INSA
+ */
+public final class Trazador {
+
+	/** Log de las llamadas lentas. */
+	private static final Logger LOG = Logger.getLogger(Trazador.class.getName());
+
+	/** Traza abierta en cada hilo. */
+	private final ThreadLocal<Traza> actual = new ThreadLocal<Traza>();
+
+	/** Fracci&oacute;n de las llamadas que se trazan. */
+	private final double tasaMuestreo;
+
+	/** Duraci&oacute;n a partir de la cual una llamada trazada se escribe en el log. */
+	private final long umbralLentoNanos;
+
+	/** Llamadas trazadas. */
+	private final LongAdder trazadas = new LongAdder();
+
+	/** Llamadas trazadas que han superado el umbral. */
+	private final LongAdder lentas = new LongAdder();
+
+	/**
+	 * Constructor de la clase.<br>
+	 * @param tasaMuestreo Fracci&oacute;n de las llamadas que se trazan, entre 0 y 1.
+	 * @param umbralLento Duraci&oacute;n a partir de la cual una llamada trazada se escribe en el log.
+	 * @param unidad Unidad del umbral.
+	 */
+	public Trazador(double tasaMuestreo, long umbralLento, TimeUnit unidad) {
+		if (!(tasaMuestreo >= 0 && tasaMuestreo <= 1)) {
+			throw new IllegalArgumentException("Tasa de muestreo no valida: " + tasaMuestreo);
+		}
+		if (umbralLento < 0) {
+			throw new IllegalArgumentException("Umbral no valido: " + umbralLento);
+		}
+		this.tasaMuestreo = tasaMuestreo;
+		this.umbralLentoNanos = unidad.toNanos(umbralLento);
+	}
+
+	/**
+	 * M&eacute;todo abrir.<br>
+	 * Si el hilo ya tiene una traza, la llamada queda dentro de ella.
+	 * @param operacion Operaci&oacute;n del controlador que empieza.
+	 */
+	void abrir(OperacionItem operacion) {
+		Traza traza = actual.get();
+		if (traza != null) {
+			traza.profundidad++;
+		} else if (tasaMuestreo > 0 && (tasaMuestreo >= 1 || ThreadLocalRandom.current().nextDouble() < tasaMuestreo)) {
+			actual.set(new Traza(operacion));
+		}
+	}
+
+	/**
+	 * M&eacute;todo resultado.<br>
+	 * Anota c&oacute;mo ha terminado la llamada abierta en este hilo; las
+	 * llamadas anidadas no cambian el de la exterior.
+	 * @param items N&uacute;mero de items tratados.
+	 * @param error Error de la llamada, o nulo si ha terminado bien.
+	 */
+	void resultado(long items, Throwable error) {
+		Traza traza = actual.get();
+		if (traza != null && traza.profundidad == 0) {
+			traza.items = items;
+			traza.error = error;
+			traza.terminada = true;
+		}
+	}
+
+	/**
+	 * M&eacute;todo cerrar.<br>
+	 * Cierra la llamada abierta por el &uacute;ltimo abrir de este hilo. Se
+	 * debe llamar siempre, tambi&eacute;n si la llamada sale con un Error; en
+	 * ese caso no hay resultado y se cuenta como fallida.
+	 */
+	void cerrar() {
+		Traza traza = actual.get();
+		if (traza == null) {
+			return;
+		}
+		if (traza.profundidad > 0) {
+			traza.profundidad--;
+			return;
+		}
+		actual.remove();
+		long nanos = System.nanoTime() - traza.inicio;
+		trazadas.increment();
+		EventosJfr.terminar(traza.evento, traza.operacion.name(), "", traza.items, !traza.terminada || traza.error != null);
+		if (nanos >= umbralLentoNanos) {
+			lentas.increment();
+			if (LOG.isLoggable(Level.WARNING)) {
+				LOG.log(Level.WARNING, describir(traza, nanos));
+			}
+		}
+	}
+
+	/**
+	 * M&eacute;todo actual.<br>
+	 * @return La traza abierta en este hilo, o nulo si no hay.
+	 */
+	Traza actual() {
+		return actual.get();
+	}
+
+	/**
+	 * M&eacute;todo propagar.<br>
+	 * @param ejecutor Ejecutor de tareas que forman parte de la llamada en curso.
+	 * @return Ejecutor que abre en cada tarea la traza del hilo que la env&iacute;a.
+	 */
+	Executor propagar(final Executor ejecutor) {
+		return new Executor() {
+			@Override
+			public void execute(final Runnable tarea) {
+				final Traza traza = actual.get();
+				if (traza == null) {
+					ejecutor.execute(tarea);
+					return;
+				}
+				ejecutor.execute(new Runnable() {
+					@Override
+					public void run() {
+						Traza anterior = actual.get();
+						actual.set(traza);
+						try {
+							tarea.run();
+						} finally {
+							if (anterior == null) {
+								actual.remove();
+							} else {
+								actual.set(anterior);
+							}
+						}
+					}
+				});
+			}
+		};
+	}
+
+	/**
+	 * M&eacute;todo getLlamadasTrazadas.<br>
+	 * @return N&uacute;mero de llamadas trazadas.
+	 */
+	public long getLlamadasTrazadas() {
+		return trazadas.sum();
+	}
+
+	/**
+	 * M&eacute;todo getLlamadasLentas.<br>
+	 * @return N&uacute;mero de llamadas trazadas que han superado el umbral.
+	 */
+	public long getLlamadasLentas() {
+		return lentas.sum();
+	}
+
+	/**
+	 * M&eacute;todo describir.<br>
+	 * Agrupa los tramos por nombre. Con tramos en paralelo su suma puede
+	 * exceder la duraci&oacute;n total; el tiempo propio nunca es negativo.
+	 * @param traza La traza.
+	 * @param nanos Duraci&oacute;n total.
+	 * @return Desglose de la llamada en una l&iacute;nea.
+	 */
+	private static String describir(Traza traza, long nanos) {
+		Map<String, long[]> porNombre = new LinkedHashMap<String, long[]>();
+		long enDao = 0;
+		for (Tramo tramo : traza.tramos) {
+			long[] acumulado = porNombre.get(tramo.nombre);
+			if (acumulado == null) {
+				acumulado = new long[2];
+				porNombre.put(tramo.nombre, acumulado);
+			}
+			acumulado[0]++;
+			acumulado[1] += tramo.nanos;
+			enDao += tramo.nanos;
+		}
+		StringBuilder texto = new StringBuilder("Llamada lenta ").append(traza.operacion)
+				.append(": ").append(milisegundos(nanos)).append(" ms, ").append(traza.items).append(" items");
+		if (!traza.terminada) {
+			texto.append(", sin terminar");
+		} else if (traza.error != null) {
+			texto.append(", error ").append(traza.error);
+		}
+		for (Map.Entry<String, long[]> entrada : porNombre.entrySet()) {
+			texto.append("; ").append(entrada.getKey()).append(" x").append(entrada.getValue()[0])
+					.append(' ').append(milisegundos(entrada.getValue()[1])).append(" ms");
+		}
+		return texto.append("; propio ").append(milisegundos(Math.max(0, nanos - enDao))).append(" ms").toString();
+	}
+
+	/**
+	 * M&eacute;todo milisegundos.<br>
+	 * @param nanos Duraci&oacute;n en nanosegundos.
+	 * @return La duraci&oacute;n en milisegundos con tres decimales.
+	 */
+	private static String milisegundos(long nanos) {
+		return String.format("%.3f", nanos / 1e6);
+	}
+
+	/**
+	 * Clase Traza.<br>
+	 * Llamada trazada del controlador. Los tramos pueden anotarse desde los
+	 * hilos a los que se ha propagado.<br>
+	 */
+	static final class Traza {
+
+		/** Operaci&oacute;n del controlador. */
+		private final OperacionItem operacion;
+
+		/** Instante de inicio. */
+		private final long inicio = System.nanoTime();
+
+		/** Evento JFR de la llamada, o nulo. */
+		private final Object evento = EventosJfr.empezar();
+
+		/** Tramos hijos. */
+		private final ConcurrentLinkedQueue<Tramo> tramos = new ConcurrentLinkedQueue<Tramo>();
+
+		/** Llamadas anidadas abiertas dentro de esta; s&oacute;lo la toca el hilo que la abri&oacute;. */
+		private int profundidad;
+
+		/** N&uacute;mero de items tratados por la llamada. */
+		private long items;
+
+		/** Error de la llamada, o nulo. */
+		private Throwable error;
+
+		/** Si la llamada ha anotado su resultado. */
+		private boolean terminada;
+
+		/**
+		 * Constructor de la clase.<br>
+		 * @param operacion Operaci&oacute;n del controlador.
+		 */
+		private Traza(OperacionItem operacion) {
+			this.operacion = operacion;
+		}
+
+		/**
+		 * M&eacute;todo abrirTramo.<br>
+		 * @param nombre Nombre del tramo.
+		 * @return El tramo, que se anota en la traza al cerrarlo.
+		 */
+		Tramo abrirTramo(String nombre) {
+			return new Tramo(this, nombre);
+		}
+
+	}
+
+	/**
+	 * Clase Tramo.<br>
+	 * Llamada al DAO dentro de una traza. Lo abre y lo cierra el mismo hilo,
+	 * que puede ser uno al que se ha propagado la traza.<br>
+	 */
+	static final class Tramo {
+
+		/** Traza a la que pertenece. */
+		private final Traza traza;
+
+		/** Nombre del m&eacute;todo del DAO. */
+		private final String nombre;
+
+		/** Instante de inicio. */
+		private final long inicio = System.nanoTime();
+
+		/** Evento JFR del tramo, o nulo. */
+		private final Object evento = EventosJfr.empezar();
+
+		/** Duraci&oacute;n. */
+		private long nanos;
+
+		/** N&uacute;mero de items. */
+		private long items;
+
+		/** Si ha fallado. */
+		private boolean error;
+
+		/**
+		 * Constructor de la clase.<br>
+		 * @param traza Traza a la que pertenece.
+		 * @param nombre Nombre del m&eacute;todo del DAO.
+		 */
+		private Tramo(Traza traza, String nombre) {
+			this.traza = traza;
+			this.nombre = nombre;
+		}
+
+		/**
+		 * M&eacute;todo cerrar.<br>
+		 * Confirma el evento y anota el tramo en su traza.
+		 * @param items N&uacute;mero de items.
+		 * @param error Si ha fallado.
+		 */
+		void cerrar(long items, boolean error) {
+			this.nanos = System.nanoTime() - inicio;
+			this.items = items;
+			this.error = error;
+			EventosJfr.terminar(evento, traza.operacion.name(), nombre, items, error);
+			traza.tramos.add(this);
+		}
+
+	}
+
+}
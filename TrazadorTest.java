@@ -0,0 +1,184 @@
+package com.insags.mockito.tutorial.impl;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TrazadorTest {
+
+	private final Logger log = Logger.getLogger(Trazador.class.getName());
+
+	private final List<String> mensajes = new ArrayList<String>();
+
+	private final Handler capturador = new Handler() {
+		@Override
+		public void publish(LogRecord registro) {
+			mensajes.add(registro.getMessage());
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+	};
+
+	@Before
+	public void capturarLog() {
+		log.addHandler(capturador);
+	}
+
+	@After
+	public void liberarLog() {
+		log.removeHandler(capturador);
+	}
+
+	/**
+	 * Mtodo para probar que una llamada lenta escribe en el log el desglose
+	 * de sus llamadas al DAO, tambin las hechas desde el ejecutor de reseteo.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Se trazan las dos llamadas y las dos superan el umbral. 
+	 * - El desglose del reseteo incluye sus rellenos y el tiempo propio.
+	 */
+	@Test
+	public void comprobarDesgloseDeLlamadaLenta() {
+		Trazador trazador = new Trazador(1, 0, TimeUnit.MILLISECONDS);
+		ItemDaoMemoria memoria = new ItemDaoMemoria();
+		ItemControllerImpl itemController = new ItemControllerImpl();
+		itemController.setItemDao(new ItemDaoTrazado(memoria, trazador));
+		itemController.setTrazador(trazador);
+		itemController.setTamanyoLoteEscritura(2);
+		ExecutorService ejecutor = Executors.newSingleThreadExecutor();
+		itemController.setEjecutorReseteo(ejecutor);
+
+		itemController.actualizarItem("Peonza", 0);
+		itemController.resetearItemsEspecificos(new int[] { 0, 1, 2 });
+		ejecutor.shutdown();
+
+		// Assert
+		Assert.assertEquals(2, trazador.getLlamadasTrazadas());
+		Assert.assertEquals(2, trazador.getLlamadasLentas());
+		Assert.assertEquals(2, mensajes.size());
+		assertThat(mensajes.get(0), containsString("ACTUALIZAR_ITEM"));
+		assertThat(mensajes.get(0), containsString("actualizarItem x1"));
+		assertThat(mensajes.get(1), containsString("RESETEAR_ITEMS_ESPECIFICOS"));
+		assertThat(mensajes.get(1), containsString("rellenarItems x2"));
+		assertThat(mensajes.get(1), containsString("propio"));
+	}
+
+	/**
+	 * Mtodo para probar que sin muestreo no se traza ninguna llamada.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - El DAO recibe la escritura. 
+	 * - No hay trazas ni mensajes.
+	 */
+	@Test
+	public void comprobarSinTrazasConMuestreoNulo() {
+		Trazador trazador = new Trazador(0, 0, TimeUnit.MILLISECONDS);
+		ItemDaoMemoria memoria = new ItemDaoMemoria();
+		ItemControllerImpl itemController = new ItemControllerImpl();
+		itemController.setItemDao(new ItemDaoTrazado(memoria, trazador));
+		itemController.setTrazador(trazador);
+
+		itemController.actualizarItem("Peonza", 0);
+
+		// Assert
+		Assert.assertEquals("Peonza", memoria.obtenerItem(0));
+		Assert.assertEquals(0, trazador.getLlamadasTrazadas());
+		Assert.assertTrue(mensajes.isEmpty());
+	}
+
+	/**
+	 * Mtodo para probar que una llamada que sale con un Error cierra su
+	 * traza y no deja la siguiente llamada del hilo dentro de ella.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Las dos llamadas se trazan y se escriben en el log. 
+	 * - La primera consta como sin terminar.
+	 */
+	@Test
+	public void comprobarTrazaCerradaTrasError() {
+		Trazador trazador = new Trazador(1, 0, TimeUnit.MILLISECONDS);
+		ItemDaoMemoria memoria = new ItemDaoMemoria() {
+			private boolean fallado;
+
+			@Override
+			public void actualizarItem(String item, int posicion) {
+				if (!fallado) {
+					fallado = true;
+					throw new Error("Fallo simulado");
+				}
+				super.actualizarItem(item, posicion);
+			}
+		};
+		ItemControllerImpl itemController = new ItemControllerImpl();
+		itemController.setItemDao(new ItemDaoTrazado(memoria, trazador));
+		itemController.setTrazador(trazador);
+
+		try {
+			itemController.actualizarItem("Peonza", 0);
+			Assert.fail("Debe propagar el Error");
+		} catch (Error e) {
+			itemController.actualizarItem("Mueca", 0);
+		}
+
+		// Assert
+		Assert.assertEquals(2, trazador.getLlamadasTrazadas());
+		Assert.assertEquals(2, mensajes.size());
+		assertThat(mensajes.get(0), containsString("sin terminar"));
+		assertThat(mensajes.get(1), containsString("actualizarItem x1"));
+		Assert.assertNull(trazador.actual());
+	}
+
+	/**
+	 * Mtodo para probar que quitar el trazador durante una llamada no deja
+	 * abierta la traza que esa llamada abri en el hilo.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - La llamada se traza y se cierra. 
+	 * - El hilo no conserva la traza.
+	 */
+	@Test
+	public void comprobarTrazaCerradaAlQuitarElTrazadorDuranteLaLlamada() {
+		Trazador trazador = new Trazador(1, 0, TimeUnit.MILLISECONDS);
+		final ItemControllerImpl itemController = new ItemControllerImpl();
+		ItemDaoMemoria memoria = new ItemDaoMemoria() {
+			@Override
+			public void actualizarItem(String item, int posicion) {
+				itemController.setTrazador(null);
+				super.actualizarItem(item, posicion);
+			}
+		};
+		itemController.setItemDao(new ItemDaoTrazado(memoria, trazador));
+		itemController.setTrazador(trazador);
+
+		itemController.actualizarItem("Peonza", 0);
+
+		// Assert
+		Assert.assertEquals(1, trazador.getLlamadasTrazadas());
+		Assert.assertEquals(1, mensajes.size());
+		Assert.assertNull(trazador.actual());
+	}
+
+}
@@ -0,0 +1,365 @@
+package com.insags.mockito.tutorial.impl;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import org.springframework.validation.Errors;
+import org.springframework.validation.Validator;
+
+/**
+ * Clase ValidadorItems.<br>
+ * Validador de items para las escrituras. Las reglas configuradas (longitud,
+ * caracteres permitidos, prefijos, sufijos y unicidad) se compilan una sola
+ * vez en un array plano que se recorre sin crear objetos; s&oacute;lo cuando
+ * un item incumple alguna regla se rellenan los errores. El resultado de
+ * supports se guarda por clase. La regla de unicidad de cada item s&oacute;lo
+ * consulta los valores ya existentes; los repetidos dentro de un mismo lote
+ * se buscan con {@link #buscarRepetido(String[])}.<br>
+ * @author INSA
+ */
+public class ValidadorItems implements Validator {
+
+	/** C&oacute;digo de error de un item nulo. */
+	public static final String CODIGO_NULO = "item.nulo";
+
+	/** C&oacute;digo de error de un item con longitud fuera de rango. */
+	public static final String CODIGO_LONGITUD = "item.longitud";
+
+	/** C&oacute;digo de error de un item con caracteres no permitidos. */
+	public static final String CODIGO_CARACTERES = "item.caracteres";
+
+	/** C&oacute;digo de error de un item que no empieza por ning&uacute;n prefijo permitido. */
+	public static final String CODIGO_PREFIJO = "item.prefijo";
+
+	/** C&oacute;digo de error de un item que no termina en ning&uacute;n sufijo permitido. */
+	public static final String CODIGO_SUFIJO = "item.sufijo";
+
+	/** C&oacute;digo de error de un item que ya existe o est&aacute; repetido en el lote. */
+	public static final String CODIGO_DUPLICADO = "item.duplicado";
+
+	/** Clases soportadas, calculado una vez por clase. */
+	private static final ClassValue<Boolean> SOPORTADAS = new ClassValue<Boolean>() {
+		@Override
+		protected Boolean computeValue(Class<?> clase) {
+			return Boolean.valueOf(String.class.isAssignableFrom(clase));
+		}
+	};
+
+	/** Longitud m&iacute;nima permitida. */
+	private int longitudMinima;
+
+	/** Longitud m&aacute;xima permitida. */
+	private int longitudMaxima = Integer.MAX_VALUE;
+
+	/** Caracteres permitidos; si es nulo se permite cualquiera. */
+	private String caracteresPermitidos;
+
+	/** Prefijos permitidos; si est&aacute; vac&iacute;o no se comprueba. */
+	private String[] prefijosPermitidos = new String[0];
+
+	/** Sufijos permitidos; si est&aacute; vac&iacute;o no se comprueba. */
+	private String[] sufijosPermitidos = new String[0];
+
+	/** Indica si un valor ya existe; si es nulo no se comprueba la unicidad. */
+	private Predicate<String> valoresExistentes;
+
+	/** Reglas compiladas, en orden de coste creciente. */
+	private volatile Regla[] reglas = new Regla[0];
+
+	/**
+	 * M&eacute;todo sobrescrito supports.<br>
+	 * @param clase La clase.
+	 * @return Si la clase es String.
+	 * @see org.springframework.validation.Validator#supports(java.lang.Class)
+	 */
+	@Override
+	public boolean supports(Class<?> clase) {
+		return SOPORTADAS.get(clase).booleanValue();
+	}
+
+	/**
+	 * M&eacute;todo sobrescrito validate.<br>
+	 * Registra un error global por cada regla incumplida.
+	 * @param objeto El item.
+	 * @param errors Los errores.
+	 * @see org.springframework.validation.Validator#validate(java.lang.Object, org.springframework.validation.Errors)
+	 */
+	@Override
+	public void validate(Object objeto, Errors errors) {
+		if (objeto == null) {
+			errors.reject(CODIGO_NULO, "El item no puede ser nulo");
+			return;
+		}
+		String item = (String) objeto;
+		Regla[] compiladas = reglas;
+		for (int i = 0; i < compiladas.length; i++) {
+			if (!compiladas[i].cumple(item)) {
+				for (int j = i; j < compiladas.length; j++) {
+					if (j == i || !compiladas[j].cumple(item)) {
+						errors.reject(compiladas[j].codigo, compiladas[j].mensaje);
+					}
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * M&eacute;todo comprobar.<br>
+	 * Camino r&aacute;pido para quien no necesita un {@link Errors}: no crea
+	 * ning&uacute;n objeto.
+	 * @param item El item.
+	 * @return C&oacute;digo de la primera regla incumplida, o nulo si es v&aacute;lido.
+	 */
+	public String comprobar(String item) {
+		if (item == null) {
+			return CODIGO_NULO;
+		}
+		Regla[] compiladas = reglas;
+		for (int i = 0; i < compiladas.length; i++) {
+			if (!compiladas[i].cumple(item)) {
+				return compiladas[i].codigo;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * M&eacute;todo buscarRepetido.<br>
+	 * Completa la regla de unicidad para un lote, cuyos items todav&iacute;a
+	 * no existen cuando se validan. Los nulos no cuentan.
+	 * @param items Items del lote.
+	 * @return &Iacute;ndice del primer item igual a otro anterior del lote, o -1 si no hay o no se comprueba la unicidad.
+	 */
+	public int buscarRepetido(String[] items) {
+		boolean unicidad = false;
+		for (Regla regla : reglas) {
+			unicidad |= regla instanceof ReglaUnicidad;
+		}
+		if (!unicidad) {
+			return -1;
+		}
+		Set<String> vistos = new HashSet<String>(Math.max(16, (int) (items.length / 0.75f) + 1));
+		for (int i = 0; i < items.length; i++) {
+			if (items[i] != null && !vistos.add(items[i])) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * M&eacute;todo setLongitud.<br>
+	 * @param minima Longitud m&iacute;nima permitida.
+	 * @param maxima Longitud m&aacute;xima permitida.
+	 */
+	public synchronized void setLongitud(int minima, int maxima) {
+		if (minima < 0 || maxima < minima) {
+			throw new IllegalArgumentException("Rango de longitud no valido: " + minima + ".." + maxima);
+		}
+		this.longitudMinima = minima;
+		this.longitudMaxima = maxima;
+		compilar();
+	}
+
+	/**
+	 * M&eacute;todo setCaracteresPermitidos.<br>
+	 * @param caracteresPermitidos Todos los caracteres permitidos, o nulo para permitir cualquiera.
+	 */
+	public synchronized void setCaracteresPermitidos(String caracteresPermitidos) {
+		this.caracteresPermitidos = caracteresPermitidos;
+		compilar();
+	}
+
+	/**
+	 * M&eacute;todo setPrefijosPermitidos.<br>
+	 * @param prefijos Prefijos permitidos; sin ninguno no se comprueba.
+	 */
+	public synchronized void setPrefijosPermitidos(String... prefijos) {
+		this.prefijosPermitidos = prefijos.clone();
+		compilar();
+	}
+
+	/**
+	 * M&eacute;todo setSufijosPermitidos.<br>
+	 * @param sufijos Sufijos permitidos; sin ninguno no se comprueba.
+	 */
+	public synchronized void setSufijosPermitidos(String... sufijos) {
+		this.sufijosPermitidos = sufijos.clone();
+		compilar();
+	}
+
+	/**
+	 * M&eacute;todo setValoresExistentes.<br>
+	 * @param valoresExistentes Indica si un valor ya existe, o nulo para no comprobar la unicidad.
+	 */
+	public synchronized void setValoresExistentes(Predicate<String> valoresExistentes) {
+		this.valoresExistentes = valoresExistentes;
+		compilar();
+	}
+
+	/**
+	 * M&eacute;todo compilar.<br>
+	 * Rehace el array de reglas con la configuraci&oacute;n actual.
+	 */
+	private void compilar() {
+		List<Regla> compiladas = new ArrayList<Regla>();
+		if (longitudMinima > 0 || longitudMaxima < Integer.MAX_VALUE) {
+			compiladas.add(new ReglaLongitud(longitudMinima, longitudMaxima));
+		}
+		if (prefijosPermitidos.length > 0) {
+			compiladas.add(new ReglaExtremos(CODIGO_PREFIJO, "El item no empieza por ningun prefijo permitido",
+					prefijosPermitidos, true));
+		}
+		if (sufijosPermitidos.length > 0) {
+			compiladas.add(new ReglaExtremos(CODIGO_SUFIJO, "El item no termina en ningun sufijo permitido",
+					sufijosPermitidos, false));
+		}
+		if (caracteresPermitidos != null) {
+			compiladas.add(new ReglaCaracteres(caracteresPermitidos));
+		}
+		if (valoresExistentes != null) {
+			compiladas.add(new ReglaUnicidad(valoresExistentes));
+		}
+		reglas = compiladas.toArray(new Regla[compiladas.size()]);
+	}
+
+	/**
+	 * Clase Regla.<br>
+	 * Eslab&oacute;n de la cadena de reglas compilada.<br>
+	 */
+	private abstract static class Regla {
+
+		/** C&oacute;digo de error. */
+		final String codigo;
+
+		/** Mensaje por defecto. */
+		final String mensaje;
+
+		/**
+		 * Constructor de la clase.<br>
+		 * @param codigo C&oacute;digo de error.
+		 * @param mensaje Mensaje por defecto.
+		 */
+		Regla(String codigo, String mensaje) {
+			this.codigo = codigo;
+			this.mensaje = mensaje;
+		}
+
+		/**
+		 * M&eacute;todo cumple.<br>
+		 * @param item El item, no nulo.
+		 * @return Si el item cumple la regla.
+		 */
+		abstract boolean cumple(String item);
+	}
+
+	/**
+	 * Clase ReglaLongitud.<br>
+	 */
+	private static final class ReglaLongitud extends Regla {
+
+		/** Longitud m&iacute;nima. */
+		private final int minima;
+
+		/** Longitud m&aacute;xima. */
+		private final int maxima;
+
+		ReglaLongitud(int minima, int maxima) {
+			super(CODIGO_LONGITUD, "La longitud del item debe estar entre " + minima + " y " + maxima);
+			this.minima = minima;
+			this.maxima = maxima;
+		}
+
+		@Override
+		boolean cumple(String item) {
+			int longitud = item.length();
+			return longitud >= minima && longitud <= maxima;
+		}
+	}
+
+	/**
+	 * Clase ReglaExtremos.<br>
+	 * Prefijos o sufijos permitidos.<br>
+	 */
+	private static final class ReglaExtremos extends Regla {
+
+		/** Valores permitidos. */
+		private final String[] extremos;
+
+		/** Si son prefijos; si no, sufijos. */
+		private final boolean prefijos;
+
+		ReglaExtremos(String codigo, String mensaje, String[] extremos, boolean prefijos) {
+			super(codigo, mensaje);
+			this.extremos = extremos;
+			this.prefijos = prefijos;
+		}
+
+		@Override
+		boolean cumple(String item) {
+			for (int i = 0; i < extremos.length; i++) {
+				if (prefijos ? item.startsWith(extremos[i]) : item.endsWith(extremos[i])) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Clase ReglaCaracteres.<br>
+	 * Tabla de caracteres permitidos indexada por c&oacute;digo de car&aacute;cter.<br>
+	 */
+	private static final class ReglaCaracteres extends Regla {
+
+		/** Si cada car&aacute;cter est&aacute; permitido. */
+		private final boolean[] permitidos;
+
+		ReglaCaracteres(String caracteres) {
+			super(CODIGO_CARACTERES, "El item contiene caracteres no permitidos");
+			int mayor = -1;
+			for (int i = 0; i < caracteres.length(); i++) {
+				mayor = Math.max(mayor, caracteres.charAt(i));
+			}
+			permitidos = new boolean[mayor + 1];
+			for (int i = 0; i < caracteres.length(); i++) {
+				permitidos[caracteres.charAt(i)] = true;
+			}
+		}
+
+		@Override
+		boolean cumple(String item) {
+			for (int i = 0; i < item.length(); i++) {
+				char caracter = item.charAt(i);
+				if (caracter >= permitidos.length || !permitidos[caracter]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Clase ReglaUnicidad.<br>
+	 */
+	private static final class ReglaUnicidad extends Regla {
+
+		/** Indica si un valor ya existe. */
+		private final Predicate<String> existentes;
+
+		ReglaUnicidad(Predicate<String> existentes) {
+			super(CODIGO_DUPLICADO, "El item ya existe");
+			this.existentes = existentes;
+		}
+
+		@Override
+		boolean cumple(String item) {
+			return !existentes.test(item);
+		}
+	}
+
+}
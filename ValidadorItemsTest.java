@@ -0,0 +1,51 @@
+package com.insags.mockito.tutorial.impl;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.Errors;
+import org.springframework.validation.ObjectError;
+
+public class ValidadorItemsTest {
+
+	/**
+	 * Mtodo para probar que validate informa de todas las reglas
+	 * incumplidas y comprobar slo de la primera.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - Un item vlido no produce errores. 
+	 * - Un item que incumple varias reglas tiene un error por regla.
+	 */
+	@Test
+	public void comprobarReglasCompiladas() {
+		final Set<String> existentes = new HashSet<String>(Arrays.asList("Peonza"));
+		ValidadorItems validador = new ValidadorItems();
+		validador.setLongitud(3, 12);
+		validador.setCaracteresPermitidos("abcdefghijklmnopqrstuvwxyzPM ");
+		validador.setPrefijosPermitidos("Pe", "Mu");
+		validador.setSufijosPermitidos("a", "o");
+		validador.setValoresExistentes(existentes::contains);
+		Errors errores = new BeanPropertyBindingResult("Pe-", "item");
+		
+		validador.validate("Pe-", errores);
+		
+		// Assert
+		Assert.assertTrue(validador.supports(String.class));
+		Assert.assertFalse(validador.supports(Integer.class));
+		Assert.assertNull(validador.comprobar("Pelota"));
+		Assert.assertEquals(ValidadorItems.CODIGO_DUPLICADO, validador.comprobar("Peonza"));
+		Assert.assertEquals(ValidadorItems.CODIGO_PREFIJO, validador.comprobar("Tren"));
+		Assert.assertEquals(ValidadorItems.CODIGO_NULO, validador.comprobar(null));
+		List<ObjectError> lista = errores.getGlobalErrors();
+		Assert.assertEquals(2, lista.size());
+		Assert.assertEquals(ValidadorItems.CODIGO_SUFIJO, lista.get(0).getCode());
+		Assert.assertEquals(ValidadorItems.CODIGO_CARACTERES, lista.get(1).getCode());
+	}
+
+}
@@ -0,0 +1,157 @@
+package com.insags.mockito.tutorial.impl;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.Errors;
+import org.springframework.validation.Validator;
+
+/**
+ * Clase ValidadorMasivo.<br>
+ * Valida muchos items a la vez repartiendo tramos contiguos entre varias
+ * tareas de un ejecutor. Cada tramo ocupa palabras completas del mapa de
+ * bits del resultado, de modo que las tareas no comparten nada salvo el
+ * contador de errores: al superar el presupuesto todas dejan de validar.
+ * Con un {@link ValidadorItems} no se crea ning&uacute;n objeto por item;
+ * con otro validador se crea un {@link Errors} por item.<br>
+ * @author INSA
+ */
+public class ValidadorMasivo {
+
+	/** Items por tramo; m&uacute;ltiplo de 64 para no compartir palabras del mapa de bits. */
+	static final int TAMANYO_TRAMO = 4096;
+
+	/** Validador de cada item. */
+	private final Validator validador;
+
+	/** Ejecutor de las tareas; si es nulo se valida en el hilo llamante. */
+	private final Executor ejecutor;
+
+	/** N&uacute;mero m&aacute;ximo de tareas simult&aacute;neas. */
+	private final int concurrencia;
+
+	/**
+	 * Constructor de la clase.<br>
+	 * @param validador Validador de cada item; debe admitir llamadas concurrentes.
+	 * @param ejecutor Ejecutor de las tareas, o nulo para validar en el hilo llamante.
+	 * @param concurrencia N&uacute;mero m&aacute;ximo de tareas simult&aacute;neas.
+	 */
+	public ValidadorMasivo(Validator validador, Executor ejecutor, int concurrencia) {
+		if (concurrencia <= 0) {
+			throw new IllegalArgumentException("Concurrencia no valida: " + concurrencia);
+		}
+		this.validador = validador;
+		this.ejecutor = ejecutor;
+		this.concurrencia = concurrencia;
+	}
+
+	/**
+	 * M&eacute;todo validar.<br>
+	 * @param items Items a validar.
+	 * @param presupuestoErrores Rechazos tolerados; al superarlos se deja de validar.
+	 * @return El resultado, incompleto si se super&oacute; el presupuesto.
+	 */
+	public ResultadoValidacion validar(Stream<String> items, int presupuestoErrores) {
+		return validar(items.toArray(String[]::new), presupuestoErrores);
+	}
+
+	/**
+	 * M&eacute;todo validar.<br>
+	 * @param items Items a validar; no se modifican.
+	 * @param presupuestoErrores Rechazos tolerados; al superarlos se deja de validar.
+	 * @return El resultado, incompleto si se super&oacute; el presupuesto.
+	 * @throws RuntimeException La misma que lance el validador, tambi&eacute;n desde otra tarea.
+	 */
+	public ResultadoValidacion validar(final String[] items, final int presupuestoErrores) {
+		if (presupuestoErrores < 0) {
+			throw new IllegalArgumentException("Presupuesto de errores no valido: " + presupuestoErrores);
+		}
+		final long[] rechazados = new long[(items.length + 63) >>> 6];
+		final AtomicInteger errores = new AtomicInteger();
+		final int numeroTramos = (items.length + TAMANYO_TRAMO - 1) / TAMANYO_TRAMO;
+		final AtomicInteger siguienteTramo = new AtomicInteger();
+		Runnable tarea = new Runnable() {
+			@Override
+			public void run() {
+				int tramo;
+				while (errores.get() <= presupuestoErrores
+						&& (tramo = siguienteTramo.getAndIncrement()) < numeroTramos) {
+					validarTramo(items, tramo, rechazados, errores, presupuestoErrores);
+				}
+			}
+		};
+
+		int tareas = ejecutor == null ? 0 : Math.min(concurrencia, numeroTramos);
+		if (tareas <= 1) {
+			tarea.run();
+		} else {
+			CompletableFuture<?>[] pendientes = new CompletableFuture<?>[tareas];
+			for (int t = 0; t < tareas; t++) {
+				pendientes[t] = CompletableFuture.runAsync(tarea, ejecutor);
+			}
+			try {
+				CompletableFuture.allOf(pendientes).join();
+			} catch (CompletionException e) {
+				Throwable causa = e.getCause();
+				if (causa instanceof RuntimeException) {
+					throw (RuntimeException) causa;
+				}
+				if (causa instanceof Error) {
+					throw (Error) causa;
+				}
+				throw e;
+			}
+		}
+
+		int numeroRechazados = 0;
+		for (long palabra : rechazados) {
+			numeroRechazados += Long.bitCount(palabra);
+		}
+		return new ResultadoValidacion(rechazados, items.length, numeroRechazados,
+				errores.get() <= presupuestoErrores);
+	}
+
+	/**
+	 * M&eacute;todo validarTramo.<br>
+	 * @param items Todos los items.
+	 * @param tramo N&uacute;mero del tramo a validar.
+	 * @param rechazados Bits de los items rechazados.
+	 * @param errores Rechazos acumulados por todas las tareas.
+	 * @param presupuestoErrores Rechazos tolerados.
+	 */
+	private void validarTramo(String[] items, int tramo, long[] rechazados, AtomicInteger errores,
+			int presupuestoErrores) {
+		int desde = tramo * TAMANYO_TRAMO;
+		int hasta = Math.min(desde + TAMANYO_TRAMO, items.length);
+		for (int i = desde; i < hasta; i++) {
+			if (!esValido(items[i])) {
+				rechazados[i >>> 6] |= 1L << i;
+				if (errores.incrementAndGet() > presupuestoErrores) {
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * M&eacute;todo esValido.<br>
+	 * @param item El item.
+	 * @return Si el validador lo acepta; los validadores que no admiten String aceptan todo.
+	 */
+	private boolean esValido(String item) {
+		if (validador instanceof ValidadorItems) {
+			return ((ValidadorItems) validador).comprobar(item) == null;
+		}
+		if (!validador.supports(String.class)) {
+			return true;
+		}
+		Errors errores = new BeanPropertyBindingResult(item, "item");
+		validador.validate(item, errores);
+		return !errores.hasErrors();
+	}
+
+}
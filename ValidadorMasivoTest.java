@@ -0,0 +1,71 @@
+package com.insags.mockito.tutorial.impl;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ValidadorMasivoTest {
+
+	/**
+	 * Mtodo para probar que la validacin en paralelo marca exactamente los
+	 * items rechazados de todos los tramos.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - El mapa de bits coincide con los items demasiado largos. 
+	 * - La validacin es completa.
+	 */
+	@Test
+	public void comprobarMapaDeRechazosEnParalelo() throws Exception {
+		ValidadorItems validador = new ValidadorItems();
+		validador.setLongitud(1, 5);
+		String[] items = new String[3 * ValidadorMasivo.TAMANYO_TRAMO + 17];
+		for (int i = 0; i < items.length; i++) {
+			items[i] = i % 1000 == 999 ? "Demasiado largo" : "Item";
+		}
+		ExecutorService ejecutor = Executors.newFixedThreadPool(4);
+		try {
+			ResultadoValidacion resultado = new ValidadorMasivo(validador, ejecutor, 4).validar(items, items.length);
+			
+			// Assert
+			Assert.assertTrue(resultado.isCompleta());
+			Assert.assertFalse(resultado.isValida());
+			Assert.assertEquals(items.length / 1000, resultado.getNumeroRechazados());
+			Assert.assertEquals(999, resultado.siguienteRechazado(0));
+			Assert.assertEquals(1999, resultado.siguienteRechazado(1000));
+			for (int i = 0; i < items.length; i++) {
+				Assert.assertEquals(i % 1000 == 999, resultado.isRechazado(i));
+			}
+		} finally {
+			ejecutor.shutdown();
+		}
+	}
+
+	/**
+	 * Mtodo para probar que al superar el presupuesto de errores se deja de
+	 * validar.
+	 * 
+	 * Resultado esperado:
+	 * 
+	 * - El resultado es incompleto. 
+	 * - No se validan todos los items.
+	 */
+	@Test
+	public void comprobarCorteAlSuperarElPresupuestoDeErrores() {
+		ValidadorItems validador = new ValidadorItems();
+		validador.setPrefijosPermitidos("Pe");
+		String[] items = new String[2 * ValidadorMasivo.TAMANYO_TRAMO];
+		Arrays.fill(items, "Tren");
+		
+		ResultadoValidacion resultado = new ValidadorMasivo(validador, null, 1).validar(items, 2);
+		
+		// Assert
+		Assert.assertFalse(resultado.isCompleta());
+		Assert.assertEquals(3, resultado.getNumeroRechazados());
+		Assert.assertEquals(-1, resultado.siguienteRechazado(3));
+	}
+
+}
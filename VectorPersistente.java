@@ -0,0 +1,182 @@
+package com.insags.mockito.tutorial.impl;
+
+import java.util.Arrays;
+
+/**
+ * Clase VectorPersistente.<br>
+ * Vector inmutable de items organizado como un &aacute;rbol de nodos de 32
+ * hijos. Cada escritura devuelve un vector nuevo que comparte con el
+ * anterior todos los nodos salvo los del camino modificado, de modo que
+ * escribir cuesta O(log32 n) y una versi&oacute;n ya publicada nunca cambia.<br>
+ * @author INSA
+ */
+final class VectorPersistente {
+
+	/** Bits de la posici&oacute;n que consume cada nivel. */
+	private static final int BITS = 5;
+
+	/** N&uacute;mero de hijos por nodo. */
+	private static final int ANCHO = 1 << BITS;
+
+	/** M&aacute;scara del &iacute;ndice dentro de un nodo. */
+	private static final int MASCARA = ANCHO - 1;
+
+	/** Vector sin items. */
+	static final VectorPersistente VACIO = new VectorPersistente(0, 0, new Object[ANCHO]);
+
+	/** N&uacute;mero de posiciones, incluidas las que nunca se han escrito. */
+	private final int tamanyo;
+
+	/** Desplazamiento de la ra&iacute;z; cero si la ra&iacute;z es una hoja. */
+	private final int desplazamiento;
+
+	/** Nodo ra&iacute;z. Los nodos internos contienen Object[] y las hojas String. */
+	private final Object[] raiz;
+
+	/**
+	 * Constructor de la clase.<br>
+	 * @param tamanyo N&uacute;mero de posiciones.
+	 * @param desplazamiento Desplazamiento de la ra&iacute;z.
+	 * @param raiz Nodo ra&iacute;z.
+	 */
+	private VectorPersistente(int tamanyo, int desplazamiento, Object[] raiz) {
+		this.tamanyo = tamanyo;
+		this.desplazamiento = desplazamiento;
+		this.raiz = raiz;
+	}
+
+	/**
+	 * M&eacute;todo desde.<br>
+	 * Construye el &aacute;rbol de abajo arriba sin copiar caminos.
+	 * @param items Los items; el array no se guarda.
+	 * @return Un vector con los items en sus posiciones.
+	 */
+	static VectorPersistente desde(String[] items) {
+		if (items.length == 0) {
+			return VACIO;
+		}
+		Object[] nivel = new Object[(items.length + MASCARA) >>> BITS];
+		for (int i = 0; i < nivel.length; i++) {
+			Object[] hoja = new Object[ANCHO];
+			System.arraycopy(items, i << BITS, hoja, 0, Math.min(ANCHO, items.length - (i << BITS)));
+			nivel[i] = hoja;
+		}
+		int nuevoDesplazamiento = 0;
+		while (nivel.length > 1) {
+			Object[] padres = new Object[(nivel.length + MASCARA) >>> BITS];
+			for (int i = 0; i < padres.length; i++) {
+				Object[] padre = new Object[ANCHO];
+				System.arraycopy(nivel, i << BITS, padre, 0, Math.min(ANCHO, nivel.length - (i << BITS)));
+				padres[i] = padre;
+			}
+			nivel = padres;
+			nuevoDesplazamiento += BITS;
+		}
+		return new VectorPersistente(items.length, nuevoDesplazamiento, (Object[]) nivel[0]);
+	}
+
+	/**
+	 * M&eacute;todo tamanyo.<br>
+	 * @return N&uacute;mero de posiciones.
+	 */
+	int tamanyo() {
+		return tamanyo;
+	}
+
+	/**
+	 * M&eacute;todo obtener.<br>
+	 * @param posicion Posici&oacute;n entre cero y tamanyo() - 1.
+	 * @return El item, o nulo si la posici&oacute;n nunca se ha escrito.
+	 */
+	String obtener(int posicion) {
+		Object[] hoja = hoja(posicion);
+		return hoja == null ? null : (String) hoja[posicion & MASCARA];
+	}
+
+	/**
+	 * M&eacute;todo con.<br>
+	 * @param posicion Posici&oacute;n no negativa; si es mayor que el tama&ntilde;o el vector crece.
+	 * @param item El nuevo valor del item.
+	 * @return Un vector nuevo con el item escrito.
+	 */
+	VectorPersistente con(int posicion, String item) {
+		Object[] nuevaRaiz = raiz;
+		int nuevoDesplazamiento = desplazamiento;
+		while (nuevoDesplazamiento < 30 && (posicion >>> nuevoDesplazamiento) >= ANCHO) {
+			Object[] padre = new Object[ANCHO];
+			padre[0] = nuevaRaiz;
+			nuevaRaiz = padre;
+			nuevoDesplazamiento += BITS;
+		}
+		nuevaRaiz = asignar(nuevaRaiz, nuevoDesplazamiento, posicion, item);
+		return new VectorPersistente(Math.max(tamanyo, posicion + 1), nuevoDesplazamiento, nuevaRaiz);
+	}
+
+	/**
+	 * M&eacute;todo copiar.<br>
+	 * Copia un tramo de posiciones hoja a hoja.
+	 * @param desde Primera posici&oacute;n a copiar.
+	 * @param destino Array destino, que se rellena desde su &iacute;ndice cero.
+	 * @return N&uacute;mero de items copiados.
+	 */
+	int copiar(int desde, String[] destino) {
+		int copiados = Math.max(0, Math.min(destino.length, tamanyo - desde));
+		int posicion = desde;
+		int hasta = desde + copiados;
+		while (posicion < hasta) {
+			int enHoja = Math.min(ANCHO - (posicion & MASCARA), hasta - posicion);
+			Object[] hoja = hoja(posicion);
+			if (hoja != null) {
+				System.arraycopy(hoja, posicion & MASCARA, destino, posicion - desde, enHoja);
+			} else {
+				Arrays.fill(destino, posicion - desde, posicion - desde + enHoja, null);
+			}
+			posicion += enHoja;
+		}
+		return copiados;
+	}
+
+	/**
+	 * M&eacute;todo aArray.<br>
+	 * @return Un array nuevo con todos los items.
+	 */
+	String[] aArray() {
+		String[] items = new String[tamanyo];
+		copiar(0, items);
+		return items;
+	}
+
+	/**
+	 * M&eacute;todo hoja.<br>
+	 * @param posicion Posici&oacute;n buscada.
+	 * @return La hoja que contiene la posici&oacute;n, o nulo si no existe.
+	 */
+	private Object[] hoja(int posicion) {
+		Object[] nodo = raiz;
+		for (int nivel = desplazamiento; nivel > 0 && nodo != null; nivel -= BITS) {
+			nodo = (Object[]) nodo[(posicion >>> nivel) & MASCARA];
+		}
+		return nodo;
+	}
+
+	/**
+	 * M&eacute;todo asignar.<br>
+	 * Copia el camino hasta la posici&oacute;n y escribe el item en la hoja.
+	 * @param nodo Nodo actual, o nulo si el camino a&uacute;n no existe.
+	 * @param nivel Desplazamiento del nodo actual.
+	 * @param posicion Posici&oacute;n a escribir.
+	 * @param item El nuevo valor del item.
+	 * @return La copia del nodo.
+	 */
+	private static Object[] asignar(Object[] nodo, int nivel, int posicion, String item) {
+		Object[] copia = nodo == null ? new Object[ANCHO] : nodo.clone();
+		if (nivel == 0) {
+			copia[posicion & MASCARA] = item;
+		} else {
+			int hijo = (posicion >>> nivel) & MASCARA;
+			copia[hijo] = asignar((Object[]) copia[hijo], nivel - BITS, posicion, item);
+		}
+		return copia;
+	}
+
+}